@@ -0,0 +1,175 @@
+package org.oskari.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.referencing.CRS;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+import org.oskari.geojson.GeoJSONWriter;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Feature collections used as benchmark input. The features are generated with a fixed seed so
+ * every run (and every commit) benchmarks exactly the same data. Each fixture is available as
+ * GeoTools features, as a GeoJSON response and as WFS 1.1.0 (GML3) and WFS 2.0.0 (GML 3.2) responses.
+ *
+ * The features are spread over a single WFS request tile (z=8 of the ETRS-TM35FIN grid used for
+ * vector tiles) and a bit over its edges like a real response to a bbox query.
+ */
+public enum Fixture {
+
+    /** Lots of small features, typical for POI layers */
+    POINTS(10000, 1, 6),
+    /** Detailed polygons, typical for land use/cadastral layers */
+    DENSE_POLYGONS(500, 1000, 6),
+    /** Wide attribute tables, typical for statistical and registry layers */
+    MANY_ATTRIBUTES(2000, 1, 60);
+
+    public static final String SRS = "EPSG:3067";
+    public static final String TYPE_NAME = "feature";
+    public static final String NAMESPACE = "http://oskari.org/benchmark";
+    public static final int TILE_EXTENT = 4096;
+    public static final int TILE_BUFFER = 256;
+    // A z=8 WFS request tile (8192m x 8192m) of the ETRS-TM35FIN grid
+    public static final double[] TILE_BBOX = { 377120, 6668288, 385312, 6676480 };
+
+    private static final long SEED = 20240101L;
+    private static final GeometryFactory GF = new GeometryFactory();
+    private static final ObjectMapper OM = new ObjectMapper();
+    private static final TypeReference<HashMap<String, Object>> TYPE_REF = new TypeReference<HashMap<String, Object>>() {};
+
+    private final int featureCount;
+    private final int verticesPerFeature;
+    private final int attributeCount;
+
+    Fixture(int featureCount, int verticesPerFeature, int attributeCount) {
+        this.featureCount = featureCount;
+        this.verticesPerFeature = verticesPerFeature;
+        this.attributeCount = attributeCount;
+    }
+
+    public Data create() throws Exception {
+        CoordinateReferenceSystem crs = CRS.decode(SRS);
+        SimpleFeatureType schema = createSchema(crs);
+        List<SimpleFeature> features = createFeatures(schema);
+        SimpleFeatureCollection fc = new ListFeatureCollection(schema, features);
+        byte[] geojson = new GeoJSONWriter().writeFeatureCollection(fc).toString().getBytes(StandardCharsets.UTF_8);
+        Map<String, Object> geojsonMap = OM.readValue(geojson, TYPE_REF);
+        byte[] gml3 = GMLFixtureWriter.writeWFS11(features, attributeCount).getBytes(StandardCharsets.UTF_8);
+        byte[] gml32 = GMLFixtureWriter.writeWFS20(features, attributeCount).getBytes(StandardCharsets.UTF_8);
+        return new Data(crs, schema, features, fc, geojson, geojsonMap, gml3, gml32);
+    }
+
+    private SimpleFeatureType createSchema(CoordinateReferenceSystem crs) {
+        SimpleFeatureTypeBuilder b = new SimpleFeatureTypeBuilder();
+        b.setName(TYPE_NAME);
+        b.setNamespaceURI(NAMESPACE);
+        b.setCRS(crs);
+        b.add("geom", verticesPerFeature == 1 ? Point.class : Polygon.class, crs);
+        for (int i = 0; i < attributeCount; i++) {
+            b.add(getAttributeName(i), getAttributeBinding(i));
+        }
+        return b.buildFeatureType();
+    }
+
+    private List<SimpleFeature> createFeatures(SimpleFeatureType schema) {
+        Random r = new Random(SEED);
+        SimpleFeatureBuilder builder = new SimpleFeatureBuilder(schema);
+        // Spread the features 10% over the edges of the tile
+        double w = TILE_BBOX[2] - TILE_BBOX[0];
+        double h = TILE_BBOX[3] - TILE_BBOX[1];
+        double minX = TILE_BBOX[0] - w * 0.1;
+        double minY = TILE_BBOX[1] - h * 0.1;
+        List<SimpleFeature> features = new ArrayList<>(featureCount);
+        for (int i = 0; i < featureCount; i++) {
+            double x = minX + r.nextDouble() * w * 1.2;
+            double y = minY + r.nextDouble() * h * 1.2;
+            builder.add(verticesPerFeature == 1 ? GF.createPoint(new Coordinate(x, y)) : createPolygon(r, x, y));
+            for (int j = 0; j < attributeCount; j++) {
+                builder.add(createAttributeValue(r, i, j));
+            }
+            features.add(builder.buildFeature(TYPE_NAME + "." + i));
+        }
+        return features;
+    }
+
+    private Geometry createPolygon(Random r, double cx, double cy) {
+        // Star-shaped so the ring is always simple, noisy radius for realistic (non-simplifiable) vertices
+        double radius = 50 + r.nextDouble() * 250;
+        Coordinate[] ring = new Coordinate[verticesPerFeature + 1];
+        for (int i = 0; i < verticesPerFeature; i++) {
+            double a = 2 * Math.PI * i / verticesPerFeature;
+            double d = radius * (0.8 + r.nextDouble() * 0.2);
+            ring[i] = new Coordinate(cx + Math.cos(a) * d, cy + Math.sin(a) * d);
+        }
+        ring[verticesPerFeature] = new Coordinate(ring[0]);
+        return GF.createPolygon(ring);
+    }
+
+    static String getAttributeName(int i) {
+        return "attr" + i;
+    }
+
+    static Class<?> getAttributeBinding(int i) {
+        switch (i % 3) {
+            case 0:
+                return String.class;
+            case 1:
+                return Integer.class;
+            default:
+                return Double.class;
+        }
+    }
+
+    private static Object createAttributeValue(Random r, int feature, int attr) {
+        switch (attr % 3) {
+            case 0:
+                return "value " + feature + " of " + Long.toString(r.nextLong() & 0xFFFFFF, 36);
+            case 1:
+                return r.nextInt(100000);
+            default:
+                return Math.round(r.nextDouble() * 1000000) / 100.0;
+        }
+    }
+
+    public static class Data {
+        public final CoordinateReferenceSystem crs;
+        public final SimpleFeatureType schema;
+        public final List<SimpleFeature> features;
+        public final SimpleFeatureCollection featureCollection;
+        public final byte[] geojson;
+        public final Map<String, Object> geojsonMap;
+        public final byte[] gml3;
+        public final byte[] gml32;
+
+        Data(CoordinateReferenceSystem crs, SimpleFeatureType schema, List<SimpleFeature> features,
+                SimpleFeatureCollection featureCollection, byte[] geojson, Map<String, Object> geojsonMap,
+                byte[] gml3, byte[] gml32) {
+            this.crs = crs;
+            this.schema = schema;
+            this.features = features;
+            this.featureCollection = featureCollection;
+            this.geojson = geojson;
+            this.geojsonMap = geojsonMap;
+            this.gml3 = gml3;
+            this.gml32 = gml32;
+        }
+    }
+}
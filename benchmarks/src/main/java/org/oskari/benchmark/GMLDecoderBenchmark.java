@@ -0,0 +1,57 @@
+package org.oskari.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.oskari.service.wfs.client.OskariGML;
+import org.oskari.service.wfs.client.OskariGML32;
+import org.oskari.service.wfs.client.OskariGMLDecoder;
+
+/**
+ * Decoding WFS 1.1.0 (OskariGML) and WFS 2.0.0 (OskariGML32) responses.
+ * Parsing GML is a lot slower than GeoJSON so fewer iterations are used.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class GMLDecoderBenchmark {
+
+    @Param({ "POINTS", "DENSE_POLYGONS", "MANY_ATTRIBUTES" })
+    public Fixture fixture;
+
+    private Fixture.Data data;
+    private OskariGMLDecoder gml3;
+    private OskariGMLDecoder gml32;
+
+    @Setup
+    public void setup() throws Exception {
+        data = fixture.create();
+        gml3 = new OskariGML();
+        gml32 = new OskariGML32();
+    }
+
+    @Benchmark
+    public SimpleFeatureCollection decodeGML3() throws Exception {
+        return gml3.decodeFeatureCollection(new ByteArrayInputStream(data.gml3), null, null);
+    }
+
+    @Benchmark
+    public SimpleFeatureCollection decodeGML32() throws Exception {
+        return gml32.decodeFeatureCollection(new ByteArrayInputStream(data.gml32), null, null);
+    }
+}
@@ -0,0 +1,91 @@
+package org.oskari.benchmark;
+
+import java.util.List;
+
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+
+/**
+ * Writes fixture features as WFS GetFeature responses. The responses don't reference an
+ * application schema so the decoders build the feature type from the response, the same way
+ * they do for services that don't publish a usable schemaLocation.
+ */
+class GMLFixtureWriter {
+
+    private static final String NS_WFS11 = "http://www.opengis.net/wfs";
+    private static final String NS_GML3 = "http://www.opengis.net/gml";
+    private static final String NS_WFS20 = "http://www.opengis.net/wfs/2.0";
+    private static final String NS_GML32 = "http://www.opengis.net/gml/3.2";
+
+    static String writeWFS11(List<SimpleFeature> features, int attributeCount) {
+        StringBuilder sb = new StringBuilder(features.size() * 256);
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        sb.append("<wfs:FeatureCollection xmlns:wfs=\"").append(NS_WFS11)
+                .append("\" xmlns:gml=\"").append(NS_GML3)
+                .append("\" xmlns:bm=\"").append(Fixture.NAMESPACE).append("\">");
+        for (SimpleFeature f : features) {
+            sb.append("<gml:featureMember>");
+            writeFeature(sb, f, attributeCount);
+            sb.append("</gml:featureMember>");
+        }
+        sb.append("</wfs:FeatureCollection>");
+        return sb.toString();
+    }
+
+    static String writeWFS20(List<SimpleFeature> features, int attributeCount) {
+        StringBuilder sb = new StringBuilder(features.size() * 256);
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        sb.append("<wfs:FeatureCollection xmlns:wfs=\"").append(NS_WFS20)
+                .append("\" xmlns:gml=\"").append(NS_GML32)
+                .append("\" xmlns:bm=\"").append(Fixture.NAMESPACE)
+                .append("\" numberMatched=\"").append(features.size())
+                .append("\" numberReturned=\"").append(features.size()).append("\">");
+        for (SimpleFeature f : features) {
+            sb.append("<wfs:member>");
+            writeFeature(sb, f, attributeCount);
+            sb.append("</wfs:member>");
+        }
+        sb.append("</wfs:FeatureCollection>");
+        return sb.toString();
+    }
+
+    private static void writeFeature(StringBuilder sb, SimpleFeature f, int attributeCount) {
+        sb.append("<bm:").append(Fixture.TYPE_NAME).append(" gml:id=\"").append(f.getID()).append("\">");
+        sb.append("<bm:geom>");
+        writeGeometry(sb, (Geometry) f.getDefaultGeometry());
+        sb.append("</bm:geom>");
+        for (int i = 0; i < attributeCount; i++) {
+            String name = Fixture.getAttributeName(i);
+            sb.append("<bm:").append(name).append('>');
+            sb.append(f.getAttribute(name));
+            sb.append("</bm:").append(name).append('>');
+        }
+        sb.append("</bm:").append(Fixture.TYPE_NAME).append('>');
+    }
+
+    private static void writeGeometry(StringBuilder sb, Geometry geom) {
+        if (geom instanceof Point) {
+            sb.append("<gml:Point srsName=\"").append(Fixture.SRS).append("\"><gml:pos>");
+            Coordinate c = geom.getCoordinate();
+            sb.append(c.x).append(' ').append(c.y);
+            sb.append("</gml:pos></gml:Point>");
+        } else if (geom instanceof Polygon) {
+            sb.append("<gml:Polygon srsName=\"").append(Fixture.SRS).append("\">");
+            sb.append("<gml:exterior><gml:LinearRing><gml:posList>");
+            Coordinate[] coords = ((Polygon) geom).getExteriorRing().getCoordinates();
+            for (int i = 0; i < coords.length; i++) {
+                if (i > 0) {
+                    sb.append(' ');
+                }
+                sb.append(coords[i].x).append(' ').append(coords[i].y);
+            }
+            sb.append("</gml:posList></gml:LinearRing></gml:exterior>");
+            sb.append("</gml:Polygon>");
+        } else {
+            throw new IllegalArgumentException("Unsupported fixture geometry " + geom.getGeometryType());
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.oskari.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.oskari.geojson.GeoJSONReader2;
+import org.oskari.geojson.GeoJSONSchemaDetector;
+import org.oskari.geojson.GeoJSONWriter;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Reading a GeoJSON WFS response into features the way OskariWFSClient does it
+ * and writing features as GeoJSON (GetWFSFeatures).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class GeoJSONBenchmark {
+
+    private static final ObjectMapper OM = new ObjectMapper();
+    private static final TypeReference<HashMap<String, Object>> TYPE_REF = new TypeReference<HashMap<String, Object>>() {};
+
+    @Param({ "POINTS", "DENSE_POLYGONS", "MANY_ATTRIBUTES" })
+    public Fixture fixture;
+
+    private Fixture.Data data;
+    private SimpleFeatureType schema;
+
+    @Setup
+    public void setup() throws Exception {
+        data = fixture.create();
+        schema = GeoJSONSchemaDetector.getSchema(data.geojsonMap, data.crs, true);
+    }
+
+    @Benchmark
+    public SimpleFeatureType getSchema() {
+        return GeoJSONSchemaDetector.getSchema(data.geojsonMap, data.crs, true);
+    }
+
+    @Benchmark
+    public SimpleFeatureCollection toFeatureCollection() {
+        return GeoJSONReader2.toFeatureCollection(data.geojsonMap, schema);
+    }
+
+    /**
+     * The whole parse as done by OskariWFSClient for a GeoJSON response
+     */
+    @Benchmark
+    public SimpleFeatureCollection parseResponse() throws Exception {
+        Map<String, Object> geojson = OM.readValue(data.geojson, TYPE_REF);
+        SimpleFeatureType detected = GeoJSONSchemaDetector.getSchema(geojson, data.crs, true);
+        return GeoJSONReader2.toFeatureCollection(geojson, detected);
+    }
+
+    @Benchmark
+    public String writeFeatureCollection() throws Exception {
+        JSONObject json = new GeoJSONWriter().writeFeatureCollection(data.featureCollection);
+        return json.toString();
+    }
+}
@@ -0,0 +1,79 @@
+package org.oskari.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.util.GeometryEditor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.oskari.service.mvt.SimpleFeaturesMVTEncoder;
+import org.oskari.service.mvt.ToMVTSpace;
+
+/**
+ * Encoding a single vector tile from the features of a WFS request tile
+ * (GetWFSVectorTile without the WFS request and gzip).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class MVTEncoderBenchmark {
+
+    @Param({ "POINTS", "DENSE_POLYGONS", "MANY_ATTRIBUTES" })
+    public Fixture fixture;
+
+    private Fixture.Data data;
+    private List<Geometry> geometries;
+    private ToMVTSpace toMVTSpace;
+    private GeometryEditor editor;
+
+    @Setup
+    public void setup() throws Exception {
+        data = fixture.create();
+        geometries = new ArrayList<>(data.features.size());
+        for (SimpleFeature f : data.features) {
+            geometries.add((Geometry) f.getDefaultGeometry());
+        }
+        double[] bbox = Fixture.TILE_BBOX;
+        // Same transformation as SimpleFeaturesMVTEncoder uses
+        double scaleX = Fixture.TILE_EXTENT / (bbox[2] - bbox[0]);
+        double scaleY = -(Fixture.TILE_EXTENT / (bbox[3] - bbox[1]));
+        toMVTSpace = new ToMVTSpace(bbox[0], bbox[3], scaleX, scaleY);
+        editor = new GeometryEditor(new GeometryFactory());
+    }
+
+    @Benchmark
+    public byte[] encodeToByteArray() {
+        return SimpleFeaturesMVTEncoder.encodeToByteArray(data.featureCollection,
+                Fixture.TYPE_NAME, Fixture.TILE_BBOX, Fixture.TILE_EXTENT, Fixture.TILE_BUFFER);
+    }
+
+    @Benchmark
+    public byte[] encodeToByteArrayDirect() {
+        return SimpleFeaturesMVTEncoder.encodeToByteArrayDirect(data.features,
+                Fixture.TYPE_NAME, Fixture.TILE_BBOX, Fixture.TILE_EXTENT, Fixture.TILE_BUFFER);
+    }
+
+    @Benchmark
+    public void toMVTSpace(Blackhole bh) {
+        for (Geometry geom : geometries) {
+            bh.consume(editor.edit(geom, toMVTSpace));
+        }
+    }
+}
@@ -106,7 +106,8 @@ public class LayerHelper {
             throw new OskariRuntimeException("Couldn't get system crs list");
         }
         OskariLayerService layerService = getLayerService();
-        List<OskariLayer> layers = layerService.findAll().stream()
+        // capabilities are updated to the layer objects in place so don't use the shared instances of findAll()
+        List<OskariLayer> layers = layerService.findAllForUpdate().stream()
                 // skip localhost servers as the service is starting when this is called and geoserver will not answer
                 .filter(l -> !l.getUrl().startsWith("http://localhost:"))
                 // only update layers when new projection is added
@@ -3,6 +3,7 @@ package fi.nls.oskari.control.admin;
 import fi.nls.oskari.annotation.OskariActionRoute;
 import fi.nls.oskari.cache.Cache;
 import fi.nls.oskari.cache.CacheManager;
+import fi.nls.oskari.cache.OffHeapCache;
 import fi.nls.oskari.control.ActionDeniedException;
 import fi.nls.oskari.control.ActionException;
 import fi.nls.oskari.control.ActionParameters;
@@ -54,8 +55,20 @@ public class CacheHandler extends RestActionHandler {
         JSONHelper.putValue(json, "name", cache.getName());
         JSONHelper.putValue(json, "size", cache.getSize());
         JSONHelper.putValue(json, "limit", cache.getLimit());
+        JSONHelper.putValue(json, "weight", cache.getWeight());
+        JSONHelper.putValue(json, "maxWeight", cache.getMaxWeight());
         JSONHelper.putValue(json, "expiration", cache.getExpiration() / 1000);
         JSONHelper.putValue(json, "secondsToExpire", cache.getTimeToExpirationMs() / 1000);
+        if (cache instanceof OffHeapCache) {
+            final JSONObject stats = new JSONObject();
+            ((OffHeapCache) cache).getStats().forEach((group, s) -> {
+                final JSONObject groupStats = new JSONObject();
+                JSONHelper.putValue(groupStats, "hits", s.getHits());
+                JSONHelper.putValue(groupStats, "misses", s.getMisses());
+                JSONHelper.putValue(stats, group, groupStats);
+            });
+            JSONHelper.putValue(json, "stats", stats);
+        }
         return json;
     }
 
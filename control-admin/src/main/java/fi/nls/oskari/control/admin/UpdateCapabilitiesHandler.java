@@ -116,7 +116,8 @@ public class UpdateCapabilitiesHandler extends RestActionHandler {
         if (groupId > 0) {
             return layerService.findByGroupId(groupId);
         }
-        return layerService.findAll();
+        // capabilities are updated to the layer objects in place so don't use the shared instances of findAll()
+        return layerService.findAllForUpdate();
     }
 
     private int getId(String layerId) throws ActionParamsException {
@@ -0,0 +1,186 @@
+package fi.nls.oskari.control.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONObject;
+import org.oskari.metrics.UpstreamMetrics;
+
+import fi.nls.oskari.domain.map.OskariLayer;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.map.data.domain.GFIRequestParams;
+import fi.nls.oskari.map.data.domain.GFIRestQueryParams;
+import fi.nls.oskari.map.data.service.GetGeoPointDataService;
+import fi.nls.oskari.util.PropertyUtil;
+
+/**
+ * Makes the GetFeatureInfo requests for the layers of a map click in parallel so the click takes as long
+ * as the slowest layer instead of the sum of all of them.
+ *
+ * All the requests share a deadline (GetFeatureInfo.timeout ms) that also limits the connect and read
+ * timeouts of the requests. The number of concurrent requests to a single host is limited to
+ * GetFeatureInfo.maxPerHost which defaults to the number of connections the JDK keeps alive per host
+ * (http.maxConnections, 5) so the connections can be reused instead of opening new ones for each layer.
+ */
+class GFIBatch {
+
+    private static final Logger LOG = LogFactory.getLogger(GFIBatch.class);
+
+    private static final String PROP_TIMEOUT = "GetFeatureInfo.timeout";
+    private static final String PROP_POOL_SIZE = "GetFeatureInfo.pool.size";
+    private static final String PROP_MAX_PER_HOST = "GetFeatureInfo.maxPerHost";
+    private static final int DEFAULT_TIMEOUT_MS = 20000;
+    static final int MAX_PER_HOST = PropertyUtil.getOptional(PROP_MAX_PER_HOST,
+            Integer.getInteger("http.maxConnections", 5));
+
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+            PropertyUtil.getOptional(PROP_POOL_SIZE, 16), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "gfi-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+    private static final Map<String, Semaphore> HOST_PERMITS = new ConcurrentHashMap<>();
+
+    interface Listener {
+        /**
+         * Called on the calling thread as soon as the layer has answered
+         * @param index index of the request
+         * @param response GFI response or null if nothing was found or the request failed
+         */
+        void onResult(int index, JSONObject response) throws IOException;
+
+        /**
+         * Called for the layers that didn't answer before the deadline, after the other results
+         */
+        default void onTimeout(int index) throws IOException {}
+    }
+
+    private GFIBatch() {}
+
+    /**
+     * Requests the feature info for each of the params and passes the results to the listener in the
+     * order they complete.
+     * @throws IOException if the listener throws one, the requests still in progress are cancelled
+     */
+    static void run(GetGeoPointDataService service, List<GFIRequestParams> requests, Listener listener) throws IOException {
+        final long deadline = System.currentTimeMillis() + PropertyUtil.getOptional(PROP_TIMEOUT, DEFAULT_TIMEOUT_MS);
+        if (requests.size() == 1) {
+            // no need to go through the executor
+            listener.onResult(0, getFeatureInfo(service, requests.get(0), deadline));
+            return;
+        }
+        final CompletionService<Result> completion = new ExecutorCompletionService<>(EXECUTOR);
+        final List<Future<Result>> futures = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            final int index = i;
+            futures.add(completion.submit(() -> new Result(index, getFeatureInfo(service, requests.get(index), deadline))));
+        }
+        final boolean[] done = new boolean[requests.size()];
+        try {
+            for (int received = 0; received < requests.size(); received++) {
+                long remaining = deadline - System.currentTimeMillis();
+                Future<Result> future = completion.poll(Math.max(0, remaining), TimeUnit.MILLISECONDS);
+                if (future == null) {
+                    break;
+                }
+                try {
+                    Result result = future.get();
+                    done[result.index] = true;
+                    listener.onResult(result.index, result.response);
+                } catch (ExecutionException e) {
+                    // getFeatureInfo() handles its own errors, this shouldn't happen
+                    LOG.error(e.getCause(), "GetFeatureInfo failed");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            futures.forEach(f -> f.cancel(true));
+        }
+        for (int i = 0; i < done.length; i++) {
+            if (!done[i]) {
+                LOG.info("GetFeatureInfo for layer", requests.get(i).getLayer().getId(), "didn't answer in time");
+                listener.onTimeout(i);
+            }
+        }
+    }
+
+    private static JSONObject getFeatureInfo(GetGeoPointDataService service, GFIRequestParams params, long deadline) {
+        final OskariLayer layer = params.getLayer();
+        final Semaphore permits = HOST_PERMITS.computeIfAbsent(getHost(layer.getUrl()),
+                host -> new Semaphore(MAX_PER_HOST));
+        try {
+            if (!permits.tryAcquire(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS)) {
+                return null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        try {
+            int remaining = (int) (deadline - System.currentTimeMillis());
+            if (remaining <= 0) {
+                return null;
+            }
+            params.setTimeoutMs(remaining);
+            if (OskariLayer.TYPE_ARCGIS93.equals(layer.getType())) {
+                return service.getRESTFeatureInfo((GFIRestQueryParams) params);
+            }
+            return service.getWMSFeatureInfo(params);
+        } catch (Exception e) {
+            LOG.warn(e, "GetFeatureInfo failed for layer", layer.getId());
+            return null;
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * @return host (and port) of the url, also when the url can't be parsed as an URI
+     */
+    static String getHost(String url) {
+        String host = UpstreamMetrics.getHost(url);
+        if (!UpstreamMetrics.UNKNOWN.equals(host) || url == null) {
+            return host;
+        }
+        // don't let all the layers with unparseable urls share one host limit,
+        // use the part between the scheme and the path as is
+        String s = url.trim();
+        int start = s.indexOf("://");
+        start = start < 0 ? 0 : start + 3;
+        int end = start;
+        while (end < s.length() && "/?#".indexOf(s.charAt(end)) < 0) {
+            end++;
+        }
+        String authority = s.substring(start, end);
+        return authority.substring(authority.lastIndexOf('@') + 1);
+    }
+
+    private static class Result {
+        private final int index;
+        private final JSONObject response;
+
+        private Result(int index, JSONObject response) {
+            this.index = index;
+            this.response = response;
+        }
+    }
+}
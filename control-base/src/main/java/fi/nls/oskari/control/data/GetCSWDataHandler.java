@@ -1,6 +1,8 @@
 package fi.nls.oskari.control.data;
 
 import fi.nls.oskari.annotation.OskariActionRoute;
+import fi.nls.oskari.cache.Cache;
+import fi.nls.oskari.cache.CacheManager;
 import fi.nls.oskari.control.ActionException;
 import fi.nls.oskari.control.ActionHandler;
 import fi.nls.oskari.control.ActionParameters;
@@ -22,6 +24,7 @@ import fi.nls.oskari.util.ResponseHelper;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.oskari.service.util.ServiceFactory;
@@ -60,10 +63,18 @@ public class GetCSWDataHandler extends ActionHandler {
     /* images */
     private static final String PROPERTY_IMAGE_PREFIX = "search.channel.METADATA_CATALOGUE_CHANNEL.image.url.";
     private final Map<String, String> imageURLs = new HashMap<String, String>();
+
+    /* parsed records as JSON by service url, metadata id and language */
+    private static final String PROP_CACHE_TTL = "service.metadata.cache.ttl";
+    private Cache<String> recordCache;
     
     @Override
     public void init() {
         super.init();
+        // limit can be configured with oskari.cache.limit.[CACHE_NAME]
+        recordCache = CacheManager.getCache(GetCSWDataHandler.class.getName());
+        recordCache.setLimit(1000);
+        recordCache.setExpiration(TimeUnit.SECONDS.toMillis(PropertyUtil.getOptional(PROP_CACHE_TTL, 1800)));
         final List<String> imageKeys = PropertyUtil.getPropertyNamesStartingWith(PROPERTY_IMAGE_PREFIX);
         layerService = ServiceFactory.getMapLayerService();
 
@@ -95,20 +106,7 @@ public class GetCSWDataHandler extends ActionHandler {
             throw new ActionParamsException("No UUID or layer id found.");
         }
 
-        CSWIsoRecord record;
-        try {
-            record = CSW.getCSWRecord(serviceUrl, metadataid, lang);
-        } catch (ServiceException e) {
-            throw new ActionException("Unexpected exeption occurred", e);
-        }
-
-        JSONObject result;
-        if (record != null) {
-            prefixImageFilenames(record, uuid, lang);
-            result = record.toJSON();
-        } else {
-            result = new JSONObject();
-        }
+        JSONObject result = getRecordJSON(serviceUrl, metadataid, uuid, lang);
 
         addGeometry(result, params);
 
@@ -123,6 +121,34 @@ public class GetCSWDataHandler extends ActionHandler {
         ResponseHelper.writeResponse(params, result);
     }
     
+    /**
+     * Returns the record as JSON from cache or from the metadata service. Records rarely change so they are
+     * cached for a while (service.metadata.cache.ttl seconds) to make repeated views of the same metadata fast.
+     * Records that are not found are not cached.
+     */
+    private JSONObject getRecordJSON(String serviceUrl, String metadataid, String uuid, String lang) throws ActionException {
+        // image urls depend on the uuid param so records requested by layer are cached separately
+        final String key = serviceUrl + "|" + metadataid + "|" + lang + (uuid == null ? "|layer" : "");
+        final String cached = recordCache.get(key);
+        if (cached != null) {
+            // callers modify the JSON so always return a new object
+            return new JSONObject(cached);
+        }
+        CSWIsoRecord record;
+        try {
+            record = CSW.getCSWRecord(serviceUrl, metadataid, lang);
+        } catch (ServiceException e) {
+            throw new ActionException("Unexpected exeption occurred", e);
+        }
+        if (record == null) {
+            return new JSONObject();
+        }
+        prefixImageFilenames(record, uuid, lang);
+        JSONObject json = record.toJSON();
+        recordCache.put(key, json.toString());
+        return json;
+    }
+
     private void prefixImageFilenames(CSWIsoRecord record, final String uuid, final String locale) {
         // This only works for GN2 for paikkatietohakemisto.fi
         // GN2-style: http://geonetwork.nls.fi/geonetwork/srv/fi/resources.get.uuid?access=public&uuid=7ac131b9-a307-4aa1-b27a-009e91f6bd45&fname=Pohjak_Ylihrm_s.png
@@ -0,0 +1,71 @@
+package fi.nls.oskari.control.data;
+
+import fi.nls.oskari.annotation.OskariActionRoute;
+import fi.nls.oskari.control.ActionException;
+import fi.nls.oskari.control.ActionParameters;
+import fi.nls.oskari.domain.map.OskariLayer;
+import fi.nls.oskari.map.data.domain.GFIRequestParams;
+import fi.nls.oskari.map.data.service.GetGeoPointDataService;
+import jakarta.servlet.http.HttpServletResponse;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+
+/**
+ * Same parameters as GetFeatureInfoWMS but writes the response of each layer as soon as the layer has
+ * answered as newline delimited JSON (one JSON object per line) so the slowest layer doesn't hold back
+ * the results of the other layers.
+ *
+ * Lines for layers without results only have the layerId and type. Layers that didn't answer in time
+ * also have "error": "timeout".
+ */
+@OskariActionRoute("GetFeatureInfoBatch")
+public class GetGeoPointDataBatchHandler extends GetGeoPointDataHandler {
+
+    private static final String CONTENT_TYPE_NDJSON = "application/x-ndjson;charset=UTF-8";
+
+    @Override
+    public void handleAction(final ActionParameters params) throws ActionException {
+        final List<GFIRequestParams> requests = getRequests(params);
+        final HttpServletResponse response = params.getResponse();
+        response.setCharacterEncoding("UTF-8");
+        response.setContentType(CONTENT_TYPE_NDJSON);
+        try {
+            final PrintWriter out = response.getWriter();
+            GFIBatch.run(geoPointService, requests, new GFIBatch.Listener() {
+                @Override
+                public void onResult(int index, JSONObject result) throws IOException {
+                    writeLine(out, result != null ? result : getLayerInfo(requests.get(index)));
+                }
+                @Override
+                public void onTimeout(int index) throws IOException {
+                    JSONObject line = getLayerInfo(requests.get(index));
+                    line.put("error", "timeout");
+                    writeLine(out, line);
+                }
+            });
+        } catch (IOException e) {
+            throw new ActionException("Could not write GFI responses", e);
+        }
+    }
+
+    private static JSONObject getLayerInfo(GFIRequestParams request) {
+        OskariLayer layer = request.getLayer();
+        JSONObject json = new JSONObject();
+        json.put(GetGeoPointDataService.LAYER_ID, layer.getId());
+        json.put(GetGeoPointDataService.TYPE, layer.getType());
+        return json;
+    }
+
+    private static void writeLine(PrintWriter out, JSONObject json) throws IOException {
+        out.write(json.toString());
+        out.write('\n');
+        out.flush();
+        if (out.checkError()) {
+            // client went away, no point in waiting for the rest of the layers
+            throw new IOException("Client closed the connection");
+        }
+    }
+}
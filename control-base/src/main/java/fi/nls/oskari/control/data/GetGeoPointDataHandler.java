@@ -20,12 +20,15 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.oskari.permissions.PermissionService;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static fi.nls.oskari.control.ActionConstants.*;
 
 @OskariActionRoute("GetFeatureInfoWMS")
 public class GetGeoPointDataHandler extends ActionHandler {
     private PermissionHelper permissionHelper;
-    private final GetGeoPointDataService geoPointService = new GetGeoPointDataService();
+    protected GetGeoPointDataService geoPointService = new GetGeoPointDataService();
 
     private final Logger log = LogFactory.getLogger(GetGeoPointDataHandler.class);
 
@@ -45,9 +48,41 @@ public class GetGeoPointDataHandler extends ActionHandler {
                 OskariComponentManager.getComponentOfType(PermissionService.class));
     }
 
+    void setGeoPointService(GetGeoPointDataService service) {
+        geoPointService = service;
+    }
+
     @Override
     public void handleAction(final ActionParameters params) throws ActionException {
+        // layers are queried one after another without a deadline, see GetFeatureInfoBatch for parallel requests
+        final JSONArray data = new JSONArray();
+        for (GFIRequestParams gfiParams : getRequests(params)) {
+            final JSONObject response;
+            if (OskariLayer.TYPE_ARCGIS93.equals(gfiParams.getLayer().getType())) {
+                response = geoPointService.getRESTFeatureInfo((GFIRestQueryParams) gfiParams);
+            } else {
+                response = geoPointService.getWMSFeatureInfo(gfiParams);
+            }
+            if (response != null) {
+                data.put(response);
+            }
+        }
+
+        try {
+            final JSONObject rootJson = new JSONObject();
+            rootJson.put("data", data);
+            rootJson.put("layerCount", data.length());
+            ResponseHelper.writeResponse(params, rootJson);
+        } catch (JSONException je) {
+            throw new ActionException("Could not populate GFI JSON: " + log.getAsString(data), je);
+        }
+    }
 
+    /**
+     * Parses the GFI requests for the supported layers listed in the layerIds parameter.
+     * @throws ActionException if the user doesn't have permission to a layer
+     */
+    protected List<GFIRequestParams> getRequests(final ActionParameters params) throws ActionException {
         final String layerIds = params.getRequiredParam(PARAM_LAYERS);
         final String[] layerIdsArr = layerIds.split(",");
         final JSONObject allLayerAdditionalParams = getAllLayerAdditionalParams(params);
@@ -56,7 +91,7 @@ public class GetGeoPointDataHandler extends ActionHandler {
         final double lon = ConversionHelper.getDouble(params.getHttpParam(PARAM_LON), -1);
         final int zoom = ConversionHelper.getInt(params.getHttpParam(PARAM_ZOOM), 0);
 
-        final JSONArray data = new JSONArray();
+        final List<GFIRequestParams> requests = new ArrayList<>(layerIdsArr.length);
         final String srs = params.getHttpParam(PARAM_SRS, "EPSG:3067");
 
         for (String id : layerIdsArr) {
@@ -90,27 +125,10 @@ public class GetGeoPointDataHandler extends ActionHandler {
                 gfiParams.setY(params.getHttpParam(PARAM_Y));
                 gfiParams.setZoom(zoom);
                 gfiParams.setAdditionalParams(allLayerAdditionalParams.optJSONObject(id));
-
-                final JSONObject response = geoPointService.getWMSFeatureInfo(gfiParams);
-                if (response != null) {
-                    data.put(response);
-                }
-            } else if (OskariLayer.TYPE_ARCGIS93.equals(layerType)) {
-                final JSONObject response = geoPointService.getRESTFeatureInfo((GFIRestQueryParams) gfiParams);
-                if (response != null) {
-                    data.put(response);
-                }
             }
+            requests.add(gfiParams);
         }
-
-        try {
-            final JSONObject rootJson = new JSONObject();
-            rootJson.put("data", data);
-            rootJson.put("layerCount", data.length());
-            ResponseHelper.writeResponse(params, rootJson);
-        } catch (JSONException je) {
-            throw new ActionException("Could not populate GFI JSON: " + log.getAsString(data), je);
-        }
+        return requests;
     }
 
     private GFIRequestParams getParams(String layerType) {
@@ -10,7 +10,6 @@ import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.geojson.feature.FeatureJSON;
 import org.geotools.geojson.geom.GeometryJSON;
 import org.geotools.geometry.jts.ReferencedEnvelope;
-import org.geotools.referencing.CRS;
 import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
 import org.oskari.geojson.GeoJSONUtil;
 import org.oskari.service.user.UserLayerService;
@@ -23,6 +22,7 @@ import fi.nls.oskari.control.ActionException;
 import fi.nls.oskari.control.ActionParameters;
 import fi.nls.oskari.control.ActionParamsException;
 import fi.nls.oskari.domain.map.OskariLayer;
+import fi.nls.oskari.map.geometry.CrsRegistry;
 import fi.nls.oskari.map.geometry.ProjectionHelper;
 import fi.nls.oskari.service.ServiceRuntimeException;
 import fi.nls.oskari.util.ResponseHelper;
@@ -50,7 +50,7 @@ public class GetWFSFeaturesHandler extends AbstractWFSFeaturesHandler {
         String targetSRS = params.getHttpParam(ActionConstants.PARAM_SRS, "EPSG:3857");
         CoordinateReferenceSystem targetCRS;
         try {
-            targetCRS = CRS.decode(targetSRS, true);
+            targetCRS = CrsRegistry.decode(targetSRS, true);
         } catch (Exception e) {
             throw new ActionParamsException("Invalid " + ActionConstants.PARAM_SRS);
         }
@@ -14,6 +14,8 @@ import fi.nls.oskari.control.ActionParamsException;
 import fi.nls.oskari.domain.map.OskariLayer;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.map.layer.LayerChangeListener;
+import fi.nls.oskari.map.layer.OskariLayerService;
 import fi.nls.oskari.map.layer.formatters.LayerJSONFormatterVectorTile;
 import fi.nls.oskari.service.OskariComponentManager;
 import fi.nls.oskari.service.capabilities.CapabilitiesConstants;
@@ -28,17 +30,25 @@ import org.json.JSONObject;
 import org.oskari.capabilities.CapabilitiesService;
 import org.oskari.capabilities.ogc.LayerCapabilitiesWMTS;
 import org.oskari.capabilities.ogc.wmts.ResourceUrl;
+import org.oskari.metrics.UpstreamMetrics;
 import org.oskari.permissions.PermissionService;
 import org.oskari.service.user.LayerAccessHandler;
 import org.oskari.service.util.ServiceFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
 
 import static fi.nls.oskari.control.ActionConstants.KEY_ID;
 import static fi.nls.oskari.map.layer.formatters.LayerJSONFormatter.KEY_GLOBAL_LEGEND;
@@ -56,13 +66,27 @@ public class GetLayerTileHandler extends ActionHandler {
     private static final int TIMEOUT_READ = PropertyUtil.getOptional("GetLayerTile.timeout.read", 5000);
     private static final boolean GATHER_METRICS = PropertyUtil.getOptional("GetLayerTile.metrics", true);
     private static final String METRICS_PREFIX = "Oskari.GetLayerTile";
+    private static final String UPSTREAM_CATEGORY = "tile";
     private static final String TEXT_CONTENT_TYPE_PREFIX = "text/";
     private static final String APPLICATION_JSON_CONTENT_TYPE = "application/json";
     private static final String APPLICATION_XML_CONTENT_TYPE = "application/xml";
     private static final int ERRORMESSAGE_MAX_LENGTH = 1000;
+    // headers passed to the service so it can answer 304 Not Modified
+    private static final String[] CONDITIONAL_HEADERS = {"If-None-Match", "If-Modified-Since"};
+    // headers passed back to the client from the service response
+    private static final String[] CACHE_HEADERS = {"Cache-Control", "Expires", "Last-Modified", "ETag"};
+    private static final String HEADER_CACHE_CONTROL = "Cache-Control";
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+    private static final String HEADER_VARY = "Vary";
+    // tiles are served after a permission check so shared caches must not store them
+    private static final Pattern CACHE_CONTROL_PUBLIC = Pattern.compile("\\bpublic\\b", Pattern.CASE_INSENSITIVE);
     private PermissionHelper permissionHelper;
     private Collection<LayerAccessHandler> layerAccessHandlers;
-    private Cache<String> cache_WMTS_URL;
+    private Cache<UrlTemplate> cache_WMTS_URL;
+    private Cache<UrlTemplate> cache_URL_TEMPLATES;
+    private TileCache tileCache;
 
     // WMTS rest layers params
     private static final String KEY_STYLE = "STYLE";
@@ -80,6 +104,18 @@ public class GetLayerTileHandler extends ActionHandler {
         Map<String, LayerAccessHandler> handlerComponents = OskariComponentManager.getComponentsOfType(LayerAccessHandler.class);
         this.layerAccessHandlers = handlerComponents.values();
         cache_WMTS_URL = CacheManager.getCache(GetLayerTileHandler.class.getSimpleName() + "_WMTS_URL");
+        cache_URL_TEMPLATES = CacheManager.getCache(GetLayerTileHandler.class.getSimpleName() + "_URL_TEMPLATES");
+        tileCache = TileCache.create();
+        OskariLayerService.addListener(new LayerChangeListener() {
+            @Override
+            public void onUpdate(int layerId) {
+                tileCache.flushLayer(layerId);
+            }
+            @Override
+            public void onRemove(int layerId) {
+                tileCache.flushLayer(layerId);
+            }
+        });
     }
 
     /**
@@ -118,11 +154,33 @@ public class GetLayerTileHandler extends ActionHandler {
             final com.codahale.metrics.Timer timer = metrics.timer(METRICS_PREFIX + "." + layerId);
             actionTimer = timer.time();
         }
-        // TODO: we should handle redirects here or in IOHelper or start using a lib that handles 301/302 properly
-        HttpURLConnection con = getConnection(url, layer);
-
         layerAccessHandlers.forEach(handler -> handler.handle(layer, params.getUser()));
 
+        final String fullUrl = getFullUrl(url, layer);
+        // only tiles of layers with tileCache attribute are cached
+        final String cacheKey = !doOutPut && TileCache.isEnabled(layer) ? TileCache.getKey(layerId, fullUrl) : null;
+        if (cacheKey != null) {
+            TileCache.CachedTile cached = tileCache.get(layerId, cacheKey, System.currentTimeMillis());
+            if (cached != null) {
+                try {
+                    writeTile(params, cached);
+                } catch (IOException e) {
+                    throw new ActionCommonException("Couldn't write cached tile: " + e.getMessage(), e);
+                } finally {
+                    if (actionTimer != null) {
+                        actionTimer.stop();
+                    }
+                }
+                return;
+            }
+        }
+
+        // TODO: we should handle redirects here or in IOHelper or start using a lib that handles 301/302 properly
+        HttpURLConnection con = getConnection(fullUrl, layer);
+        final UpstreamMetrics.Sample sample = UpstreamMetrics.start(UPSTREAM_CATEGORY, UpstreamMetrics.getHost(fullUrl)).layer(layerId);
+
+        // connection is left open for reuse (keep-alive) when the response has been fully read
+        boolean reusable = false;
         try {
             con.setRequestMethod(httpMethod);
             con.setDoOutput(doOutPut);
@@ -133,19 +191,37 @@ public class GetLayerTileHandler extends ActionHandler {
             con.setUseCaches(false);
             // tell the service who is making the requests
             IOHelper.addIdentifierHeaders(con);
+            // the whole tile is needed for caching, cached tiles answer conditional requests themselves
+            if (cacheKey == null) {
+                for (String header : CONDITIONAL_HEADERS) {
+                    String value = params.getHttpHeader(header);
+                    if (value != null) {
+                        con.setRequestProperty(header, value);
+                    }
+                }
+            }
             con.connect();
+            sample.connected();
 
             if (doOutPut) {
                 IOHelper.writeToConnection(con, postParams);
             }
 
             final int responseCode = con.getResponseCode();
+            sample.firstByte(responseCode);
             if (responseCode == HttpURLConnection.HTTP_NOT_FOUND) {
                 // prevent excessive logging by handling a common case where service responds with 404
                 params.getResponse().sendError(HttpServletResponse.SC_NOT_FOUND);
                 LOG.debug("URL reported 404:", url);
                 return;
             }
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                final HttpServletResponse response = params.getResponse();
+                getCacheHeaders(con).forEach(response::setHeader);
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                reusable = true;
+                return;
+            }
             final String contentType = con.getContentType().toLowerCase();
             if(responseCode != HttpURLConnection.HTTP_OK || !isContentTypeOK(contentType)) {
                 LOG.warn("URL", url, "returned HTTP response code", responseCode,
@@ -166,29 +242,122 @@ public class GetLayerTileHandler extends ActionHandler {
                 throw new ActionParamsException("Problematic response from actual service");
             }
 
-            // read the image tile
-            final byte[] presponse = IOHelper.readBytes(con);
+            final boolean gzipped = IOHelper.ENCODING_GZIP.equals(con.getContentEncoding());
+            if (cacheKey != null) {
+                // gzipped tiles are cached as is and decompressed only for clients that don't accept gzip
+                byte[] data;
+                try (InputStream in = con.getInputStream()) {
+                    data = IOHelper.readBytes(in);
+                }
+                sample.bytes(data.length);
+                reusable = true;
+                long now = System.currentTimeMillis();
+                long ttl = tileCache.getTTL(layer, con.getHeaderField(HEADER_CACHE_CONTROL), con.getExpiration(), now);
+                Map<String, String> headers = getCacheHeaders(con);
+                if (gzipped) {
+                    headers.put(HEADER_CONTENT_ENCODING, IOHelper.ENCODING_GZIP);
+                }
+                TileCache.CachedTile tile = new TileCache.CachedTile(now + ttl, contentType, headers, data);
+                if (ttl > 0) {
+                    tileCache.put(layerId, cacheKey, tile);
+                }
+                writeTile(params, tile);
+                return;
+            }
+
+            // stream the image tile to the client without reading it to memory first
             final HttpServletResponse response = params.getResponse();
             response.setContentType(contentType);
-            response.getOutputStream().write(presponse, 0, presponse.length);
-            response.getOutputStream().flush();
-            response.getOutputStream().close();
+            getCacheHeaders(con).forEach(response::setHeader);
+            // pass gzipped tiles through as is when the client accepts gzip
+            final boolean passGzip = gzipped && acceptsGzip(params);
+            if (gzipped) {
+                response.setHeader(HEADER_VARY, IOHelper.HEADER_ACCEPT_ENCODING);
+            }
+            if (passGzip) {
+                response.setHeader(HEADER_CONTENT_ENCODING, IOHelper.ENCODING_GZIP);
+            }
+            long contentLength = con.getContentLengthLong();
+            if ((!gzipped || passGzip) && contentLength >= 0) {
+                response.setContentLengthLong(contentLength);
+            }
+            try (CountingInputStream in = new CountingInputStream(
+                    passGzip ? con.getInputStream() : IOHelper.getDecodedInputStream(con))) {
+                IOHelper.copy(in, response.getOutputStream());
+                sample.bytes(in.count);
+            }
+            reusable = true;
         } catch(ActionException e) {
             // just throw it as is if we already handled it
             throw e;
         } catch (Exception e) {
+            sample.status(UpstreamMetrics.STATUS_ERROR);
             LOG.debug("Url in proxy error was:", url);
             throw new ActionCommonException("Couldn't proxy request to actual service: " +  e.getMessage(), e);
         } finally {
             if (actionTimer != null) {
                 actionTimer.stop();
             }
-            if (con != null) {
+            sample.stop();
+            // disconnect() closes the underlying socket, only do it when the connection can't be reused
+            if (con != null && !reusable) {
                 con.disconnect();
             }
         }
     }
 
+    private Map<String, String> getCacheHeaders(HttpURLConnection con) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (String header : CACHE_HEADERS) {
+            String value = con.getHeaderField(header);
+            if (value == null) {
+                continue;
+            }
+            if (HEADER_CACHE_CONTROL.equals(header)) {
+                value = CACHE_CONTROL_PUBLIC.matcher(value).replaceAll("private");
+            }
+            headers.put(header, value);
+        }
+        return headers;
+    }
+
+    private void writeTile(ActionParameters params, TileCache.CachedTile tile) throws IOException {
+        final HttpServletResponse response = params.getResponse();
+        final boolean gzipped = IOHelper.ENCODING_GZIP.equals(tile.headers.get(HEADER_CONTENT_ENCODING));
+        tile.headers.forEach((header, value) -> {
+            if (!HEADER_CONTENT_ENCODING.equals(header)) {
+                response.setHeader(header, value);
+            }
+        });
+        if (gzipped) {
+            response.setHeader(HEADER_VARY, IOHelper.HEADER_ACCEPT_ENCODING);
+        }
+        String etag = tile.headers.get(HEADER_ETAG);
+        String ifNoneMatch = params.getHttpHeader(HEADER_IF_NONE_MATCH);
+        if (etag != null && ifNoneMatch != null && ifNoneMatch.contains(etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        byte[] data = tile.data;
+        if (gzipped) {
+            if (acceptsGzip(params)) {
+                response.setHeader(HEADER_CONTENT_ENCODING, IOHelper.ENCODING_GZIP);
+            } else {
+                try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+                    data = IOHelper.readBytes(in);
+                }
+            }
+        }
+        response.setContentType(tile.contentType);
+        response.setContentLength(data.length);
+        response.getOutputStream().write(data);
+    }
+
+    private static boolean acceptsGzip(ActionParameters params) {
+        String accept = params.getHttpHeader(IOHelper.HEADER_ACCEPT_ENCODING);
+        return accept != null && accept.toLowerCase().contains(IOHelper.ENCODING_GZIP);
+    }
+
     private boolean isContentTypeHumanReadable(String contentType) {
         return contentType.startsWith(TEXT_CONTENT_TYPE_PREFIX) ||
             contentType.startsWith(APPLICATION_JSON_CONTENT_TYPE) ||
@@ -208,7 +377,7 @@ public class GetLayerTileHandler extends ActionHandler {
         final HttpServletRequest httpRequest = params.getRequest();
         if (OskariLayer.TYPE_WMTS.equalsIgnoreCase(layer.getType())) {
             // check for rest url
-            final String urlTemplate = getWMTSUrl(layer);
+            final UrlTemplate urlTemplate = getWMTSUrl(layer);
             if (!urlTemplate.isEmpty()) {
                 LOG.debug("REST WMTS layer proxy");
                 HashMap<String, String> capsParams = new HashMap<>();
@@ -217,32 +386,54 @@ public class GetLayerTileHandler extends ActionHandler {
                     String paramName = paramNames.nextElement();
                     capsParams.put(paramName.toUpperCase(), params.getHttpParam(paramName));
                 }
-                return urlTemplate
-                        .replaceFirst("\\{layer\\}", layer.getName())
-                        .replaceFirst("\\{style\\}", capsParams.get(KEY_STYLE) != null ? capsParams.get(KEY_STYLE) : KEY_STYLE)
-                        .replaceFirst("\\{TileMatrixSet\\}", capsParams.get(KEY_TILEMATRIXSET) != null ? capsParams.get(KEY_TILEMATRIXSET) : KEY_TILEMATRIXSET)
-                        .replaceFirst("\\{TileMatrix\\}", capsParams.get(KEY_TILEMATRIX) != null ? capsParams.get(KEY_TILEMATRIX) : KEY_TILEMATRIX)
-                        .replaceFirst("\\{TileRow\\}", capsParams.get(KEY_TILEROW) != null ? capsParams.get(KEY_TILEROW) : KEY_TILEROW)
-                        .replaceFirst("\\{TileCol\\}", capsParams.get(KEY_TILECOL) != null ? capsParams.get(KEY_TILECOL) : KEY_TILECOL);
+                return urlTemplate.expand(placeholder -> {
+                    switch (placeholder) {
+                        case "layer": return layer.getName();
+                        case "style": return getOrKey(capsParams, KEY_STYLE);
+                        case "TileMatrixSet": return getOrKey(capsParams, KEY_TILEMATRIXSET);
+                        case "TileMatrix": return getOrKey(capsParams, KEY_TILEMATRIX);
+                        case "TileRow": return getOrKey(capsParams, KEY_TILEROW);
+                        case "TileCol": return getOrKey(capsParams, KEY_TILECOL);
+                        default: return null;
+                    }
+                });
             }
         } else if (OskariLayer.TYPE_VECTOR_TILE.equalsIgnoreCase(layer.getType())) {
             // TODO: Figure out CRS
             int x = params.getRequiredParamInt(LayerJSONFormatterVectorTile.URL_PARAM_X);
             int y = params.getRequiredParamInt(LayerJSONFormatterVectorTile.URL_PARAM_Y);
             int z = params.getRequiredParamInt(LayerJSONFormatterVectorTile.URL_PARAM_Z);
-            return layer.getUrl()
-                    .replaceFirst("\\{x\\}", String.valueOf(x))
-                    .replaceFirst("\\{y\\}", String.valueOf(y))
-                    .replaceFirst("\\{z\\}", String.valueOf(z));
+            return getUrlTemplate(layer.getUrl()).expand(placeholder -> {
+                switch (placeholder) {
+                    case "x": return String.valueOf(x);
+                    case "y": return String.valueOf(y);
+                    case "z": return String.valueOf(z);
+                    default: return null;
+                }
+            });
         }
 
         Map<String, String> urlParams = getUrlParams(httpRequest);
         return IOHelper.constructUrl(layer.getUrl(),urlParams);
     }
 
-    private String getWMTSUrl(OskariLayer layer) {
+    private static String getOrKey(Map<String, String> values, String key) {
+        String value = values.get(key);
+        return value != null ? value : key;
+    }
+
+    private UrlTemplate getUrlTemplate(String url) {
+        UrlTemplate template = cache_URL_TEMPLATES.get(url);
+        if (template == null) {
+            template = UrlTemplate.of(url);
+            cache_URL_TEMPLATES.put(url, template);
+        }
+        return template;
+    }
+
+    private UrlTemplate getWMTSUrl(OskariLayer layer) {
         String cacheKey = "" + layer.getId();
-        String resourceUrl = cache_WMTS_URL.get(cacheKey);
+        UrlTemplate resourceUrl = cache_WMTS_URL.get(cacheKey);
         if (resourceUrl != null) {
             // empty means we parsed and there was no resource url
             return resourceUrl;
@@ -257,8 +448,9 @@ public class GetLayerTileHandler extends ActionHandler {
             // just in case we have something wonky going on in the capabilities
             valueToCache = "";
         }
-        cache_WMTS_URL.put(cacheKey, valueToCache);
-        return valueToCache;
+        UrlTemplate template = UrlTemplate.of(valueToCache);
+        cache_WMTS_URL.put(cacheKey, template);
+        return template;
     }
 
     private Map<String, String> getUrlParams(HttpServletRequest httpRequest) {
@@ -316,6 +508,15 @@ public class GetLayerTileHandler extends ActionHandler {
         }
         return lurl;
     }
+    /**
+     * @param url URL (with params) to call
+     * @param layer layer
+     * @return url with the extra params configured for the layer
+     */
+    private String getFullUrl(final String url, final OskariLayer layer) {
+        return IOHelper.constructUrl(url, JSONHelper.getObjectAsMap(layer.getParams()));
+    }
+
     /**
      * Creates connection
      * @param url URL (with params) to call
@@ -328,11 +529,39 @@ public class GetLayerTileHandler extends ActionHandler {
         try {
             final String username = layer.getUsername();
             final String password = layer.getPassword();
-            String urlWithExtraParams = IOHelper.constructUrl(url, JSONHelper.getObjectAsMap(layer.getParams()));
-            LOG.debug("Getting layer tile from url:", urlWithExtraParams);
-            return IOHelper.getConnection(urlWithExtraParams, username, password);
+            LOG.debug("Getting layer tile from url:", url);
+            return IOHelper.getConnection(url, username, password);
         } catch (Exception e) {
             throw new ActionException("Couldn't get connection to service", e);
         }
     }
+
+    /**
+     * Counts the bytes read for the upstream metrics
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
 }
@@ -142,9 +142,7 @@ public class GetMapLayerGroupsHandler extends ActionHandler {
         // Get all layers instead of using OskariLayerWorker.getLayersForUser() so we don't check permissions twice
         List<OskariLayer> layers = getLayers(requestedIds);
         if (forceProxy) {
-            layers.stream()
-                    .filter(layer -> PROXY_LYR_TYPES.contains(layer.getType()))
-                    .forEach(layer -> layer.addAttribute("forceProxy", true));
+            layers = getProxiedLayers(layers);
         }
 
         int[] sortedLayerIds = layers.stream().mapToInt(OskariLayer::getId).toArray();
@@ -160,6 +158,23 @@ public class GetMapLayerGroupsHandler extends ActionHandler {
         }
     }
 
+    /**
+     * Layers returned by findAll() are shared with other requests so the ones that are modified
+     * are read again from the database
+     */
+    private List<OskariLayer> getProxiedLayers(List<OskariLayer> layers) {
+        List<Integer> ids = layers.stream()
+                .filter(layer -> PROXY_LYR_TYPES.contains(layer.getType()))
+                .map(OskariLayer::getId)
+                .collect(Collectors.toList());
+        Map<Integer, OskariLayer> proxied = layerService.findByIdList(ids).stream()
+                .collect(Collectors.toMap(OskariLayer::getId, layer -> layer));
+        proxied.values().forEach(layer -> layer.addAttribute("forceProxy", true));
+        return layers.stream()
+                .map(layer -> proxied.getOrDefault(layer.getId(), layer))
+                .collect(Collectors.toList());
+    }
+
     private List<OskariLayer> getLayers(String requestedLayers) {
         if (requestedLayers == null || requestedLayers.isEmpty()) {
             // nothing requested/default -> return all
@@ -0,0 +1,266 @@
+package fi.nls.oskari.control.layer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.json.JSONObject;
+
+import fi.nls.oskari.cache.CacheManager;
+import fi.nls.oskari.cache.DiskCache;
+import fi.nls.oskari.cache.OffHeapCache;
+import fi.nls.oskari.domain.map.OskariLayer;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.util.PropertyUtil;
+
+/**
+ * Cache for tiles proxied by GetLayerTile. Only used for layers that have "tileCache" in attributes:
+ * - "tileCache": true -> cached for as long as the service allows with Cache-Control/Expires headers
+ * - "tileCache": { "ttl": 86400 } -> cached for given seconds regardless of the headers
+ *
+ * Tiles are kept off-heap and optionally on disk (GetLayerTile.cache.dir) so they survive restarts.
+ * The entries are grouped by layer id so all tiles of a layer can be removed when the layer is modified.
+ * Each entry has its own expiration time as the services can have different cache headers.
+ */
+class TileCache {
+
+    private static final Logger LOG = LogFactory.getLogger(TileCache.class);
+
+    static final String KEY_ATTRIBUTE = "tileCache";
+    private static final String KEY_TTL = "ttl";
+
+    // size can be configured with oskari.cache.maxWeight.[CACHE_NAME]
+    private static final String CACHE_NAME = GetLayerTileHandler.class.getName() + ".tiles";
+    private static final long CACHE_SIZE_BYTES = 64L * 1024L * 1024L;
+    private static final long CACHE_EXPIRATION = TimeUnit.HOURS.toMillis(24);
+
+    private static final String PROP_DISK_CACHE_DIR = "GetLayerTile.cache.dir";
+    private static final String PROP_DISK_CACHE_SIZE_MB = "GetLayerTile.cache.dir.maxSizeMB";
+    private static final String PROP_DISK_CACHE_EXPIRATION_HOURS = "GetLayerTile.cache.dir.expirationHours";
+    // used when the service doesn't say how long the tile can be cached
+    private static final String PROP_DEFAULT_TTL = "GetLayerTile.cache.defaultTTL";
+
+    private static final Pattern MAX_AGE = Pattern.compile("(?:^|[,\\s])(?:s-maxage|max-age)\\s*=\\s*\"?(\\d+)", Pattern.CASE_INSENSITIVE);
+    // private responses are meant for a single user and must not be stored by a shared cache like this one
+    private static final Pattern NO_STORE = Pattern.compile("\\b(?:no-store|no-cache|private)\\b", Pattern.CASE_INSENSITIVE);
+
+    private final OffHeapCache memory;
+    private final DiskCache disk;
+    private final long defaultTTL;
+
+    TileCache(OffHeapCache memory, DiskCache disk, long defaultTTL) {
+        this.memory = memory;
+        this.disk = disk;
+        this.defaultTTL = defaultTTL;
+    }
+
+    static TileCache create() {
+        OffHeapCache memory = CacheManager.getCache(CACHE_NAME,
+                () -> new OffHeapCache(CACHE_SIZE_BYTES, CACHE_EXPIRATION));
+        long defaultTTL = TimeUnit.SECONDS.toMillis(PropertyUtil.getOptional(PROP_DEFAULT_TTL, 3600));
+        return new TileCache(memory, initDiskCache(), defaultTTL);
+    }
+
+    private static DiskCache initDiskCache() {
+        final String dir = PropertyUtil.getOptional(PROP_DISK_CACHE_DIR);
+        if (dir == null || dir.isEmpty()) {
+            return null;
+        }
+        final long maxBytes = PropertyUtil.getOptional(PROP_DISK_CACHE_SIZE_MB, 1024) * 1024L * 1024L;
+        final long expiration = TimeUnit.HOURS.toMillis(PropertyUtil.getOptional(PROP_DISK_CACHE_EXPIRATION_HOURS, 24));
+        return CacheManager.getCache(CACHE_NAME + ".disk",
+                () -> new DiskCache(Paths.get(dir), maxBytes, expiration));
+    }
+
+    static boolean isEnabled(OskariLayer layer) {
+        JSONObject attributes = layer.getAttributes();
+        if (attributes == null || !attributes.has(KEY_ATTRIBUTE)) {
+            return false;
+        }
+        Object value = attributes.opt(KEY_ATTRIBUTE);
+        return value instanceof JSONObject || Boolean.TRUE.equals(value);
+    }
+
+    /**
+     * @return TTL configured for the layer in milliseconds or -1 if the cache headers of the service should be used
+     */
+    static long getLayerTTL(OskariLayer layer) {
+        JSONObject conf = layer.getAttributes().optJSONObject(KEY_ATTRIBUTE);
+        if (conf == null || !conf.has(KEY_TTL)) {
+            return -1;
+        }
+        return TimeUnit.SECONDS.toMillis(conf.optLong(KEY_TTL, 0));
+    }
+
+    /**
+     * @param cacheControl Cache-Control header of the service response or null
+     * @param expires Expires header of the service response as epoch millis or 0 if not given
+     * @return milliseconds the tile can be cached, 0 if it shouldn't be cached
+     */
+    long getTTL(OskariLayer layer, String cacheControl, long expires, long now) {
+        long layerTTL = getLayerTTL(layer);
+        if (layerTTL >= 0) {
+            return layerTTL;
+        }
+        if (cacheControl != null) {
+            if (NO_STORE.matcher(cacheControl).find()) {
+                return 0;
+            }
+            Matcher m = MAX_AGE.matcher(cacheControl);
+            if (m.find()) {
+                return TimeUnit.SECONDS.toMillis(Long.parseLong(m.group(1)));
+            }
+        }
+        if (expires > 0) {
+            return Math.max(0, expires - now);
+        }
+        return defaultTTL;
+    }
+
+    /**
+     * Query parameters are sorted with upper case names so WMS requests with different parameter order
+     * or case map to the same tile. The key starts with the layer id as the cache is indexed by key only:
+     * layers with the same url can have different credentials and permissions so they can't share tiles.
+     */
+    static String getKey(int layerId, String url) {
+        return layerId + ":" + hash(normalize(url));
+    }
+
+    private static String normalize(String url) {
+        int q = url.indexOf('?');
+        if (q < 0) {
+            return url;
+        }
+        String[] params = url.substring(q + 1).split("&");
+        for (int i = 0; i < params.length; i++) {
+            int eq = params[i].indexOf('=');
+            String name = eq < 0 ? params[i] : params[i].substring(0, eq);
+            params[i] = name.toUpperCase(Locale.ROOT) + params[i].substring(name.length());
+        }
+        Arrays.sort(params);
+        return url.substring(0, q) + "?" + String.join("&", params);
+    }
+
+    private static String hash(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is required to be available in all JVMs
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return cached tile or null if not cached or expired
+     */
+    CachedTile get(int layerId, String key, long now) {
+        String group = Integer.toString(layerId);
+        CachedTile tile = CachedTile.fromBytes(memory.get(group, key));
+        if (tile == null && disk != null) {
+            byte[] bytes = disk.get(group, key);
+            tile = CachedTile.fromBytes(bytes);
+            if (tile != null && tile.expires > now) {
+                memory.put(group, key, bytes);
+            }
+        }
+        if (tile == null || tile.expires <= now) {
+            return null;
+        }
+        return tile;
+    }
+
+    void put(int layerId, String key, CachedTile tile) {
+        String group = Integer.toString(layerId);
+        byte[] bytes = tile.toBytes();
+        if (bytes == null) {
+            return;
+        }
+        memory.put(group, key, bytes);
+        if (disk != null) {
+            disk.put(group, key, bytes);
+        }
+    }
+
+    void flushLayer(int layerId) {
+        String group = Integer.toString(layerId);
+        memory.removeGroup(group);
+        if (disk != null) {
+            disk.removeGroup(group);
+        }
+    }
+
+    static class CachedTile {
+        final long expires;
+        final String contentType;
+        // cache headers of the service response, written to the client as is
+        final Map<String, String> headers;
+        final byte[] data;
+
+        CachedTile(long expires, String contentType, Map<String, String> headers, byte[] data) {
+            this.expires = expires;
+            this.contentType = contentType;
+            this.headers = headers;
+            this.data = data;
+        }
+
+        byte[] toBytes() {
+            try (ByteArrayOutputStream baos = new ByteArrayOutputStream(data.length + 256);
+                    DataOutputStream out = new DataOutputStream(baos)) {
+                out.writeLong(expires);
+                out.writeUTF(contentType);
+                out.writeShort(headers.size());
+                for (Map.Entry<String, String> header : headers.entrySet()) {
+                    out.writeUTF(header.getKey());
+                    out.writeUTF(header.getValue());
+                }
+                out.writeInt(data.length);
+                out.write(data);
+                out.flush();
+                return baos.toByteArray();
+            } catch (IOException e) {
+                LOG.warn(e, "Couldn't serialize tile for caching");
+                return null;
+            }
+        }
+
+        static CachedTile fromBytes(byte[] bytes) {
+            if (bytes == null) {
+                return null;
+            }
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+                long expires = in.readLong();
+                String contentType = in.readUTF();
+                int headerCount = in.readUnsignedShort();
+                Map<String, String> headers = new LinkedHashMap<>();
+                for (int i = 0; i < headerCount; i++) {
+                    headers.put(in.readUTF(), in.readUTF());
+                }
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                return new CachedTile(expires, contentType, headers, data);
+            } catch (IOException e) {
+                LOG.info("Ignoring unreadable cached tile:", e.getMessage());
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package fi.nls.oskari.control.layer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * URL template like "https://example.com/wmts/{layer}/{TileMatrix}/{TileRow}/{TileCol}.png" parsed once
+ * to literal parts and placeholder names so expanding it for a tile is a single pass with a StringBuilder
+ * instead of a regex replace per placeholder.
+ *
+ * Placeholders are case-sensitive. Placeholders without a value are left in the result as is.
+ */
+class UrlTemplate {
+
+    private final String template;
+    // literal parts and placeholders in turns: parts[0] is literal, parts[1] is a placeholder name etc
+    private final String[] parts;
+
+    private UrlTemplate(String template, String[] parts) {
+        this.template = template;
+        this.parts = parts;
+    }
+
+    static UrlTemplate of(String template) {
+        List<String> parts = new ArrayList<>();
+        int pos = 0;
+        while (true) {
+            int start = template.indexOf('{', pos);
+            int end = start < 0 ? -1 : template.indexOf('}', start + 1);
+            if (end < 0) {
+                parts.add(template.substring(pos));
+                break;
+            }
+            parts.add(template.substring(pos, start));
+            parts.add(template.substring(start + 1, end));
+            pos = end + 1;
+        }
+        return new UrlTemplate(template, parts.toArray(new String[0]));
+    }
+
+    boolean isEmpty() {
+        return template.isEmpty();
+    }
+
+    /**
+     * @param values returns the value for a placeholder name or null to leave the placeholder as is
+     */
+    String expand(Function<String, String> values) {
+        StringBuilder sb = new StringBuilder(template.length() + 32);
+        for (int i = 0; i < parts.length; i++) {
+            if (i % 2 == 0) {
+                sb.append(parts[i]);
+                continue;
+            }
+            String value = values.apply(parts[i]);
+            if (value == null) {
+                sb.append('{').append(parts[i]).append('}');
+            } else {
+                sb.append(value);
+            }
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return template;
+    }
+}
@@ -1,15 +1,24 @@
 package org.oskari.control.layer;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
 import org.json.JSONObject;
 import org.oskari.capabilities.MetadataHelper;
@@ -22,11 +31,17 @@ import org.oskari.domain.map.LayerOutput;
 import org.oskari.map.myfeatures.service.MyFeaturesService;
 import org.oskari.maplayer.util.OskariLayerUtil;
 import org.oskari.permissions.PermissionService;
+import org.oskari.permissions.model.ResourceType;
 import org.oskari.service.maplayer.OskariMapLayerGroupService;
 import org.oskari.service.util.ServiceFactory;
+import org.oskari.user.Role;
 import org.oskari.user.User;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import fi.nls.oskari.annotation.OskariActionRoute;
+import fi.nls.oskari.cache.CacheManager;
+import fi.nls.oskari.cache.OffHeapCache;
 import fi.nls.oskari.control.ActionException;
 import fi.nls.oskari.control.ActionParameters;
 import fi.nls.oskari.control.RestActionHandler;
@@ -35,17 +50,39 @@ import fi.nls.oskari.domain.map.JSONLocalized;
 import fi.nls.oskari.domain.map.MaplayerGroup;
 import fi.nls.oskari.domain.map.OskariLayer;
 import fi.nls.oskari.domain.map.myfeatures.MyFeaturesLayer;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.map.layer.DataProviderService;
+import fi.nls.oskari.map.layer.LayerRegistry;
 import fi.nls.oskari.map.layer.OskariLayerService;
 import fi.nls.oskari.map.layer.group.link.OskariLayerGroupLink;
 import fi.nls.oskari.map.layer.group.link.OskariLayerGroupLinkService;
 import fi.nls.oskari.service.OskariComponentManager;
 import fi.nls.oskari.service.capabilities.CapabilitiesConstants;
+import fi.nls.oskari.util.IOHelper;
 import fi.nls.oskari.util.ResponseHelper;
+import jakarta.servlet.http.HttpServletResponse;
 
 @OskariActionRoute("LayerList")
 public class LayerListHandler extends RestActionHandler {
 
+    private static final Logger LOG = LogFactory.getLogger(LayerListHandler.class);
+
+    // gzipped responses by roles, language and data version, kept off-heap
+    private static final String CACHE_NAME = LayerListHandler.class.getName();
+    private static final long CACHE_SIZE_BYTES = 32L * 1024L * 1024L;
+    private static final long CACHE_EXPIRATION = TimeUnit.MINUTES.toMillis(30);
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+    // weak ETag with a hex SHA-256 digest: W/"<64 chars>"
+    private static final int ETAG_LENGTH = 68;
+    private static final String PLAIN_KEY_SUFFIX = "|plain";
+    private static final ObjectMapper OM = new ObjectMapper();
+
+    private final OffHeapCache responseCache = CacheManager.getCache(CACHE_NAME,
+            () -> new OffHeapCache(CACHE_SIZE_BYTES, CACHE_EXPIRATION));
+
     private OskariLayerService mapLayerService;
     private PermissionService permissionService;
     private OskariMapLayerGroupService groupService;
@@ -104,13 +141,147 @@ public class LayerListHandler extends RestActionHandler {
     public void handleAction(ActionParameters params) throws ActionException {
         User user = params.getUser();
         String language = params.getLocale().getLanguage();
-        LayerListResponse response = getLayerList(user, language);
-        ResponseHelper.writeJsonResponse(params, response);
+        List<MyFeaturesLayer> myFeaturesLayers = myFeaturesService.getLayersByOwnerUuid(user.getUuid());
+
+        String cacheKey = getCacheKey(user, language, myFeaturesLayers);
+        if (cacheKey == null) {
+            ResponseHelper.writeJsonResponse(params, getLayerList(user, language, myFeaturesLayers));
+            return;
+        }
+
+        byte[] gzipped = responseCache.get(language, cacheKey,
+                __ -> withETag(toGzippedJSON(getLayerList(user, language, myFeaturesLayers))));
+        if (gzipped == null) {
+            throw new ActionException("Failed to write layer list");
+        }
+
+        String etag = new String(gzipped, 0, ETAG_LENGTH, StandardCharsets.US_ASCII);
+        HttpServletResponse resp = params.getResponse();
+        // the response depends on the user so only cache it in the browser, but always revalidate
+        resp.setHeader("Cache-Control", "private, no-cache");
+        resp.setHeader(HEADER_ETAG, etag);
+        resp.setHeader("Vary", "Accept-Encoding");
+        String ifNoneMatch = params.getHttpHeader(HEADER_IF_NONE_MATCH);
+        if (ifNoneMatch != null && ifNoneMatch.contains(etag)) {
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        String acceptEncoding = params.getHttpHeader(IOHelper.HEADER_ACCEPT_ENCODING);
+        if (acceptEncoding != null && acceptEncoding.contains(IOHelper.ENCODING_GZIP)) {
+            resp.setHeader(HEADER_CONTENT_ENCODING, IOHelper.ENCODING_GZIP);
+            ResponseHelper.writeResponse(params, 200, ResponseHelper.CONTENT_TYPE_JSON_UTF8, getBody(gzipped));
+            return;
+        }
+        // clients without gzip support are rare, their copy is only cached once someone asks for it
+        byte[] plain = responseCache.get(language, cacheKey + PLAIN_KEY_SUFFIX, __ -> ungzip(gzipped));
+        if (plain == null) {
+            throw new ActionException("Failed to write layer list");
+        }
+        ResponseHelper.writeResponse(params, 200, ResponseHelper.CONTENT_TYPE_JSON_UTF8, getBody(plain));
+    }
+
+    /**
+     * The response only depends on the roles of the user, the language and the versions of the layer and
+     * permission data (versions are local to the node so the key is only used for the local cache) unless the user has permissions given to the user id or own MyFeatures layers.
+     * Then the user id and the MyFeatures layers (that are read on every request anyway) are added to the key.
+     * @return cache key for the response or null if it shouldn't be cached
+     */
+    protected String getCacheKey(User user, String language, List<MyFeaturesLayer> myFeaturesLayers) {
+        long permissionVersion = permissionService.getVersion();
+        if (permissionVersion < 0) {
+            // permission changes aren't tracked, can't know when the response changes
+            return null;
+        }
+        String roles = user.getRoles().stream()
+                .map(Role::getId)
+                .sorted()
+                .map(id -> Long.toString(id))
+                .collect(Collectors.joining(","));
+        StringBuilder key = new StringBuilder()
+                .append(roles).append('|')
+                .append(language).append('|')
+                .append(LayerRegistry.getVersion()).append('|')
+                .append(permissionVersion);
+        if (permissionService.hasUserSpecificPermissions(user, ResourceType.maplayer)) {
+            key.append("|u").append(user.getId());
+        }
+        if (!myFeaturesLayers.isEmpty()) {
+            key.append("|mf").append(user.getUuid());
+            for (MyFeaturesLayer layer : myFeaturesLayers) {
+                key.append(',').append(layer.getId())
+                        .append(':').append(layer.getUpdated() != null ? layer.getUpdated().toEpochMilli() : 0);
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * @return weak ETag with the SHA-256 digest of the response
+     */
+    protected static String getETag(byte[] response) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(response);
+            StringBuilder sb = new StringBuilder(digest.length * 2 + 4).append("W/\"");
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.append('"').toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is required to be available in all JVMs
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] toGzippedJSON(LayerListResponse response) {
+        try {
+            return IOHelper.gzip(OM.writeValueAsBytes(response)).toByteArray();
+        } catch (IOException e) {
+            LOG.warn(e, "Couldn't serialize layer list");
+            return null;
+        }
+    }
+
+    /**
+     * The cache key has node-local versions so the ETag is computed from the content instead.
+     * Nodes with the same data give the same ETag and different content can't get the same ETag.
+     * @return gzipped response prefixed with its ETag so it's computed only once per cached response
+     */
+    private static byte[] withETag(byte[] gzipped) {
+        if (gzipped == null) {
+            return null;
+        }
+        byte[] etag = getETag(gzipped).getBytes(StandardCharsets.US_ASCII);
+        byte[] value = Arrays.copyOf(etag, ETAG_LENGTH + gzipped.length);
+        System.arraycopy(gzipped, 0, value, ETAG_LENGTH, gzipped.length);
+        return value;
+    }
+
+    /**
+     * @return the cached response with the same ETag prefix, but the body uncompressed
+     */
+    private static byte[] ungzip(byte[] gzipped) {
+        try (ByteArrayInputStream in = new ByteArrayInputStream(gzipped, ETAG_LENGTH, gzipped.length - ETAG_LENGTH);
+                GZIPInputStream gzip = new GZIPInputStream(in)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(gzipped.length * 4);
+            out.write(gzipped, 0, ETAG_LENGTH);
+            IOHelper.copy(gzip, out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            LOG.warn(e, "Couldn't uncompress layer list");
+            return null;
+        }
+    }
+
+    private static byte[] getBody(byte[] cached) {
+        return Arrays.copyOfRange(cached, ETAG_LENGTH, cached.length);
     }
 
     protected LayerListResponse getLayerList(User user, String language) {
+        return getLayerList(user, language, myFeaturesService.getLayersByOwnerUuid(user.getUuid()));
+    }
+
+    protected LayerListResponse getLayerList(User user, String language, List<MyFeaturesLayer> myFeaturesLayers) {
         List<OskariLayer> mapLayers = getLayers(user);
-        List<MyFeaturesLayer> myFeaturesLayers = myFeaturesService.getLayersByOwnerUuid(user.getUuid());
 
         List<LayerOutput> layers = Stream.concat(
                 mapLayers.stream().map(l -> mapLayer(l, language)),
@@ -0,0 +1,108 @@
+package fi.nls.oskari.control.data;
+
+import fi.nls.oskari.control.ActionParameters;
+import fi.nls.oskari.map.data.domain.GFIRequestParams;
+import fi.nls.oskari.map.data.service.GetGeoPointDataService;
+import fi.nls.oskari.util.PropertyUtil;
+import fi.nls.test.control.JSONActionRouteTest;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class GetGeoPointDataBatchHandlerTest extends JSONActionRouteTest {
+
+    private static final int SLOW_LAYER = 1;
+
+    // layer 1 answers last or never, layers 2 and 3 right away
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final GetGeoPointDataService service = new GetGeoPointDataService() {
+        @Override
+        public JSONObject getWMSFeatureInfo(GFIRequestParams params) {
+            int layerId = params.getLayer().getId();
+            if (layerId == SLOW_LAYER) {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+            return new JSONObject()
+                    .put(GetGeoPointDataService.LAYER_ID, layerId)
+                    .put(GetGeoPointDataService.CONTENT, "content " + layerId);
+        }
+    };
+    private final List<GFIRequestParams> requests = Arrays.asList(
+            GFIBatchTest.getRequest(1, "https://slow.example.com/wms"),
+            GFIBatchTest.getRequest(2, "https://example.com/wms"),
+            GFIBatchTest.getRequest(3, "https://example.com/wms"));
+
+    @AfterEach
+    public void teardown() {
+        release.countDown();
+        PropertyUtil.clearProperties();
+    }
+
+    @Test
+    public void testLegacyRouteWaitsForAllLayers() throws Exception {
+        // the deadline only applies to GetFeatureInfoBatch
+        PropertyUtil.addProperty("GetFeatureInfo.timeout", "10");
+        GetGeoPointDataHandler handler = new GetGeoPointDataHandler() {
+            @Override
+            protected List<GFIRequestParams> getRequests(ActionParameters params) {
+                // layer 1 answers after the timeout
+                new Thread(() -> {
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException ignored) {
+                    } finally {
+                        release.countDown();
+                    }
+                }).start();
+                return requests;
+            }
+        };
+        handler.setGeoPointService(service);
+        handler.handleAction(createActionParams());
+
+        JSONArray data = getResponseJSON().getJSONArray("data");
+        Assertions.assertEquals(3, data.length());
+        for (int i = 0; i < data.length(); i++) {
+            Assertions.assertEquals(i + 1, data.getJSONObject(i).getInt(GetGeoPointDataService.LAYER_ID));
+        }
+    }
+
+    @Test
+    public void testSlowLayerTimesOut() throws Exception {
+        PropertyUtil.addProperty("GetFeatureInfo.timeout", "500");
+        GetGeoPointDataBatchHandler handler = new GetGeoPointDataBatchHandler() {
+            @Override
+            protected List<GFIRequestParams> getRequests(ActionParameters params) {
+                return requests;
+            }
+        };
+        handler.setGeoPointService(service);
+        handler.handleAction(createActionParams());
+
+        String[] lines = getResponseString().split("\n");
+        Assertions.assertEquals(3, lines.length, "Should have a line for each layer");
+        // the fast layers are streamed first
+        for (int i = 0; i < 2; i++) {
+            JSONObject line = new JSONObject(lines[i]);
+            int layerId = line.getInt(GetGeoPointDataService.LAYER_ID);
+            Assertions.assertNotEquals(SLOW_LAYER, layerId);
+            Assertions.assertEquals("content " + layerId, line.getString(GetGeoPointDataService.CONTENT));
+            Assertions.assertFalse(line.has("error"));
+        }
+        JSONObject timeout = new JSONObject(lines[2]);
+        Assertions.assertEquals(SLOW_LAYER, timeout.getInt(GetGeoPointDataService.LAYER_ID));
+        Assertions.assertEquals("timeout", timeout.getString("error"));
+    }
+}
@@ -0,0 +1,101 @@
+package fi.nls.oskari.control.layer;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import fi.nls.oskari.cache.OffHeapCache;
+import fi.nls.oskari.domain.map.OskariLayer;
+
+public class TileCacheTest {
+
+    private static final long DEFAULT_TTL = TimeUnit.HOURS.toMillis(1);
+
+    private TileCache createCache() {
+        return new TileCache(new OffHeapCache(1024 * 1024, TimeUnit.HOURS.toMillis(24)), null, DEFAULT_TTL);
+    }
+
+    private OskariLayer createLayer(Object tileCache) {
+        OskariLayer layer = new OskariLayer();
+        layer.setId(1);
+        JSONObject attributes = new JSONObject();
+        if (tileCache != null) {
+            attributes.put(TileCache.KEY_ATTRIBUTE, tileCache);
+        }
+        layer.setAttributes(attributes);
+        return layer;
+    }
+
+    @Test
+    public void testIsEnabled() {
+        Assertions.assertFalse(TileCache.isEnabled(createLayer(null)));
+        Assertions.assertFalse(TileCache.isEnabled(createLayer(false)));
+        Assertions.assertTrue(TileCache.isEnabled(createLayer(true)));
+        Assertions.assertTrue(TileCache.isEnabled(createLayer(new JSONObject().put("ttl", 60))));
+    }
+
+    @Test
+    public void testKeyIgnoresParameterOrderAndCase() {
+        String key = TileCache.getKey(1, "https://example.com/wms?SERVICE=WMS&request=GetMap&BBOX=1,2,3,4");
+        Assertions.assertEquals(key, TileCache.getKey(1, "https://example.com/wms?bbox=1,2,3,4&REQUEST=GetMap&service=WMS"));
+        Assertions.assertNotEquals(key, TileCache.getKey(1, "https://example.com/wms?SERVICE=WMS&request=GetMap&BBOX=1,2,3,5"));
+    }
+
+    @Test
+    public void testTTL() {
+        TileCache cache = createCache();
+        long now = System.currentTimeMillis();
+        OskariLayer layer = createLayer(true);
+        Assertions.assertEquals(TimeUnit.SECONDS.toMillis(600), cache.getTTL(layer, "public, max-age=600", 0, now));
+        Assertions.assertEquals(0, cache.getTTL(layer, "no-store", 0, now));
+        Assertions.assertEquals(0, cache.getTTL(layer, "private, max-age=600", 0, now));
+        Assertions.assertEquals(0, cache.getTTL(layer, "Private", now + 5000, now));
+        Assertions.assertEquals(5000, cache.getTTL(layer, null, now + 5000, now));
+        Assertions.assertEquals(DEFAULT_TTL, cache.getTTL(layer, null, 0, now));
+        // layer config overrides headers
+        OskariLayer configured = createLayer(new JSONObject().put("ttl", 60));
+        Assertions.assertEquals(TimeUnit.SECONDS.toMillis(60), cache.getTTL(configured, "no-store", 0, now));
+    }
+
+    @Test
+    public void testGetPutAndFlush() {
+        TileCache cache = createCache();
+        long now = System.currentTimeMillis();
+        byte[] data = new byte[] { 1, 2, 3 };
+        cache.put(1, "a", new TileCache.CachedTile(now + 1000, "image/png", Collections.singletonMap("ETag", "\"abc\""), data));
+        cache.put(1, "expired", new TileCache.CachedTile(now - 1, "image/png", Collections.emptyMap(), data));
+
+        TileCache.CachedTile tile = cache.get(1, "a", now);
+        Assertions.assertArrayEquals(data, tile.data);
+        Assertions.assertEquals("image/png", tile.contentType);
+        Assertions.assertEquals("\"abc\"", tile.headers.get("ETag"));
+        Assertions.assertNull(cache.get(1, "expired", now));
+
+        cache.flushLayer(1);
+        Assertions.assertNull(cache.get(1, "a", now));
+    }
+
+    @Test
+    public void testLayersWithSameUrl() {
+        TileCache cache = createCache();
+        long now = System.currentTimeMillis();
+        String url = "https://example.com/wms?SERVICE=WMS&REQUEST=GetMap&BBOX=1,2,3,4";
+        String key1 = TileCache.getKey(1, url);
+        String key2 = TileCache.getKey(2, url);
+        Assertions.assertNotEquals(key1, key2);
+
+        byte[] data1 = new byte[] { 1 };
+        byte[] data2 = new byte[] { 2 };
+        cache.put(1, key1, new TileCache.CachedTile(now + 1000, "image/png", Collections.emptyMap(), data1));
+        cache.put(2, key2, new TileCache.CachedTile(now + 1000, "image/png", Collections.emptyMap(), data2));
+        Assertions.assertArrayEquals(data1, cache.get(1, key1, now).data);
+        Assertions.assertArrayEquals(data2, cache.get(2, key2, now).data);
+
+        cache.flushLayer(1);
+        Assertions.assertNull(cache.get(1, key1, now));
+        Assertions.assertArrayEquals(data2, cache.get(2, key2, now).data);
+    }
+}
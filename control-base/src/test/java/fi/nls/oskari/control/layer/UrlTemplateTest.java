@@ -0,0 +1,40 @@
+package fi.nls.oskari.control.layer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class UrlTemplateTest {
+
+    @Test
+    public void testExpand() {
+        UrlTemplate template = UrlTemplate.of("https://example.com/wmts/{layer}/{style}/{TileMatrixSet}/{TileMatrix}/{TileRow}/{TileCol}.png");
+        Map<String, String> values = new HashMap<>();
+        values.put("layer", "taustakartta");
+        values.put("style", "default");
+        values.put("TileMatrixSet", "ETRS-TM35FIN");
+        values.put("TileMatrix", "5");
+        values.put("TileRow", "12");
+        values.put("TileCol", "7");
+        Assertions.assertEquals("https://example.com/wmts/taustakartta/default/ETRS-TM35FIN/5/12/7.png", template.expand(values::get));
+    }
+
+    @Test
+    public void testUnknownPlaceholdersAreKept() {
+        UrlTemplate template = UrlTemplate.of("https://example.com/{z}/{x}/{y}.pbf?key={apikey}");
+        Map<String, String> values = new HashMap<>();
+        values.put("x", "1");
+        values.put("y", "2");
+        values.put("z", "3");
+        Assertions.assertEquals("https://example.com/3/1/2.pbf?key={apikey}", template.expand(values::get));
+    }
+
+    @Test
+    public void testWithoutPlaceholders() {
+        Assertions.assertEquals("https://example.com/tile.png", UrlTemplate.of("https://example.com/tile.png").expand(p -> "x"));
+        Assertions.assertEquals("https://example.com/{broken", UrlTemplate.of("https://example.com/{broken").expand(p -> "x"));
+        Assertions.assertTrue(UrlTemplate.of("").isEmpty());
+    }
+}
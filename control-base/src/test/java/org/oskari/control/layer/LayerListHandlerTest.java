@@ -4,6 +4,7 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.Arrays;
 import java.util.Collections;
@@ -84,7 +85,7 @@ public class LayerListHandlerTest {
                 when(mock(OskariLayerService.class).findAll())
                         .thenReturn(Arrays.asList(layer)).getMock());
         handler.setPermissionService(
-                when(mock(PermissionService.class).findResourcesByUser(guest, ResourceType.maplayer))
+                when(mock(PermissionService.class).findResourcesByUser(guest, ResourceType.maplayer, PermissionType.VIEW_LAYER))
                         .thenReturn(Arrays.asList(resource)).getMock());
         handler.setGroupService(
                 when(mock(OskariMapLayerGroupService.class).findAll())
@@ -158,7 +159,7 @@ public class LayerListHandlerTest {
                 when(mock(OskariLayerService.class).findAll())
                         .thenReturn(Arrays.asList(layer)).getMock());
         handler.setPermissionService(
-                when(mock(PermissionService.class).findResourcesByUser(admin, ResourceType.maplayer))
+                when(mock(PermissionService.class).findResourcesByUser(admin, ResourceType.maplayer, PermissionType.VIEW_LAYER))
                         .thenReturn(Arrays.asList(resource)).getMock());
         handler.setGroupService(
                 when(mock(OskariMapLayerGroupService.class).findAll())
@@ -183,4 +184,53 @@ public class LayerListHandlerTest {
 
     }
 
+    @Test
+    public void testCacheKey() {
+        User user = new User();
+        user.setId(5);
+        user.setUuid(UUID.randomUUID().toString());
+        user.addRole(3, "User");
+        user.addRole(1, "Admin");
+        User other = new User();
+        other.setId(6);
+        other.addRole(1, "Admin");
+        other.addRole(3, "User");
+
+        PermissionService permissionService = mock(PermissionService.class);
+        LayerListHandler handler = new LayerListHandler();
+        handler.setPermissionService(permissionService);
+
+        when(permissionService.getVersion()).thenReturn(-1L);
+        Assertions.assertNull(handler.getCacheKey(user, "en", Collections.emptyList()), "Not cached when permissions aren't versioned");
+
+        when(permissionService.getVersion()).thenReturn(10L);
+        String key = handler.getCacheKey(user, "en", Collections.emptyList());
+        Assertions.assertEquals(key, handler.getCacheKey(other, "en", Collections.emptyList()), "Users with same roles share the response");
+        Assertions.assertNotEquals(key, handler.getCacheKey(user, "fi", Collections.emptyList()));
+
+        when(permissionService.getVersion()).thenReturn(11L);
+        Assertions.assertNotEquals(key, handler.getCacheKey(user, "en", Collections.emptyList()), "Permission changes change the key");
+
+        when(permissionService.hasUserSpecificPermissions(user, ResourceType.maplayer)).thenReturn(true);
+        Assertions.assertNotEquals(handler.getCacheKey(user, "en", Collections.emptyList()),
+                handler.getCacheKey(other, "en", Collections.emptyList()));
+
+        MyFeaturesLayer myFeaturesLayer = new MyFeaturesLayer();
+        myFeaturesLayer.setId(UUID.randomUUID());
+        myFeaturesLayer.setUpdated(Instant.now());
+        Assertions.assertNotEquals(handler.getCacheKey(other, "en", Collections.emptyList()),
+                handler.getCacheKey(other, "en", Arrays.asList(myFeaturesLayer)));
+    }
+
+    @Test
+    public void testETag() {
+        byte[] content = "{\"layers\":[]}".getBytes(StandardCharsets.UTF_8);
+        String etag = LayerListHandler.getETag(content);
+        Assertions.assertEquals(etag, LayerListHandler.getETag(content.clone()), "Same content gives the same ETag");
+        Assertions.assertNotEquals(etag, LayerListHandler.getETag("{\"layers\":[1]}".getBytes(StandardCharsets.UTF_8)));
+        // W/" + 64 hex chars + "
+        Assertions.assertEquals(68, etag.length());
+        Assertions.assertTrue(etag.startsWith("W/\"") && etag.endsWith("\""));
+    }
+
 }
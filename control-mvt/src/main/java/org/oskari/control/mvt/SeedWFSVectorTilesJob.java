@@ -0,0 +1,231 @@
+package org.oskari.control.mvt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
+import org.oskari.service.mvt.TileCoord;
+import org.oskari.service.mvt.WFSTileGrid;
+import org.oskari.service.wfs.client.CachingOskariWFSClient;
+import org.oskari.service.wfs.client.OskariFeatureClient;
+
+import fi.nls.oskari.annotation.Oskari;
+import fi.nls.oskari.domain.map.OskariLayer;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.map.layer.OskariLayerService;
+import fi.nls.oskari.map.layer.OskariLayerServiceMybatisImpl;
+import fi.nls.oskari.util.ConversionHelper;
+import fi.nls.oskari.util.PropertyUtil;
+import fi.nls.oskari.worker.ScheduledJob;
+
+/**
+ * ScheduledJob that generates MVT tiles for WFS layers before they are requested so the first users
+ * don't need to wait for the WFS services. Tiles are written to the disk cache when one is configured
+ * with oskari.wfs.mvt.cache.dir. Configuration (can be overridden with job params):
+ * <ul>
+ * <li>oskari.wfs.mvt.seed.layers - comma-separated list of layer ids (required)</li>
+ * <li>oskari.wfs.mvt.seed.srs - projection of the tiles, defaults to EPSG:3067</li>
+ * <li>oskari.wfs.mvt.seed.bbox - minX,minY,maxX,maxY to seed, defaults to the whole tile grid</li>
+ * <li>oskari.wfs.mvt.seed.minZoom/maxZoom - zoom levels to seed, default to the zoom level used for WFS requests.
+ * Limited to the zoom levels served by GetWFSVectorTile (one level under the WFS request zoom level at minimum)</li>
+ * <li>oskari.wfs.mvt.seed.threads - number of tiles generated concurrently, defaults to 2</li>
+ * </ul>
+ * Schedule with 'oskari.scheduler.job.SeedWFSVectorTiles.cronLine'.
+ */
+@Oskari("SeedWFSVectorTiles")
+public class SeedWFSVectorTilesJob extends ScheduledJob {
+
+    private static final Logger LOG = LogFactory.getLogger(SeedWFSVectorTilesJob.class);
+
+    private static final String PROP_PREFIX = "oskari.wfs.mvt.seed.";
+    private static final String PARAM_LAYERS = "layers";
+    private static final String PARAM_SRS = "srs";
+    private static final String PARAM_BBOX = "bbox";
+    private static final String PARAM_MIN_ZOOM = "minZoom";
+    private static final String PARAM_MAX_ZOOM = "maxZoom";
+    private static final String PARAM_THREADS = "threads";
+
+    private static final String DEFAULT_SRS = "EPSG:3067";
+    private static final int DEFAULT_THREADS = 2;
+    // give up on a layer when the service keeps failing instead of hammering it with requests
+    private static final int MAX_CONSECUTIVE_FAILURES = 20;
+    private static final long PROGRESS_INTERVAL_MS = TimeUnit.SECONDS.toMillis(30);
+
+    private final OskariLayerService layerService;
+    private WFSVectorTileService tileService;
+
+    public SeedWFSVectorTilesJob() {
+        this(new OskariLayerServiceMybatisImpl());
+    }
+
+    public SeedWFSVectorTilesJob(OskariLayerService layerService) {
+        this.layerService = layerService;
+    }
+
+    @Override
+    public void execute(Map<String, Object> params) {
+        final String[] layerIds = getParam(params, PARAM_LAYERS, "").split("\\s*,\\s*");
+        final String srs = getParam(params, PARAM_SRS, DEFAULT_SRS);
+        if (layerIds.length == 0 || layerIds[0].isEmpty()) {
+            LOG.info("No layers configured for seeding with", PROP_PREFIX + PARAM_LAYERS);
+            return;
+        }
+        if (tileService == null) {
+            tileService = new WFSVectorTileService(new OskariFeatureClient(new CachingOskariWFSClient()));
+        }
+        final WFSTileGrid grid = tileService.getTileGrid(srs);
+        if (grid == null) {
+            LOG.warn("No tile grid for srs:", srs);
+            return;
+        }
+        if (!tileService.hasDiskCache()) {
+            LOG.warn("No disk cache configured for vector tiles - seeded tiles are only cached in memory");
+        }
+        final CoordinateReferenceSystem crs = WFSVectorTileService.decodeCRS(srs);
+        final double[] bbox = parseBbox(getParam(params, PARAM_BBOX, null), grid);
+        final int targetZ = tileService.getTargetZ(srs);
+        int minZoom = ConversionHelper.getInt(getParam(params, PARAM_MIN_ZOOM, null), targetZ);
+        int maxZoom = ConversionHelper.getInt(getParam(params, PARAM_MAX_ZOOM, null), targetZ);
+        // same limits as GetWFSVectorTileHandler, don't seed tiles that wouldn't be served
+        final int lowestZoom = tileService.getMinZoom(srs);
+        if (minZoom < lowestZoom) {
+            LOG.warn("minZoom", minZoom, "would trigger too many requests to services, using", lowestZoom);
+            minZoom = lowestZoom;
+        }
+        if (maxZoom > grid.getMaxZoom()) {
+            LOG.warn("maxZoom", maxZoom, "is over the max zoom of the tile grid, using", grid.getMaxZoom());
+            maxZoom = grid.getMaxZoom();
+        }
+        if (minZoom > maxZoom) {
+            LOG.error("Nothing to seed - minZoom", minZoom, "is over maxZoom", maxZoom);
+            return;
+        }
+        final int threads = Math.max(1, ConversionHelper.getInt(getParam(params, PARAM_THREADS, null), DEFAULT_THREADS));
+
+        LOG.info("Starting to seed vector tiles for layers", String.join(",", layerIds), "- srs:", srs, "zoom:", minZoom, "-", maxZoom);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (String layerId : layerIds) {
+                seedLayer(executor, threads, layerId, srs, crs, grid, bbox, minZoom, maxZoom);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void seedLayer(ExecutorService executor, int threads, String id, String srs, CoordinateReferenceSystem crs,
+            WFSTileGrid grid, double[] bbox, int minZoom, int maxZoom) {
+        final OskariLayer layer = layerService.find(ConversionHelper.getInt(id, -1));
+        if (layer == null || !OskariLayer.TYPE_WFS.equals(layer.getType())) {
+            LOG.warn("Skipping seeding for layer", id, "- not a WFS layer");
+            return;
+        }
+        final long start = System.currentTimeMillis();
+        final AtomicInteger ok = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final AtomicInteger consecutiveFailures = new AtomicInteger();
+        long lastProgress = start;
+
+        for (int z = minZoom; z <= maxZoom; z++) {
+            if (!WFSVectorTileService.isInScaleRange(layer, grid, z)) {
+                continue;
+            }
+            final int[] range = grid.getTileRange(bbox, z);
+            if (range == null) {
+                continue;
+            }
+            // go through the tiles row by row so neighbouring tiles can use the features
+            // that were cached by CachingOskariWFSClient for the previous tile
+            for (int y = range[1]; y <= range[3]; y++) {
+                List<Future<?>> row = new ArrayList<>(range[2] - range[0] + 1);
+                for (int x = range[0]; x <= range[2]; x++) {
+                    final int tileZ = z;
+                    final int tileX = x;
+                    final int tileY = y;
+                    row.add(executor.submit(() -> {
+                        try {
+                            tileService.seedTile(id, srs, layer, crs, tileZ, tileX, tileY);
+                            ok.incrementAndGet();
+                            consecutiveFailures.set(0);
+                        } catch (Exception e) {
+                            failed.incrementAndGet();
+                            consecutiveFailures.incrementAndGet();
+                            LOG.debug(e, "Failed to seed tile", tileZ, tileX, tileY, "for layer", id);
+                        }
+                    }));
+                    // don't queue the whole grid, keep at most a few tiles per thread waiting
+                    if (row.size() >= threads * 4) {
+                        waitFor(row);
+                    }
+                }
+                waitFor(row);
+                if (consecutiveFailures.get() >= MAX_CONSECUTIVE_FAILURES) {
+                    LOG.warn("Stopped seeding layer", id, "after", failed.get(), "failed tiles");
+                    logSummary(id, start, ok.get(), failed.get());
+                    return;
+                }
+                long now = System.currentTimeMillis();
+                if (now - lastProgress > PROGRESS_INTERVAL_MS) {
+                    lastProgress = now;
+                    LOG.info("Seeding layer", id, "z:", z, "row:", y, "/", range[3], "-", ok.get(), "tiles,",
+                            getTilesPerSecond(start, ok.get()), "tiles/s");
+                }
+            }
+        }
+        logSummary(id, start, ok.get(), failed.get());
+    }
+
+    private static void waitFor(List<Future<?>> tasks) {
+        for (Future<?> task : tasks) {
+            try {
+                task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Seeding interrupted");
+            } catch (Exception ignored) {
+                // errors are counted by the task
+            }
+        }
+        tasks.clear();
+    }
+
+    private static void logSummary(String id, long start, int ok, int failed) {
+        LOG.info("Seeded layer", id, "-", ok, "tiles,", failed, "failed in",
+                (System.currentTimeMillis() - start) / 1000, "s (", getTilesPerSecond(start, ok), "tiles/s )");
+    }
+
+    private static double getTilesPerSecond(long start, int count) {
+        long ms = Math.max(1, System.currentTimeMillis() - start);
+        return Math.round(count * 10000.0 / ms) / 10.0;
+    }
+
+    private static String getParam(Map<String, Object> params, String name, String defaultValue) {
+        Object value = params == null ? null : params.get(name);
+        if (value != null) {
+            return value.toString();
+        }
+        return PropertyUtil.get(PROP_PREFIX + name, defaultValue);
+    }
+
+    protected static double[] parseBbox(String value, WFSTileGrid grid) {
+        if (value == null || value.isEmpty()) {
+            return grid.getTileExtent(new TileCoord(0, 0, 0));
+        }
+        String[] parts = value.split("\\s*,\\s*");
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("Expected bbox as minX,minY,maxX,maxY - got: " + value);
+        }
+        double[] bbox = new double[4];
+        for (int i = 0; i < 4; i++) {
+            bbox[i] = Double.parseDouble(parts[i]);
+        }
+        return bbox;
+    }
+}
@@ -0,0 +1,427 @@
+package org.oskari.control.mvt;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
+import org.locationtech.jts.geom.Envelope;
+import org.oskari.service.mvt.SimpleFeaturesMVTEncoder;
+import org.oskari.service.mvt.TileCoord;
+import org.oskari.service.mvt.TileFeatureIndex;
+import org.oskari.service.mvt.WFSTileGrid;
+import org.oskari.service.mvt.WFSTileGridProperties;
+import org.oskari.service.user.UserLayerService;
+import org.oskari.service.wfs.client.OskariFeatureClient;
+import org.oskari.service.wfs.client.OskariWFSLoader;
+
+import fi.nls.oskari.cache.CacheManager;
+import fi.nls.oskari.cache.ComputeOnceCache;
+import fi.nls.oskari.cache.DiskCache;
+import fi.nls.oskari.cache.OffHeapCache;
+import fi.nls.oskari.map.geometry.CrsRegistry;
+import fi.nls.oskari.domain.map.OskariLayer;
+import fi.nls.oskari.service.ServiceRuntimeException;
+import fi.nls.oskari.util.IOHelper;
+import fi.nls.oskari.util.PropertyUtil;
+
+/**
+ * Creates and caches MVT tiles for WFS layers. Used by GetWFSVectorTileHandler to serve tiles and
+ * by SeedWFSVectorTilesJob to generate tiles before they are requested.
+ */
+public class WFSVectorTileService {
+
+    // Resolution (metres per px) we are aiming for with the WFS requests
+    // This value is used to find the zoom level that is closest to the resolution specified here
+    // For ETRS-TME35FIN TileGrid this translates to z=8
+    private static final int TARGET_ZOOM_LEVEL_RESOLUTION = 8192 / 256;
+
+    private static final int DEFAULT_CACHE_ZOOM_LEVEL = 8;
+    private static final int MIN_ZOOM_OVER_CACHE_ZOOM = 1;
+    private static final Map<String, WFSTileGrid> KNOWN_TILE_GRIDS;
+    static {
+        KNOWN_TILE_GRIDS = new HashMap<>();
+        KNOWN_TILE_GRIDS.put("EPSG:3067", new WFSTileGrid(new double[] { -548576, 6291456, -548576 + (8192*256), 6291456 + (8192*256) }, 15));
+        KNOWN_TILE_GRIDS.put("EPSG:3857", new WFSTileGrid(new double[] { -20037508.3427892, -20037508.3427892, 20037508.3427892, 20037508.3427892 }, 18));
+    }
+
+    private static final int TILE_EXTENT = 4096;
+    private static final int TILE_BUFFER = 256;
+    private static final int TILE_BUFFER_POINT = 1024;
+
+    // gzipped tiles are kept off-heap, size can be configured with oskari.cache.maxWeight.[CACHE_NAME]
+    private static final String CACHE_NAME = GetWFSVectorTileHandler.class.getName();
+    private static final long CACHE_SIZE_BYTES = 64L * 1024L * 1024L;
+    private static final long CACHE_EXPIRATION = TimeUnit.MINUTES.toMillis(5);
+
+    // optional second level cache on disk so tiles survive restarts
+    private static final String PROP_DISK_CACHE_DIR = "oskari.wfs.mvt.cache.dir";
+    private static final String PROP_DISK_CACHE_SIZE_MB = "oskari.wfs.mvt.cache.dir.maxSizeMB";
+    private static final String PROP_DISK_CACHE_EXPIRATION_HOURS = "oskari.wfs.mvt.cache.dir.expirationHours";
+
+    // "direct" encodes tiles without intermediate JTS geometries (SimpleFeaturesMVTEncoder.encodeToByteArrayDirect)
+    private static final String PROP_ENCODER = "oskari.wfs.mvt.encoder";
+    private static final String ENCODER_DIRECT = "direct";
+
+    // WFS request tiles of an MVT tile are loaded concurrently unless this is set to false
+    private static final String PROP_ASYNC = "oskari.wfs.mvt.async";
+
+    // spatially indexed features of WFS request tiles
+    private static final String FEATURE_CACHE_NAME = WFSVectorTileService.class.getName() + ".features";
+    private static final int FEATURE_CACHE_SIZE_LIMIT = 1000;
+    private static final long FEATURE_CACHE_EXPIRATION = TimeUnit.MINUTES.toMillis(5);
+
+    private final OskariFeatureClient featureClient;
+    private final OffHeapCache tileCache;
+    private final DiskCache diskCache;
+    private final ComputeOnceCache<TileFeatureIndex> featureIndexCache;
+    private final Map<String, WFSTileGrid> tileGrids;
+    private final Map<String, Integer> cacheZLevels;
+    private final boolean directEncoder;
+    private final boolean async;
+    // WFS request tiles currently being loaded, shared by concurrent MVT requests
+    private final ConcurrentMap<String, CompletableFuture<TileFeatureIndex>> loading;
+
+    public WFSVectorTileService(OskariFeatureClient featureClient) {
+        this.featureClient = featureClient;
+        tileCache = CacheManager.getCache(CACHE_NAME,
+                () -> new OffHeapCache(CACHE_SIZE_BYTES, CACHE_EXPIRATION));
+        diskCache = initDiskCache();
+        featureIndexCache = CacheManager.getCache(FEATURE_CACHE_NAME,
+                () -> new ComputeOnceCache<>(FEATURE_CACHE_SIZE_LIMIT, FEATURE_CACHE_EXPIRATION));
+        tileGrids = new HashMap<>(KNOWN_TILE_GRIDS);
+        // grids from properties override the known ones
+        tileGrids.putAll(new WFSTileGridProperties().getTileGridMap());
+        directEncoder = ENCODER_DIRECT.equalsIgnoreCase(PropertyUtil.get(PROP_ENCODER, ""));
+        async = PropertyUtil.getOptional(PROP_ASYNC, true);
+        loading = new ConcurrentHashMap<>();
+        cacheZLevels = new HashMap<>();
+        tileGrids.forEach((srs, grid) -> cacheZLevels.put(srs, grid.getZForResolution(TARGET_ZOOM_LEVEL_RESOLUTION, 0)));
+    }
+
+    private static DiskCache initDiskCache() {
+        final String dir = PropertyUtil.getOptional(PROP_DISK_CACHE_DIR);
+        if (dir == null || dir.isEmpty()) {
+            return null;
+        }
+        final long maxBytes = PropertyUtil.getOptional(PROP_DISK_CACHE_SIZE_MB, 1024) * 1024L * 1024L;
+        final long expiration = TimeUnit.HOURS.toMillis(PropertyUtil.getOptional(PROP_DISK_CACHE_EXPIRATION_HOURS, 24));
+        return CacheManager.getCache(CACHE_NAME + ".disk",
+                () -> new DiskCache(Paths.get(dir), maxBytes, expiration));
+    }
+
+    /**
+     * @return tile grids by srs name
+     */
+    public Map<String, WFSTileGrid> getTileGrids() {
+        return tileGrids;
+    }
+
+    public WFSTileGrid getTileGrid(String srs) {
+        return tileGrids.get(srs.toUpperCase());
+    }
+
+    /**
+     * @return zoom level used for requesting features from the WFS service for given srs
+     */
+    public int getTargetZ(String srs) {
+        return cacheZLevels.getOrDefault(srs.toUpperCase(), DEFAULT_CACHE_ZOOM_LEVEL);
+    }
+
+    /**
+     * Features are always requested with the target zoom level, tiles below this zoom level
+     * would trigger too many requests to the services.
+     * @return lowest zoom level tiles are served for given srs
+     */
+    public int getMinZoom(String srs) {
+        return getTargetZ(srs) - MIN_ZOOM_OVER_CACHE_ZOOM;
+    }
+
+    public static CoordinateReferenceSystem decodeCRS(String srs) {
+        try {
+            return CrsRegistry.decode(srs, true);
+        } catch (Exception e) {
+            throw new ServiceRuntimeException("Invalid srs: " + srs, e);
+        }
+    }
+
+    public static double getScaleDenominator(WFSTileGrid grid, int z) {
+        double resolution = grid.getResolutionForZ(z);
+        return resolution * 1000 / 0.28; // OGC WMTS 0.28 mm/px
+    }
+
+    /**
+     * @return true if the layer should be visible on zoom level z
+     */
+    public static boolean isInScaleRange(OskariLayer layer, WFSTileGrid grid, int z) {
+        double scaleDenominator = getScaleDenominator(grid, z);
+        if (layer.getMinScale() != null && layer.getMinScale() != -1 && scaleDenominator > layer.getMinScale()) {
+            // Bigger denominator <=> Smaller scale
+            return false;
+        }
+        if (layer.getMaxScale() != null && layer.getMaxScale() != -1 && scaleDenominator < layer.getMaxScale()) {
+            // Smaller denominator <=> Bigger scale
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the tile from cache or creates it
+     * @return an MVT tile as a GZipped byte array
+     */
+    public byte[] getTile(String id, String srs, CoordinateReferenceSystem crs, OskariLayer layer,
+            int z, int x, int y, Optional<UserLayerService> contentProcessor) {
+        if (contentProcessor.isPresent() && contentProcessor.get().isUserContentLayer(id)) {
+            // Don't cache user content tiles
+            return createTile(id, srs, layer, crs, z, x, y, contentProcessor);
+        }
+        final String cacheKey = getCacheKey(id, srs, z, x, y);
+        return tileCache.get(id, cacheKey, __ -> getTileFromDisk(id, srs, layer, crs, z, x, y, contentProcessor));
+    }
+
+    /**
+     * Creates the tile and stores it to the disk cache (if configured) or the in-memory cache without
+     * returning it. Tiles that are already cached on disk are not created again.
+     */
+    public void seedTile(String id, String srs, OskariLayer layer, CoordinateReferenceSystem crs, int z, int x, int y) {
+        if (diskCache == null) {
+            // without a disk cache seeding only helps for the in-memory expiration time
+            tileCache.put(id, getCacheKey(id, srs, z, x, y), createTile(id, srs, layer, crs, z, x, y, Optional.empty()));
+            return;
+        }
+        // seeding goes straight to disk so it doesn't push the hot tiles out of memory
+        getTileFromDisk(id, srs, layer, crs, z, x, y, Optional.empty());
+    }
+
+    public boolean hasDiskCache() {
+        return diskCache != null;
+    }
+
+    /**
+     * Removes the tiles of given layer from the caches
+     */
+    public void flushLayerTiles(int layerId) {
+        final String id = Integer.toString(layerId);
+        tileCache.removeGroup(id);
+        final String prefix = id + "/";
+        featureIndexCache.getKeys().stream()
+                .filter(key -> key.startsWith(prefix))
+                .forEach(featureIndexCache::remove);
+        loading.keySet().removeIf(key -> key.startsWith(prefix));
+        if (diskCache != null) {
+            diskCache.removeGroup(id);
+        }
+    }
+
+    private String getCacheKey(String id, String srs, int z, int x, int y) {
+        return "WFS_" + id + "_" + srs + "_" + z + "_" + x + "_" + y;
+    }
+
+    /**
+     * Reads the tile from disk cache if available or creates it
+     */
+    private byte[] getTileFromDisk(String id, String srs, OskariLayer layer, CoordinateReferenceSystem crs,
+            int z, int x, int y, Optional<UserLayerService> contentProcessor) {
+        if (diskCache == null) {
+            return createTile(id, srs, layer, crs, z, x, y, contentProcessor);
+        }
+        final String key = String.join("/", srs, Integer.toString(z), Integer.toString(x), Integer.toString(y));
+        byte[] tile = diskCache.get(id, key);
+        if (tile == null) {
+            tile = createTile(id, srs, layer, crs, z, x, y, contentProcessor);
+            diskCache.put(id, key, tile);
+        }
+        return tile;
+    }
+
+    /**
+     * Creates the actual MVT tile
+     * @return an MVT tile as a GZipped byte array
+     */
+    private byte[] createTile(String id, String srs, OskariLayer layer, CoordinateReferenceSystem crs,
+            int z, int x, int y, Optional<UserLayerService> contentProcessor) {
+        WFSTileGrid grid = getTileGrid(srs);
+        List<TileCoord> tilesToLoad = getTilesToLoad(getTargetZ(srs), z, x, y);
+
+        boolean userContent = contentProcessor.isPresent() && contentProcessor.get().isUserContentLayer(id);
+        List<TileFeatureIndex> indexes;
+        if (userContent) {
+            indexes = new ArrayList<>(tilesToLoad.size());
+            for (TileCoord tile : tilesToLoad) {
+                indexes.add(TileFeatureIndex.of(getFeatures(id, layer, crs, grid, tile, contentProcessor)));
+            }
+        } else if (async) {
+            indexes = getFeatureIndexes(id, srs, layer, crs, grid, tilesToLoad);
+        } else {
+            indexes = new ArrayList<>(tilesToLoad.size());
+            for (TileCoord tile : tilesToLoad) {
+                indexes.add(getFeatureIndex(id, srs, layer, crs, grid, tile));
+            }
+        }
+        boolean onlyPoints = indexes.stream().allMatch(TileFeatureIndex::isOnlyPoints);
+
+        String mvtLayer = layer.getName();
+        double[] bbox = grid.getTileExtent(new TileCoord(z, x, y));
+        int extent = TILE_EXTENT;
+        int buffer = onlyPoints ? TILE_BUFFER_POINT : TILE_BUFFER;
+
+        // only pick the features that can end up in this tile instead of merging all the request tiles
+        Envelope clipEnvelope = new Envelope(bbox[0], bbox[2], bbox[1], bbox[3]);
+        clipEnvelope.expandBy((double) buffer / extent * clipEnvelope.getWidth(),
+                (double) buffer / extent * clipEnvelope.getHeight());
+        List<SimpleFeature> features = TileFeatureIndex.query(indexes, clipEnvelope);
+
+        byte[] encoded = directEncoder
+                ? SimpleFeaturesMVTEncoder.encodeToByteArrayDirect(features, mvtLayer, bbox, extent, buffer)
+                : SimpleFeaturesMVTEncoder.encodeToByteArray(features, mvtLayer, bbox, extent, buffer);
+        try {
+            return IOHelper.gzip(encoded).toByteArray();
+        } catch (IOException e) {
+            throw new ServiceRuntimeException("Unexpected IOException occured");
+        }
+    }
+
+    /**
+     * Features of a WFS request tile are indexed once and shared by all MVT tiles that need them
+     * (up to 9 on targetZ and more on the zoom levels above it).
+     */
+    private TileFeatureIndex getFeatureIndex(String id, String srs, OskariLayer layer,
+            CoordinateReferenceSystem crs, WFSTileGrid grid, TileCoord tile) {
+        String key = getFeatureIndexKey(id, srs, tile);
+        return featureIndexCache.get(key,
+                __ -> TileFeatureIndex.of(getFeatures(id, layer, crs, grid, tile, Optional.empty())));
+    }
+
+    /**
+     * Requests all the WFS tiles that are not cached at the same time instead of one after another.
+     * A tile that is already being loaded for another MVT tile is waited for instead of requested again.
+     */
+    private List<TileFeatureIndex> getFeatureIndexes(String id, String srs, OskariLayer layer,
+            CoordinateReferenceSystem crs, WFSTileGrid grid, List<TileCoord> tiles) {
+        List<CompletableFuture<TileFeatureIndex>> futures = new ArrayList<>(tiles.size());
+        for (TileCoord tile : tiles) {
+            futures.add(getFeatureIndexAsync(id, srs, layer, crs, grid, tile));
+        }
+        List<TileFeatureIndex> indexes = new ArrayList<>(tiles.size());
+        for (CompletableFuture<TileFeatureIndex> future : futures) {
+            indexes.add(OskariWFSLoader.join(future));
+        }
+        return indexes;
+    }
+
+    private CompletableFuture<TileFeatureIndex> getFeatureIndexAsync(String id, String srs, OskariLayer layer,
+            CoordinateReferenceSystem crs, WFSTileGrid grid, TileCoord tile) {
+        String key = getFeatureIndexKey(id, srs, tile);
+        TileFeatureIndex cached = featureIndexCache.get(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        CompletableFuture<TileFeatureIndex> future = new CompletableFuture<>();
+        CompletableFuture<TileFeatureIndex> existing = loading.putIfAbsent(key, future);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            getFeaturesAsync(id, layer, crs, grid, tile)
+                    .thenApply(TileFeatureIndex::of)
+                    .whenComplete((index, error) -> {
+                        // not cached if the layer was flushed while loading
+                        if (loading.remove(key, future) && error == null) {
+                            featureIndexCache.put(key, index);
+                        }
+                        if (error == null) {
+                            future.complete(index);
+                        } else {
+                            future.completeExceptionally(error);
+                        }
+                    });
+        } catch (Exception e) {
+            loading.remove(key, future);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private static String getFeatureIndexKey(String id, String srs, TileCoord tile) {
+        return id + "/" + srs + "/" + tile.getZ() + "/" + tile.getX() + "/" + tile.getY();
+    }
+
+    protected static List<TileCoord> getTilesToLoad(int targetZ, int z, int x, int y) {
+        int x1;
+        int y1;
+        int x2;
+        int y2;
+
+        // Always load tiles at zoom level targetZ so that we don't cache same features on multiple zoom levels
+        // Also we can reduce the amount of requests we make to the background services, for example for
+        // high zoom levels we can send only one request and use the cached FeatureCollection for multiple tiles
+        int dz = z - targetZ;
+
+        if (dz == 0) {
+            // this is the sweet spot zoom level wise
+            // Load the target tile and the tiles next to (around) it (buffer)
+            x1 = x - 1;
+            y1 = y - 1;
+            x2 = x + 1;
+            y2 = y + 1;
+        } else if (dz < 0) {
+            // Calculate all tiles inside our target tile
+            int d = (int) Math.pow(2, -dz);
+            x1 = x * d;
+            y1 = y * d;
+            x2 = (x+1) * d;
+            y2 = (y+1) * d;
+            // And include tiles around them (buffer)
+            x1--;
+            y1--;
+        } else {
+            // Calculate the tile (of lower zoom level) which contains the target tile
+            int div = (int) Math.pow(2, dz);
+            x1 = x / div;
+            y1 = y / div;
+            // And include tiles around them (buffer)
+            x2 = x1 + 1;
+            y2 = y1 + 1;
+            x1--;
+            y1--;
+        }
+
+        int tileZ = targetZ;
+        List<TileCoord> wfsTiles = new ArrayList<>();
+        for (int tileX = x1; tileX <= x2; tileX++) {
+            for (int tileY = y1; tileY <= y2; tileY++) {
+                wfsTiles.add(new TileCoord(tileZ, tileX, tileY));
+            }
+        }
+        return wfsTiles;
+    }
+
+    private SimpleFeatureCollection getFeatures(String id, OskariLayer layer,
+            CoordinateReferenceSystem crs, WFSTileGrid grid, TileCoord tile,
+            Optional<UserLayerService> processor) {
+        double[] box = grid.getTileExtent(tile);
+        Envelope envelope = new Envelope(box[0], box[2], box[1], box[3]);
+        ReferencedEnvelope bbox = new ReferencedEnvelope(envelope, crs);
+        return featureClient.getFeatures(id, layer, bbox, crs, processor);
+    }
+
+    private CompletableFuture<SimpleFeatureCollection> getFeaturesAsync(String id, OskariLayer layer,
+            CoordinateReferenceSystem crs, WFSTileGrid grid, TileCoord tile) {
+        double[] box = grid.getTileExtent(tile);
+        Envelope envelope = new Envelope(box[0], box[2], box[1], box[3]);
+        ReferencedEnvelope bbox = new ReferencedEnvelope(envelope, crs);
+        return featureClient.getFeaturesAsync(id, layer, bbox, crs);
+    }
+}
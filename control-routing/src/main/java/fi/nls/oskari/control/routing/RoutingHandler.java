@@ -7,14 +7,15 @@ import fi.nls.oskari.control.ActionParameters;
 import fi.nls.oskari.control.ActionParamsException;
 import fi.nls.oskari.routing.RouteParams;
 import fi.nls.oskari.routing.RouteResponse;
+import fi.nls.oskari.routing.RouteResponseWriter;
 import fi.nls.oskari.routing.RoutingService;
 import fi.nls.oskari.routing.RoutingServiceOpenTripPlannerImpl;
 import fi.nls.oskari.service.ServiceException;
-import fi.nls.oskari.util.JSONHelper;
 import fi.nls.oskari.util.PropertyUtil;
 import fi.nls.oskari.util.ResponseHelper;
-import org.json.JSONObject;
+import jakarta.servlet.http.HttpServletResponse;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
 import java.time.ZoneId;
@@ -80,16 +81,15 @@ public class RoutingHandler extends ActionHandler {
         try {
             RouteResponse result = service.getRoute(routeparams);
 
-            JSONObject response = result.toJSON();
-            if(params.getUser().isAdmin()) {
-                JSONHelper.putValue(response, "otpUrl", result.getRequestUrl());
-                JSONHelper.putValue(response, ROUTING_ERRORS, result.getRoutingErrors());
-                JSONHelper.putValue(response, ROUTING_QUERY, result.getPlanConnectionQueryString());
-            }
-
-            ResponseHelper.writeResponse(params, response);
+            // stream the route to the client instead of building the whole response as JSONObject first
+            final HttpServletResponse response = params.getResponse();
+            response.setCharacterEncoding("UTF-8");
+            response.setContentType(ResponseHelper.CONTENT_TYPE_JSON_UTF8);
+            RouteResponseWriter.write(result, params.getUser().isAdmin(), response.getWriter());
         } catch(ServiceException ex) {
             throw new ActionException(ex.getMessage(), ex);
+        } catch(IOException ex) {
+            throw new ActionException("Couldn't write route response", ex);
         }
 
     }
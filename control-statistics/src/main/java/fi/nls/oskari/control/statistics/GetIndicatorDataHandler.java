@@ -1,7 +1,6 @@
 package fi.nls.oskari.control.statistics;
 
 import fi.nls.oskari.annotation.OskariActionRoute;
-import fi.nls.oskari.cache.JedisManager;
 import fi.nls.oskari.control.ActionException;
 import fi.nls.oskari.control.ActionHandler;
 import fi.nls.oskari.control.ActionParameters;
@@ -9,15 +8,14 @@ import fi.nls.oskari.control.ActionParamsException;
 import fi.nls.oskari.control.statistics.data.*;
 import fi.nls.oskari.control.statistics.plugins.*;
 import org.oskari.user.User;
-import fi.nls.oskari.util.JSONHelper;
 import fi.nls.oskari.util.ResponseHelper;
 
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.oskari.metrics.UpstreamMetrics;
 
 import java.io.IOException;
 import java.util.Map;
-import java.util.Map.Entry;
 
 /**
  * This ActionHandler retrieves data for an indicator for the frontend
@@ -29,6 +27,7 @@ public class GetIndicatorDataHandler extends ActionHandler {
 
     private final static String PARAM_LAYER_ID = "regionset"; // previously layer_id
     private final static String PARAM_SELECTORS = "selectors";
+    private static final String UPSTREAM_CATEGORY = "statistics";
 
     /**
      * For now, this uses pretty much static global store for the plugins.
@@ -69,9 +68,9 @@ public class GetIndicatorDataHandler extends ActionHandler {
 
         String cacheKey = StatisticsHelper.getIndicatorDataCacheKey(pluginId, indicatorId, layerId, selectorJSON);
         if (plugin.canCache()) {
-            JSONObject cached = getFromCache(cacheKey);
+            CompactIndicatorData cached = IndicatorDataCache.get(cacheKey);
             if (cached != null) {
-                return cached;
+                return toJSON(cached);
             }
         }
 
@@ -81,16 +80,25 @@ public class GetIndicatorDataHandler extends ActionHandler {
         }
 
         StatisticalIndicatorDataModel selectors = StatisticsHelper.getIndicatorDataModel(selectorJSON);
+        UpstreamMetrics.Sample sample = UpstreamMetrics.start(UPSTREAM_CATEGORY, Long.toString(pluginId));
         try {
             Map<String, IndicatorValue> values = plugin.getIndicatorValues(indicator, selectors, layer);
-            JSONObject response = toJSON(values);
-
+            sample.status(UpstreamMetrics.STATUS_OK);
+            sample.stop();
+            CompactIndicatorData data = toCompact(values);
+            if (data == null) {
+                // values the compact format doesn't know are written as before and not cached
+                return toJSON(values);
+            }
+            // serialize before caching so data that can't be written as JSON isn't cached
+            JSONObject json = toJSON(data);
             if (plugin.canCache()) {
-                JedisManager.setex(cacheKey, JedisManager.EXPIRY_TIME_DAY, response.toString());
+                IndicatorDataCache.put(cacheKey, data);
             }
-
-            return response;
+            return json;
         } catch (APIException e) {
+            sample.status(UpstreamMetrics.STATUS_ERROR);
+            sample.stop();
             if (e.getCause() instanceof IOException) {
                 throw new ActionParamsException(e.getMessage());
             } else {
@@ -99,16 +107,18 @@ public class GetIndicatorDataHandler extends ActionHandler {
         }
     }
 
-    private JSONObject getFromCache(String cacheKey) {
-        String cachedData = JedisManager.get(cacheKey);
-        return JSONHelper.createJSONObject(cachedData);
+    private CompactIndicatorData toCompact(Map<String, IndicatorValue> values) throws ActionException {
+        try {
+            return CompactIndicatorData.of(values);
+        } catch (JSONException e) {
+            throw new ActionException("Something went wrong in serializing indicator data", e);
+        }
     }
 
-
     private JSONObject toJSON(Map<String, IndicatorValue> values) throws ActionException {
         try {
             JSONObject json = new JSONObject();
-            for (Entry<String, IndicatorValue> entry : values.entrySet()) {
+            for (Map.Entry<String, IndicatorValue> entry : values.entrySet()) {
                 entry.getValue().putToJSONObject(json, entry.getKey());
             }
             return json;
@@ -116,4 +126,12 @@ public class GetIndicatorDataHandler extends ActionHandler {
             throw new ActionException("Something went wrong in serializing indicator data", e);
         }
     }
+
+    private JSONObject toJSON(CompactIndicatorData data) throws ActionException {
+        try {
+            return data.toJSON();
+        } catch (JSONException e) {
+            throw new ActionException("Something went wrong in serializing indicator data", e);
+        }
+    }
 }
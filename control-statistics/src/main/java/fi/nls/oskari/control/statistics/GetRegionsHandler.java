@@ -1,6 +1,8 @@
 package fi.nls.oskari.control.statistics;
 
 import fi.nls.oskari.annotation.OskariActionRoute;
+import fi.nls.oskari.cache.Cache;
+import fi.nls.oskari.cache.CacheManager;
 import fi.nls.oskari.cache.JedisManager;
 import fi.nls.oskari.control.*;
 import fi.nls.oskari.control.statistics.db.RegionSet;
@@ -8,6 +10,7 @@ import fi.nls.oskari.service.OskariComponentManager;
 import fi.nls.oskari.service.ServiceException;
 import fi.nls.oskari.service.ServiceRuntimeException;
 import fi.nls.oskari.util.JSONHelper;
+import fi.nls.oskari.util.PropertyUtil;
 import fi.nls.oskari.util.ResponseHelper;
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -17,7 +20,11 @@ import org.geotools.api.referencing.FactoryException;
 import org.geotools.api.referencing.operation.TransformException;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * Returns the region information.
@@ -38,6 +45,22 @@ public class GetRegionsHandler extends ActionHandler {
 
     private static final String CACHE_KEY_PREFIX = "oskari:stats:regionset:";
     private static final String KEY_REGIONS = "regions";
+    private static final String CACHE_KEY_LEVELS = ":levels";
+    private static final String PARAM_RESOLUTION = "resolution";
+    private static final long CACHE_SIZE_BYTES = 64L * 1024L * 1024L;
+    // number of simplified versions and the max deviation from the original geometry in pixels
+    private static final int SIMPLIFY_LEVELS = PropertyUtil.getOptional("statistics.regions.simplify.levels", 5);
+    private static final double SIMPLIFY_PIXELS = PropertyUtil.getOptional("statistics.regions.simplify.pixels", 1.0);
+
+    // local copy of the responses cached in Redis, size can be configured with oskari.cache.maxWeight.[CACHE_NAME]
+    private static final Cache<byte[]> LOCAL_CACHE = CacheManager.getCache(GetRegionsHandler.class.getName(), () -> {
+        Cache<byte[]> cache = new Cache<>();
+        cache.setMaxWeight(CACHE_SIZE_BYTES);
+        cache.setWeigher(b -> b.length);
+        cache.setExpiration(TimeUnit.HOURS.toMillis(1));
+        return cache;
+    });
+    private static final Cache<double[]> TOLERANCES_CACHE = CacheManager.getCache(GetRegionsHandler.class.getName() + ".levels");
 
     private RegionSetService service;
 
@@ -55,8 +78,24 @@ public class GetRegionsHandler extends ActionHandler {
     public void handleAction(ActionParameters ap) throws ActionException {
         final int layerId = ap.getRequiredParamInt("regionset");
         final String srs = ap.getRequiredParam(ActionConstants.PARAM_SRS);
-        JSONObject response = getRegionInfoJSON(layerId, srs);
-        ResponseHelper.writeResponse(ap, response);
+        final double resolution = getResolution(ap);
+        final RegionSet regionset = getRegionSet(layerId);
+        byte[] response = resolution > 0
+                ? getSimplifiedRegionInfo(layerId, regionset, srs, resolution)
+                : getRegionInfo(layerId, regionset, srs);
+        ResponseHelper.writeResponse(ap, 200, ResponseHelper.CONTENT_TYPE_JSON_UTF8, response);
+    }
+
+    private double getResolution(ActionParameters ap) throws ActionParamsException {
+        String value = ap.getHttpParam(PARAM_RESOLUTION);
+        if (value == null || value.isEmpty()) {
+            return -1;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new ActionParamsException("Invalid parameter value for key: " + PARAM_RESOLUTION + " - expected number");
+        }
     }
 
     /**
@@ -65,33 +104,83 @@ public class GetRegionsHandler extends ActionHandler {
      * @throws ActionException
      */
     public JSONObject getRegionInfoJSON(long layerId, final String srs) throws ActionException {
+        return requestRegionInfoJSON(layerId, getRegionSet(layerId), srs);
+    }
+
+    private RegionSet getRegionSet(long layerId) throws ActionException {
         final RegionSet regionset = service.getRegionSet(layerId);
 
         if (regionset == null) {
             throw new ActionParamsException("Regionset not found");
         }
-        return requestRegionInfoJSON(layerId, regionset, srs);
+        return regionset;
     }
 
     public JSONObject requestRegionInfoJSON(long id, RegionSet regionset, final String srs) throws ActionException {
-        final String cacheKey = CACHE_KEY_PREFIX + id + ":" + srs;
-        final String cachedData = JedisManager.get(cacheKey);
-        if (cachedData != null && !cachedData.isEmpty()) {
+        try {
+            return new JSONObject(new String(getRegionInfo(id, regionset, srs), StandardCharsets.UTF_8));
+        } catch (JSONException e) {
+            throw new ActionException("Failed to parse region info", e);
+        }
+    }
+
+    /**
+     * Returns the response with full resolution geometries as UTF-8 encoded JSON.
+     * Responses are cached locally and in Redis.
+     */
+    private byte[] getRegionInfo(long id, RegionSet regionset, final String srs) throws ActionException {
+        final String cacheKey = getCacheKey(id, srs);
+        byte[] cached = getFromCache(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+        final byte[] response = toResponse(loadRegions(regionset, srs));
+        putToCache(cacheKey, response);
+        return response;
+    }
+
+    /**
+     * Returns the response with geometries simplified for the map resolution as UTF-8 encoded JSON.
+     * All the simplification levels of the regionset are computed and cached at once so the
+     * regions only need to be loaded once.
+     * @param resolution map units per pixel
+     */
+    private byte[] getSimplifiedRegionInfo(long id, RegionSet regionset, final String srs, double resolution)
+            throws ActionException {
+        final String cacheKey = getCacheKey(id, srs);
+        final double tolerance = resolution * SIMPLIFY_PIXELS;
+        double[] tolerances = getTolerancesFromCache(cacheKey);
+        if (tolerances != null) {
+            byte[] cached = getFromCache(getLevelKey(cacheKey, RegionSimplifier.getLevel(tolerances, tolerance)));
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        final List<Region> regions = loadRegions(regionset, srs);
+        tolerances = RegionSimplifier.getTolerances(regions, SIMPLIFY_LEVELS);
+        final int requestedLevel = RegionSimplifier.getLevel(tolerances, tolerance);
+        byte[] response = toResponse(regions);
+        putToCache(cacheKey, response);
+        for (int level = 0; level < tolerances.length; level++) {
+            byte[] simplified;
             try {
-                return new JSONObject(cachedData);
+                simplified = toResponse(RegionSimplifier.simplify(regions, tolerances[level]));
             } catch (JSONException e) {
-                // Failed serializing. Skipping the cache.
+                throw new ActionException("Failed to serialize simplified regions", e);
+            }
+            putToCache(getLevelKey(cacheKey, level), simplified);
+            if (level == requestedLevel) {
+                response = simplified;
             }
         }
-        final JSONObject response = new JSONObject();
-        final JSONArray regions = new JSONArray();
-        JSONHelper.putValue(response, KEY_REGIONS, regions);
+        putTolerancesToCache(cacheKey, tolerances);
+        return response;
+    }
 
+    private List<Region> loadRegions(RegionSet regionset, final String srs) throws ActionException {
         try {
-            final List<Region> result = RegionSetHelper.getRegions(regionset, srs);
-            for (Region region : result) {
-                regions.put(region.toJSON());
-            }
+            return RegionSetHelper.getRegions(regionset, srs);
         } catch (IOException e) {
             throw new ActionException("Couldn't connect to regionset provider.", e);
         } catch (ServiceException e) {
@@ -103,9 +192,72 @@ public class GetRegionsHandler extends ActionHandler {
         } catch (TransformException e) {
             throw new ActionException("Failed to perform transformation", e);
         }
+    }
 
-        JedisManager.setex(cacheKey, JedisManager.EXPIRY_TIME_DAY, response.toString());
-        return response;
+    private static byte[] toResponse(List<Region> result) {
+        final JSONObject response = new JSONObject();
+        final JSONArray regions = new JSONArray();
+        JSONHelper.putValue(response, KEY_REGIONS, regions);
+        for (Region region : result) {
+            regions.put(region.toJSON());
+        }
+        return response.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String getCacheKey(long id, String srs) {
+        return CACHE_KEY_PREFIX + id + ":" + srs;
+    }
+
+    /**
+     * @param level simplification level or -1 for full resolution
+     */
+    private static String getLevelKey(String cacheKey, int level) {
+        return level < 0 ? cacheKey : cacheKey + ":" + level;
+    }
+
+    private static byte[] getFromCache(String cacheKey) {
+        byte[] cached = LOCAL_CACHE.get(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+        final String cachedData = JedisManager.get(cacheKey);
+        if (cachedData == null || cachedData.isEmpty()) {
+            return null;
+        }
+        cached = cachedData.getBytes(StandardCharsets.UTF_8);
+        LOCAL_CACHE.put(cacheKey, cached);
+        return cached;
+    }
+
+    private static void putToCache(String cacheKey, byte[] response) {
+        JedisManager.setex(cacheKey, JedisManager.EXPIRY_TIME_DAY, new String(response, StandardCharsets.UTF_8));
+        LOCAL_CACHE.put(cacheKey, response);
+    }
+
+    private static double[] getTolerancesFromCache(String cacheKey) {
+        final String key = cacheKey + CACHE_KEY_LEVELS;
+        double[] tolerances = TOLERANCES_CACHE.get(key);
+        if (tolerances != null) {
+            return tolerances;
+        }
+        final String cachedData = JedisManager.get(key);
+        if (cachedData == null || cachedData.isEmpty()) {
+            return null;
+        }
+        try {
+            tolerances = Arrays.stream(cachedData.split(",")).mapToDouble(Double::parseDouble).toArray();
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        TOLERANCES_CACHE.put(key, tolerances);
+        return tolerances;
+    }
+
+    private static void putTolerancesToCache(String cacheKey, double[] tolerances) {
+        final String key = cacheKey + CACHE_KEY_LEVELS;
+        final String value = Arrays.stream(tolerances).mapToObj(Double::toString).collect(Collectors.joining(","));
+        JedisManager.setex(key, JedisManager.EXPIRY_TIME_DAY, value);
+        TOLERANCES_CACHE.put(key, tolerances);
     }
 
 }
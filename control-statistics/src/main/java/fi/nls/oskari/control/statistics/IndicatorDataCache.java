@@ -0,0 +1,70 @@
+package fi.nls.oskari.control.statistics;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import fi.nls.oskari.cache.Cache;
+import fi.nls.oskari.cache.CacheManager;
+import fi.nls.oskari.cache.JedisManager;
+import fi.nls.oskari.util.PropertyUtil;
+
+/**
+ * Two-tier cache for indicator data: a bounded local cache in front of Redis so switching between
+ * indicators doesn't need a Redis round trip and a JSON parse for each request. Data is stored in
+ * both tiers as CompactIndicatorData.
+ *
+ * The local tier is a regular Oskari cache so removing an item removes it on the other nodes as well
+ * (through ClusterManager in clustered environments). Size can be configured with
+ * oskari.cache.maxWeight.[CACHE_NAME] (bytes) and the expiration with statistics.data.cache.localTTL (seconds).
+ */
+class IndicatorDataCache {
+
+    private static final String CACHE_NAME = IndicatorDataCache.class.getName();
+    private static final long CACHE_SIZE_BYTES = 32L * 1024L * 1024L;
+    private static final String PROP_LOCAL_TTL = "statistics.data.cache.localTTL";
+    // different from the key used for JSON data previously so nodes with different versions don't mix them up
+    private static final String REDIS_KEY_SUFFIX = ":bin";
+
+    private static final Cache<CompactIndicatorData> LOCAL = CacheManager.getCache(CACHE_NAME, () -> {
+        Cache<CompactIndicatorData> cache = new Cache<>();
+        cache.setLimit(10000);
+        cache.setMaxWeight(CACHE_SIZE_BYTES);
+        cache.setWeigher(CompactIndicatorData::getWeight);
+        cache.setExpiration(TimeUnit.SECONDS.toMillis(PropertyUtil.getOptional(PROP_LOCAL_TTL, 3600)));
+        return cache;
+    });
+
+    private IndicatorDataCache() {}
+
+    /**
+     * @return cached data or null if not cached on this node or in Redis
+     */
+    static CompactIndicatorData get(String cacheKey) {
+        CompactIndicatorData data = LOCAL.get(cacheKey);
+        if (data != null) {
+            return data;
+        }
+        data = CompactIndicatorData.fromBytes(JedisManager.get(getRedisKey(cacheKey)));
+        if (data != null) {
+            LOCAL.put(cacheKey, data);
+        }
+        return data;
+    }
+
+    static void put(String cacheKey, CompactIndicatorData data) {
+        LOCAL.put(cacheKey, data);
+        JedisManager.setex(getRedisKey(cacheKey), JedisManager.EXPIRY_TIME_DAY, data.toBytes());
+    }
+
+    /**
+     * Removes the data from Redis and from the local cache of all nodes
+     */
+    static void remove(String cacheKey) {
+        JedisManager.del(cacheKey, cacheKey + REDIS_KEY_SUFFIX);
+        LOCAL.remove(cacheKey);
+    }
+
+    private static byte[] getRedisKey(String cacheKey) {
+        return (cacheKey + REDIS_KEY_SUFFIX).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,65 @@
+package fi.nls.oskari.control.statistics;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import fi.nls.oskari.control.statistics.data.IndicatorValue;
+import fi.nls.oskari.control.statistics.data.IndicatorValueBoolean;
+import fi.nls.oskari.control.statistics.data.IndicatorValueFloat;
+import fi.nls.oskari.control.statistics.data.IndicatorValueInteger;
+
+public class CompactIndicatorDataTest {
+
+    @Test
+    public void testSameJSONAsIndicatorValues() throws JSONException {
+        Map<String, IndicatorValue> values = new HashMap<>();
+        values.put("091", new IndicatorValueFloat(12.5));
+        values.put("092", new IndicatorValueInteger(42L));
+        values.put("093", new IndicatorValueBoolean(true));
+        values.put("094", new IndicatorValueFloat(null));
+
+        JSONObject expected = new JSONObject();
+        for (Map.Entry<String, IndicatorValue> entry : values.entrySet()) {
+            entry.getValue().putToJSONObject(expected, entry.getKey());
+        }
+
+        CompactIndicatorData data = CompactIndicatorData.of(values);
+        Assertions.assertEquals(3, data.size());
+        Assertions.assertEquals(expected.toString(), data.toJSON().toString());
+
+        CompactIndicatorData fromBytes = CompactIndicatorData.fromBytes(data.toBytes());
+        Assertions.assertEquals(expected.toString(), fromBytes.toJSON().toString());
+    }
+
+    @Test
+    public void testNonFiniteValues() {
+        Map<String, IndicatorValue> values = new HashMap<>();
+        values.put("091", new IndicatorValueFloat(12.5));
+        values.put("092", new IndicatorValueFloat(Double.NaN));
+        Assertions.assertThrows(JSONException.class, () -> CompactIndicatorData.of(values));
+
+        values.put("092", new IndicatorValueFloat(Double.POSITIVE_INFINITY));
+        Assertions.assertThrows(JSONException.class, () -> CompactIndicatorData.of(values));
+    }
+
+    @Test
+    public void testUnknownValueType() throws JSONException {
+        Map<String, IndicatorValue> values = new HashMap<>();
+        values.put("091", new IndicatorValueInteger(42L));
+        values.put("092", (json, key) -> json.put(key, "n/a"));
+        Assertions.assertNull(CompactIndicatorData.of(values));
+    }
+
+    @Test
+    public void testUnreadableBytes() {
+        Assertions.assertNull(CompactIndicatorData.fromBytes(null));
+        Assertions.assertNull(CompactIndicatorData.fromBytes(new byte[0]));
+        Assertions.assertNull(CompactIndicatorData.fromBytes("{\"091\":1}".getBytes()));
+        Assertions.assertNull(CompactIndicatorData.fromBytes(new byte[] { 1, 0, 0, 0, 5 }));
+    }
+}
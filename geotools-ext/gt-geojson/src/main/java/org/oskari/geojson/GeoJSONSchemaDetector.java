@@ -31,14 +31,7 @@ public class GeoJSONSchemaDetector {
         // FIXME: This creates a side-effect by modifying the input as well as returning the SimpleFeatureType.
         // Might cause problems later on...
 
-        // Map feature.geometry fields to JTS Geometries
-        replaceGeometry(json, GeoJSONReader2::toGeometry);
-
-        if (ignoreGeometriesUnderProperties) {
-            replaceMapProperties(json, propertyValue -> isGeometry(propertyValue) ? null : propertyValue);
-        } else {
-            replaceMapProperties(json, propertyValue -> propertyToGeometry(propertyValue).orElse(propertyValue));
-        }
+        replaceGeometries(json, ignoreGeometriesUnderProperties);
 
         Map<String, Class<?>> bindings = new HashMap<>();
         String type = GeoJSONUtil.getString(json, GeoJSON.TYPE);
@@ -56,6 +49,28 @@ public class GeoJSONSchemaDetector {
             throw new IllegalArgumentException("Invalid type");
         }
 
+        return createSchema(bindings, crs);
+    }
+
+    /**
+     * Maps feature.geometry fields of a FeatureCollection or a Feature to JTS Geometries
+     * and handles geometries under feature.properties like getSchema() does
+     */
+    static void replaceGeometries(Map<String, Object> json, boolean ignoreGeometriesUnderProperties) {
+        replaceGeometry(json, GeoJSONReader2::toGeometry);
+
+        if (ignoreGeometriesUnderProperties) {
+            replaceMapProperties(json, propertyValue -> isGeometry(propertyValue) ? null : propertyValue);
+        } else {
+            replaceMapProperties(json, propertyValue -> propertyToGeometry(propertyValue).orElse(propertyValue));
+        }
+    }
+
+    /**
+     * @param bindings attribute bindings collected with addAttributes()
+     * @return SimpleFeatureType or null if there are no attributes (empty FeatureCollection)
+     */
+    static SimpleFeatureType createSchema(Map<String, Class<?>> bindings, CoordinateReferenceSystem crs) {
         if (bindings.isEmpty()) {
             // Empty FeatureCollection
             return null;
@@ -108,12 +123,17 @@ public class GeoJSONSchemaDetector {
         }
     }
 
+    /**
+     * Adds or widens the bindings of the geometry and properties of a single feature
+     * @return true if bindings were modified
+     */
     @SuppressWarnings("unchecked")
-    private static void addAttributes(Map<String, Object> json,
+    static boolean addAttributes(Map<String, Object> json,
             Map<String, Class<?>> bindings) {
         if (!GeoJSON.FEATURE.equals(GeoJSONUtil.getString(json, GeoJSON.TYPE))) {
             throw new IllegalArgumentException("type was not " + GeoJSON.FEATURE);
         }
+        boolean changed = false;
 
         Object geom = json.get(GeoJSON.GEOMETRY);
         if (geom != null) {
@@ -122,13 +142,13 @@ public class GeoJSONSchemaDetector {
             Class<? extends Geometry> currentType = (Class<? extends Geometry>) bindings.get(key);
             Class<? extends Geometry> newType = getOverrideGeometryType(geometryType, currentType);
             if (newType != null) {
-                bindings.put(key, newType);
+                changed |= bindings.put(key, newType) != newType;
             }
         }
 
         Map<String, Object> properties = GeoJSONUtil.getMap(json, GeoJSON.PROPERTIES);
         if (properties == null) {
-            return;
+            return changed;
         }
         for (Map.Entry<String, Object> e : properties.entrySet()) {
             String key = e.getKey();
@@ -144,7 +164,7 @@ public class GeoJSONSchemaDetector {
                 Class<? extends Geometry> currentType = (Class<? extends Geometry>) bindings.get(key);
                 Class<? extends Geometry> newType = getOverrideGeometryType(geometryType, currentType);
                 if (newType != null) {
-                    bindings.put(key, newType);
+                    changed |= bindings.put(key, newType) != newType;
                 }
                 continue;
             }
@@ -152,15 +172,17 @@ public class GeoJSONSchemaDetector {
             Class<?> storedClass = bindings.get(key);
             if (storedClass == null) {
                 bindings.put(key, currentClass);
+                changed = true;
                 continue;
             }
             if (storedClass != currentClass) {
                 Class<?> newClass = getOverrideType(currentClass, storedClass);
                 if (newClass != null) {
-                    bindings.put(key, newClass);
+                    changed |= bindings.put(key, newClass) != newClass;
                 }
             }
         }
+        return changed;
     }
 
     private static Class<? extends Geometry> getOverrideGeometryType(
@@ -0,0 +1,182 @@
+package org.oskari.geojson;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.api.feature.type.AttributeDescriptor;
+import org.geotools.api.geometry.MismatchedDimensionException;
+import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
+import org.geotools.api.referencing.operation.TransformException;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.store.EmptyFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Reads a GeoJSON FeatureCollection from an InputStream one feature at a time.
+ *
+ * Reading the whole document to a Map and passing it to GeoJSONSchemaDetector and GeoJSONReader2
+ * keeps the raw response, the Map tree and the features in memory at the same time. Here only
+ * the features are kept: the schema is detected from a sample of the first features and after
+ * that each feature is converted to a SimpleFeature as soon as it has been read.
+ *
+ * If a feature after the sample doesn't fit the schema (a new property or a wider type) the schema
+ * is widened and the features read so far are rebuilt with it. The result is the same as with
+ * GeoJSONSchemaDetector.getSchema() for the whole collection.
+ */
+public class GeoJSONStreamReader {
+
+    public static final int DEFAULT_SAMPLE_SIZE = 100;
+
+    private static final ObjectMapper OM = new ObjectMapper();
+    private static final TypeReference<HashMap<String, Object>> TYPE_REF = new TypeReference<HashMap<String, Object>>() {};
+
+    public static SimpleFeatureCollection read(InputStream in, CoordinateReferenceSystem crs,
+            boolean ignoreGeometriesUnderProperties) throws IOException {
+        return read(in, crs, ignoreGeometriesUnderProperties, DEFAULT_SAMPLE_SIZE);
+    }
+
+    /**
+     * @param in stream to read, is closed when done
+     * @param crs of the geometries
+     * @param ignoreGeometriesUnderProperties see GeoJSONSchemaDetector.getSchema()
+     * @param sampleSize number of features used for detecting the schema before building any features
+     * @throws IllegalArgumentException if the document is not a GeoJSON FeatureCollection
+     */
+    public static SimpleFeatureCollection read(InputStream in, CoordinateReferenceSystem crs,
+            boolean ignoreGeometriesUnderProperties, int sampleSize) throws IOException {
+        FeatureCollectionBuilder builder = new FeatureCollectionBuilder(crs, ignoreGeometriesUnderProperties, sampleSize);
+        String type = null;
+        try (JsonParser parser = OM.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("Expected JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if (GeoJSON.TYPE.equals(field)) {
+                    type = parser.getValueAsString();
+                } else if (GeoJSON.FEATURES.equals(field)) {
+                    if (token != JsonToken.START_ARRAY) {
+                        throw new IllegalArgumentException("features was not an array");
+                    }
+                    readFeatures(parser, builder);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        if (!GeoJSON.FEATURE_COLLECTION.equals(type)) {
+            throw new IllegalArgumentException("type was not " + GeoJSON.FEATURE_COLLECTION);
+        }
+        return builder.build();
+    }
+
+    private static void readFeatures(JsonParser parser, FeatureCollectionBuilder builder) throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("Expected feature object, got " + token);
+            }
+            builder.add(OM.readValue(parser, TYPE_REF));
+        }
+    }
+
+    private static class FeatureCollectionBuilder {
+
+        private final CoordinateReferenceSystem crs;
+        private final boolean ignoreGeometriesUnderProperties;
+        private final int sampleSize;
+        private final Map<String, Class<?>> bindings = new HashMap<>();
+        private final List<SimpleFeature> features = new ArrayList<>();
+        private List<Map<String, Object>> sample = new ArrayList<>();
+        private SimpleFeatureType schema;
+        private SimpleFeatureBuilder builder;
+
+        private FeatureCollectionBuilder(CoordinateReferenceSystem crs, boolean ignoreGeometriesUnderProperties, int sampleSize) {
+            this.crs = crs;
+            this.ignoreGeometriesUnderProperties = ignoreGeometriesUnderProperties;
+            this.sampleSize = Math.max(1, sampleSize);
+        }
+
+        private void add(Map<String, Object> feature) {
+            GeoJSONSchemaDetector.replaceGeometries(feature, ignoreGeometriesUnderProperties);
+            boolean changed = GeoJSONSchemaDetector.addAttributes(feature, bindings);
+            if (sample != null) {
+                sample.add(feature);
+                if (sample.size() >= sampleSize) {
+                    flushSample();
+                }
+                return;
+            }
+            if (changed) {
+                updateSchema();
+            }
+            features.add(toFeature(feature));
+        }
+
+        private void flushSample() {
+            updateSchema();
+            for (Map<String, Object> feature : sample) {
+                features.add(toFeature(feature));
+            }
+            sample = null;
+        }
+
+        private void updateSchema() {
+            SimpleFeatureType previous = schema;
+            schema = GeoJSONSchemaDetector.createSchema(bindings, crs);
+            if (schema == null) {
+                throw new IllegalArgumentException("Unable to detect schema, features have no geometries or properties");
+            }
+            builder = new SimpleFeatureBuilder(schema);
+            if (previous != null) {
+                rebuild(previous);
+            }
+        }
+
+        /**
+         * Bindings only grow so every attribute of the previous schema is found in the new one
+         */
+        private void rebuild(SimpleFeatureType previous) {
+            for (int i = 0; i < features.size(); i++) {
+                SimpleFeature f = features.get(i);
+                builder.reset();
+                for (AttributeDescriptor ad : previous.getAttributeDescriptors()) {
+                    String name = ad.getLocalName();
+                    builder.set(name, f.getAttribute(name));
+                }
+                features.set(i, builder.buildFeature(f.getID()));
+            }
+        }
+
+        private SimpleFeature toFeature(Map<String, Object> feature) {
+            try {
+                return GeoJSONReader2.toFeature(feature, builder, null);
+            } catch (MismatchedDimensionException | TransformException ignore) {
+                // These can't occur because we don't transform anything
+                throw new RuntimeException("Something bad happened");
+            }
+        }
+
+        private SimpleFeatureCollection build() {
+            if (sample != null) {
+                if (sample.isEmpty()) {
+                    return new EmptyFeatureCollection(null);
+                }
+                flushSample();
+            }
+            return new GeoJSONFeatureCollection(features, schema);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package org.oskari.geojson;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.api.feature.type.AttributeDescriptor;
+import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.referencing.CRS;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fi.nls.test.util.ResourceHelper;
+
+public class GeoJSONStreamReaderTest {
+
+    private static final String[] RESOURCES = {
+            "featureCollectionSimple.json",
+            "featureCollectionComplex.json",
+            "featureCollectionMultipleGeometries.json"
+    };
+
+    @Test
+    public void testSameResultAsTreeParsing() throws Exception {
+        CoordinateReferenceSystem crs84 = CRS.decode("EPSG:4326", true);
+        for (String res : RESOURCES) {
+            String json = ResourceHelper.readStringResource(res, this);
+            SimpleFeatureCollection expected = readTree(json, crs84);
+            // sample size 1 makes the reader widen the schema while reading
+            for (int sampleSize : new int[] { 1, GeoJSONStreamReader.DEFAULT_SAMPLE_SIZE }) {
+                SimpleFeatureCollection actual = GeoJSONStreamReader.read(toStream(json), crs84, true, sampleSize);
+                assertSame(res, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        String json = ResourceHelper.readStringResource("featureCollectionEmpty.json", this);
+        SimpleFeatureCollection fc = GeoJSONStreamReader.read(toStream(json), null, true);
+        Assertions.assertTrue(fc.isEmpty());
+    }
+
+    @Test
+    public void testNotFeatureCollection() throws Exception {
+        String json = ResourceHelper.readStringResource("point.json", this);
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> GeoJSONStreamReader.read(toStream(json), null, true));
+    }
+
+    @Test
+    public void testMembersInAnyOrder() throws Exception {
+        String json = "{\"features\":[{\"type\":\"Feature\",\"id\":\"a\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[1,2]},\"properties\":{\"n\":1}}],"
+                + "\"crs\":{\"type\":\"name\",\"properties\":{\"name\":\"EPSG:3067\"}},\"type\":\"FeatureCollection\"}";
+        SimpleFeatureCollection fc = GeoJSONStreamReader.read(toStream(json), null, true);
+        Assertions.assertEquals(1, fc.size());
+        try (SimpleFeatureIterator it = fc.features()) {
+            SimpleFeature f = it.next();
+            Assertions.assertEquals("a", f.getID());
+            Assertions.assertEquals(1, f.getAttribute("n"));
+        }
+    }
+
+    private SimpleFeatureCollection readTree(String json, CoordinateReferenceSystem crs) throws Exception {
+        Map<String, Object> map = new ObjectMapper().readValue(json, new TypeReference<Map<String, Object>>() {});
+        SimpleFeatureType schema = GeoJSONSchemaDetector.getSchema(map, crs, true);
+        return GeoJSONReader2.toFeatureCollection(map, schema);
+    }
+
+    private ByteArrayInputStream toStream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void assertSame(String res, SimpleFeatureCollection expected, SimpleFeatureCollection actual) {
+        SimpleFeatureType expectedSchema = expected.getSchema();
+        SimpleFeatureType actualSchema = actual.getSchema();
+        Assertions.assertEquals(expectedSchema.getAttributeCount(), actualSchema.getAttributeCount(), res);
+        for (AttributeDescriptor ad : expectedSchema.getAttributeDescriptors()) {
+            AttributeDescriptor other = actualSchema.getDescriptor(ad.getLocalName());
+            Assertions.assertNotNull(other, res + " " + ad.getLocalName());
+            Assertions.assertEquals(ad.getType().getBinding(), other.getType().getBinding(), res + " " + ad.getLocalName());
+        }
+        List<SimpleFeature> expectedFeatures = toList(expected);
+        List<SimpleFeature> actualFeatures = toList(actual);
+        Assertions.assertEquals(expectedFeatures.size(), actualFeatures.size(), res);
+        for (int i = 0; i < expectedFeatures.size(); i++) {
+            SimpleFeature e = expectedFeatures.get(i);
+            SimpleFeature a = actualFeatures.get(i);
+            Assertions.assertEquals(e.getID(), a.getID(), res);
+            for (AttributeDescriptor ad : expectedSchema.getAttributeDescriptors()) {
+                String name = ad.getLocalName();
+                Assertions.assertEquals(e.getAttribute(name), a.getAttribute(name), res + " " + name);
+            }
+        }
+    }
+
+    private List<SimpleFeature> toList(SimpleFeatureCollection fc) {
+        List<SimpleFeature> list = new ArrayList<>();
+        try (SimpleFeatureIterator it = fc.features()) {
+            while (it.hasNext()) {
+                list.add(it.next());
+            }
+        }
+        return list;
+    }
+}
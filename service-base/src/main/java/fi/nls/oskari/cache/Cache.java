@@ -2,37 +2,89 @@ package fi.nls.oskari.cache;
 
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.util.ConversionHelper;
 import fi.nls.oskari.util.PropertyUtil;
 import org.oskari.cluster.ClusterManager;
 
-import java.util.Queue;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ConcurrentNavigableMap;
-import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
 
 /**
- * Simple generic in memory cache
+ * Simple generic in memory cache.
+ *
+ * Items expire individually: an item is dropped when it has been in the cache longer than the expiration
+ * (see {@link #setExpiration(long)}) or, optionally, when it hasn't been read for a while
+ * (see {@link #setExpireAfterAccess(long)}). When the cache is full the least recently used item is evicted.
+ * The cache can also be limited by the total weight of the items (see {@link #setMaxWeight(long)}). By default
+ * byte arrays weigh their length and everything else weighs 1.
+ *
+ * Items are spread by key to segments that are locked separately so concurrent reads of different keys
+ * don't block each other. Eviction still removes the least recently used item of the whole cache.
  */
 public class Cache<T> {
 
     public static final String PROPERTY_LIMIT_PREFIX = "oskari.cache.limit.";
+    public static final String PROPERTY_MAX_WEIGHT_PREFIX = "oskari.cache.maxWeight.";
 
     private static final Logger LOG = LogFactory.getLogger(Cache.class);
 
     protected static final String CLUSTER_CMD_FLUSH = "FLUSH";
     protected static final String CLUSTER_CMD_REMOVE_PREFIX = "REM: ";
 
-    // the items are sorted by key.compare(key) -> we should map the String to a "CacheKey" which compares insertion time
-    private final ConcurrentNavigableMap<String,T> items = new ConcurrentSkipListMap<>();
-    private final Queue<String> keys = new ConcurrentLinkedQueue<>();
+    // don't sweep a segment for expired items more often than this
+    private static final long MAX_PURGE_INTERVAL = 60L * 1000L;
+    // items are spread to segments by key so reads and writes to different keys don't block each other
+    private static final int SEGMENTS = 16;
+
+    private final Segment<T>[] segments;
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong totalWeight = new AtomicLong();
+    // only one thread evicts at a time so concurrent puts don't evict more than needed
+    private final Object evictionLock = new Object();
+    private volatile LongSupplier nanoClock = System::nanoTime;
     private volatile int limit = 1000;
     private volatile long expiration = 30L * 60L * 1000L;
+    private volatile long expireAfterAccess = -1;
+    private volatile long maxWeight = -1;
+    private volatile ToLongFunction<T> weigher = Cache::defaultWeight;
     private volatile long lastFlush = currentTime();
     private String name;
     private boolean cacheSizeConfigured = false;
+    private boolean cacheWeightConfigured = false;
     private boolean cacheMissDebugEnabled = false;
 
+    @SuppressWarnings("unchecked")
+    public Cache() {
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment<>();
+        }
+    }
+
+    /**
+     * For tests: source of time in nanoseconds, defaults to System.nanoTime()
+     */
+    void setClock(LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        lastFlush = currentTime();
+        for (Segment<T> segment : segments) {
+            synchronized (segment) {
+                segment.lastPurge = nanoClock.getAsLong();
+            }
+        }
+    }
+
     public void setCacheMissDebugEnabled(boolean enabled) {
         cacheMissDebugEnabled = enabled;
     }
@@ -49,6 +101,11 @@ public class Cache<T> {
             cacheSizeConfigured = true;
             limit = configuredLimit;
         }
+        long configuredWeight = ConversionHelper.getLong(PropertyUtil.getOptional(getMaxWeightPropertyName()), -1L);
+        if (configuredWeight != -1) {
+            cacheWeightConfigured = true;
+            maxWeight = configuredWeight;
+        }
         LOG.debug("Is clustered env:", ClusterManager.isClustered());
         if (ClusterManager.isClustered()) {
             LOG.info("Cluster aware cache:", getName());
@@ -62,6 +119,10 @@ public class Cache<T> {
         return PROPERTY_LIMIT_PREFIX + getName();
     }
 
+    private String getMaxWeightPropertyName() {
+        return PROPERTY_MAX_WEIGHT_PREFIX + getName();
+    }
+
     public int getLimit() {
         return limit;
     }
@@ -80,7 +141,45 @@ public class Cache<T> {
     }
 
     /**
-     * Time between flushes to keep cached values
+     * Max total weight of items to hold in cache. Defaults to -1 (no weight limit).
+     * @return
+     */
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * Max total weight of items to hold in cache, for example bytes when caching byte arrays.
+     * Least recently used items are evicted until the total weight fits the limit.
+     * @param maxWeight -1 to disable
+     */
+    public void setMaxWeight(long maxWeight) {
+        if(cacheWeightConfigured) {
+            LOG.info("Trying to set cache max weight, but it's configured by user so ignoring automatic change.",
+                    "Max weight is", this.maxWeight, "- Change it with property: ", getMaxWeightPropertyName());
+            return;
+        }
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Function used to calculate the weight of an item when it's added to the cache.
+     * @param weigher
+     */
+    public void setWeigher(ToLongFunction<T> weigher) {
+        this.weigher = weigher == null ? Cache::defaultWeight : weigher;
+    }
+
+    /**
+     * Returns the total weight of cached items
+     * @return
+     */
+    public long getWeight() {
+        return totalWeight.get();
+    }
+
+    /**
+     * Time to keep an item in cache after it has been added
      * @return
      */
     public long getExpiration() {
@@ -92,15 +191,25 @@ public class Cache<T> {
      * @return
      */
     public long getSize() {
-        return items.size();
+        return size.get();
     }
 
     /**
      * Returns keys for cached items
-     * @return
+     * @return snapshot of the keys from least to most recently used
      */
     public Set<String> getKeys() {
-        return items.keySet();
+        // access times are copied so they don't change while sorting
+        List<Map.Entry<String, Long>> all = new ArrayList<>();
+        for (Segment<T> segment : segments) {
+            synchronized (segment) {
+                segment.items.forEach((key, entry) -> all.add(new AbstractMap.SimpleImmutableEntry<>(key, entry.accessed)));
+            }
+        }
+        all.sort(Map.Entry.comparingByValue());
+        Set<String> keys = new LinkedHashSet<>();
+        all.forEach(e -> keys.add(e.getKey()));
+        return keys;
     }
 
     /**
@@ -111,13 +220,41 @@ public class Cache<T> {
         this.expiration = expiration;
     }
 
+    /**
+     * Time to hold items in cache after they were last read. Defaults to -1 (disabled).
+     * @param expireAfterAccess in milliseconds
+     */
+    public void setExpireAfterAccess(long expireAfterAccess) {
+        this.expireAfterAccess = expireAfterAccess;
+    }
+
+    public long getExpireAfterAccess() {
+        return expireAfterAccess;
+    }
+
+    /**
+     * Time of the last time the cache was flushed as a whole
+     * @return
+     */
     public long getLastFlush() {
         return lastFlush;
     }
 
     public T get(final String name) {
-        flush(false);
-        T value = items.get(name);
+        final long now = nanoClock.getAsLong();
+        final Segment<T> segment = segmentFor(name);
+        T value = null;
+        synchronized (segment) {
+            Entry<T> entry = segment.items.get(name);
+            if (entry != null) {
+                if (isExpired(entry, now)) {
+                    removeEntry(segment, name);
+                } else {
+                    entry.accessed = now;
+                    value = entry.value;
+                }
+            }
+        }
 
         if(cacheMissDebugEnabled && value == null) {
             LOG.debug("Cache", getName(), "miss for name", name);
@@ -131,81 +268,242 @@ public class Cache<T> {
     }
 
     protected T removeSilent(final String name) {
-        // check expiration for whole cache even if we just remove one
-        boolean flushed = flush(false);
-        if (flushed) {
-            // the whole cache had expired
-            return null;
-        }
-        T value = items.remove(name);
-        keys.remove(name);
+        final long now = nanoClock.getAsLong();
+        final Segment<T> segment = segmentFor(name);
+        T value = null;
+        synchronized (segment) {
+            Entry<T> entry = removeEntry(segment, name);
+            if (entry != null && !isExpired(entry, now)) {
+                value = entry.value;
+            }
+        }
         LOG.debug("Removed cached item:", name, getName());
         return value;
     }
 
     public boolean put(final String name, final T item) {
-        flush(false);
         if (item == null) {
             // can't save null value -> handle as removal
             remove(name);
             return false;
         }
-        final boolean overflowing = (items.size() >= limit);
+        final long now = nanoClock.getAsLong();
+        final Entry<T> entry = new Entry<>(item, now, weigher.applyAsLong(item));
+        final Segment<T> segment = segmentFor(name);
+        Entry<T> existing;
+        synchronized (segment) {
+            purgeExpired(segment, now, false);
+            existing = removeEntry(segment, name);
+            segment.items.put(name, entry);
+            size.incrementAndGet();
+            totalWeight.addAndGet(entry.weight);
+        }
+        final boolean overflowing = existing == null && size.get() > limit;
+        evictOverflow(name);
         if (overflowing) {
-            // limit reached - remove oldest object
             LOG.warn("Cache", getName(), "overflowing! Limit is", limit);
             LOG.info("Configure larger limit for cache by setting the property:", getLimitPropertyName());
-            final String key = keys.poll();
-            if(key != null) {
-                items.remove(key);
-            }
         }
-        T existing = items.put(name, item);
         if (existing != null) {
             // if we had it in cache, notify cluster it was updated
             notifyRemoval(name);
-            // also remove it from queue so its not there twice
-            keys.remove(name);
         }
-        keys.add(name);
         LOG.debug("Cached item:", name, getName());
         return overflowing;
     }
 
+    /**
+     * @param force true to empty the cache (and notify cluster), false to just drop expired items
+     * @return true if any items were removed
+     */
     public boolean flush(final boolean force) {
         boolean flushed = flushSilent(force);
         if (force) {
             // only notify cluster if the flush was forced == we really want it empty for a reason (like data updated)
-            // we could use flushed to make the caches expire in sync but I don't know why we would
-            // want to do that as it increases load on db when multiple servers refill caches at the same time
             notifyFlush();
         }
         return flushed;
     }
 
     protected boolean flushSilent(final boolean force) {
-        final long now = currentTime();
-        if (force || isTimeToFlush(now)) {
-            // flushCache
-            LOG.info("Flushing cache! Cache:", getName(), "Forced: ", force, getName());
-            items.clear();
-            keys.clear();
-            lastFlush = now;
-            return true;
+        final long now = nanoClock.getAsLong();
+        if (force) {
+            LOG.info("Flushing cache! Cache:", getName());
+            lastFlush = currentTime();
+        }
+        boolean removed = false;
+        for (Segment<T> segment : segments) {
+            synchronized (segment) {
+                int before = segment.items.size();
+                if (force) {
+                    segment.items.values().forEach(e -> totalWeight.addAndGet(-e.weight));
+                    size.addAndGet(-before);
+                    segment.items.clear();
+                    segment.lastPurge = now;
+                } else {
+                    purgeExpired(segment, now, true);
+                }
+                removed |= before != segment.items.size();
+            }
         }
-        return false;
+        return removed;
     }
 
+    /**
+     * @deprecated Items expire individually and the cache is never emptied as a whole based on time.
+     */
+    @Deprecated
     public boolean isTimeToFlush(long now) {
         return (lastFlush + expiration < now);
     }
 
+    /**
+     * Returns the time until the next item expires
+     * or the expiration time if the cache is empty.
+     * @return
+     */
     public long getTimeToExpirationMs() {
-        return expiration - (currentTime() - lastFlush);
+        final long now = nanoClock.getAsLong();
+        long next = Long.MAX_VALUE;
+        for (Segment<T> segment : segments) {
+            synchronized (segment) {
+                for (Entry<T> entry : segment.items.values()) {
+                    next = Math.min(next, getExpiresAt(entry));
+                }
+            }
+        }
+        if (next == Long.MAX_VALUE) {
+            return expiration;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(next - now);
+    }
+
+    private long currentTime() {
+        return TimeUnit.NANOSECONDS.toMillis(nanoClock.getAsLong());
+    }
+
+    private static long defaultWeight(Object value) {
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        }
+        return 1;
+    }
+
+    private Segment<T> segmentFor(String name) {
+        int h = name.hashCode();
+        return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    // in nanos like the timestamps of the entries
+    private long getExpiresAt(Entry<T> entry) {
+        long expiresAt = expiration > 0 ? entry.written + TimeUnit.MILLISECONDS.toNanos(expiration) : Long.MAX_VALUE;
+        if (expireAfterAccess > 0) {
+            expiresAt = Math.min(expiresAt, entry.accessed + TimeUnit.MILLISECONDS.toNanos(expireAfterAccess));
+        }
+        return expiresAt;
     }
 
-    private static long currentTime() {
-        return System.nanoTime() / 1000000L;
+    private boolean isExpired(Entry<T> entry, long now) {
+        return getExpiresAt(entry) < now;
+    }
+
+    // callers must hold the lock on segment
+    private Entry<T> removeEntry(Segment<T> segment, String name) {
+        Entry<T> entry = segment.items.remove(name);
+        if (entry != null) {
+            size.decrementAndGet();
+            totalWeight.addAndGet(-entry.weight);
+        }
+        return entry;
+    }
+
+    // callers must hold the lock on segment
+    private void purgeExpired(Segment<T> segment, long now, boolean force) {
+        long interval = TimeUnit.MILLISECONDS.toNanos(
+                Math.min(MAX_PURGE_INTERVAL, expiration > 0 ? expiration : MAX_PURGE_INTERVAL));
+        if (!force && now - segment.lastPurge < interval) {
+            return;
+        }
+        segment.lastPurge = now;
+        Iterator<Entry<T>> it = segment.items.values().iterator();
+        while (it.hasNext()) {
+            Entry<T> entry = it.next();
+            if (isExpired(entry, now)) {
+                it.remove();
+                size.decrementAndGet();
+                totalWeight.addAndGet(-entry.weight);
+            }
+        }
+    }
+
+    private boolean isOverflowing() {
+        return size.get() > limit || (maxWeight >= 0 && totalWeight.get() > maxWeight);
+    }
+
+    /**
+     * Evicts the least recently used items until the cache fits the limits. Each segment is access ordered
+     * so the least recently used item of the whole cache is the least recently used one of the first
+     * items of the segments.
+     */
+    private void evictOverflow(String newest) {
+        if (!isOverflowing()) {
+            return;
+        }
+        synchronized (evictionLock) {
+            while (isOverflowing()) {
+                Segment<T> eldestSegment = null;
+                String eldestKey = null;
+                Entry<T> eldest = null;
+                for (Segment<T> segment : segments) {
+                    synchronized (segment) {
+                        for (Map.Entry<String, Entry<T>> e : segment.items.entrySet()) {
+                            if (e.getKey().equals(newest)) {
+                                // keep the item that was just added even if it's heavier than max weight
+                                continue;
+                            }
+                            if (eldest == null || e.getValue().accessed < eldest.accessed) {
+                                eldestSegment = segment;
+                                eldestKey = e.getKey();
+                                eldest = e.getValue();
+                            }
+                            break;
+                        }
+                    }
+                }
+                if (eldest == null) {
+                    // the item that was just added is the only one left
+                    return;
+                }
+                synchronized (eldestSegment) {
+                    // remove(key, value) doesn't change the access order and skips items that were replaced meanwhile
+                    if (eldestSegment.items.remove(eldestKey, eldest)) {
+                        size.decrementAndGet();
+                        totalWeight.addAndGet(-eldest.weight);
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class Segment<T> {
+        // access ordered -> the first item is always the least recently used one of the segment
+        private final LinkedHashMap<String, Entry<T>> items = new LinkedHashMap<>(16, 0.75f, true);
+        private long lastPurge = System.nanoTime();
+    }
+
+    private static final class Entry<T> {
+        private final T value;
+        // nanos from the clock of the cache, accessed is only read and written while holding the segment lock
+        private final long written;
+        private final long weight;
+        private long accessed;
+
+        private Entry(T value, long written, long weight) {
+            this.value = value;
+            this.written = written;
+            this.accessed = written;
+            this.weight = weight;
+        }
     }
 
     /* ************************************************
@@ -0,0 +1,421 @@
+package fi.nls.oskari.cache;
+
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Cache for byte arrays (like gzipped vector tiles) that stores the values as files so they survive restarts.
+ *
+ * Files are written under the root directory as [group]/[key] where the key can contain "/" to create
+ * a directory tree (like layer/srs/z/x/y). Max size of the cache is given in bytes as the max weight of the cache
+ * and can be configured with {@link Cache#PROPERTY_MAX_WEIGHT_PREFIX}[cachename]. When the cache grows larger than
+ * that the files that were written first are removed in the background. Files older than the expiration are
+ * treated as misses.
+ */
+public class DiskCache extends Cache<byte[]> {
+
+    private static final Logger LOG = LogFactory.getLogger(DiskCache.class);
+    private static final String NO_GROUP = "_";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final String DELETED_PREFIX = ".deleted-";
+    // shrink to this ratio of max size when cleaning up so we don't need to clean up after every write
+    private static final double CLEANUP_TARGET_RATIO = 0.9;
+
+    private final Path root;
+    private final AtomicLong size = new AtomicLong();
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicBoolean cleanupRunning = new AtomicBoolean(false);
+    // shared by all disk caches, each cache runs at most one cleanup at a time
+    private static final ExecutorService CLEANER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "DiskCache cleanup");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public DiskCache(Path root, long maxBytes, long expiration) {
+        super();
+        this.root = root;
+        setLimit(Integer.MAX_VALUE);
+        setMaxWeight(maxBytes);
+        setExpiration(expiration);
+        try {
+            Files.createDirectories(root);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't create cache directory: " + root, e);
+        }
+        // calculate the size of files from previous runs and drop expired ones
+        scheduleCleanup();
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    @Override
+    public byte[] get(final String key) {
+        return get(NO_GROUP, key);
+    }
+
+    public byte[] get(final String group, final String key) {
+        final Path file = getPath(group, key);
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            if (isExpired(attrs)) {
+                delete(file, attrs.size());
+                return null;
+            }
+            return Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            LOG.warn(e, "Couldn't read cached file:", file);
+            return null;
+        }
+    }
+
+    @Override
+    public boolean put(final String key, final byte[] value) {
+        return put(NO_GROUP, key, value);
+    }
+
+    /**
+     * @return true if the cache is over its max size and will be cleaned up
+     */
+    public boolean put(final String group, final String key, final byte[] value) {
+        if (value == null) {
+            // can't save null value -> handle as removal
+            if (NO_GROUP.equals(group)) {
+                remove(key);
+            } else {
+                remove(group, key);
+            }
+            return false;
+        }
+        final Path file = getPath(group, key);
+        Path tmp = null;
+        try {
+            Files.createDirectories(file.getParent());
+            tmp = Files.createTempFile(file.getParent(), null, TMP_SUFFIX);
+            Files.write(tmp, value);
+            boolean replaced = Files.exists(file);
+            long previousSize = replaced ? Files.size(file) : 0;
+            move(tmp, file);
+            size.addAndGet(value.length - previousSize);
+            if (!replaced) {
+                count.incrementAndGet();
+            }
+        } catch (IOException e) {
+            LOG.warn(e, "Couldn't write cached file:", file);
+            deleteQuietly(tmp);
+            return false;
+        }
+        LOG.debug("Cached item:", file, getName());
+        if (size.get() > getMaxWeight()) {
+            scheduleCleanup();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    protected byte[] removeSilent(final String key) {
+        return remove(NO_GROUP, key);
+    }
+
+    /**
+     * Removes an item of a group from the cache (on this node)
+     * @return the removed value or null if it wasn't cached
+     */
+    public byte[] remove(final String group, final String key) {
+        final Path file = getPath(group, key);
+        byte[] value = get(group, key);
+        try {
+            if (Files.exists(file)) {
+                delete(file, Files.size(file));
+            }
+        } catch (IOException e) {
+            LOG.warn(e, "Couldn't remove cached file:", file);
+        }
+        return value;
+    }
+
+    /**
+     * Removes all items of a group from the cache. The files are removed in the background, but they are
+     * no longer returned from the cache after this method returns.
+     */
+    public void removeGroup(final String group) {
+        moveAndDelete(root.resolve(sanitize(group)));
+    }
+
+    @Override
+    protected boolean flushSilent(final boolean force) {
+        if (!force) {
+            return scheduleCleanup();
+        }
+        LOG.info("Flushing cache! Cache:", getName());
+        boolean hadItems = size.get() > 0;
+        try (Stream<Path> children = Files.list(root)) {
+            children.filter(p -> !p.getFileName().toString().startsWith(DELETED_PREFIX))
+                    .forEach(this::moveAndDelete);
+        } catch (IOException e) {
+            LOG.warn(e, "Couldn't flush cache directory:", root);
+        }
+        return hadItems;
+    }
+
+    /**
+     * @return number of files in the cache. Kept up to date on writes and removals and recalculated by
+     * the background cleanup, so removed groups are counted until the cleanup has run.
+     */
+    @Override
+    public long getSize() {
+        return count.get();
+    }
+
+    /**
+     * Listing the keys would mean walking the whole directory tree so they are not listed.
+     * @return empty set
+     */
+    @Override
+    public Set<String> getKeys() {
+        return Collections.emptySet();
+    }
+
+    /**
+     * @return bytes used by the cached files, like getSize() removed groups are counted until the cleanup has run
+     */
+    @Override
+    public long getWeight() {
+        return size.get();
+    }
+
+    @Override
+    public long getTimeToExpirationMs() {
+        return getExpiration();
+    }
+
+    private Path getPath(String group, String key) {
+        Path path = root.resolve(sanitize(group));
+        for (String part : key.split("/")) {
+            path = path.resolve(sanitize(part));
+        }
+        return path;
+    }
+
+    /**
+     * Keep file names portable and don't allow moving around the directory tree with the key
+     */
+    private static String sanitize(String part) {
+        if (part == null || part.isEmpty()) {
+            return NO_GROUP;
+        }
+        String name = part.replaceAll("[^A-Za-z0-9_.-]", "_");
+        if (name.startsWith(".")) {
+            name = "_" + name;
+        }
+        if (name.endsWith(TMP_SUFFIX)) {
+            name = name + "_";
+        }
+        return name;
+    }
+
+    private boolean isExpired(BasicFileAttributes attrs) {
+        long expiration = getExpiration();
+        return expiration > 0 && attrs.lastModifiedTime().toMillis() + expiration < System.currentTimeMillis();
+    }
+
+    private static void move(Path from, Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void delete(Path file, long fileSize) {
+        try {
+            if (Files.deleteIfExists(file)) {
+                size.addAndGet(-fileSize);
+                count.decrementAndGet();
+            }
+        } catch (IOException e) {
+            LOG.warn(e, "Couldn't remove cached file:", file);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+            // nothing to do, cleanup will try again
+        }
+    }
+
+    /**
+     * Renames the file/directory so it's no longer found with its key and deletes it in the background
+     */
+    private void moveAndDelete(Path path) {
+        if (!Files.exists(path)) {
+            return;
+        }
+        Path deleted = root.resolve(DELETED_PREFIX + UUID.randomUUID());
+        try {
+            Files.move(path, deleted, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn(e, "Couldn't remove from cache:", path);
+            return;
+        }
+        CLEANER.submit(() -> {
+            deleteTree(deleted);
+            scheduleCleanup();
+        });
+    }
+
+    private static void deleteTree(Path path) {
+        try {
+            Files.walkFileTree(path, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Files.deleteIfExists(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                    Files.deleteIfExists(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            LOG.warn(e, "Couldn't delete:", path);
+        }
+    }
+
+    /**
+     * @return false if cleanup was already running
+     */
+    private boolean scheduleCleanup() {
+        if (!cleanupRunning.compareAndSet(false, true)) {
+            return false;
+        }
+        CLEANER.submit(() -> {
+            try {
+                cleanup();
+            } catch (Exception e) {
+                LOG.warn(e, "Cleanup failed for cache:", getName());
+            } finally {
+                cleanupRunning.set(false);
+            }
+        });
+        return true;
+    }
+
+    private void cleanup() {
+        // leftovers from removals that were interrupted by shutdown
+        try (Stream<Path> children = Files.list(root)) {
+            children.filter(p -> p.getFileName().toString().startsWith(DELETED_PREFIX))
+                    .forEach(DiskCache::deleteTree);
+        } catch (IOException e) {
+            LOG.warn(e, "Couldn't list cache directory:", root);
+        }
+        List<CachedFile> files = getFiles();
+        long total = 0;
+        List<CachedFile> valid = new ArrayList<>(files.size());
+        for (CachedFile f : files) {
+            if (isExpired(f.attrs)) {
+                deleteQuietly(f.path);
+            } else {
+                valid.add(f);
+                total += f.attrs.size();
+            }
+        }
+        final long target = (long) (getMaxWeight() * CLEANUP_TARGET_RATIO);
+        long remaining = valid.size();
+        if (total > getMaxWeight()) {
+            valid.sort(Comparator.comparing(f -> f.attrs.lastModifiedTime()));
+            for (CachedFile f : valid) {
+                if (total <= target) {
+                    break;
+                }
+                deleteQuietly(f.path);
+                total -= f.attrs.size();
+                remaining--;
+            }
+        }
+        size.set(total);
+        count.set(remaining);
+        LOG.debug("Cache", getName(), "size after cleanup:", total);
+    }
+
+    private List<CachedFile> getFiles() {
+        final List<CachedFile> files = new ArrayList<>();
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if (dir.getFileName().toString().startsWith(DELETED_PREFIX)) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (file.getFileName().toString().endsWith(TMP_SUFFIX)) {
+                        // leftovers from interrupted writes
+                        if (attrs.lastModifiedTime().toMillis() + 60000L < System.currentTimeMillis()) {
+                            deleteQuietly(file);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                    files.add(new CachedFile(file, attrs));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    // removed while walking
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            LOG.warn(e, "Couldn't list cache directory:", root);
+        }
+        return files;
+    }
+
+    private static final class CachedFile {
+        private final Path path;
+        private final BasicFileAttributes attrs;
+
+        private CachedFile(Path path, BasicFileAttributes attrs) {
+            this.path = path;
+            this.attrs = attrs;
+        }
+    }
+}
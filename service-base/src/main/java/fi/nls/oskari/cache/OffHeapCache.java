@@ -0,0 +1,355 @@
+package fi.nls.oskari.cache;
+
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Cache for byte arrays (like gzipped vector tiles) that keeps the bytes outside the Java heap.
+ *
+ * The size of the cache is given in bytes as the max weight of the cache and can be configured with
+ * {@link Cache#PROPERTY_MAX_WEIGHT_PREFIX}[cachename]. The bytes are written one after another to direct
+ * ByteBuffer segments that are used as a ring: when the cache is full the oldest writes are overwritten.
+ * Items that are read while they are in the oldest quarter of the ring are written again to the head of
+ * the ring so frequently used items are kept and the eviction order approximates LRU instead of FIFO.
+ * Only the index (key -> position) is kept in heap. Items can be grouped (for example by layer id) to get
+ * hit/miss statistics and to drop all items of a group at once.
+ */
+public class OffHeapCache extends Cache<byte[]> {
+
+    private static final Logger LOG = LogFactory.getLogger(OffHeapCache.class);
+    private static final int MAX_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final String NO_GROUP = "";
+
+    private final ConcurrentHashMap<String, Slot> index = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, byte[]> tmp = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Stats> stats = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+    private volatile LongSupplier nanoClock = System::nanoTime;
+
+    // allocated on first write so the max weight can still be configured by properties after constructor
+    private ByteBuffer[] segments;
+    private int segmentSize;
+    private long capacity;
+    private long writePos = 0;
+    // end position of the latest write, items before (reserved - capacity) have been overwritten
+    private volatile long reserved = 0;
+
+    public OffHeapCache(long maxBytes, long expiration) {
+        super();
+        setLimit(Integer.MAX_VALUE);
+        setMaxWeight(maxBytes);
+        setExpiration(expiration);
+    }
+
+    @Override
+    public byte[] get(final String key) {
+        return get(NO_GROUP, key);
+    }
+
+    /**
+     * For tests: source of time in nanoseconds, defaults to System.nanoTime()
+     */
+    @Override
+    void setClock(LongSupplier nanoClock) {
+        super.setClock(nanoClock);
+        this.nanoClock = nanoClock;
+    }
+
+    public byte[] get(final String group, final String key) {
+        byte[] value = read(key);
+        Stats s = getStats(group);
+        if (value == null) {
+            s.misses.increment();
+        } else {
+            s.hits.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Returns the cached value or computes it with mappingFunction. Concurrent requests for the same key
+     * wait for the single computation instead of computing the value again.
+     */
+    public byte[] get(final String group, final String key, final Function<String, byte[]> mappingFunction) {
+        byte[] value = get(group, key);
+        if (value != null) {
+            return value;
+        }
+
+        final AtomicBoolean b = new AtomicBoolean(false);
+        value = tmp.computeIfAbsent(key, (String k) -> {
+            // Re-check the cache - maybe someone just completed this
+            byte[] val = read(k);
+            if (val != null) {
+                return val;
+            }
+            b.set(true);
+            return mappingFunction.apply(k);
+        });
+
+        if (b.get()) {
+            put(group, key, value);
+            tmp.remove(key);
+        }
+        return value;
+    }
+
+    @Override
+    public boolean put(final String key, final byte[] value) {
+        return put(NO_GROUP, key, value);
+    }
+
+    /**
+     * @return true if older items were overwritten to make room for this one
+     */
+    public boolean put(final String group, final String key, final byte[] value) {
+        if (value == null) {
+            remove(key);
+            return false;
+        }
+        boolean overwrote;
+        synchronized (writeLock) {
+            if (segments == null) {
+                allocate();
+            }
+            if (value.length > segmentSize) {
+                LOG.debug("Item too large for cache:", key, value.length, getName());
+                return false;
+            }
+            final long start = write(value);
+            index.put(key, new Slot(group, start, value.length, currentTime()));
+            overwrote = writePos > capacity;
+            removeOverwritten(start);
+        }
+        LOG.debug("Cached item:", key, getName());
+        return overwrote;
+    }
+
+    /**
+     * Writes the value to the head of the ring. Callers must hold writeLock and check that the value fits
+     * a segment. Callers should index the value and then call removeOverwritten().
+     * @return position of the value
+     */
+    private long write(final byte[] value) {
+        final int len = value.length;
+        long start = writePos;
+        int offset = getOffset(start);
+        if (offset + len > segmentSize) {
+            // doesn't fit to the end of current segment -> start from the beginning of next one
+            start += segmentSize - offset;
+            offset = 0;
+        }
+        final long end = start + len;
+        // mark the range as reserved before writing so readers notice items being overwritten
+        reserved = end;
+        VarHandle.storeStoreFence();
+        ByteBuffer segment = getSegment(start);
+        if (segment == null) {
+            segment = ByteBuffer.allocateDirect(segmentSize);
+            segments[getSegmentIndex(start)] = segment;
+        }
+        segment.put(offset, value, 0, len);
+        writePos = end;
+        return start;
+    }
+
+    // callers must hold writeLock
+    private void removeOverwritten(final long start) {
+        if (getOffset(start) == 0 && start >= capacity) {
+            // started reusing a segment, drop index entries pointing to it
+            index.values().removeIf(slot -> !isValid(slot));
+        }
+    }
+
+    @Override
+    protected byte[] removeSilent(final String key) {
+        Slot slot = index.remove(key);
+        LOG.debug("Removed cached item:", key, getName());
+        return slot == null ? null : copy(slot);
+    }
+
+    /**
+     * Removes all items of a group from the cache (on this node).
+     */
+    public void removeGroup(final String group) {
+        index.values().removeIf(slot -> slot.group.equals(group));
+    }
+
+    @Override
+    protected boolean flushSilent(final boolean force) {
+        if (force) {
+            LOG.info("Flushing cache! Cache:", getName());
+            boolean hadItems = !index.isEmpty();
+            index.clear();
+            return hadItems;
+        }
+        int before = index.size();
+        index.values().removeIf(slot -> isExpired(slot) || !isValid(slot));
+        return before != index.size();
+    }
+
+    /**
+     * @return number of items that haven't been overwritten yet (index entries of overwritten items are only
+     * dropped when a segment is reused or the item is read)
+     */
+    @Override
+    public long getSize() {
+        return index.values().stream().filter(this::isValid).count();
+    }
+
+    @Override
+    public Set<String> getKeys() {
+        return Collections.unmodifiableSet(index.keySet());
+    }
+
+    /**
+     * @return bytes used by the ring buffer
+     */
+    @Override
+    public long getWeight() {
+        synchronized (writeLock) {
+            return Math.min(writePos, capacity);
+        }
+    }
+
+    @Override
+    public long getTimeToExpirationMs() {
+        return getExpiration();
+    }
+
+    /**
+     * @return hits and misses per group
+     */
+    public Map<String, Stats> getStats() {
+        return new HashMap<>(stats);
+    }
+
+    private Stats getStats(String group) {
+        return stats.computeIfAbsent(group, __ -> new Stats());
+    }
+
+    private byte[] read(String key) {
+        Slot slot = index.get(key);
+        if (slot == null) {
+            return null;
+        }
+        if (isExpired(slot)) {
+            index.remove(key, slot);
+            return null;
+        }
+        byte[] value = copy(slot);
+        if (value == null) {
+            index.remove(key, slot);
+        } else if (slot.position + capacity - capacity / 4 < reserved) {
+            // item is in the quarter of the ring that is overwritten next
+            promote(key, slot, value);
+        }
+        return value;
+    }
+
+    /**
+     * Writes an item that was just read to the head of the ring so it isn't overwritten before the items
+     * that haven't been used since they were written.
+     */
+    private void promote(String key, Slot slot, byte[] value) {
+        synchronized (writeLock) {
+            if (index.get(key) != slot || !isValid(slot)) {
+                // removed, replaced or overwritten after we read it
+                return;
+            }
+            final long start = write(value);
+            // keep the original write time for expiration
+            index.replace(key, slot, new Slot(slot.group, start, value.length, slot.written));
+            removeOverwritten(start);
+        }
+    }
+
+    private byte[] copy(Slot slot) {
+        if (!isValid(slot)) {
+            return null;
+        }
+        byte[] value = new byte[slot.length];
+        getSegment(slot.position).get(getOffset(slot.position), value, 0, slot.length);
+        VarHandle.loadLoadFence();
+        // check that the bytes weren't overwritten while we were copying them
+        return isValid(slot) ? value : null;
+    }
+
+    private boolean isValid(Slot slot) {
+        return reserved <= slot.position + capacity;
+    }
+
+    private boolean isExpired(Slot slot) {
+        long expiration = getExpiration();
+        return expiration > 0 && slot.written + expiration < currentTime();
+    }
+
+    // callers must hold writeLock
+    private void allocate() {
+        long maxBytes = getMaxWeight();
+        if (maxBytes <= 0) {
+            throw new IllegalStateException("Max weight (bytes) must be set for cache " + getName());
+        }
+        // split into equally sized segments so the whole max weight is used (rounded up to full segments)
+        int segmentCount = (int) ((maxBytes + MAX_SEGMENT_SIZE - 1) / MAX_SEGMENT_SIZE);
+        segmentSize = (int) ((maxBytes + segmentCount - 1) / segmentCount);
+        capacity = (long) segmentCount * segmentSize;
+        segments = new ByteBuffer[segmentCount];
+        LOG.info("Off-heap cache", getName(), "using", capacity, "bytes in", segmentCount, "segments");
+    }
+
+    private ByteBuffer getSegment(long position) {
+        return segments[getSegmentIndex(position)];
+    }
+
+    private int getSegmentIndex(long position) {
+        return (int) ((position % capacity) / segmentSize);
+    }
+
+    private int getOffset(long position) {
+        return (int) ((position % capacity) % segmentSize);
+    }
+
+    private long currentTime() {
+        return nanoClock.getAsLong() / 1000000L;
+    }
+
+    private static final class Slot {
+        private final String group;
+        private final long position;
+        private final int length;
+        private final long written;
+
+        private Slot(String group, long position, int length, long written) {
+            this.group = group;
+            this.position = position;
+            this.length = length;
+            this.written = written;
+        }
+    }
+
+    public static final class Stats {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+
+        public long getHits() {
+            return hits.sum();
+        }
+
+        public long getMisses() {
+            return misses.sum();
+        }
+    }
+}
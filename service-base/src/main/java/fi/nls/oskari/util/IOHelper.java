@@ -222,6 +222,17 @@ public class IOHelper {
         }
     }
 
+    /**
+     * Returns the InputStream of HttpURLConnection, unzipped if the response is gzip encoded.
+     * Useful for parsing the response as a stream instead of reading it to memory first.
+     * @param conn used to get inputstream and detect possible gzip encoding
+     * @throws IOException
+     */
+    public static InputStream getDecodedInputStream(HttpURLConnection conn) throws IOException {
+        InputStream in = conn.getInputStream();
+        return isResponseGZIPd(conn) ? new GZIPInputStream(in) : in;
+    }
+
     private static boolean isResponseGZIPd(HttpURLConnection conn) {
         return ENCODING_GZIP.equals(conn.getContentEncoding());
     }
@@ -0,0 +1,59 @@
+package org.oskari.metrics;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Shared registry for application metrics (action route timers, upstream service timings etc).
+ *
+ * Metric names can carry labels in the form name{key="value",...} (see name()). PrometheusWriter writes
+ * them as Prometheus labels, for other reporters the labels are just a part of the name.
+ */
+public class OskariMetrics {
+
+    private static final MetricRegistry REGISTRY = new MetricRegistry();
+
+    private OskariMetrics() {}
+
+    public static MetricRegistry getRegistry() {
+        return REGISTRY;
+    }
+
+    /**
+     * @param name metric name
+     * @param labels label names and values in turns: "key1", "value1", "key2", "value2"
+     * @return name with labels like name{key1="value1",key2="value2"}
+     */
+    public static String name(String name, String... labels) {
+        if (labels.length == 0) {
+            return name;
+        }
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels should be given as key-value pairs");
+        }
+        StringBuilder sb = new StringBuilder(name).append('{');
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(labels[i]).append("=\"");
+            escape(sb, labels[i + 1]);
+            sb.append('"');
+        }
+        return sb.append('}').toString();
+    }
+
+    private static void escape(StringBuilder sb, String value) {
+        if (value == null) {
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\': sb.append("\\\\"); break;
+                case '"': sb.append("\\\""); break;
+                case '\n': sb.append("\\n"); break;
+                default: sb.append(c);
+            }
+        }
+    }
+}
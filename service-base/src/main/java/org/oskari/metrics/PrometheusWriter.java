@@ -0,0 +1,176 @@
+package org.oskari.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+/**
+ * Writes the metrics of a MetricRegistry in Prometheus text format (version 0.0.4).
+ *
+ * Labels in metric names (see OskariMetrics.name()) are written as labels, other characters that are not
+ * allowed in Prometheus metric names are replaced with "_". Timers are written as summaries in seconds
+ * and histograms as summaries of the raw values. Meters are written as counters.
+ */
+public class PrometheusWriter {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double[] QUANTILES = { 0.5, 0.75, 0.95, 0.99, 0.999 };
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final Writer out;
+    private String family;
+
+    private PrometheusWriter(Writer out) {
+        this.out = out;
+    }
+
+    public static void write(MetricRegistry registry, Writer out) throws IOException {
+        PrometheusWriter writer = new PrometheusWriter(out);
+        writer.writeGauges(registry.getGauges());
+        writer.writeCounters(registry.getCounters());
+        writer.writeMeters(registry.getMeters());
+        writer.writeHistograms(registry.getHistograms());
+        writer.writeTimers(registry.getTimers());
+        out.flush();
+    }
+
+    @SuppressWarnings("rawtypes")
+    private void writeGauges(SortedMap<String, Gauge> gauges) throws IOException {
+        for (Map.Entry<String, Gauge> e : gauges.entrySet()) {
+            Object value = e.getValue().getValue();
+            double d;
+            if (value instanceof Number) {
+                d = ((Number) value).doubleValue();
+            } else if (value instanceof Boolean) {
+                d = ((Boolean) value) ? 1 : 0;
+            } else {
+                // non-numeric gauges can't be written
+                continue;
+            }
+            String name = getName(e.getKey());
+            writeType(name, "gauge");
+            writeSample(name, getLabels(e.getKey()), null, d);
+        }
+    }
+
+    private void writeCounters(SortedMap<String, Counter> counters) throws IOException {
+        for (Map.Entry<String, Counter> e : counters.entrySet()) {
+            String name = getName(e.getKey());
+            writeType(name, "counter");
+            writeSample(name, getLabels(e.getKey()), null, e.getValue().getCount());
+        }
+    }
+
+    private void writeMeters(SortedMap<String, Meter> meters) throws IOException {
+        for (Map.Entry<String, Meter> e : meters.entrySet()) {
+            String name = getName(e.getKey()) + "_total";
+            writeType(name, "counter");
+            writeSample(name, getLabels(e.getKey()), null, e.getValue().getCount());
+        }
+    }
+
+    private void writeHistograms(SortedMap<String, Histogram> histograms) throws IOException {
+        for (Map.Entry<String, Histogram> e : histograms.entrySet()) {
+            writeSummary(e.getKey(), e.getValue().getSnapshot(), e.getValue().getCount(), 1);
+        }
+    }
+
+    private void writeTimers(SortedMap<String, Timer> timers) throws IOException {
+        for (Map.Entry<String, Timer> e : timers.entrySet()) {
+            writeSummary(e.getKey(), e.getValue().getSnapshot(), e.getValue().getCount(), NANOS_PER_SECOND);
+        }
+    }
+
+    private void writeSummary(String key, Snapshot snapshot, long count, double divisor) throws IOException {
+        String name = getName(key);
+        String labels = getLabels(key);
+        writeType(name, "summary");
+        for (double q : QUANTILES) {
+            writeSample(name, labels, "quantile=\"" + q + "\"", snapshot.getValue(q) / divisor);
+        }
+        writeSample(name + "_count", labels, null, count);
+    }
+
+    private void writeType(String name, String type) throws IOException {
+        if (name.equals(family)) {
+            return;
+        }
+        family = name;
+        out.write("# TYPE ");
+        out.write(name);
+        out.write(' ');
+        out.write(type);
+        out.write('\n');
+    }
+
+    private void writeSample(String name, String labels, String extraLabel, double value) throws IOException {
+        out.write(name);
+        if (labels != null || extraLabel != null) {
+            out.write('{');
+            if (labels != null) {
+                out.write(labels);
+            }
+            if (extraLabel != null) {
+                if (labels != null) {
+                    out.write(',');
+                }
+                out.write(extraLabel);
+            }
+            out.write('}');
+        }
+        out.write(' ');
+        out.write(format(value));
+        out.write('\n');
+    }
+
+    static String format(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    /**
+     * @return metric name without labels, with characters not allowed by Prometheus replaced
+     */
+    static String getName(String key) {
+        int labelStart = key.indexOf('{');
+        String name = labelStart < 0 ? key : key.substring(0, labelStart);
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == ':'
+                    || (i > 0 && c >= '0' && c <= '9');
+            sb.append(valid ? c : '_');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return labels of the metric name without the braces or null if there are none
+     */
+    static String getLabels(String key) {
+        int labelStart = key.indexOf('{');
+        if (labelStart < 0 || !key.endsWith("}") || labelStart + 2 > key.length() - 1) {
+            return null;
+        }
+        return key.substring(labelStart + 1, key.length() - 1);
+    }
+}
@@ -0,0 +1,175 @@
+package org.oskari.metrics;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+import fi.nls.oskari.util.PropertyUtil;
+
+/**
+ * Timings of requests made to other services (WFS, WMS/WMTS tiles, print, search channels, statistics
+ * datasources) by category and target (host of the service or id of the search channel/datasource) and
+ * optionally by layer. Usage:
+ *
+ *   UpstreamMetrics.Sample sample = UpstreamMetrics.start("tile", UpstreamMetrics.getHost(url)).layer(layerId);
+ *   con.connect();
+ *   sample.connected();
+ *   sample.firstByte(con.getResponseCode());
+ *   ...
+ *   sample.bytes(length);
+ *   sample.stop();
+ *
+ * Can be disabled with oskari.metrics.upstream=false
+ */
+public class UpstreamMetrics {
+
+    static final String CONNECT = "oskari_upstream_connect_seconds";
+    static final String FIRST_BYTE = "oskari_upstream_first_byte_seconds";
+    static final String REQUEST = "oskari_upstream_request_seconds";
+    static final String LAYER_REQUEST = "oskari_upstream_layer_request_seconds";
+    static final String RESPONSE_BYTES = "oskari_upstream_response_bytes";
+    static final String RESPONSES = "oskari_upstream_responses_total";
+    static final String CIRCUIT_BREAKER_STATE = "oskari_upstream_circuitbreaker_state";
+    static final String CIRCUIT_BREAKER_TRANSITIONS = "oskari_upstream_circuitbreaker_transitions_total";
+
+    public static final String STATUS_ERROR = "error";
+    public static final String STATUS_OK = "ok";
+
+    public static final String UNKNOWN = "unknown";
+    private static final boolean ENABLED = PropertyUtil.getOptional("oskari.metrics.upstream", true);
+    private static final Map<String, Set<IntSupplier>> CIRCUIT_BREAKERS = new ConcurrentHashMap<>();
+
+    private UpstreamMetrics() {}
+
+    /**
+     * Starts timing a request
+     * @param category type of the request like "wfs" or "search"
+     * @param target host of the service or other id for it
+     */
+    public static Sample start(String category, String target) {
+        return new Sample(category, target == null ? UNKNOWN : target);
+    }
+
+    /**
+     * @return host (and port if given) of the url or "unknown"
+     */
+    public static String getHost(String url) {
+        try {
+            String authority = URI.create(url.trim()).getRawAuthority();
+            if (authority == null) {
+                return UNKNOWN;
+            }
+            // drop possible credentials
+            return authority.substring(authority.lastIndexOf('@') + 1);
+        } catch (Exception e) {
+            return UNKNOWN;
+        }
+    }
+
+    /**
+     * Registers a gauge for the state of a circuit breaker. Several circuit breakers can share a name
+     * (like circuit breakers for different services on the same host) and the gauge then reports the highest
+     * state of them.
+     * @param group group of the circuit breakers like "wfs" or "print"
+     * @param name host of the service or other label with a limited number of values, never a full url
+     * @param state returns the state as number (0 = closed, 1 = open, 2 = half open etc)
+     */
+    public static void registerCircuitBreaker(String group, String name, IntSupplier state) {
+        String metric = OskariMetrics.name(CIRCUIT_BREAKER_STATE, "group", group, "name", name);
+        CIRCUIT_BREAKERS.computeIfAbsent(metric, m -> {
+            Set<IntSupplier> states = ConcurrentHashMap.newKeySet();
+            OskariMetrics.getRegistry().gauge(m,
+                    () -> (Gauge<Integer>) () -> states.stream().mapToInt(IntSupplier::getAsInt).max().orElse(0));
+            return states;
+        }).add(state);
+    }
+
+    /**
+     * Counts state transitions of a circuit breaker
+     */
+    public static void circuitBreakerTransition(String group, String name, String toState) {
+        OskariMetrics.getRegistry().counter(OskariMetrics.name(CIRCUIT_BREAKER_TRANSITIONS,
+                "group", group, "name", name, "state", toState)).inc();
+    }
+
+    public static class Sample {
+        private final String category;
+        private final String target;
+        private final long start;
+        private String layer;
+
+        private Sample(String category, String target) {
+            this.category = category;
+            this.target = target;
+            this.start = System.nanoTime();
+        }
+
+        /**
+         * Also time the request by layer
+         */
+        public Sample layer(Object layerId) {
+            this.layer = layerId == null ? null : layerId.toString();
+            return this;
+        }
+
+        /**
+         * Call when the connection has been opened
+         */
+        public void connected() {
+            time(CONNECT);
+        }
+
+        /**
+         * Call when the response code has been received
+         */
+        public void firstByte(int statusCode) {
+            time(FIRST_BYTE);
+            status(Integer.toString(statusCode));
+        }
+
+        /**
+         * Counts the response by given status (HTTP status code, STATUS_OK, STATUS_ERROR etc)
+         */
+        public void status(String status) {
+            if (!ENABLED) {
+                return;
+            }
+            OskariMetrics.getRegistry().counter(OskariMetrics.name(RESPONSES,
+                    "category", category, "target", target, "status", status)).inc();
+        }
+
+        public void bytes(long bytes) {
+            if (!ENABLED || bytes < 0) {
+                return;
+            }
+            OskariMetrics.getRegistry().histogram(OskariMetrics.name(RESPONSE_BYTES,
+                    "category", category, "target", target)).update(bytes);
+        }
+
+        /**
+         * Call when the request is done (also on failure)
+         */
+        public void stop() {
+            time(REQUEST);
+            if (ENABLED && layer != null) {
+                OskariMetrics.getRegistry().timer(OskariMetrics.name(LAYER_REQUEST, "category", category, "layer", layer))
+                        .update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        private void time(String name) {
+            if (!ENABLED) {
+                return;
+            }
+            MetricRegistry registry = OskariMetrics.getRegistry();
+            registry.timer(OskariMetrics.name(name, "category", category, "target", target))
+                    .update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
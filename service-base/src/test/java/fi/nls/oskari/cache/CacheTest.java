@@ -6,6 +6,9 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Simple tests for cache.
  */
@@ -78,4 +81,87 @@ public class CacheTest {
         Assertions.assertTrue(cache.isTimeToFlush(last + expiration + 10), "Cache lastFlush + expiration + 10 should be cleared for flush");
     }
 
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        Cache<String> cache = CacheManager.getCache("LeastRecentlyUsed");
+        cache.setLimit(3);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+        // reading "a" makes "b" the least recently used item
+        Assertions.assertEquals("1", cache.get("a"));
+        Assertions.assertTrue(cache.put("d", "4"), "Overflowing");
+        Assertions.assertNull(cache.get("b"), "Least recently used item should have been evicted");
+        Assertions.assertEquals("1", cache.get("a"));
+        Assertions.assertEquals(3, cache.getSize(), "Cache size should be 3");
+    }
+
+    @Test
+    public void testItemsExpireIndividually() {
+        AtomicLong now = new AtomicLong();
+        Cache<String> cache = CacheManager.getCache("ItemsExpireIndividually");
+        cache.setClock(now::get);
+        cache.setExpiration(100);
+        cache.put("old", "value");
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(60));
+        cache.put("new", "value");
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(60));
+        Assertions.assertNull(cache.get("old"), "Item older than expiration should be removed");
+        Assertions.assertEquals("value", cache.get("new"), "Newer item should still be cached");
+        Assertions.assertEquals(1, cache.getSize(), "Cache size should be 1");
+    }
+
+    @Test
+    public void testTimeToExpiration() {
+        AtomicLong now = new AtomicLong();
+        Cache<String> cache = CacheManager.getCache("TimeToExpiration");
+        cache.setClock(now::get);
+        cache.setExpiration(1000);
+        Assertions.assertEquals(1000, cache.getTimeToExpirationMs(), "Expiration time when empty");
+        cache.put("first", "value");
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(300));
+        cache.put("second", "value");
+        // reading makes "first" the most recently used, but it still expires first
+        cache.get("first");
+        Assertions.assertEquals(700, cache.getTimeToExpirationMs());
+    }
+
+    @Test
+    public void testEvictionAcrossKeys() {
+        Cache<String> cache = CacheManager.getCache("EvictionAcrossKeys");
+        cache.setLimit(50);
+        for (int i = 0; i < 100; i++) {
+            cache.put("key" + i, "value");
+            // keep the first key in use
+            Assertions.assertEquals("value", cache.get("key0"));
+        }
+        Assertions.assertEquals(50, cache.getSize(), "Cache size should be the limit");
+        Assertions.assertEquals("value", cache.get("key0"), "Recently used item should be kept");
+        Assertions.assertNull(cache.get("key1"), "Least recently used item should be evicted");
+        Assertions.assertEquals("value", cache.get("key99"));
+    }
+
+    @Test
+    public void testMaxWeight() {
+        Cache<byte[]> cache = CacheManager.getCache("MaxWeight");
+        cache.setMaxWeight(100);
+        cache.put("a", new byte[40]);
+        cache.put("b", new byte[40]);
+        Assertions.assertEquals(80, cache.getWeight(), "Byte arrays should weigh their length");
+        cache.put("c", new byte[40]);
+        Assertions.assertNull(cache.get("a"), "Oldest item should be evicted when max weight is exceeded");
+        Assertions.assertEquals(2, cache.getSize(), "Cache size should be 2");
+        Assertions.assertEquals(80, cache.getWeight(), "Weight should match cached items");
+        cache.remove("b");
+        Assertions.assertEquals(40, cache.getWeight(), "Weight should be updated on removal");
+    }
+
+    @Test
+    public void testMaxWeightWithProperty() throws Exception {
+        final String cacheName = "MaxWeightWithProperty";
+        PropertyUtil.addProperty(Cache.PROPERTY_MAX_WEIGHT_PREFIX + cacheName, "10");
+        Cache<String> cache = CacheManager.getCache(cacheName);
+        cache.setMaxWeight(100);
+        Assertions.assertEquals(10, cache.getMaxWeight(), "Max weight prefers property config");
+    }
 }
@@ -0,0 +1,123 @@
+package fi.nls.oskari.cache;
+
+import fi.nls.oskari.util.PropertyUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+public class DiskCacheTest {
+
+    @TempDir
+    Path dir;
+
+    @AfterEach
+    public void teardown() {
+        PropertyUtil.clearProperties();
+    }
+
+    @Test
+    public void testPutAndGet() {
+        DiskCache cache = new DiskCache(dir, 1024, 60000);
+        byte[] value = bytes(100, 1);
+        cache.put("1", "EPSG:3067/8/10/12", value);
+        Assertions.assertArrayEquals(value, cache.get("1", "EPSG:3067/8/10/12"));
+        Assertions.assertTrue(Files.exists(dir.resolve("1/EPSG_3067/8/10/12")), "Files should be stored as a tree");
+        Assertions.assertNull(cache.get("1", "EPSG:3067/8/10/13"));
+        Assertions.assertEquals(100, cache.getWeight());
+    }
+
+    @Test
+    public void testPutNullRemovesFromGroup() {
+        DiskCache cache = new DiskCache(dir, 1024, 60000);
+        cache.put("1", "a", bytes(10, 1));
+        cache.put("a", bytes(10, 2));
+        cache.put("1", "a", null);
+        Assertions.assertNull(cache.get("1", "a"), "Item of the group should be removed");
+        Assertions.assertArrayEquals(bytes(10, 2), cache.get("a"), "Item with the same key outside the group should be kept");
+    }
+
+    @Test
+    public void testSurvivesRestart() {
+        new DiskCache(dir, 1024, 60000).put("1", "a/b", bytes(10, 1));
+        DiskCache cache = new DiskCache(dir, 1024, 60000);
+        Assertions.assertArrayEquals(bytes(10, 1), cache.get("1", "a/b"));
+    }
+
+    @Test
+    public void testKeyCantEscapeRoot() {
+        DiskCache cache = new DiskCache(dir.resolve("cache"), 1024, 60000);
+        cache.put("..", "../../x", bytes(10, 1));
+        Assertions.assertFalse(Files.exists(dir.resolve("x")));
+        Assertions.assertArrayEquals(bytes(10, 1), cache.get("..", "../../x"));
+    }
+
+    @Test
+    public void testExpiration() throws Exception {
+        DiskCache cache = new DiskCache(dir, 1024, 60000);
+        cache.put("1", "a", bytes(10, 1));
+        Files.setLastModifiedTime(dir.resolve("1/a"), FileTime.fromMillis(System.currentTimeMillis() - 120000));
+        Assertions.assertNull(cache.get("1", "a"), "File older than expiration should be a miss");
+        Assertions.assertFalse(Files.exists(dir.resolve("1/a")), "Expired file should be removed");
+    }
+
+    @Test
+    public void testRemoveGroup() {
+        DiskCache cache = new DiskCache(dir, 1024, 60000);
+        cache.put("1", "a", bytes(10, 1));
+        cache.put("2", "a", bytes(10, 2));
+        cache.removeGroup("1");
+        Assertions.assertNull(cache.get("1", "a"));
+        Assertions.assertArrayEquals(bytes(10, 2), cache.get("2", "a"));
+        cache.flush(true);
+        Assertions.assertNull(cache.get("2", "a"));
+    }
+
+    @Test
+    public void testCleanupWhenFull() throws Exception {
+        DiskCache large = new DiskCache(dir, 100000, 60000);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 15; i++) {
+            large.put("1", "key" + i, bytes(100, i));
+            Files.setLastModifiedTime(dir.resolve("1/key" + i), FileTime.fromMillis(now - (15 - i) * 1000L));
+        }
+        // cleanup runs in the background on startup
+        DiskCache cache = new DiskCache(dir, 1000, 60000);
+        for (int i = 0; i < 50 && cache.getWeight() == 0; i++) {
+            Thread.sleep(50);
+        }
+        Assertions.assertTrue(cache.getWeight() <= 900, "Cache should shrink under max size: " + cache.getWeight());
+        Assertions.assertNull(cache.get("1", "key0"), "Oldest files should be removed");
+        Assertions.assertArrayEquals(bytes(100, 14), cache.get("1", "key14"));
+    }
+
+    @Test
+    public void testSizeIsCountedWithoutListingFiles() throws Exception {
+        new DiskCache(dir, 1024, 60000).put("1", "a", bytes(10, 1));
+        // files from previous runs are counted in the background on startup
+        DiskCache cache = new DiskCache(dir, 1024, 60000);
+        for (int i = 0; i < 50 && cache.getSize() == 0; i++) {
+            Thread.sleep(50);
+        }
+        Assertions.assertEquals(1, cache.getSize());
+        cache.put("1", "b", bytes(10, 2));
+        cache.put("1", "b", bytes(20, 2));
+        Assertions.assertEquals(2, cache.getSize(), "Replacing a file shouldn't change the count");
+        Assertions.assertEquals(30, cache.getWeight());
+        cache.remove("1", "a");
+        Assertions.assertEquals(1, cache.getSize());
+        Assertions.assertEquals(20, cache.getWeight());
+        Assertions.assertTrue(cache.getKeys().isEmpty(), "Keys shouldn't be listed from disk");
+    }
+
+    private static byte[] bytes(int length, int value) {
+        byte[] b = new byte[length];
+        Arrays.fill(b, (byte) value);
+        return b;
+    }
+}
@@ -0,0 +1,126 @@
+package fi.nls.oskari.cache;
+
+import fi.nls.oskari.util.PropertyUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class OffHeapCacheTest {
+
+    @AfterEach
+    public void teardown() {
+        PropertyUtil.clearProperties();
+    }
+
+    @Test
+    public void testPutAndGet() {
+        OffHeapCache cache = CacheManager.getCache("OffHeapPutAndGet", () -> new OffHeapCache(1024, 60000));
+        byte[] value = bytes(100, 1);
+        cache.put("layer1", "a", value);
+        Assertions.assertArrayEquals(value, cache.get("layer1", "a"));
+        Assertions.assertNull(cache.get("layer1", "b"));
+        Assertions.assertEquals(1, cache.getSize());
+
+        OffHeapCache.Stats stats = cache.getStats().get("layer1");
+        Assertions.assertEquals(1, stats.getHits());
+        Assertions.assertEquals(1, stats.getMisses());
+    }
+
+    @Test
+    public void testOldestItemsAreOverwritten() {
+        OffHeapCache cache = CacheManager.getCache("OffHeapOverwrite", () -> new OffHeapCache(1000, 60000));
+        for (int i = 0; i < 15; i++) {
+            cache.put("layer", "key" + i, bytes(100, i));
+        }
+        // 1000 bytes fits 10 items of 100 bytes -> 0-4 have been overwritten
+        Assertions.assertEquals(10, cache.getSize(), "Overwritten items aren't counted");
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertNull(cache.get("key" + i), "Item should have been overwritten: " + i);
+        }
+        for (int i = 5; i < 15; i++) {
+            Assertions.assertArrayEquals(bytes(100, i), cache.get("key" + i), "Item should be cached: " + i);
+        }
+    }
+
+    @Test
+    public void testReadItemsAreKept() {
+        OffHeapCache cache = CacheManager.getCache("OffHeapReadItemsAreKept", () -> new OffHeapCache(1000, 60000));
+        for (int i = 0; i < 10; i++) {
+            cache.put("layer", "key" + i, bytes(100, i));
+        }
+        // reading the oldest item moves it to the head of the ring
+        Assertions.assertArrayEquals(bytes(100, 0), cache.get("key0"));
+        for (int i = 10; i < 15; i++) {
+            cache.put("layer", "key" + i, bytes(100, i));
+        }
+        Assertions.assertArrayEquals(bytes(100, 0), cache.get("key0"), "Recently read item should be kept");
+        for (int i = 1; i < 6; i++) {
+            Assertions.assertNull(cache.get("key" + i), "Item should have been overwritten: " + i);
+        }
+    }
+
+    @Test
+    public void testMaxWeightWithProperty() throws Exception {
+        final String cacheName = "OffHeapMaxWeightWithProperty";
+        PropertyUtil.addProperty(Cache.PROPERTY_MAX_WEIGHT_PREFIX + cacheName, "200");
+        OffHeapCache cache = CacheManager.getCache(cacheName, () -> new OffHeapCache(1024 * 1024, 60000));
+        Assertions.assertEquals(200, cache.getMaxWeight());
+        cache.put("a", bytes(150, 1));
+        cache.put("b", bytes(150, 2));
+        Assertions.assertNull(cache.get("a"), "First item should have been overwritten");
+        Assertions.assertArrayEquals(bytes(150, 2), cache.get("b"));
+        Assertions.assertFalse(cache.put("c", bytes(300, 3)), "Items larger than the cache are not cached");
+        Assertions.assertNull(cache.get("c"));
+    }
+
+    @Test
+    public void testRemoveGroup() {
+        OffHeapCache cache = CacheManager.getCache("OffHeapRemoveGroup", () -> new OffHeapCache(1024, 60000));
+        cache.put("layer1", "a", bytes(10, 1));
+        cache.put("layer2", "b", bytes(10, 2));
+        cache.removeGroup("layer1");
+        Assertions.assertNull(cache.get("a"));
+        Assertions.assertNotNull(cache.get("b"));
+        cache.flush(true);
+        Assertions.assertNull(cache.get("b"));
+        Assertions.assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testExpiration() {
+        OffHeapCache cache = CacheManager.getCache("OffHeapExpiration", () -> new OffHeapCache(1024, 50));
+        AtomicLong now = new AtomicLong();
+        cache.setClock(now::get);
+        cache.put("a", bytes(10, 1));
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(40));
+        Assertions.assertArrayEquals(bytes(10, 1), cache.get("a"), "Item shouldn't have expired yet");
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(20));
+        Assertions.assertNull(cache.get("a"), "Item should have expired");
+        Assertions.assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testComputeOnce() {
+        OffHeapCache cache = CacheManager.getCache("OffHeapComputeOnce", () -> new OffHeapCache(1024, 60000));
+        AtomicInteger calls = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            byte[] value = cache.get("layer", "a", __ -> {
+                calls.incrementAndGet();
+                return bytes(10, 1);
+            });
+            Assertions.assertArrayEquals(bytes(10, 1), value);
+        }
+        Assertions.assertEquals(1, calls.get(), "Value should be computed once");
+    }
+
+    private static byte[] bytes(int length, int value) {
+        byte[] b = new byte[length];
+        Arrays.fill(b, (byte) value);
+        return b;
+    }
+}
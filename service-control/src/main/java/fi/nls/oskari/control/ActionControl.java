@@ -6,6 +6,7 @@ import com.codahale.metrics.Timer;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.util.PropertyUtil;
+import org.oskari.metrics.OskariMetrics;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -31,10 +32,8 @@ public class ActionControl {
 
     private static final boolean GATHER_METRICS = PropertyUtil.getOptional("actioncontrol.metrics", true);
 
-    private static final MetricRegistry METRIC_REGISTRY = new MetricRegistry();
-
     public static MetricRegistry getMetrics() {
-        return METRIC_REGISTRY;
+        return OskariMetrics.getRegistry();
     }
 
     /**
@@ -125,7 +124,7 @@ public class ActionControl {
             if(GATHER_METRICS) {
                 final Meter actionMeter = getMetrics().meter(METRICS_PREFIX);
                 actionMeter.mark();
-                final com.codahale.metrics.Timer timer = METRIC_REGISTRY.timer(METRICS_PREFIX + "." + action);
+                final com.codahale.metrics.Timer timer = getMetrics().timer(METRICS_PREFIX + "." + action);
                 actionTimer = timer.time();
             }
 
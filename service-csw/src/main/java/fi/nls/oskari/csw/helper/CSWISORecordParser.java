@@ -20,6 +20,9 @@ import java.util.*;
 /**
  * Helper class for parsing search results for MetadataCatalogue:
  * Created by TMIKKOLAINEN on 2.9.2014.
+ *
+ * Compiling the XPath expressions is the expensive part so instances should be reused. Instances are not
+ * thread-safe: use one from a single thread at a time.
  */
 public class CSWISORecordParser {
 
@@ -92,6 +95,8 @@ public class CSWISORecordParser {
     private XPathExpression XPATH_METADATA_DATE = null;
     private XPathExpression XPATH_METADATA_REFERENCESYSTEM = null;
     private XPathExpression XPATH_CHARACTER_STRING = null;
+    // compiled localized value paths by gmd:PT_Locale id
+    private final Map<String, XPathExpression> localizedValuePaths = new HashMap<>();
 
     public CSWISORecordParser() throws XPathExpressionException {
         xpath.setNamespaceContext(new CSWISORecordNamespaceContext());
@@ -275,8 +280,7 @@ public class CSWISORecordParser {
         String value;
         XPathExpression pathToLocalizedValue = null;
         if (locales != null && locales.containsKey(locale.getISO3Language())) {
-            pathToLocalizedValue = xpath.compile(
-                    "../gmd:PT_FreeText/gmd:textGroup/gmd:LocalisedCharacterString[@locale='#" + locales.get(locale.getISO3Language()) + "']");
+            pathToLocalizedValue = getPathToLocalizedValue(locales.get(locale.getISO3Language()));
         }
 
         nodeList = (NodeList) XPATH_DI_SI.evaluate(elem, XPathConstants.NODESET);
@@ -790,6 +794,17 @@ public class CSWISORecordParser {
         return ret;
     }
 
+    private XPathExpression getPathToLocalizedValue(final String localeId) throws XPathExpressionException {
+        // records use the same few locale ids so these are compiled once per parser
+        XPathExpression path = localizedValuePaths.get(localeId);
+        if (path == null) {
+            path = xpath.compile(
+                    "../gmd:PT_FreeText/gmd:textGroup/gmd:LocalisedCharacterString[@locale='#" + localeId + "']");
+            localizedValuePaths.put(localeId, path);
+        }
+        return path;
+    }
+
     private Map<String, String> getLocaleMap(final Node elem) {
         final Map<String, String> locales = new HashMap<>();
         try {
@@ -27,6 +27,8 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.text.ParseException;
 import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
 
 /**
  * getMetadata and getMetadataById to help linking schema catalogue and metadata
@@ -39,6 +41,8 @@ public class CSWService {
     public static final String PROP_SERVICE_URL = "service.metadata.url";
     private static final Logger log = LogFactory
             .getLogger(CSWService.class);
+    // parsers are expensive to create (compiled xpaths) but not thread-safe so a few are kept for reuse
+    private static final Queue<CSWISORecordParser> PARSERS = new ArrayBlockingQueue<>(8);
 
     String baseURL;
     private CoordinateReferenceSystem targetCRS;
@@ -159,9 +163,15 @@ public class CSWService {
 
 
     protected CSWIsoRecord mapIsoRecordElementToObject(Node el, String lang) throws XPathExpressionException, TransformException, ParseException {
-        CSWISORecordParser parser = new CSWISORecordParser();
+        CSWISORecordParser parser = PARSERS.poll();
+        if (parser == null) {
+            parser = new CSWISORecordParser();
+        }
         Locale locale = new Locale(lang);
-        return parser.parse(el, locale, transform);
+        CSWIsoRecord record = parser.parse(el, locale, transform);
+        // parsers that failed are not returned to the pool
+        PARSERS.offer(parser);
+        return record;
     }
 
 }
\ No newline at end of file
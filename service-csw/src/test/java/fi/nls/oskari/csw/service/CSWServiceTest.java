@@ -41,4 +41,18 @@ public class CSWServiceTest {
         JSONObject expected = new JSONObject(IOHelper.readString(getClass().getResourceAsStream(testfile + "-expected.json")));
         Assertions.assertTrue(JSONHelper.isEqual(actual, expected), "JSON should match");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void mapIsoRecordElementToObjectReusedParser() throws Exception {
+        String testfile = "CSWService-Metadata-multilang";
+        CSWService service = new CSWService("http://for.testing.org");
+        // parsers are pooled and cache localized paths by locale, other languages in between shouldn't matter
+        JSONObject first = service.mapIsoRecordElementToObject(getMetadataElement(testfile + ".xml"), "fi").toJSON();
+        JSONObject other = service.mapIsoRecordElementToObject(getMetadataElement(testfile + ".xml"), "en").toJSON();
+        JSONObject again = service.mapIsoRecordElementToObject(getMetadataElement(testfile + ".xml"), "fi").toJSON();
+        JSONObject expected = new JSONObject(IOHelper.readString(getClass().getResourceAsStream(testfile + "-expected.json")));
+        Assertions.assertTrue(JSONHelper.isEqual(first, expected), "JSON should match");
+        Assertions.assertTrue(JSONHelper.isEqual(again, expected), "JSON should match");
+        Assertions.assertFalse(JSONHelper.isEqual(other, expected), "Other language should differ");
+    }
+}
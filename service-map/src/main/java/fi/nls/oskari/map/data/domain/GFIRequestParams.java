@@ -29,6 +29,8 @@ public class GFIRequestParams {
     private String currentStyle;
     private String srsName;
     private JSONObject additionalParams;
+    // max time for the request in ms, -1 to use the default connection timeouts
+    private int timeoutMs = -1;
 
     private static final String WMS_GFI_FEATURE_COUNT = PropertyUtil.get("wms.gfi.feature.count", "50");
     private static final Map<String, String> WMS_GFI_BASE_PARAMS = new HashMap<String, String>() {{
@@ -142,6 +144,14 @@ public class GFIRequestParams {
         this.additionalParams = params;
     }
 
+    public int getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    public void setTimeoutMs(int timeoutMs) {
+        this.timeoutMs = timeoutMs;
+    }
+
     public String getGFIUrl() {
         return IOHelper.constructUrl(getBaseQueryURL(), getQueryMap());
     }
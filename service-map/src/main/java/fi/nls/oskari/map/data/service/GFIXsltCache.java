@@ -0,0 +1,116 @@
+package fi.nls.oskari.map.data.service;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import org.oskari.xml.XmlHelper;
+
+import fi.nls.oskari.cache.Cache;
+import fi.nls.oskari.cache.CacheManager;
+import fi.nls.oskari.map.layer.LayerChangeListener;
+import fi.nls.oskari.map.layer.OskariLayerService;
+
+/**
+ * Compiled GFI XSLT stylesheets (gfi_xslt of layers) so the stylesheet isn't parsed and compiled for each
+ * GetGeoPointData request.
+ *
+ * Entries are keyed by layer id and also hold the stylesheet they were compiled from: if the stylesheet
+ * of the layer has changed it's compiled again. Entries of a layer are also removed when the layer is
+ * updated or removed. Transformers are not thread-safe so each stylesheet has a small pool of them that
+ * are reset and reused between requests.
+ */
+class GFIXsltCache {
+
+    // limit can be configured with oskari.cache.limit.[CACHE_NAME]
+    private static final String CACHE_NAME = GetGeoPointDataService.class.getName() + ".xslt";
+    private static final int CACHE_LIMIT = 100;
+    private static final long CACHE_EXPIRATION = TimeUnit.HOURS.toMillis(24);
+    // transformers kept per stylesheet, more are created under load but not kept
+    private static final int POOL_SIZE = 8;
+
+    private final Cache<CompiledXslt> cache;
+
+    GFIXsltCache(Cache<CompiledXslt> cache) {
+        this.cache = cache;
+    }
+
+    static GFIXsltCache create() {
+        Cache<CompiledXslt> cache = CacheManager.getCache(CACHE_NAME);
+        cache.setLimit(CACHE_LIMIT);
+        cache.setExpiration(CACHE_EXPIRATION);
+        GFIXsltCache xsltCache = new GFIXsltCache(cache);
+        OskariLayerService.addListener(new LayerChangeListener() {
+            @Override
+            public void onUpdate(int layerId) {
+                xsltCache.flushLayer(layerId);
+            }
+            @Override
+            public void onRemove(int layerId) {
+                xsltCache.flushLayer(layerId);
+            }
+        });
+        return xsltCache;
+    }
+
+    /**
+     * @param layerId id of the layer the stylesheet belongs to or null if it's not known
+     * @param xslt stylesheet
+     * @param source document to transform
+     * @return result of the transformation, trimmed
+     */
+    String transform(String layerId, String xslt, Source source) throws TransformerException {
+        CompiledXslt compiled = getCompiled(layerId, xslt);
+        Transformer transformer = compiled.borrow();
+        StringWriter out = new StringWriter();
+        transformer.transform(source, new StreamResult(out));
+        // transformers that failed are not returned to the pool
+        compiled.release(transformer);
+        return out.toString().trim();
+    }
+
+    void flushLayer(int layerId) {
+        cache.remove(Integer.toString(layerId));
+    }
+
+    private CompiledXslt getCompiled(String layerId, String xslt) throws TransformerException {
+        final String key = layerId != null ? layerId : "hash_" + xslt.hashCode();
+        CompiledXslt compiled = cache.get(key);
+        if (compiled == null || !compiled.xslt.equals(xslt)) {
+            compiled = new CompiledXslt(xslt, XmlHelper.newTransformerFactory()
+                    .newTemplates(new StreamSource(new StringReader(xslt))));
+            cache.put(key, compiled);
+        }
+        return compiled;
+    }
+
+    static class CompiledXslt {
+        private final String xslt;
+        private final Templates templates;
+        private final Queue<Transformer> pool = new ArrayBlockingQueue<>(POOL_SIZE);
+
+        private CompiledXslt(String xslt, Templates templates) {
+            this.xslt = xslt;
+            this.templates = templates;
+        }
+
+        private Transformer borrow() throws TransformerException {
+            Transformer transformer = pool.poll();
+            return transformer != null ? transformer : templates.newTransformer();
+        }
+
+        private void release(Transformer transformer) {
+            transformer.reset();
+            pool.offer(transformer);
+        }
+    }
+}
@@ -45,10 +45,13 @@ public class GetGeoPointDataService {
     public static final String PRESENTATION_TYPE_TEXT = "TEXT";
 
     private static final String CONFIG_KEY_FOR_SANITIZE = "gfi";
+    private static final Safelist SAFELIST_RELAXED = Safelist.relaxed();
+    // shared by all service instances
+    private static final GFIXsltCache XSLT_CACHE = GFIXsltCache.create();
 
     public JSONObject getWMSFeatureInfo(final GFIRequestParams params) {
 
-        final String gfiResponse = makeGFIcall(params.getGFIUrl(), params.getLayer().getUsername(), params.getLayer().getPassword());
+        final String gfiResponse = makeGFIcall(params);
         if (gfiResponse == null || gfiResponse.trim().isEmpty()) {
             return null;
         }
@@ -60,7 +63,7 @@ public class GetGeoPointDataService {
         final String xslt = params.getLayer().getGfiXslt();
         JSONObject respObj = null;
         if (xslt != null && !xslt.isEmpty()) {
-            final String transformedResult = transformResponse(xslt, gfiResponse);
+            final String transformedResult = transformResponse(Integer.toString(params.getLayer().getId()), xslt, gfiResponse);
             respObj = JSONHelper.createJSONObject(transformedResult);
             if(respObj != null) {
                 JSONHelper.putValue(response, PRESENTATION_TYPE, PRESENTATION_TYPE_JSON);
@@ -93,7 +96,7 @@ public class GetGeoPointDataService {
 
     public JSONObject getRESTFeatureInfo(final GFIRestQueryParams params) {
 
-        final String gfiResponse = makeGFIcall(params.getGFIUrl(), params.getLayer().getUsername(), params.getLayer().getPassword());
+        final String gfiResponse = makeGFIcall(params);
         if (gfiResponse == null || gfiResponse.trim().isEmpty()) {
             return null;
         }
@@ -132,11 +135,16 @@ public class GetGeoPointDataService {
         return response;
     }
 
-    private String makeGFIcall(final String url, final String user, final String pw) {
-
+    private String makeGFIcall(final GFIRequestParams params) {
+        final String url = params.getGFIUrl();
         try {
             log.debug("Calling GFI url:", url);
-            HttpURLConnection conn = IOHelper.getConnection(url, user, pw);
+            HttpURLConnection conn = IOHelper.getConnection(url, params.getLayer().getUsername(), params.getLayer().getPassword());
+            if (params.getTimeoutMs() > 0) {
+                // don't wait for the service longer than the caller is willing to
+                conn.setConnectTimeout(getTimeout(conn.getConnectTimeout(), params.getTimeoutMs()));
+                conn.setReadTimeout(getTimeout(conn.getReadTimeout(), params.getTimeoutMs()));
+            }
             IOHelper.addIdentifierHeaders(conn);
             if (conn.getResponseCode() == HttpURLConnection.HTTP_NOT_FOUND) {
                 log.debug("Nothing found on:", url);
@@ -152,20 +160,29 @@ public class GetGeoPointDataService {
         return null;
     }
 
+    private static int getTimeout(int current, int max) {
+        // 0 means no timeout for HttpURLConnection
+        return current > 0 ? Math.min(current, max) : max;
+    }
+
     protected String transformResponse(final String xslt, final String response) {
+        return transformResponse(null, xslt, response);
+    }
+
+    /**
+     * @param layerId used to cache the compiled xslt, null to cache it by the xslt only
+     */
+    protected String transformResponse(final String layerId, final String xslt, final String response) {
         if (xslt == null || xslt.trim().isEmpty()) {
             // if xslt not defined, return response as is
-            return Jsoup.clean(response, Safelist.relaxed());
+            return Jsoup.clean(response, SAFELIST_RELAXED);
         }
 
-        try (InputStream responseStream = new ByteArrayInputStream(response.getBytes(StandardCharsets.UTF_8));
-             InputStream xsltInStream = new ByteArrayInputStream(xslt.getBytes(StandardCharsets.UTF_8))) {
+        try (InputStream responseStream = new ByteArrayInputStream(response.getBytes(StandardCharsets.UTF_8))) {
             // Use StreamSource so the params implementing classes are what the transformer expects
             // Otherwise we might get an error like this:
             //   class com.sun.org.apache.xerces.internal.dom.DeferredElementImpl cannot be cast to class org.w3c.dom.Document
-            String transformedResponse = getFormattedJSONString(
-                    new StreamSource(responseStream),
-                    new StreamSource(xsltInStream));
+            String transformedResponse = XSLT_CACHE.transform(layerId, xslt, new StreamSource(responseStream));
             if (!transformedResponse.isEmpty()) {
                 return transformedResponse;
             }
@@ -175,7 +192,7 @@ public class GetGeoPointDataService {
         }
         log.info("got empty result from transform with:", xslt, " - Response:", response);
         // Sanitize response
-        return Jsoup.clean(response, Safelist.relaxed());
+        return Jsoup.clean(response, SAFELIST_RELAXED);
     }
 
     public static String getFormattedJSONString(StreamSource docSource, StreamSource styleSource) throws TransformerException {
@@ -0,0 +1,200 @@
+package fi.nls.oskari.map.geometry;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.geotools.api.referencing.FactoryException;
+import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
+import org.geotools.api.referencing.operation.MathTransform;
+import org.geotools.api.referencing.operation.TransformException;
+import org.geotools.referencing.CRS;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryComponentFilter;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Point;
+
+/**
+ * Process-wide cache for decoded coordinate reference systems and the math transforms between them.
+ * CRS.decode() and CRS.findMathTransform() go through the referencing factories on every call which
+ * adds up when they are called for each request or each point.
+ *
+ * The bulk methods transform interleaved x/y coordinates or whole coordinate sequences with a single
+ * call to the MathTransform instead of one call per point.
+ */
+public class CrsRegistry {
+
+    // transforms between CRSs created elsewhere (like parsed from WKT) are cached by identity, this many at most
+    private static final int MAX_CRS_TRANSFORMS = 1000;
+
+    private static final Map<String, CoordinateReferenceSystem> CRS_CACHE = new ConcurrentHashMap<>();
+    private static final Map<String, MathTransform> TRANSFORMS = new ConcurrentHashMap<>();
+    private static final Map<TransformKey, MathTransform> CRS_TRANSFORMS = new ConcurrentHashMap<>();
+
+    private CrsRegistry() {}
+
+    /**
+     * Same as CRS.decode(srs), axis order as defined by the authority
+     */
+    public static CoordinateReferenceSystem decode(String srs) throws FactoryException {
+        return decode(srs, false);
+    }
+
+    /**
+     * Same as CRS.decode(srs, lonFirst)
+     * @param lonFirst true to force longitude/easting as the first axis
+     */
+    public static CoordinateReferenceSystem decode(String srs, boolean lonFirst) throws FactoryException {
+        String key = srs + '|' + lonFirst;
+        CoordinateReferenceSystem crs = CRS_CACHE.get(key);
+        if (crs == null) {
+            crs = CRS.decode(srs, lonFirst);
+            CRS_CACHE.putIfAbsent(key, crs);
+        }
+        return crs;
+    }
+
+    /**
+     * Lenient transform between the CRSs
+     * @param lonFirst true to force longitude/easting as the first axis for both CRSs
+     */
+    public static MathTransform getTransform(String sourceSRS, String targetSRS, boolean lonFirst) throws FactoryException {
+        return getTransform(sourceSRS, lonFirst, targetSRS, lonFirst);
+    }
+
+    /**
+     * Lenient transform between the CRSs with separate axis order for source and target
+     */
+    public static MathTransform getTransform(String sourceSRS, boolean sourceLonFirst,
+            String targetSRS, boolean targetLonFirst) throws FactoryException {
+        return getTransform(sourceSRS, sourceLonFirst, targetSRS, targetLonFirst, true);
+    }
+
+    /**
+     * Same as CRS.findMathTransform(decode(sourceSRS, sourceLonFirst), decode(targetSRS, targetLonFirst), lenient)
+     * @param lenient false to fail instead of ignoring a missing datum shift
+     */
+    public static MathTransform getTransform(String sourceSRS, boolean sourceLonFirst,
+            String targetSRS, boolean targetLonFirst, boolean lenient) throws FactoryException {
+        String key = sourceSRS + '|' + sourceLonFirst + '|' + targetSRS + '|' + targetLonFirst + '|' + lenient;
+        MathTransform transform = TRANSFORMS.get(key);
+        if (transform == null) {
+            transform = CRS.findMathTransform(decode(sourceSRS, sourceLonFirst), decode(targetSRS, targetLonFirst), lenient);
+            TRANSFORMS.putIfAbsent(key, transform);
+        }
+        return transform;
+    }
+
+    /**
+     * Same as CRS.findMathTransform(source, target, lenient)
+     */
+    public static MathTransform getTransform(CoordinateReferenceSystem source, CoordinateReferenceSystem target,
+            boolean lenient) throws FactoryException {
+        TransformKey key = new TransformKey(source, target, lenient);
+        MathTransform transform = CRS_TRANSFORMS.get(key);
+        if (transform == null) {
+            transform = CRS.findMathTransform(source, target, lenient);
+            if (CRS_TRANSFORMS.size() >= MAX_CRS_TRANSFORMS) {
+                CRS_TRANSFORMS.clear();
+            }
+            CRS_TRANSFORMS.putIfAbsent(key, transform);
+        }
+        return transform;
+    }
+
+    /**
+     * Transforms interleaved x/y coordinates in place, longitude/easting first. Strict like
+     * ProjectionHelper.transformPoint(), fails if the datum shift between the CRSs isn't known.
+     * @param xy coordinates as [x0, y0, x1, y1, ...]
+     */
+    public static void transform(double[] xy, String sourceSRS, String targetSRS) throws FactoryException, TransformException {
+        if (sourceSRS.equals(targetSRS)) {
+            return;
+        }
+        transform(xy, getTransform(sourceSRS, true, targetSRS, true, false));
+    }
+
+    /**
+     * Transforms interleaved x/y coordinates in place
+     * @param xy coordinates as [x0, y0, x1, y1, ...]
+     */
+    public static void transform(double[] xy, MathTransform transform) throws TransformException {
+        transform.transform(xy, 0, xy, 0, xy.length / 2);
+    }
+
+    /**
+     * Transforms the x/y ordinates of the sequence in place, other ordinates are not modified
+     */
+    public static void transform(CoordinateSequence seq, MathTransform transform) throws TransformException {
+        int n = seq.size();
+        if (n == 0) {
+            return;
+        }
+        double[] xy = new double[n * 2];
+        for (int i = 0; i < n; i++) {
+            xy[i * 2] = seq.getX(i);
+            xy[i * 2 + 1] = seq.getY(i);
+        }
+        transform(xy, transform);
+        for (int i = 0; i < n; i++) {
+            seq.setOrdinate(i, CoordinateSequence.X, xy[i * 2]);
+            seq.setOrdinate(i, CoordinateSequence.Y, xy[i * 2 + 1]);
+        }
+    }
+
+    /**
+     * Transforms the coordinates of the geometry in place, one call to the transform per coordinate sequence
+     */
+    public static void transform(Geometry geometry, MathTransform transform) throws TransformException {
+        TransformException[] error = new TransformException[1];
+        geometry.apply(new GeometryComponentFilter() {
+            @Override
+            public void filter(Geometry component) {
+                CoordinateSequence seq = null;
+                if (component instanceof LineString) {
+                    seq = ((LineString) component).getCoordinateSequence();
+                } else if (component instanceof Point) {
+                    seq = ((Point) component).getCoordinateSequence();
+                }
+                if (seq == null || error[0] != null) {
+                    return;
+                }
+                try {
+                    transform(seq, transform);
+                } catch (TransformException e) {
+                    error[0] = e;
+                }
+            }
+        });
+        if (error[0] != null) {
+            throw error[0];
+        }
+        geometry.geometryChanged();
+    }
+
+    private static class TransformKey {
+        private final CoordinateReferenceSystem source;
+        private final CoordinateReferenceSystem target;
+        private final boolean lenient;
+
+        TransformKey(CoordinateReferenceSystem source, CoordinateReferenceSystem target, boolean lenient) {
+            this.source = source;
+            this.target = target;
+            this.lenient = lenient;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TransformKey)) {
+                return false;
+            }
+            TransformKey other = (TransformKey) o;
+            return source == other.source && target == other.target && lenient == other.lenient;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * System.identityHashCode(source) + System.identityHashCode(target)) + (lenient ? 1 : 0);
+        }
+    }
+}
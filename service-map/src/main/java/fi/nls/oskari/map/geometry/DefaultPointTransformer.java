@@ -1,7 +1,6 @@
 package fi.nls.oskari.map.geometry;
 
 import fi.nls.oskari.domain.geo.Point;
-import org.geotools.referencing.CRS;
 import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
 
 /**
@@ -12,8 +11,8 @@ public class DefaultPointTransformer implements PointTransformer {
 
     public Point reproject(final Point point, final String src, final String target) {
         try {
-            CoordinateReferenceSystem sourceCrs = CRS.decode(src);
-            CoordinateReferenceSystem targetCrs = CRS.decode(target);
+            CoordinateReferenceSystem sourceCrs = CrsRegistry.decode(src);
+            CoordinateReferenceSystem targetCrs = CrsRegistry.decode(target);
             Point result = service.transformPoint(point, sourceCrs, targetCrs);
             return result;
         } catch (Exception ex) {
@@ -105,21 +105,24 @@ public class DataProviderServiceMybatisImpl extends DataProviderService {
     }
 
     public List<DataProvider> findAll() {
-        log.debug("Find all dataproviders");
-        final SqlSession session = factory.openSession();
-        List<DataProvider> groups = new ArrayList<>();
         try {
+            return LayerRegistry.get(LayerRegistry.DATA_PROVIDERS, this::findAllFromDB);
+        } catch (Exception e) {
+            log.warn("Unable to find data providers");
+        }
+        return new ArrayList<>();
+    }
+
+    private List<DataProvider> findAllFromDB() {
+        log.debug("Find all dataproviders");
+        try (SqlSession session = factory.openSession()) {
             final DataProviderMapper mapper = session.getMapper(DataProviderMapper.class);
-            groups = mapper.findAll();
+            List<DataProvider> groups = mapper.findAll();
             for(DataProvider group : groups) {
                 ID_CACHE.put(group.getId(), group);
             }
-        } catch (Exception e) {
-            log.warn("Unable to find data providers");
-        } finally {
-            session.close();
+            return groups;
         }
-        return groups;
     }
 
     public void delete(int id) {
@@ -135,6 +138,7 @@ public class DataProviderServiceMybatisImpl extends DataProviderService {
         } finally {
             session.close();
         }
+        LayerRegistry.changed();
     }
 
     public void update(final DataProvider group) {
@@ -150,6 +154,7 @@ public class DataProviderServiceMybatisImpl extends DataProviderService {
         } finally {
             session.close();
         }
+        LayerRegistry.changed();
     }
 
     public int insert(DataProvider dataProvider) {
@@ -164,6 +169,7 @@ public class DataProviderServiceMybatisImpl extends DataProviderService {
         } finally {
             session.close();
         }
+        LayerRegistry.changed();
         return dataProvider.getId();
     }
 }
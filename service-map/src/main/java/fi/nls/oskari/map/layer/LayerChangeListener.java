@@ -0,0 +1,12 @@
+package fi.nls.oskari.map.layer;
+
+/**
+ * Gets notified when map layers are added, updated or removed through OskariLayerService.
+ * In clustered environment changes made on other nodes are notified as well.
+ */
+public interface LayerChangeListener {
+
+    default void onAdd(int layerId) {}
+    default void onUpdate(int layerId) {}
+    default void onRemove(int layerId) {}
+}
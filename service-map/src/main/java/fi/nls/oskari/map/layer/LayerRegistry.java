@@ -0,0 +1,153 @@
+package fi.nls.oskari.map.layer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.oskari.cluster.ClusterManager;
+
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.util.ConversionHelper;
+
+/**
+ * In-memory snapshots of the layer listing data (layers, layer groups, group links and data providers)
+ * so listing layers doesn't hit the database on every request.
+ *
+ * All snapshots share one data version. Any write to the listing data calls changed() which moves the
+ * version forward and drops the snapshots. The next read loads a new snapshot and readers that already
+ * got the previous one keep using it (copy-on-write). Changes are broadcast to other nodes in a
+ * clustered environment so they drop their snapshots and move their version forward as well.
+ *
+ * Note! The version is local to the node: it only grows when the data changes so it can be used as a
+ * key for caches on the same node, but nodes don't have the same version for the same data. Don't use
+ * it for anything that is compared between nodes (like ETags behind a load balancer).
+ */
+public class LayerRegistry {
+
+    private static final Logger LOG = LogFactory.getLogger(LayerRegistry.class);
+
+    private static final String CLUSTER_FUNCTIONALITY = "layers";
+    private static final String CLUSTER_CHANNEL = "registry";
+
+    public static final String LAYERS = "layers";
+    public static final String GROUPS = "groups";
+    public static final String LINKS = "links";
+    public static final String DATA_PROVIDERS = "dataproviders";
+
+    // startup time so a restarted node doesn't reuse a version from before the restart for local caches
+    private static final AtomicLong VERSION = new AtomicLong(System.currentTimeMillis());
+    private static final ConcurrentMap<String, Snapshot<?>> SNAPSHOTS = new ConcurrentHashMap<>();
+    private static volatile boolean clusterListenerAdded = false;
+
+    private LayerRegistry() {}
+
+    /**
+     * @return version of the listing data on this node, changes when any of the layers, groups, links or
+     *  data providers change
+     */
+    public static long getVersion() {
+        addClusterListener();
+        return VERSION.get();
+    }
+
+    /**
+     * @param name one of LAYERS, GROUPS, LINKS, DATA_PROVIDERS
+     * @param loader loads the data from the database when there's no snapshot for the current version
+     * @return a modifiable copy of the snapshot, the items are shared and should not be modified
+     */
+    public static <T> List<T> get(String name, Supplier<List<T>> loader) {
+        return new ArrayList<>(getSnapshot(name, loader));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> getSnapshot(String name, Supplier<List<T>> loader) {
+        long version = getVersion();
+        Snapshot<T> snapshot = (Snapshot<T>) SNAPSHOTS.get(name);
+        if (snapshot != null && snapshot.version == version) {
+            return snapshot.items;
+        }
+        synchronized (LayerRegistry.class) {
+            // re-check, someone might have just loaded it
+            version = VERSION.get();
+            snapshot = (Snapshot<T>) SNAPSHOTS.get(name);
+            if (snapshot != null && snapshot.version == version) {
+                return snapshot.items;
+            }
+            long start = System.currentTimeMillis();
+            List<T> items = Collections.unmodifiableList(new ArrayList<>(loader.get()));
+            // if the data changed while loading the version has moved on and this is reloaded on next call
+            SNAPSHOTS.put(name, new Snapshot<>(version, items));
+            LOG.debug("Loaded", name, "snapshot in", System.currentTimeMillis() - start, "ms");
+            return items;
+        }
+    }
+
+    /**
+     * Call after modifying layers, groups, links or data providers
+     */
+    public static void changed() {
+        long version = nextVersion(System.currentTimeMillis());
+        notifyCluster(version);
+    }
+
+    private static long nextVersion(long proposed) {
+        long version = VERSION.updateAndGet(current -> Math.max(current + 1, proposed));
+        SNAPSHOTS.clear();
+        return version;
+    }
+
+    private static class Snapshot<T> {
+        private final long version;
+        private final List<T> items;
+
+        private Snapshot(long version, List<T> items) {
+            this.version = version;
+            this.items = items;
+        }
+    }
+
+    /* ************************************************
+     * Cluster env methods
+     * ************************************************
+     */
+
+    private static void addClusterListener() {
+        if (clusterListenerAdded) {
+            return;
+        }
+        synchronized (SNAPSHOTS) {
+            if (clusterListenerAdded) {
+                return;
+            }
+            if (ClusterManager.isClustered()) {
+                ClusterManager
+                        .getClientFor(CLUSTER_FUNCTIONALITY)
+                        .addListener(CLUSTER_CHANNEL, (msg) -> handleClusterMsg(msg));
+            }
+            clusterListenerAdded = true;
+        }
+    }
+
+    private static void handleClusterMsg(String data) {
+        long version = ConversionHelper.getLong(data, -1);
+        if (version == -1) {
+            LOG.warn("Received unrecognized cluster msg:", data);
+            return;
+        }
+        nextVersion(version);
+    }
+
+    private static void notifyCluster(long version) {
+        if (!ClusterManager.isClustered()) {
+            return;
+        }
+        ClusterManager
+                .getClientFor(CLUSTER_FUNCTIONALITY)
+                .sendMessage(CLUSTER_CHANNEL, Long.toString(version));
+    }
+}
@@ -1,16 +1,41 @@
 package fi.nls.oskari.map.layer;
 
 import fi.nls.oskari.domain.map.OskariLayer;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.service.OskariComponent;
+import fi.nls.oskari.util.ConversionHelper;
+import org.oskari.cluster.ClusterManager;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public abstract class OskariLayerService extends OskariComponent {
 
+    private static final Logger LOG = LogFactory.getLogger(OskariLayerService.class);
+
+    private static final String CLUSTER_FUNCTIONALITY = "layers";
+    private static final String CLUSTER_CHANNEL = "changes";
+    private static final String CLUSTER_CMD_ADD = "ADD: ";
+    private static final String CLUSTER_CMD_UPDATE = "UPDATE: ";
+    private static final String CLUSTER_CMD_REMOVE = "REMOVE: ";
+
+    // static since there might be multiple service instances, but listeners are interested in all changes
+    private static final List<LayerChangeListener> LISTENERS = new CopyOnWriteArrayList<>();
+    private static volatile boolean clusterListenerAdded = false;
+
     public abstract OskariLayer find(int id);
     public abstract List<OskariLayer> findByIdList(final List<Integer> idList);
     public abstract List<OskariLayer> findAll();
+    /**
+     * Like findAll() but always returns new instances that the caller can modify and save with update().
+     * findAll() may return instances that are shared with other requests. Returns findAll() by default,
+     * implementations that share the instances of findAll() should override this.
+     */
+    public List<OskariLayer> findAllForUpdate() {
+        return findAll();
+    }
     public abstract List<OskariLayer> findByUrlAndName(final String url, final String name);
     public abstract List<OskariLayer> findByMetadataId(String uuid);
     public abstract List<OskariLayer> findAllWithPositiveUpdateRateSec();
@@ -21,4 +46,83 @@ public abstract class OskariLayerService extends OskariComponent {
     public abstract void update(final OskariLayer layer);
     public abstract void delete(final int layerId);
 
+    public static void addListener(LayerChangeListener listener) {
+        LISTENERS.add(listener);
+        addClusterListener();
+    }
+
+    public static void removeListener(LayerChangeListener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    protected void layerAdded(int layerId) {
+        notifyListeners(CLUSTER_CMD_ADD, layerId);
+        notifyCluster(CLUSTER_CMD_ADD, layerId);
+    }
+
+    protected void layerUpdated(int layerId) {
+        notifyListeners(CLUSTER_CMD_UPDATE, layerId);
+        notifyCluster(CLUSTER_CMD_UPDATE, layerId);
+    }
+
+    protected void layerRemoved(int layerId) {
+        notifyListeners(CLUSTER_CMD_REMOVE, layerId);
+        notifyCluster(CLUSTER_CMD_REMOVE, layerId);
+    }
+
+    private static void notifyListeners(String cmd, int layerId) {
+        for (LayerChangeListener listener : LISTENERS) {
+            try {
+                if (CLUSTER_CMD_ADD.equals(cmd)) {
+                    listener.onAdd(layerId);
+                } else if (CLUSTER_CMD_UPDATE.equals(cmd)) {
+                    listener.onUpdate(layerId);
+                } else {
+                    listener.onRemove(layerId);
+                }
+            } catch (Exception e) {
+                LOG.warn(e, "Layer change listener failed for layer:", layerId);
+            }
+        }
+    }
+
+    /* ************************************************
+     * Cluster env methods
+     * ************************************************
+     */
+
+    private static synchronized void addClusterListener() {
+        if (clusterListenerAdded || !ClusterManager.isClustered()) {
+            return;
+        }
+        ClusterManager
+                .getClientFor(CLUSTER_FUNCTIONALITY)
+                .addListener(CLUSTER_CHANNEL, (msg) -> handleClusterMsg(msg));
+        clusterListenerAdded = true;
+    }
+
+    private static void handleClusterMsg(String data) {
+        if (data == null) {
+            return;
+        }
+        for (String cmd : new String[] { CLUSTER_CMD_ADD, CLUSTER_CMD_UPDATE, CLUSTER_CMD_REMOVE }) {
+            if (data.startsWith(cmd)) {
+                int layerId = ConversionHelper.getInt(data.substring(cmd.length()), -1);
+                if (layerId != -1) {
+                    notifyListeners(cmd, layerId);
+                }
+                return;
+            }
+        }
+        LOG.warn("Received unrecognized cluster msg:", data);
+    }
+
+    private static void notifyCluster(String cmd, int layerId) {
+        if (!ClusterManager.isClustered()) {
+            return;
+        }
+        ClusterManager
+                .getClientFor(CLUSTER_FUNCTIONALITY)
+                .sendMessage(CLUSTER_CHANNEL, cmd + layerId);
+    }
 }
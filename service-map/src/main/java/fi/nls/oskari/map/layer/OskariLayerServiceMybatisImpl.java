@@ -286,10 +286,33 @@ public class OskariLayerServiceMybatisImpl extends OskariLayerService {
         return null;
     }
 
+    /**
+     * Layers are read from an in-memory snapshot that is reloaded after layers, groups or
+     * data providers have been modified (see LayerRegistry). The returned layers are shared
+     * between callers so modifying them affects other requests. Use findAllForUpdate() to get
+     * layers that can be modified.
+     */
     public List<OskariLayer> findAll() {
-        long start = System.currentTimeMillis();
-        final SqlSession session = factory.openSession();
         try {
+            return LayerRegistry.get(LayerRegistry.LAYERS, this::findAllFromDB);
+        } catch (Exception e) {
+            LOG.warn(e, "");
+        }
+        return Collections.emptyList();
+    }
+
+    public List<OskariLayer> findAllForUpdate() {
+        try {
+            return findAllFromDB();
+        } catch (Exception e) {
+            LOG.warn(e, "");
+        }
+        return Collections.emptyList();
+    }
+
+    private List<OskariLayer> findAllFromDB() {
+        long start = System.currentTimeMillis();
+        try (SqlSession session = factory.openSession()) {
             final OskariLayerMapper mapper = session.getMapper(OskariLayerMapper.class);
             List<Map<String,Object>> result = mapper.findAll();
             LOG.debug("Find all layers:", System.currentTimeMillis() - start, "ms");
@@ -297,12 +320,7 @@ public class OskariLayerServiceMybatisImpl extends OskariLayerService {
             final List<OskariLayer> layers = mapDataList(result);
             LOG.debug("Parsing all layers:", System.currentTimeMillis() - start, "ms");
             return layers;
-        } catch (Exception e) {
-            LOG.warn(e, "");
-        } finally {
-            session.close();
         }
-        return Collections.emptyList();
     }
 
     @Override
@@ -375,13 +393,17 @@ public class OskariLayerServiceMybatisImpl extends OskariLayerService {
         try {
             final OskariLayerMapper mapper = session.getMapper(OskariLayerMapper.class);
             mapper.update(layer);
-            flushFromCache(layer.getId());
             session.commit();
         } catch (Exception e) {
             throw new RuntimeException("Failed to update", e);
         } finally {
             session.close();
         }
+        // only reached when the update was committed. Flush after commit so a concurrent find()
+        // can't cache the previous version of the layer again
+        flushFromCache(layer.getId());
+        LayerRegistry.changed();
+        layerUpdated(layer.getId());
     }
 
     public synchronized int insert(final OskariLayer layer) {
@@ -396,6 +418,8 @@ public class OskariLayerServiceMybatisImpl extends OskariLayerService {
         } finally {
             session.close();
         }
+        LayerRegistry.changed();
+        layerAdded(layer.getId());
         return layer.getId();
     }
 
@@ -409,8 +433,11 @@ public class OskariLayerServiceMybatisImpl extends OskariLayerService {
             session.commit();
         } catch (Exception e) {
             LOG.error(e, "Couldn't delete with id:", id);
+            return;
         } finally {
             session.close();
         }
+        LayerRegistry.changed();
+        layerRemoved(id);
     }
 }
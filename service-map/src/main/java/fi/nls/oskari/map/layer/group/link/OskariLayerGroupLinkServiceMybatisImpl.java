@@ -12,6 +12,7 @@ import org.apache.ibatis.session.SqlSessionFactory;
 import fi.nls.oskari.db.DatasourceHelper;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.map.layer.LayerRegistry;
 import fi.nls.oskari.mybatis.MyBatisHelper;
 
 @Oskari("MaplayerGroupLinks")
@@ -38,11 +39,16 @@ public class OskariLayerGroupLinkServiceMybatisImpl extends OskariLayerGroupLink
         return session.getMapper(OskariLayerGroupLinkMapper.class);
     }
 
+    /**
+     * Links are read from an in-memory snapshot, see LayerRegistry
+     */
     @Override
     public List<OskariLayerGroupLink> findAll() {
-        try (SqlSession session = factory.openSession()) {
-            return getMapper(session).findAll();
-        }
+        return LayerRegistry.get(LayerRegistry.LINKS, () -> {
+            try (SqlSession session = factory.openSession()) {
+                return getMapper(session).findAll();
+            }
+        });
     }
 
     public List<OskariLayerGroupLink> findByLayerId(int layerId) {
@@ -66,6 +72,7 @@ public class OskariLayerGroupLinkServiceMybatisImpl extends OskariLayerGroupLink
             getMapper(session).insert(link);
             session.commit();
         }
+        LayerRegistry.changed();
     }
 
     @Override
@@ -80,6 +87,7 @@ public class OskariLayerGroupLinkServiceMybatisImpl extends OskariLayerGroupLink
             }
             session.commit();
         }
+        LayerRegistry.changed();
     }
 
     @Override
@@ -88,6 +96,7 @@ public class OskariLayerGroupLinkServiceMybatisImpl extends OskariLayerGroupLink
             getMapper(session).delete(layerId, groupId);
             session.commit();
         }
+        LayerRegistry.changed();
     }
 
     @Override
@@ -96,6 +105,7 @@ public class OskariLayerGroupLinkServiceMybatisImpl extends OskariLayerGroupLink
             getMapper(session).deleteByLayerId(layerId);
             session.commit();
         }
+        LayerRegistry.changed();
     }
 
     @Override
@@ -110,6 +120,7 @@ public class OskariLayerGroupLinkServiceMybatisImpl extends OskariLayerGroupLink
             }
             session.commit();
         }
+        LayerRegistry.changed();
     }
 
     @Override
@@ -125,5 +136,6 @@ public class OskariLayerGroupLinkServiceMybatisImpl extends OskariLayerGroupLink
 	            getMapper(session).deleteByGroupId(groupId);
 	            session.commit();
 	     }
+	     LayerRegistry.changed();
 	}
 }
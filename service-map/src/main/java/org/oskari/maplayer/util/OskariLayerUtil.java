@@ -1,6 +1,7 @@
 package org.oskari.maplayer.util;
 
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.oskari.permissions.PermissionService;
@@ -27,9 +28,15 @@ public class OskariLayerUtil {
         List<OskariLayer> layers = mapLayerService.findAll();
         LOG.info("Layers read in", System.currentTimeMillis() - start, "ms");
         start = System.currentTimeMillis();
-        List<Resource> resources = permissionService.findResourcesByUser(user, ResourceType.maplayer);
+        PermissionType forViewing = isPublished ? PermissionType.VIEW_PUBLISHED : PermissionType.VIEW_LAYER;
+        Set<String> viewable = permissionService.findResourcesByUser(user, ResourceType.maplayer, forViewing).stream()
+                .map(Resource::getMapping)
+                .collect(Collectors.toSet());
         LOG.info("Permissions read in", System.currentTimeMillis() - start, "ms");
-        return filterLayersWithResources(layers, new PermissionSet(resources), user, isPublished);
+        return layers.stream()
+                .filter(layer -> !layer.isInternal())
+                .filter(layer -> layer.isSublayer() || viewable.contains(getPermissionKey(layer)))
+                .collect(Collectors.toList());
     }
 
     public static List<OskariLayer> filterLayersWithResources(List<OskariLayer> layers, PermissionSet permissionSet,
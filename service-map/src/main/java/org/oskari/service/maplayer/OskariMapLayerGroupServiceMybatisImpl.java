@@ -7,6 +7,7 @@ import fi.nls.oskari.db.DatasourceHelper;
 import fi.nls.oskari.domain.map.MaplayerGroup;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.map.layer.LayerRegistry;
 import fi.nls.oskari.mybatis.JSONObjectMybatisTypeHandler;
 import fi.nls.oskari.mybatis.MyBatisHelper;
 import org.apache.ibatis.session.Configuration;
@@ -50,6 +51,7 @@ public class OskariMapLayerGroupServiceMybatisImpl extends OskariMapLayerGroupSe
             session.commit();
         }
         cache(group);
+        LayerRegistry.changed();
         return group.getId();
     }
     public void update(MaplayerGroup group) {
@@ -58,6 +60,7 @@ public class OskariMapLayerGroupServiceMybatisImpl extends OskariMapLayerGroupSe
             session.commit();
         }
         cache.remove(getCacheKey(group));
+        LayerRegistry.changed();
     }
     public void delete(MaplayerGroup group) {
         try (SqlSession session = factory.openSession(false)) {
@@ -65,6 +68,7 @@ public class OskariMapLayerGroupServiceMybatisImpl extends OskariMapLayerGroupSe
             session.commit();
         }
         cache.remove(getCacheKey(group));
+        LayerRegistry.changed();
     }
 
     private void cache(MaplayerGroup group) {
@@ -77,11 +81,16 @@ public class OskariMapLayerGroupServiceMybatisImpl extends OskariMapLayerGroupSe
         return Integer.toString(id);
     }
 
+    /**
+     * Groups are read from an in-memory snapshot, see LayerRegistry
+     */
     @Override
     public List<MaplayerGroup> findAll() {
-        try (SqlSession session = factory.openSession()) {
-            return session.getMapper(MAPPER).findAll();
-        }
+        return LayerRegistry.get(LayerRegistry.GROUPS, () -> {
+            try (SqlSession session = factory.openSession()) {
+                return session.getMapper(MAPPER).findAll();
+            }
+        });
     }
 
     @Override
@@ -120,6 +129,7 @@ public class OskariMapLayerGroupServiceMybatisImpl extends OskariMapLayerGroupSe
             session.commit();
         }
         cache.remove(getCacheKey(group));
+        LayerRegistry.changed();
     }
 
     @Override
@@ -129,10 +139,12 @@ public class OskariMapLayerGroupServiceMybatisImpl extends OskariMapLayerGroupSe
             session.commit();
         }
         cache.remove(getCacheKey(groupId));
+        LayerRegistry.changed();
     }
 
     @Override
     public void flushCache() {
         cache.flush(true);
+        LayerRegistry.changed();
     }
 }
@@ -54,6 +54,22 @@ public class GetGeoPointDataServiceTest {
         assertTrue(JSONHelper.isEqual(JSONHelper.createJSONObject(expected), json), "Should match expected");
     }
 
+    @Test
+    public void testCompiledXsltUpdated() {
+        final String xml = "<root><value>42</value></root>";
+        final String xslt = "<xsl:stylesheet version=\"1.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">"
+                + "<xsl:output method=\"text\"/>"
+                + "<xsl:template match=\"/\">{\"value\": <xsl:value-of select=\"root/value\"/>}</xsl:template>"
+                + "</xsl:stylesheet>";
+        GetGeoPointDataService service = new GetGeoPointDataService();
+        assertEquals("{\"value\": 42}", service.transformResponse("-1", xslt, xml));
+        // cached transformer is reused
+        assertEquals("{\"value\": 42}", service.transformResponse("-1", xslt, xml));
+        // changed stylesheet of the same layer is compiled again
+        final String changed = xslt.replace("\"value\"", "\"changed\"");
+        assertEquals("{\"changed\": 42}", service.transformResponse("-1", changed, xml));
+    }
+
     /*
     @Test
     public void testResponseCleaning()
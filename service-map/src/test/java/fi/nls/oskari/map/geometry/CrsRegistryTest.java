@@ -0,0 +1,56 @@
+package fi.nls.oskari.map.geometry;
+
+import fi.nls.oskari.domain.geo.Point;
+import org.geotools.api.referencing.operation.MathTransform;
+import org.geotools.geometry.jts.JTS;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+
+public class CrsRegistryTest {
+
+    private static final String EPSG_4326 = "EPSG:4326";
+    private static final String EPSG_3067 = "EPSG:3067";
+
+    @Test
+    public void testCached() throws Exception {
+        Assertions.assertSame(CrsRegistry.decode(EPSG_3067, true), CrsRegistry.decode(EPSG_3067, true));
+        Assertions.assertNotSame(CrsRegistry.decode(EPSG_4326, true), CrsRegistry.decode(EPSG_4326, false));
+        Assertions.assertSame(CrsRegistry.getTransform(EPSG_4326, EPSG_3067, true),
+                CrsRegistry.getTransform(EPSG_4326, EPSG_3067, true));
+        Assertions.assertSame(CrsRegistry.getTransform(EPSG_4326, true, EPSG_3067, true, false),
+                CrsRegistry.getTransform(EPSG_4326, true, EPSG_3067, true, false));
+    }
+
+    @Test
+    public void testTransformArray() throws Exception {
+        double[] xy = { 25.0, 60.0, 24.5, 61.5, 27.75, 64.25 };
+        double[] expected = new double[xy.length];
+        for (int i = 0; i < xy.length; i += 2) {
+            Point p = ProjectionHelper.transformPoint(xy[i], xy[i + 1], EPSG_4326, EPSG_3067);
+            expected[i] = p.getLon();
+            expected[i + 1] = p.getLat();
+        }
+        CrsRegistry.transform(xy, EPSG_4326, EPSG_3067);
+        Assertions.assertArrayEquals(expected, xy, 1e-6);
+    }
+
+    @Test
+    public void testTransformGeometry() throws Exception {
+        GeometryFactory gf = new GeometryFactory();
+        LineString line = gf.createLineString(new Coordinate[] {
+                new Coordinate(25.0, 60.0), new Coordinate(24.5, 61.5), new Coordinate(27.75, 64.25)
+        });
+        MathTransform transform = CrsRegistry.getTransform(EPSG_4326, EPSG_3067, true);
+        Geometry expected = JTS.transform(line, transform);
+        // cached envelope is reset after the transform
+        Assertions.assertEquals(24.5, line.getEnvelopeInternal().getMinX(), 0);
+
+        CrsRegistry.transform(line, transform);
+        Assertions.assertTrue(expected.equalsExact(line, 1e-6));
+        Assertions.assertEquals(expected.getEnvelopeInternal().getMinX(), line.getEnvelopeInternal().getMinX(), 1e-6);
+    }
+}
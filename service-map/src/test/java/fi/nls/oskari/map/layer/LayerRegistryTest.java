@@ -0,0 +1,57 @@
+package fi.nls.oskari.map.layer;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class LayerRegistryTest {
+
+    private AtomicInteger loads;
+
+    @BeforeEach
+    public void init() {
+        LayerRegistry.changed();
+        loads = new AtomicInteger();
+    }
+
+    private List<String> load() {
+        loads.incrementAndGet();
+        return Arrays.asList("a", "b");
+    }
+
+    @Test
+    public void testSnapshotIsReusedUntilChanged() {
+        Assertions.assertEquals(Arrays.asList("a", "b"), LayerRegistry.get(LayerRegistry.LAYERS, this::load));
+        LayerRegistry.get(LayerRegistry.LAYERS, this::load);
+        Assertions.assertEquals(1, loads.get());
+
+        long version = LayerRegistry.getVersion();
+        LayerRegistry.changed();
+        Assertions.assertTrue(LayerRegistry.getVersion() > version);
+
+        LayerRegistry.get(LayerRegistry.LAYERS, this::load);
+        Assertions.assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testChangeDropsAllSnapshots() {
+        LayerRegistry.get(LayerRegistry.LAYERS, this::load);
+        LayerRegistry.get(LayerRegistry.GROUPS, this::load);
+        Assertions.assertEquals(2, loads.get());
+        LayerRegistry.changed();
+        LayerRegistry.get(LayerRegistry.GROUPS, this::load);
+        Assertions.assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void testReturnedListCanBeModified() {
+        List<String> first = LayerRegistry.get(LayerRegistry.LINKS, this::load);
+        first.remove("a");
+        Assertions.assertEquals(Arrays.asList("a", "b"), LayerRegistry.get(LayerRegistry.LINKS, this::load));
+        Assertions.assertEquals(1, loads.get());
+    }
+}
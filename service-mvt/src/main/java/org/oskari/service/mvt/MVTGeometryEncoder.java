@@ -0,0 +1,500 @@
+package org.oskari.service.mvt;
+
+import java.util.Arrays;
+
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.MultiLineString;
+import org.locationtech.jts.geom.MultiPoint;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+
+/**
+ * Encodes JTS geometries straight to MVT geometry commands without creating intermediate
+ * JTS geometries. Coordinates are read from the CoordinateSequences, snapped to the integer
+ * grid of the tile into reused primitive arrays and clipped against the buffered tile
+ * rectangle (Sutherland-Hodgman for polygons, Liang-Barsky for lines) instead of running
+ * a general overlay operation.
+ *
+ * Not thread-safe, create one per tile.
+ */
+public class MVTGeometryEncoder {
+
+    public static final int TYPE_UNKNOWN = 0;
+    public static final int TYPE_POINT = 1;
+    public static final int TYPE_LINESTRING = 2;
+    public static final int TYPE_POLYGON = 3;
+
+    private static final int CMD_MOVE_TO = 1;
+    private static final int CMD_LINE_TO = 2;
+    private static final int CMD_CLOSE_PATH = 7;
+
+    private final double tx;
+    private final double ty;
+    private final double sx;
+    private final double sy;
+    private final int min;
+    private final int max;
+
+    // commands of the current geometry
+    private int[] commands = new int[256];
+    private int numCommands;
+    // cursor position for delta encoding
+    private int cursorX;
+    private int cursorY;
+
+    // scratch buffers for the coordinates of one part
+    private int[] xs = new int[256];
+    private int[] ys = new int[256];
+    private int n;
+    private int[] clipXs = new int[256];
+    private int[] clipYs = new int[256];
+    private int clipN;
+    // parameters of the clipped segment (Liang-Barsky)
+    private double t0;
+    private double t1;
+
+    /**
+     * @param bbox extent of the tile in real world coordinates (minX, minY, maxX, maxY)
+     * @param extent size of the tile in MVT coordinates (usually 4096)
+     * @param buffer size of the buffer around the tile in MVT coordinates
+     */
+    public MVTGeometryEncoder(double[] bbox, int extent, int buffer) {
+        this.tx = bbox[0];
+        this.ty = bbox[3];
+        this.sx = extent / (bbox[2] - bbox[0]);
+        this.sy = -(extent / (bbox[3] - bbox[1]));
+        this.min = -buffer;
+        this.max = extent + buffer;
+    }
+
+    /**
+     * Encodes the geometry. The commands can be read with getCommands() and getNumCommands()
+     * until the next call.
+     * @return MVT geometry type or TYPE_UNKNOWN if nothing is left of the geometry after clipping
+     */
+    public int encode(Geometry geom) {
+        numCommands = 0;
+        cursorX = 0;
+        cursorY = 0;
+        if (geom == null || geom.isEmpty()) {
+            return TYPE_UNKNOWN;
+        }
+        if (geom instanceof Point || geom instanceof MultiPoint) {
+            return encodePoints(geom) ? TYPE_POINT : TYPE_UNKNOWN;
+        }
+        if (geom instanceof LineString || geom instanceof MultiLineString) {
+            for (int i = 0; i < geom.getNumGeometries(); i++) {
+                encodeLineString(((LineString) geom.getGeometryN(i)).getCoordinateSequence());
+            }
+            return numCommands > 0 ? TYPE_LINESTRING : TYPE_UNKNOWN;
+        }
+        if (geom instanceof Polygon || geom instanceof MultiPolygon) {
+            for (int i = 0; i < geom.getNumGeometries(); i++) {
+                encodePolygon((Polygon) geom.getGeometryN(i));
+            }
+            return numCommands > 0 ? TYPE_POLYGON : TYPE_UNKNOWN;
+        }
+        // GeometryCollections can't be represented as a single MVT feature
+        return TYPE_UNKNOWN;
+    }
+
+    public int[] getCommands() {
+        return commands;
+    }
+
+    public int getNumCommands() {
+        return numCommands;
+    }
+
+    private boolean encodePoints(Geometry geom) {
+        n = 0;
+        for (int i = 0; i < geom.getNumGeometries(); i++) {
+            Point p = (Point) geom.getGeometryN(i);
+            if (p.isEmpty()) {
+                continue;
+            }
+            CoordinateSequence seq = p.getCoordinateSequence();
+            int x = snapX(seq.getX(0));
+            int y = snapY(seq.getY(0));
+            if (x < min || x > max || y < min || y > max) {
+                continue;
+            }
+            if (n > 0 && xs[n - 1] == x && ys[n - 1] == y) {
+                continue;
+            }
+            add(x, y);
+        }
+        if (n == 0) {
+            return false;
+        }
+        command(CMD_MOVE_TO, n);
+        for (int i = 0; i < n; i++) {
+            moveCursor(xs[i], ys[i]);
+        }
+        return true;
+    }
+
+    private void encodeLineString(CoordinateSequence seq) {
+        snap(seq);
+        if (n < 2) {
+            return;
+        }
+        if (isInside()) {
+            writeLine(xs, ys, 0, n);
+            return;
+        }
+        // Liang-Barsky per segment, a new part is started whenever the line leaves the clip rectangle
+        clipN = 0;
+        for (int i = 1; i < n; i++) {
+            double x0 = xs[i - 1];
+            double y0 = ys[i - 1];
+            double dx = xs[i] - x0;
+            double dy = ys[i] - y0;
+            t0 = 0;
+            t1 = 1;
+            if (!clipT(-dx, x0 - min) || !clipT(dx, max - x0)
+                    || !clipT(-dy, y0 - min) || !clipT(dy, max - y0)) {
+                flushLinePart();
+                continue;
+            }
+            int ax = (int) Math.round(x0 + t0 * dx);
+            int ay = (int) Math.round(y0 + t0 * dy);
+            int bx = (int) Math.round(x0 + t1 * dx);
+            int by = (int) Math.round(y0 + t1 * dy);
+            if (clipN > 0 && (clipXs[clipN - 1] != ax || clipYs[clipN - 1] != ay)) {
+                // entered the clip rectangle at a different point than where we left it
+                flushLinePart();
+            }
+            if (clipN == 0) {
+                addClipped(ax, ay);
+            }
+            if (clipXs[clipN - 1] != bx || clipYs[clipN - 1] != by) {
+                addClipped(bx, by);
+            }
+            if (t1 < 1) {
+                flushLinePart();
+            }
+        }
+        flushLinePart();
+    }
+
+    private boolean clipT(double p, double q) {
+        if (p == 0) {
+            return q >= 0;
+        }
+        double r = q / p;
+        if (p < 0) {
+            if (r > t1) {
+                return false;
+            }
+            if (r > t0) {
+                t0 = r;
+            }
+        } else {
+            if (r < t0) {
+                return false;
+            }
+            if (r < t1) {
+                t1 = r;
+            }
+        }
+        return true;
+    }
+
+    private void flushLinePart() {
+        if (clipN >= 2) {
+            writeLine(clipXs, clipYs, 0, clipN);
+        }
+        clipN = 0;
+    }
+
+    private void writeLine(int[] lx, int[] ly, int from, int to) {
+        int count = removeCollinear(lx, ly, from, to, false);
+        if (count < 2) {
+            return;
+        }
+        command(CMD_MOVE_TO, 1);
+        moveCursor(lx[from], ly[from]);
+        command(CMD_LINE_TO, count - 1);
+        for (int i = from + 1; i < from + count; i++) {
+            moveCursor(lx[i], ly[i]);
+        }
+    }
+
+    private void encodePolygon(Polygon polygon) {
+        int start = numCommands;
+        int startX = cursorX;
+        int startY = cursorY;
+        long exteriorArea = encodeRing(polygon.getExteriorRing().getCoordinateSequence(), true);
+        long holesArea = 0;
+        for (int i = 0; exteriorArea > 0 && i < polygon.getNumInteriorRing(); i++) {
+            holesArea += encodeRing(polygon.getInteriorRingN(i).getCoordinateSequence(), false);
+        }
+        if (exteriorArea == 0 || holesArea >= exteriorArea) {
+            // exterior collapsed or the holes cover all of it after clipping (like a hole covering
+            // the whole tile), drop the whole polygon
+            numCommands = start;
+            cursorX = startX;
+            cursorY = startY;
+        }
+    }
+
+    /**
+     * @return (doubled) area of the encoded ring or 0 if nothing was left of the ring
+     */
+    private long encodeRing(CoordinateSequence seq, boolean exterior) {
+        snap(seq);
+        // rings are closed, the closing point is implicit in MVT
+        if (n > 1 && xs[0] == xs[n - 1] && ys[0] == ys[n - 1]) {
+            n--;
+        }
+        if (n < 3) {
+            return 0;
+        }
+        int[] rx = xs;
+        int[] ry = ys;
+        int count = n;
+        if (!isInside()) {
+            clipRing();
+            rx = clipXs;
+            ry = clipYs;
+            count = clipN;
+        }
+        count = removeCollinear(rx, ry, 0, count, true);
+        if (count < 3) {
+            return 0;
+        }
+        long area = signedArea(rx, ry, count);
+        if (area == 0) {
+            return 0;
+        }
+        // exterior rings are clockwise (positive area) and interior rings counter-clockwise in tile coordinates
+        if ((area > 0) != exterior) {
+            reverse(rx, ry, count);
+        }
+        command(CMD_MOVE_TO, 1);
+        moveCursor(rx[0], ry[0]);
+        command(CMD_LINE_TO, count - 1);
+        for (int i = 1; i < count; i++) {
+            moveCursor(rx[i], ry[i]);
+        }
+        command(CMD_CLOSE_PATH, 1);
+        return Math.abs(area);
+    }
+
+    /**
+     * Sutherland-Hodgman against each edge of the clip rectangle, result is in clipXs/clipYs
+     */
+    private void clipRing() {
+        clipEdge(xs, ys, n, 0, min);
+        swapToInput();
+        clipEdge(xs, ys, n, 1, max);
+        swapToInput();
+        clipEdge(xs, ys, n, 2, min);
+        swapToInput();
+        clipEdge(xs, ys, n, 3, max);
+    }
+
+    private void swapToInput() {
+        int[] tmpX = xs;
+        int[] tmpY = ys;
+        xs = clipXs;
+        ys = clipYs;
+        n = clipN;
+        clipXs = tmpX;
+        clipYs = tmpY;
+    }
+
+    /**
+     * @param edge 0 = left, 1 = right, 2 = top (min y), 3 = bottom (max y)
+     */
+    private void clipEdge(int[] inX, int[] inY, int count, int edge, int value) {
+        clipN = 0;
+        if (count == 0) {
+            return;
+        }
+        int px = inX[count - 1];
+        int py = inY[count - 1];
+        boolean prevInside = inside(px, py, edge, value);
+        for (int i = 0; i < count; i++) {
+            int cx = inX[i];
+            int cy = inY[i];
+            boolean curInside = inside(cx, cy, edge, value);
+            if (curInside != prevInside) {
+                if (edge < 2) {
+                    double t = (double) (value - px) / (cx - px);
+                    addClipped(value, (int) Math.round(py + t * (cy - py)));
+                } else {
+                    double t = (double) (value - py) / (cy - py);
+                    addClipped((int) Math.round(px + t * (cx - px)), value);
+                }
+            }
+            if (curInside) {
+                addClipped(cx, cy);
+            }
+            px = cx;
+            py = cy;
+            prevInside = curInside;
+        }
+    }
+
+    private static boolean inside(int x, int y, int edge, int value) {
+        switch (edge) {
+        case 0: return x >= value;
+        case 1: return x <= value;
+        case 2: return y >= value;
+        default: return y <= value;
+        }
+    }
+
+    /**
+     * Removes duplicate points and points in the middle of a straight line. The integer
+     * grid creates these a lot and they don't add any detail to the tile.
+     * @return new number of points, the points are moved to the start of the arrays
+     */
+    private static int removeCollinear(int[] px, int[] py, int from, int to, boolean closed) {
+        int out = from;
+        for (int i = from; i < to; i++) {
+            int x = px[i];
+            int y = py[i];
+            if (out > from && px[out - 1] == x && py[out - 1] == y) {
+                continue;
+            }
+            if (out - from >= 2 && isStraight(px[out - 2], py[out - 2], px[out - 1], py[out - 1], x, y)) {
+                // replace the middle point
+                out--;
+            }
+            px[out] = x;
+            py[out] = y;
+            out++;
+        }
+        int count = out - from;
+        if (closed) {
+            while (count > 1 && px[from + count - 1] == px[from] && py[from + count - 1] == py[from]) {
+                count--;
+            }
+            // the closing corner
+            while (count >= 3 && isStraight(px[from + count - 2], py[from + count - 2],
+                    px[from + count - 1], py[from + count - 1], px[from], py[from])) {
+                count--;
+            }
+            while (count >= 3 && isStraight(px[from + count - 1], py[from + count - 1],
+                    px[from], py[from], px[from + 1], py[from + 1])) {
+                // first point is in the middle of a straight line
+                System.arraycopy(px, from + 1, px, from, count - 1);
+                System.arraycopy(py, from + 1, py, from, count - 1);
+                count--;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return true if b is on the straight line from a to c (and not a spike going back)
+     */
+    private static boolean isStraight(int ax, int ay, int bx, int by, int cx, int cy) {
+        long cross = (long) (bx - ax) * (cy - ay) - (long) (by - ay) * (cx - ax);
+        if (cross != 0) {
+            return false;
+        }
+        long dot = (long) (bx - ax) * (cx - bx) + (long) (by - ay) * (cy - by);
+        return dot >= 0;
+    }
+
+    private static long signedArea(int[] px, int[] py, int count) {
+        long sum = 0;
+        for (int i = 0, j = count - 1; i < count; j = i++) {
+            sum += (long) px[j] * py[i] - (long) px[i] * py[j];
+        }
+        return sum;
+    }
+
+    private static void reverse(int[] px, int[] py, int count) {
+        for (int i = 0, j = count - 1; i < j; i++, j--) {
+            int t = px[i];
+            px[i] = px[j];
+            px[j] = t;
+            t = py[i];
+            py[i] = py[j];
+            py[j] = t;
+        }
+    }
+
+    /**
+     * Snaps the coordinates to the tile grid dropping consecutive duplicates
+     */
+    private void snap(CoordinateSequence seq) {
+        n = 0;
+        int size = seq.size();
+        for (int i = 0; i < size; i++) {
+            int x = snapX(seq.getX(i));
+            int y = snapY(seq.getY(i));
+            if (n > 0 && xs[n - 1] == x && ys[n - 1] == y) {
+                continue;
+            }
+            add(x, y);
+        }
+    }
+
+    private boolean isInside() {
+        for (int i = 0; i < n; i++) {
+            if (xs[i] < min || xs[i] > max || ys[i] < min || ys[i] > max) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int snapX(double x) {
+        return (int) Math.round(sx * (x - tx));
+    }
+
+    private int snapY(double y) {
+        return (int) Math.round(sy * (y - ty));
+    }
+
+    private void add(int x, int y) {
+        if (n == xs.length) {
+            xs = Arrays.copyOf(xs, n * 2);
+            ys = Arrays.copyOf(ys, n * 2);
+        }
+        xs[n] = x;
+        ys[n] = y;
+        n++;
+    }
+
+    private void addClipped(int x, int y) {
+        if (clipN == clipXs.length) {
+            clipXs = Arrays.copyOf(clipXs, clipN * 2);
+            clipYs = Arrays.copyOf(clipYs, clipN * 2);
+        }
+        clipXs[clipN] = x;
+        clipYs[clipN] = y;
+        clipN++;
+    }
+
+    private void command(int id, int count) {
+        append((id & 0x7) | (count << 3));
+    }
+
+    private void moveCursor(int x, int y) {
+        append(zigZag(x - cursorX));
+        append(zigZag(y - cursorY));
+        cursorX = x;
+        cursorY = y;
+    }
+
+    private void append(int value) {
+        if (numCommands == commands.length) {
+            commands = Arrays.copyOf(commands, numCommands * 2);
+        }
+        commands[numCommands++] = value;
+    }
+
+    private static int zigZag(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+}
@@ -0,0 +1,266 @@
+package org.oskari.service.mvt;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes a single layer vector tile in the Mapbox Vector Tile protobuf format
+ * (https://github.com/mapbox/vector-tile-spec/tree/master/2.1) without
+ * building an intermediate object model. Features are serialized as they are added,
+ * keys and values are deduplicated for the whole layer.
+ *
+ * Not thread-safe, create one per tile.
+ */
+public class MVTLayerWriter {
+
+    private static final int VERSION = 2;
+
+    // Tile
+    private static final int TAG_TILE_LAYERS = tag(3, 2);
+    // Layer
+    private static final int TAG_LAYER_NAME = tag(1, 2);
+    private static final int TAG_LAYER_FEATURES = tag(2, 2);
+    private static final int TAG_LAYER_KEYS = tag(3, 2);
+    private static final int TAG_LAYER_VALUES = tag(4, 2);
+    private static final int TAG_LAYER_EXTENT = tag(5, 0);
+    private static final int TAG_LAYER_VERSION = tag(15, 0);
+    // Feature
+    private static final int TAG_FEATURE_TAGS = tag(2, 2);
+    private static final int TAG_FEATURE_TYPE = tag(3, 0);
+    private static final int TAG_FEATURE_GEOMETRY = tag(4, 2);
+    // Value
+    private static final int TAG_VALUE_STRING = tag(1, 2);
+    private static final int TAG_VALUE_FLOAT = tag(2, 5);
+    private static final int TAG_VALUE_DOUBLE = tag(3, 1);
+    private static final int TAG_VALUE_SINT = tag(6, 0);
+    private static final int TAG_VALUE_BOOL = tag(7, 0);
+
+    private final String name;
+    private final int extent;
+
+    private final Map<String, Integer> keys = new HashMap<>();
+    private final Map<Object, Integer> values = new HashMap<>();
+    private final Buffer keysOut = new Buffer(256);
+    private final Buffer valuesOut = new Buffer(256);
+    private final Buffer featuresOut = new Buffer(4096);
+    private final Buffer scratch = new Buffer(256);
+    private int[] tags = new int[32];
+    private int numTags;
+    private int numFeatures;
+
+    public MVTLayerWriter(String name, int extent) {
+        this.name = name;
+        this.extent = extent;
+    }
+
+    /**
+     * Adds a property to the feature that is written next with writeFeature().
+     * Supported values are String, Boolean, Integer, Long, Float and Double, others are skipped.
+     */
+    public void addProperty(String key, Object value) {
+        int valueIndex = getValueIndex(value);
+        if (valueIndex < 0) {
+            return;
+        }
+        if (numTags + 2 > tags.length) {
+            tags = Arrays.copyOf(tags, tags.length * 2);
+        }
+        tags[numTags++] = getKeyIndex(key);
+        tags[numTags++] = valueIndex;
+    }
+
+    /**
+     * Writes a feature with the properties added since the previous feature
+     * @param type MVTGeometryEncoder.TYPE_*
+     * @param commands encoded geometry
+     */
+    public void writeFeature(int type, int[] commands, int numCommands) {
+        Buffer f = scratch;
+        f.reset();
+        if (numTags > 0) {
+            f.writeVarint(TAG_FEATURE_TAGS);
+            int len = 0;
+            for (int i = 0; i < numTags; i++) {
+                len += Buffer.varintSize(tags[i]);
+            }
+            f.writeVarint(len);
+            for (int i = 0; i < numTags; i++) {
+                f.writeVarint(tags[i]);
+            }
+        }
+        f.writeVarint(TAG_FEATURE_TYPE);
+        f.writeVarint(type);
+        f.writeVarint(TAG_FEATURE_GEOMETRY);
+        int len = 0;
+        for (int i = 0; i < numCommands; i++) {
+            len += Buffer.varintSize(commands[i]);
+        }
+        f.writeVarint(len);
+        for (int i = 0; i < numCommands; i++) {
+            f.writeVarint(commands[i]);
+        }
+        featuresOut.writeVarint(TAG_LAYER_FEATURES);
+        featuresOut.writeVarint(f.size);
+        featuresOut.write(f.bytes, 0, f.size);
+        numTags = 0;
+        numFeatures++;
+    }
+
+    public int getNumFeatures() {
+        return numFeatures;
+    }
+
+    /**
+     * @return the tile as bytes, an empty tile if no features were written
+     */
+    public byte[] encode() {
+        if (numFeatures == 0) {
+            return new byte[0];
+        }
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        Buffer layer = new Buffer(featuresOut.size + keysOut.size + valuesOut.size + nameBytes.length + 32);
+        layer.writeVarint(TAG_LAYER_VERSION);
+        layer.writeVarint(VERSION);
+        layer.writeVarint(TAG_LAYER_NAME);
+        layer.writeVarint(nameBytes.length);
+        layer.write(nameBytes, 0, nameBytes.length);
+        layer.write(featuresOut.bytes, 0, featuresOut.size);
+        layer.write(keysOut.bytes, 0, keysOut.size);
+        layer.write(valuesOut.bytes, 0, valuesOut.size);
+        layer.writeVarint(TAG_LAYER_EXTENT);
+        layer.writeVarint(extent);
+
+        Buffer tile = new Buffer(layer.size + 8);
+        tile.writeVarint(TAG_TILE_LAYERS);
+        tile.writeVarint(layer.size);
+        tile.write(layer.bytes, 0, layer.size);
+        return tile.size == tile.bytes.length ? tile.bytes : Arrays.copyOf(tile.bytes, tile.size);
+    }
+
+    private int getKeyIndex(String key) {
+        Integer i = keys.get(key);
+        if (i != null) {
+            return i;
+        }
+        int index = keys.size();
+        keys.put(key, index);
+        keysOut.writeVarint(TAG_LAYER_KEYS);
+        keysOut.writeString(key);
+        return index;
+    }
+
+    private int getValueIndex(Object value) {
+        if (value == null) {
+            return -1;
+        }
+        Integer i = values.get(value);
+        if (i != null) {
+            return i;
+        }
+        Buffer v = scratch;
+        v.reset();
+        if (value instanceof String) {
+            v.writeVarint(TAG_VALUE_STRING);
+            v.writeString((String) value);
+        } else if (value instanceof Boolean) {
+            v.writeVarint(TAG_VALUE_BOOL);
+            v.writeVarint((Boolean) value ? 1 : 0);
+        } else if (value instanceof Integer || value instanceof Long) {
+            long l = ((Number) value).longValue();
+            v.writeVarint(TAG_VALUE_SINT);
+            v.writeVarint64((l << 1) ^ (l >> 63));
+        } else if (value instanceof Float) {
+            v.writeVarint(TAG_VALUE_FLOAT);
+            v.writeFixed32(Float.floatToIntBits((Float) value));
+        } else if (value instanceof Double) {
+            v.writeVarint(TAG_VALUE_DOUBLE);
+            v.writeFixed64(Double.doubleToLongBits((Double) value));
+        } else {
+            return -1;
+        }
+        int index = values.size();
+        values.put(value, index);
+        valuesOut.writeVarint(TAG_LAYER_VALUES);
+        valuesOut.writeVarint(v.size);
+        valuesOut.write(v.bytes, 0, v.size);
+        return index;
+    }
+
+    private static int tag(int field, int wireType) {
+        return (field << 3) | wireType;
+    }
+
+    /**
+     * Growable byte array with the protobuf primitives we need
+     */
+    private static final class Buffer {
+        private byte[] bytes;
+        private int size;
+
+        private Buffer(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        private void reset() {
+            size = 0;
+        }
+
+        private void ensure(int n) {
+            if (size + n > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + n));
+            }
+        }
+
+        private void writeVarint(int value) {
+            // values are non-negative (zigzag encoded where needed) so treat as unsigned
+            writeVarint64(value & 0xFFFFFFFFL);
+        }
+
+        private void writeVarint64(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        private void writeFixed32(int value) {
+            ensure(4);
+            for (int i = 0; i < 4; i++) {
+                bytes[size++] = (byte) (value >>> (8 * i));
+            }
+        }
+
+        private void writeFixed64(long value) {
+            ensure(8);
+            for (int i = 0; i < 8; i++) {
+                bytes[size++] = (byte) (value >>> (8 * i));
+            }
+        }
+
+        private void writeString(String s) {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            writeVarint(b.length);
+            write(b, 0, b.length);
+        }
+
+        private void write(byte[] b, int off, int len) {
+            ensure(len);
+            System.arraycopy(b, off, bytes, size, len);
+            size += len;
+        }
+
+        private static int varintSize(int value) {
+            long v = value & 0xFFFFFFFFL;
+            int n = 1;
+            while ((v & ~0x7FL) != 0) {
+                v >>>= 7;
+                n++;
+            }
+            return n;
+        }
+    }
+}
@@ -11,6 +11,7 @@ import org.geotools.api.feature.type.Name;
 
 import java.math.BigDecimal;
 import java.util.*;
+import java.util.function.BiConsumer;
 
 public class SimpleFeatureConverter {
 
@@ -26,11 +27,20 @@ public class SimpleFeatureConverter {
         }
         Feature feature = new Feature();
         SimpleFeature f = (SimpleFeature) geom.getUserData();
-        String id = f.getID();
-        feature.id = id;
+        feature.id = f.getID();
         feature.properties = new LinkedHashMap<>();
-        feature.properties.put(KEY_ID, id);
         feature.geom = geom;
+        forEachProperty(f, feature.properties::put);
+        return Optional.of(feature);
+    }
+
+    /**
+     * Passes the id and the non-geometry properties of the feature converted to MVT
+     * property names and values to the consumer. Properties that can't be converted are skipped.
+     */
+    public static void forEachProperty(SimpleFeature f, BiConsumer<String, Object> consumer) {
+        String id = f.getID();
+        consumer.accept(KEY_ID, id);
 
         Name geomPropertyName = f.getDefaultGeometryProperty().getName();
         for (Property p : f.getProperties()) {
@@ -53,9 +63,8 @@ public class SimpleFeatureConverter {
                         "could not handle class:", value.getClass());
                 continue;
             }
-            feature.properties.put(mvtProp, mvtValue);
+            consumer.accept(mvtProp, mvtValue);
         }
-        return Optional.of(feature);
     }
 
     private static String convertPropertyNameToMVT(String prop, Object value) {
@@ -30,9 +30,50 @@ public class SimpleFeaturesMVTEncoder {
 
     public static byte[] encodeToByteArray(SimpleFeatureCollection sfc,
             String layer, double[] bbox, int extent, int buffer) {
+        return encode(asMVTGeoms(sfc, bbox, extent, buffer), layer, extent, buffer);
+    }
+
+    public static byte[] encodeToByteArray(Collection<SimpleFeature> features,
+            String layer, double[] bbox, int extent, int buffer) {
+        return encode(asMVTGeoms(features, bbox, extent, buffer), layer, extent, buffer);
+    }
+
+    /**
+     * Encodes the features straight from their CoordinateSequences to the MVT protobuf format
+     * with MVTGeometryEncoder and MVTLayerWriter. Produces the same tile as encodeToByteArray()
+     * apart from simplification (only redundant vertices are removed) with a fraction of the
+     * allocations as no intermediate JTS geometries or property maps are created.
+     */
+    public static byte[] encodeToByteArrayDirect(Collection<SimpleFeature> features,
+            String layer, double[] bbox, int extent, int buffer) {
+        MVTLayerWriter writer = new MVTLayerWriter(layer, extent);
+        if (features.isEmpty()) {
+            return writer.encode();
+        }
+        MVTGeometryEncoder geometryEncoder = new MVTGeometryEncoder(bbox, extent, buffer);
+        Envelope tileEnvelope = new Envelope(bbox[0], bbox[2], bbox[1], bbox[3]);
+        for (SimpleFeature sf : features) {
+            Geometry geom = (Geometry) sf.getDefaultGeometry();
+            if (geom == null || geom.isEmpty()) {
+                continue;
+            }
+            if (!(geom instanceof Point || geom instanceof MultiPoint)
+                    && !tileEnvelope.intersects(geom.getEnvelopeInternal())) {
+                // only points are drawn in the buffer area if they are outside the tile
+                continue;
+            }
+            int type = geometryEncoder.encode(geom);
+            if (type == MVTGeometryEncoder.TYPE_UNKNOWN) {
+                continue;
+            }
+            SimpleFeatureConverter.forEachProperty(sf, writer::addProperty);
+            writer.writeFeature(type, geometryEncoder.getCommands(), geometryEncoder.getNumCommands());
+        }
+        return writer.encode();
+    }
 
+    private static byte[] encode(List<Geometry> mvtGeoms, String layer, int extent, int buffer) {
         VectorTileEncoder encoder = new VectorTileEncoder(extent, buffer, false);
-        List<Geometry> mvtGeoms = asMVTGeoms(sfc, bbox, extent, buffer);
         mvtGeoms.stream()
                 .map(geom -> SimpleFeatureConverter.fromGeometry(geom))
                 .filter(Optional::isPresent)
@@ -46,7 +87,28 @@ public class SimpleFeaturesMVTEncoder {
         if (sfc.isEmpty()) {
             return Collections.emptyList();
         }
+        try (SimpleFeatureIterator it = sfc.features()) {
+            return asMVTGeoms(new Iterator<SimpleFeature>() {
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+                @Override
+                public SimpleFeature next() {
+                    return it.next();
+                }
+            }, bbox, extent, buffer);
+        }
+    }
+
+    public static List<Geometry> asMVTGeoms(Collection<SimpleFeature> features, double[] bbox, int extent, int buffer) {
+        if (features.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return asMVTGeoms(features.iterator(), bbox, extent, buffer);
+    }
 
+    private static List<Geometry> asMVTGeoms(Iterator<SimpleFeature> it, double[] bbox, int extent, int buffer) {
         Envelope tileEnvelope = new Envelope(bbox[0], bbox[2], bbox[1], bbox[3]);
         Envelope clipEnvelope = new Envelope(tileEnvelope);
         if (buffer > 0) {
@@ -70,67 +132,65 @@ public class SimpleFeaturesMVTEncoder {
         GeometryEditor editor = new GeometryEditor(GF);
 
         List<Geometry> mvtGeoms = new ArrayList<>();
-        try (SimpleFeatureIterator it = sfc.features()) {
-            while (it.hasNext()) {
-                SimpleFeature sf = it.next();
-                Geometry geom = (Geometry) sf.getDefaultGeometry();
-                if (geom == null || geom.isEmpty()) {
-                    continue;
-                }
+        while (it.hasNext()) {
+            SimpleFeature sf = it.next();
+            Geometry geom = (Geometry) sf.getDefaultGeometry();
+            if (geom == null || geom.isEmpty()) {
+                continue;
+            }
 
-                geom = multiGeometriesWithOneGeometryToSingle(geom);
+            geom = multiGeometriesWithOneGeometryToSingle(geom);
 
-                if (geom instanceof Point) {
-                    // Check that clipEnvelope (buffered) and the geometry's envelope are not disjoint
-                    if (!clipEnvelope.intersects(geom.getEnvelopeInternal())) {
-                        continue;
-                    }
-                } else if (geom instanceof MultiPoint) {
-                    // Check that clipEnvelope (buffered) and the geometry's envelope are not disjoint
-                    if (!clipEnvelope.intersects(geom.getEnvelopeInternal())) {
-                        continue;
-                    }
-                    geom = removePointsOutsideOfEnvelope((MultiPoint) geom, clipEnvelope);
-                } else {
-                    // Check that tileEnvelope and geometry's envelope are not disjoint
-                    if (!tileEnvelope.intersects(geom.getEnvelopeInternal())) {
-                        continue;
-                    }
-
-                    // Remove parts of the geometry that are disjoint with our tileEnvelope
-                    geom = notDisjoint(tileIntersects, geom);
-                    if (geom == null || geom.isEmpty()) {
-                        continue;
-                    }
+            if (geom instanceof Point) {
+                // Check that clipEnvelope (buffered) and the geometry's envelope are not disjoint
+                if (!clipEnvelope.intersects(geom.getEnvelopeInternal())) {
+                    continue;
+                }
+            } else if (geom instanceof MultiPoint) {
+                // Check that clipEnvelope (buffered) and the geometry's envelope are not disjoint
+                if (!clipEnvelope.intersects(geom.getEnvelopeInternal())) {
+                    continue;
+                }
+                geom = removePointsOutsideOfEnvelope((MultiPoint) geom, clipEnvelope);
+            } else {
+                // Check that tileEnvelope and geometry's envelope are not disjoint
+                if (!tileEnvelope.intersects(geom.getEnvelopeInternal())) {
+                    continue;
                 }
 
-                // Snap the geometry to MVT grid (integer coordinates)
-                geom = editor.edit(geom, snapToGrid);
+                // Remove parts of the geometry that are disjoint with our tileEnvelope
+                geom = notDisjoint(tileIntersects, geom);
                 if (geom == null || geom.isEmpty()) {
-                    // Which might make the geometry disappear (for example LineString collapsed to a Point)
                     continue;
                 }
+            }
+
+            // Snap the geometry to MVT grid (integer coordinates)
+            geom = editor.edit(geom, snapToGrid);
+            if (geom == null || geom.isEmpty()) {
+                // Which might make the geometry disappear (for example LineString collapsed to a Point)
+                continue;
+            }
+
+            geom = multiGeometriesWithOneGeometryToSingle(geom);
 
-                geom = multiGeometriesWithOneGeometryToSingle(geom);
-
-                if (!(geom instanceof Point || geom instanceof MultiPoint)) {
-                    geom = VWSimplifier.simplify(geom, 0.5);
-                    try {
-                        // Calculate the intersection with our buffered envelope
-                        geom = mvtClipGeom.intersection(geom);
-                        if (geom == null || geom.isEmpty()) {
-                            // Which might not exist - skip the geometry
-                            continue;
-                        }
-                    } catch (TopologyException ignore) {
-                        // Calculating the intersection failed
+            if (!(geom instanceof Point || geom instanceof MultiPoint)) {
+                geom = VWSimplifier.simplify(geom, 0.5);
+                try {
+                    // Calculate the intersection with our buffered envelope
+                    geom = mvtClipGeom.intersection(geom);
+                    if (geom == null || geom.isEmpty()) {
+                        // Which might not exist - skip the geometry
                         continue;
                     }
+                } catch (TopologyException ignore) {
+                    // Calculating the intersection failed
+                    continue;
                 }
-
-                geom.setUserData(sf);
-                mvtGeoms.add(geom);
             }
+
+            geom.setUserData(sf);
+            mvtGeoms.add(geom);
         }
         return mvtGeoms;
     }
@@ -0,0 +1,107 @@
+package org.oskari.service.mvt;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.MultiPoint;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.index.strtree.STRtree;
+
+/**
+ * Spatially indexed, read-only set of features fetched for one tile of the WFS request grid.
+ * The same index is shared by all the MVT tiles that need features from the request tile
+ * so the features don't need to be copied to a new collection for each MVT tile.
+ */
+public class TileFeatureIndex {
+
+    private static final int NODE_CAPACITY = 10;
+
+    private final STRtree index;
+    private final SimpleFeatureType schema;
+    private final boolean onlyPoints;
+    private final int size;
+
+    private TileFeatureIndex(STRtree index, SimpleFeatureType schema, boolean onlyPoints, int size) {
+        this.index = index;
+        this.schema = schema;
+        this.onlyPoints = onlyPoints;
+        this.size = size;
+    }
+
+    public static TileFeatureIndex of(SimpleFeatureCollection sfc) {
+        STRtree index = new STRtree(NODE_CAPACITY);
+        boolean onlyPoints = true;
+        int size = 0;
+        try (SimpleFeatureIterator it = sfc.features()) {
+            while (it.hasNext()) {
+                SimpleFeature f = it.next();
+                Geometry geom = (Geometry) f.getDefaultGeometry();
+                if (geom == null || geom.isEmpty()) {
+                    continue;
+                }
+                if (!(geom instanceof Point || geom instanceof MultiPoint)) {
+                    onlyPoints = false;
+                }
+                index.insert(geom.getEnvelopeInternal(), f);
+                size++;
+            }
+        }
+        // build now so concurrent queries don't need to synchronize on building the tree
+        index.build();
+        return new TileFeatureIndex(index, sfc.getSchema(), onlyPoints, size);
+    }
+
+    /**
+     * Adds features whose envelope intersects the given envelope to result. Features that have
+     * an id in seenIds are skipped so the same feature returned for multiple request tiles is
+     * only added once.
+     */
+    public void query(Envelope envelope, Set<String> seenIds, Collection<SimpleFeature> result) {
+        if (size == 0) {
+            return;
+        }
+        index.query(envelope, item -> {
+            SimpleFeature f = (SimpleFeature) item;
+            String id = f.getID();
+            if (id == null || seenIds.add(id)) {
+                result.add(f);
+            }
+        });
+    }
+
+    /**
+     * @return features from all the indexes that intersect envelope without duplicates
+     */
+    public static List<SimpleFeature> query(List<TileFeatureIndex> indexes, Envelope envelope) {
+        List<SimpleFeature> result = new ArrayList<>();
+        Set<String> seenIds = new HashSet<>();
+        for (TileFeatureIndex index : indexes) {
+            index.query(envelope, seenIds, result);
+        }
+        return result;
+    }
+
+    public SimpleFeatureType getSchema() {
+        return schema;
+    }
+
+    /**
+     * @return true if the indexed features only contain (multi)points
+     */
+    public boolean isOnlyPoints() {
+        return onlyPoints;
+    }
+
+    public int size() {
+        return size;
+    }
+}
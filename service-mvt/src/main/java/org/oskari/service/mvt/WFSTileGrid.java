@@ -84,4 +84,26 @@ public class WFSTileGrid {
         return resolutions[z];
     }
 
+    /**
+     * Returns the tiles on zoom level z that intersect the bbox
+     * @param bbox minX, minY, maxX, maxY
+     * @return minX, minY, maxX, maxY of the tile matrix (inclusive) or null if bbox is outside the grid
+     */
+    public int[] getTileRange(double[] bbox, int z) {
+        double tileSizeInNature = TILE_SIZE * resolutions[z];
+        int max = getMatrixSize(z) - 1;
+        int x1 = (int) Math.floor((bbox[0] - originX) / tileSizeInNature);
+        int x2 = (int) Math.ceil((bbox[2] - originX) / tileSizeInNature) - 1;
+        // tile rows grow downwards from top left corner
+        int y1 = (int) Math.floor((originY - bbox[3]) / tileSizeInNature);
+        int y2 = (int) Math.ceil((originY - bbox[1]) / tileSizeInNature) - 1;
+        if (x2 < 0 || y2 < 0 || x1 > max || y1 > max) {
+            return null;
+        }
+        return new int[] {
+                Math.max(0, x1), Math.max(0, y1),
+                Math.min(max, Math.max(x1, x2)), Math.min(max, Math.max(y1, y2))
+        };
+    }
+
 }
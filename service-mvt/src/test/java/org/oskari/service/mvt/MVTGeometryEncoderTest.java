@@ -0,0 +1,107 @@
+package org.oskari.service.mvt;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.io.WKTReader;
+
+public class MVTGeometryEncoderTest {
+
+    private static final double[] BBOX = { 0, 0, 4096, 4096 };
+    private final WKTReader wkt = new WKTReader();
+
+    @Test
+    public void pointsOutsideBufferAreDropped() throws Exception {
+        MVTGeometryEncoder encoder = new MVTGeometryEncoder(BBOX, 4096, 64);
+        int type = encoder.encode(wkt.read("MULTIPOINT ((10 10), (5000 10), (20 20))"));
+        Assertions.assertEquals(MVTGeometryEncoder.TYPE_POINT, type);
+        Assertions.assertEquals("M(10,4086)(20,4076)", decode(encoder));
+    }
+
+    @Test
+    public void polygonIsClippedToBufferedTile() throws Exception {
+        MVTGeometryEncoder encoder = new MVTGeometryEncoder(BBOX, 4096, 64);
+        int type = encoder.encode(wkt.read("POLYGON ((-1000 -1000, 5000 -1000, 5000 5000, -1000 5000, -1000 -1000))"));
+        Assertions.assertEquals(MVTGeometryEncoder.TYPE_POLYGON, type);
+        Assertions.assertEquals("M(4160,-64) L(4160,4160)(-64,4160)(-64,-64) Z", decode(encoder));
+    }
+
+    @Test
+    public void ringsAreOrientedForMVT() throws Exception {
+        MVTGeometryEncoder encoder = new MVTGeometryEncoder(BBOX, 4096, 64);
+        // exterior counter-clockwise and hole clockwise in screen coordinates -> both are reversed
+        encoder.encode(wkt.read("POLYGON ((100 100, 100 200, 200 200, 200 100, 100 100), "
+                + "(120 120, 180 120, 180 180, 120 180, 120 120))"));
+        Assertions.assertEquals("M(100,3996) L(100,3896)(200,3896)(200,3996) Z M(120,3976) L(180,3976)(180,3916)(120,3916) Z",
+                decode(encoder));
+    }
+
+    @Test
+    public void lineIsSplitWhenLeavingTile() throws Exception {
+        MVTGeometryEncoder encoder = new MVTGeometryEncoder(BBOX, 4096, 64);
+        int type = encoder.encode(wkt.read("LINESTRING (100 100, 5000 100, 5000 200, 100 200)"));
+        Assertions.assertEquals(MVTGeometryEncoder.TYPE_LINESTRING, type);
+        Assertions.assertEquals("M(100,3996) L(4160,3996) M(4160,3896) L(100,3896)", decode(encoder));
+    }
+
+    @Test
+    public void redundantVerticesAreRemoved() throws Exception {
+        MVTGeometryEncoder encoder = new MVTGeometryEncoder(BBOX, 4096, 64);
+        encoder.encode(wkt.read("LINESTRING (0 0, 50 0, 100 0, 100 0, 200 0)"));
+        Assertions.assertEquals("M(0,4096) L(200,4096)", decode(encoder));
+    }
+
+    @Test
+    public void geometryOutsideTileIsEmpty() throws Exception {
+        MVTGeometryEncoder encoder = new MVTGeometryEncoder(BBOX, 4096, 64);
+        int type = encoder.encode(wkt.read("POLYGON ((5000 5000, 6000 5000, 6000 6000, 5000 5000))"));
+        Assertions.assertEquals(MVTGeometryEncoder.TYPE_UNKNOWN, type);
+        Assertions.assertEquals(0, encoder.getNumCommands());
+    }
+
+    @Test
+    public void polygonWithHoleCoveringTileIsEmpty() throws Exception {
+        MVTGeometryEncoder encoder = new MVTGeometryEncoder(BBOX, 4096, 64);
+        String holeCoversTile = "((-2000 -2000, 6000 -2000, 6000 6000, -2000 6000, -2000 -2000), "
+                + "(-1000 -1000, 5000 -1000, 5000 5000, -1000 5000, -1000 -1000))";
+        int type = encoder.encode(wkt.read("POLYGON " + holeCoversTile));
+        Assertions.assertEquals(MVTGeometryEncoder.TYPE_UNKNOWN, type);
+        Assertions.assertEquals(0, encoder.getNumCommands());
+
+        // the other polygons are kept
+        type = encoder.encode(wkt.read("MULTIPOLYGON (" + holeCoversTile
+                + ", ((100 100, 200 100, 200 200, 100 200, 100 100)))"));
+        Assertions.assertEquals(MVTGeometryEncoder.TYPE_POLYGON, type);
+        Assertions.assertEquals("M(100,3896) L(200,3896)(200,3996)(100,3996) Z", decode(encoder));
+    }
+
+    /**
+     * Decodes the commands to a readable form with absolute coordinates
+     */
+    private static String decode(MVTGeometryEncoder encoder) {
+        int[] c = encoder.getCommands();
+        int n = encoder.getNumCommands();
+        List<String> parts = new ArrayList<>();
+        int i = 0;
+        int x = 0;
+        int y = 0;
+        while (i < n) {
+            int id = c[i] & 0x7;
+            int count = c[i] >> 3;
+            i++;
+            StringBuilder sb = new StringBuilder(id == 1 ? "M" : id == 2 ? "L" : "Z");
+            if (id != 7) {
+                for (int k = 0; k < count; k++) {
+                    x += (c[i] >>> 1) ^ -(c[i] & 1);
+                    y += (c[i + 1] >>> 1) ^ -(c[i + 1] & 1);
+                    i += 2;
+                    sb.append('(').append(x).append(',').append(y).append(')');
+                }
+            }
+            parts.add(sb.toString());
+        }
+        return String.join(" ", parts);
+    }
+}
@@ -1,6 +1,8 @@
 package org.oskari.service.mvt;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -28,6 +30,9 @@ import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.LinearRing;
 import org.locationtech.jts.geom.Point;
 import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.io.WKTReader;
+
+import no.ecc.vectortile.VectorTileDecoder;
 
 public class SimpleFeaturesMVTEncoderTest {
 
@@ -363,4 +368,66 @@ public class SimpleFeaturesMVTEncoderTest {
         Assertions.assertTrue(duration < 500, "Check time"); // Should be around ~300ms but CI might be slower
 
     }
+
+    @Test
+    public void testDirectEncodingMatchesEncodeToByteArray() throws Exception {
+        SimpleFeatureTypeBuilder tBuilder = new SimpleFeatureTypeBuilder();
+        tBuilder.setName("test");
+        tBuilder.add("geom", Geometry.class);
+        tBuilder.add("name", String.class);
+        tBuilder.add("count", Integer.class);
+        tBuilder.add("area", Double.class);
+        tBuilder.add("visible", Boolean.class);
+        SimpleFeatureType featureType = tBuilder.buildFeatureType();
+
+        // tile and real world coordinates match, geometries don't have vertices that would be simplified
+        String[] wkts = {
+                "POINT (100 200)",
+                "POINT (-100 300)", // in the buffer
+                "POINT (5000 300)", // outside the buffer
+                "MULTIPOINT ((10 10), (4000 4000))",
+                "LINESTRING (100 100, 1000 100, 1000 2000)",
+                "MULTILINESTRING ((100 3000, 2000 3000), (3000 100, 3000 1000, 4000 1000))",
+                "POLYGON ((500 500, 3000 500, 3000 3000, 500 3000, 500 500), (1000 1000, 1000 2000, 2000 2000, 2000 1000, 1000 1000))",
+                "MULTIPOLYGON (((100 100, 400 100, 400 400, 100 400, 100 100)), ((3500 3500, 3900 3500, 3900 3900, 3500 3900, 3500 3500)))"
+        };
+        WKTReader wkt = new WKTReader();
+        SimpleFeatureBuilder fBuilder = new SimpleFeatureBuilder(featureType);
+        List<SimpleFeature> features = new ArrayList<>();
+        for (int i = 0; i < wkts.length; i++) {
+            fBuilder.set("geom", wkt.read(wkts[i]));
+            fBuilder.set("name", "feature " + i);
+            fBuilder.set("count", i * 10 - 20);
+            fBuilder.set("area", i * 1.5);
+            fBuilder.set("visible", i % 2 == 0);
+            features.add(fBuilder.buildFeature("f" + i));
+        }
+
+        double[] bbox = { 0, 0, 4096, 4096 };
+        List<VectorTileDecoder.Feature> expected = decode(SimpleFeaturesMVTEncoder.encodeToByteArray(features, "test", bbox, 4096, 256));
+        List<VectorTileDecoder.Feature> actual = decode(SimpleFeaturesMVTEncoder.encodeToByteArrayDirect(features, "test", bbox, 4096, 256));
+
+        Assertions.assertEquals(wkts.length - 1, expected.size());
+        Assertions.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            VectorTileDecoder.Feature e = expected.get(i);
+            VectorTileDecoder.Feature a = actual.get(i);
+            Assertions.assertEquals(e.getLayerName(), a.getLayerName());
+            Assertions.assertEquals(e.getExtent(), a.getExtent());
+            Assertions.assertEquals(e.getAttributes(), a.getAttributes());
+            Geometry eGeom = e.getGeometry().norm();
+            Geometry aGeom = a.getGeometry().norm();
+            Assertions.assertTrue(eGeom.equalsExact(aGeom), "Expected " + eGeom + " but was " + aGeom);
+        }
+    }
+
+    private static List<VectorTileDecoder.Feature> decode(byte[] tile) throws IOException {
+        VectorTileDecoder decoder = new VectorTileDecoder();
+        decoder.setAutoScale(false);
+        List<VectorTileDecoder.Feature> features = new ArrayList<>();
+        for (VectorTileDecoder.Feature f : decoder.decode(tile)) {
+            features.add(f);
+        }
+        return features;
+    }
 }
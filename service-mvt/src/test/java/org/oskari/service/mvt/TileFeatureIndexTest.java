@@ -0,0 +1,71 @@
+package org.oskari.service.mvt;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.geotools.api.feature.simple.SimpleFeature;
+import org.geotools.api.feature.simple.SimpleFeatureType;
+import org.geotools.feature.DefaultFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+
+public class TileFeatureIndexTest {
+
+    private static final GeometryFactory GF = new GeometryFactory();
+
+    @Test
+    public void queryReturnsIntersectingFeaturesOnce() {
+        SimpleFeatureType type = createType();
+        SimpleFeature a = createFeature(type, "a", GF.createPoint(new Coordinate(10, 10)));
+        SimpleFeature b = createFeature(type, "b", GF.createPoint(new Coordinate(90, 90)));
+        SimpleFeature line = createFeature(type, "line", GF.createLineString(new Coordinate[] {
+                new Coordinate(40, 0), new Coordinate(60, 100) }));
+
+        // line was returned for both request tiles
+        TileFeatureIndex left = TileFeatureIndex.of(collection(type, a, line));
+        TileFeatureIndex right = TileFeatureIndex.of(collection(type, b, line));
+        Assertions.assertEquals(2, left.size());
+        Assertions.assertFalse(left.isOnlyPoints());
+
+        List<SimpleFeature> all = TileFeatureIndex.query(Arrays.asList(left, right), new Envelope(0, 100, 0, 100));
+        Assertions.assertEquals(3, all.size());
+
+        List<SimpleFeature> corner = TileFeatureIndex.query(Arrays.asList(left, right), new Envelope(0, 20, 0, 20));
+        Assertions.assertEquals(1, corner.size());
+        Assertions.assertEquals("a", corner.get(0).getID());
+    }
+
+    @Test
+    public void onlyPoints() {
+        SimpleFeatureType type = createType();
+        TileFeatureIndex index = TileFeatureIndex.of(collection(type,
+                createFeature(type, "a", GF.createPoint(new Coordinate(10, 10)))));
+        Assertions.assertTrue(index.isOnlyPoints());
+        Assertions.assertTrue(TileFeatureIndex.of(collection(type)).isOnlyPoints());
+    }
+
+    private static SimpleFeatureType createType() {
+        SimpleFeatureTypeBuilder tBuilder = new SimpleFeatureTypeBuilder();
+        tBuilder.setName("test");
+        tBuilder.add("geom", Geometry.class);
+        return tBuilder.buildFeatureType();
+    }
+
+    private static SimpleFeature createFeature(SimpleFeatureType type, String id, Geometry geom) {
+        SimpleFeatureBuilder fBuilder = new SimpleFeatureBuilder(type);
+        fBuilder.set("geom", geom);
+        return fBuilder.buildFeature(id);
+    }
+
+    private static DefaultFeatureCollection collection(SimpleFeatureType type, SimpleFeature... features) {
+        DefaultFeatureCollection fc = new DefaultFeatureCollection("test", type);
+        fc.addAll(Arrays.asList(features));
+        return fc;
+    }
+}
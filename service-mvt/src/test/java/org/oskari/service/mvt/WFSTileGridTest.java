@@ -22,4 +22,19 @@ public class WFSTileGridTest {
         Assertions.assertArrayEquals(expecteds3, actuals3, 0);
     }
 
+    @Test
+    public void testGetTileRange() {
+        WFSTileGrid etrsTM35fin = new WFSTileGrid(new double[] { -548576, 6291456, 1548576, 8388608 }, 15);
+
+        // whole grid
+        Assertions.assertArrayEquals(new int[] { 0, 0, 1, 1 }, etrsTM35fin.getTileRange(new double[] { -548576, 6291456, 1548576, 8388608 }, 1));
+        // bottom right quarter matches one tile exactly
+        double[] tile = etrsTM35fin.getTileExtent(new TileCoord(1, 1, 1));
+        Assertions.assertArrayEquals(new int[] { 1, 1, 1, 1 }, etrsTM35fin.getTileRange(tile, 1));
+        // bbox larger than the grid is clamped
+        Assertions.assertArrayEquals(new int[] { 0, 0, 3, 3 }, etrsTM35fin.getTileRange(new double[] { -1e7, 0, 1e7, 1e8 }, 2));
+        // outside the grid
+        Assertions.assertNull(etrsTM35fin.getTileRange(new double[] { 2e6, 0, 3e6, 1e6 }, 2));
+    }
+
 }
@@ -0,0 +1,216 @@
+package org.oskari.permissions;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.oskari.permissions.model.Permission;
+import org.oskari.permissions.model.PermissionExternalType;
+import org.oskari.permissions.model.Resource;
+import org.oskari.user.Role;
+import org.oskari.user.User;
+
+/**
+ * Resources of one type indexed by the roles and users that have permissions to them.
+ *
+ * Each resource gets a slot number and for each (role/user, permission type) there's a BitSet of the
+ * slots the role/user has the permission for. Finding the resources a user has permissions for is
+ * then a union of the bitsets of the users roles (and the user id for logged in users) instead of
+ * going through the permissions of every resource.
+ *
+ * The index is immutable: update() and remove() return a new index that shares everything but
+ * the changed bitsets with the previous one so readers never see a partially updated index.
+ */
+class PermissionIndex {
+
+    private static final String ANY_PERMISSION = "*";
+
+    // slot -> resource, removed resources leave a null slot
+    private final List<Resource> resources;
+    // resource id -> slot
+    private final Map<Integer, Integer> slots;
+    // "ROLE:1:VIEW_LAYER" -> slots
+    private final Map<String, BitSet> index;
+
+    private PermissionIndex(List<Resource> resources, Map<Integer, Integer> slots, Map<String, BitSet> index) {
+        this.resources = resources;
+        this.slots = slots;
+        this.index = index;
+    }
+
+    static PermissionIndex of(List<Resource> resources) {
+        PermissionIndex idx = new PermissionIndex(new ArrayList<>(resources.size()), new HashMap<>(), new HashMap<>());
+        for (Resource resource : resources) {
+            idx.add(copy(resource));
+        }
+        return idx;
+    }
+
+    int size() {
+        return slots.size();
+    }
+
+    /**
+     * @return resources the user has any permission for, in the order they were added to the index
+     */
+    List<Resource> getResources(User user) {
+        return toResources(getSlots(user, ANY_PERMISSION));
+    }
+
+    /**
+     * @return resources the user has given permission for
+     */
+    List<Resource> getResources(User user, String permissionType) {
+        return toResources(getSlots(user, permissionType));
+    }
+
+    /**
+     * @return true if there are permissions given to the user id
+     */
+    boolean hasUserPermissions(long userId) {
+        BitSet bits = index.get(getKey(PermissionExternalType.USER, userId, ANY_PERMISSION));
+        return bits != null && !bits.isEmpty();
+    }
+
+    private BitSet getSlots(User user, String permissionType) {
+        BitSet result = new BitSet(resources.size());
+        for (Role role : user.getRoles()) {
+            or(result, getKey(PermissionExternalType.ROLE, role.getId(), permissionType));
+        }
+        if (!user.isGuest()) {
+            // user id based permissions are only valid for non-guests
+            or(result, getKey(PermissionExternalType.USER, user.getId(), permissionType));
+        }
+        return result;
+    }
+
+    private void or(BitSet result, String key) {
+        BitSet bits = index.get(key);
+        if (bits != null) {
+            result.or(bits);
+        }
+    }
+
+    private List<Resource> toResources(BitSet bits) {
+        if (bits.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Resource> list = new ArrayList<>(bits.cardinality());
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            list.add(resources.get(i));
+        }
+        return list;
+    }
+
+    /**
+     * @return new index with the resource added or its permissions replaced
+     */
+    PermissionIndex update(Resource resource) {
+        Resource copy = copy(resource);
+        Integer slot = slots.get(resource.getId());
+        Set<String> oldKeys = slot == null ? Collections.emptySet() : getKeys(resources.get(slot));
+        Set<String> newKeys = getKeys(copy);
+        Set<String> modified = new HashSet<>(oldKeys);
+        modified.addAll(newKeys);
+
+        PermissionIndex next = copyOf(modified);
+        if (slot == null) {
+            // new resource, add it to the end
+            slot = next.resources.size();
+            next.resources.add(copy);
+            next.slots.put(copy.getId(), slot);
+        } else {
+            next.resources.set(slot, copy);
+        }
+        for (String key : oldKeys) {
+            next.index.get(key).clear(slot);
+        }
+        for (String key : newKeys) {
+            next.index.computeIfAbsent(key, __ -> new BitSet()).set(slot);
+        }
+        return next;
+    }
+
+    /**
+     * @return new index without the resource or this if the resource wasn't indexed
+     */
+    PermissionIndex remove(int resourceId) {
+        Integer slot = slots.get(resourceId);
+        if (slot == null) {
+            return this;
+        }
+        Set<String> keys = getKeys(resources.get(slot));
+        PermissionIndex next = copyOf(keys);
+        next.resources.set(slot, null);
+        next.slots.remove(resourceId);
+        for (String key : keys) {
+            next.index.get(key).clear(slot);
+        }
+        return next;
+    }
+
+    /**
+     * Copies the structure of the index. Bitsets for given keys are cloned so they can be modified,
+     * others are shared with this index.
+     */
+    private PermissionIndex copyOf(Set<String> modifiedKeys) {
+        Map<String, BitSet> copy = new HashMap<>(index);
+        for (String key : modifiedKeys) {
+            BitSet bits = copy.get(key);
+            if (bits != null) {
+                copy.put(key, (BitSet) bits.clone());
+            }
+        }
+        return new PermissionIndex(new ArrayList<>(resources), new HashMap<>(slots), copy);
+    }
+
+    /**
+     * Only used while building a new index in of()
+     */
+    private void add(Resource resource) {
+        int slot = resources.size();
+        resources.add(resource);
+        slots.put(resource.getId(), slot);
+        for (String key : getKeys(resource)) {
+            index.computeIfAbsent(key, __ -> new BitSet()).set(slot);
+        }
+    }
+
+    private static Set<String> getKeys(Resource resource) {
+        Set<String> keys = new HashSet<>();
+        for (Permission p : resource.getPermissions()) {
+            if (p.getExternalType() == null) {
+                continue;
+            }
+            keys.add(getKey(p.getExternalType(), p.getExternalId(), p.getType()));
+            keys.add(getKey(p.getExternalType(), p.getExternalId(), ANY_PERMISSION));
+        }
+        return keys;
+    }
+
+    private static String getKey(PermissionExternalType type, long externalId, String permissionType) {
+        return type.name() + ":" + externalId + ":" + permissionType;
+    }
+
+    /**
+     * The index keeps its own copy so changes to the resource given to saveResource() after
+     * saving don't affect the index
+     */
+    private static Resource copy(Resource resource) {
+        Resource copy = new Resource();
+        copy.setId(resource.getId());
+        copy.setType(resource.getType());
+        copy.setMapping(resource.getMapping());
+        for (Permission p : resource.getPermissions()) {
+            Permission permission = p.clonePermission();
+            permission.setId(p.getId());
+            copy.addPermission(permission);
+        }
+        return copy;
+    }
+}
@@ -4,6 +4,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.oskari.user.User;
 import fi.nls.oskari.util.ConversionHelper;
@@ -63,6 +64,16 @@ public abstract class PermissionService extends OskariComponent {
     public abstract Optional<Resource> findResource(ResourceType type, String mapping);
     public abstract Optional<Resource> findResource(String type, String mapping);
     public abstract List<Resource> findResourcesByUser(User user, ResourceType type);
+
+    /**
+     * @return resources of the type the user has the given permission for
+     */
+    public List<Resource> findResourcesByUser(User user, ResourceType type, PermissionType permissionType) {
+        return findResourcesByUser(user, type).stream()
+                .filter(r -> r.hasPermission(user, permissionType))
+                .collect(Collectors.toList());
+    }
+
     public abstract List<Resource> findResourcesByType(ResourceType type);
 
 
@@ -74,6 +85,22 @@ public abstract class PermissionService extends OskariComponent {
         return getResourcesWithGrantedPermissions(resourceType.name(), user, permissionType.name());
     }
 
+    /**
+     * @return version of the permissions that changes when resources are saved or deleted so it can be
+     *  used as a cache key for responses built from permissions. The version is local to the node: don't compare
+     *  it between nodes. -1 if the implementation doesn't track changes.
+     */
+    public long getVersion() {
+        return -1;
+    }
+
+    /**
+     * @return true if the user has permissions given to the user id (instead of roles) for resources of the type
+     */
+    public boolean hasUserSpecificPermissions(User user, ResourceType type) {
+        return !user.isGuest();
+    }
+
     public abstract void insertResource(Resource resource);
     public abstract void saveResource(Resource resource);
     public abstract void deleteResource(Resource resource);
@@ -9,12 +9,15 @@ import org.oskari.user.User;
 import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.mybatis.MyBatisHelper;
+import fi.nls.oskari.util.ConversionHelper;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
 import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.oskari.cluster.ClusterManager;
 import org.oskari.permissions.model.Permission;
 import org.oskari.permissions.model.PermissionExternalType;
+import org.oskari.permissions.model.PermissionType;
 import org.oskari.permissions.model.Resource;
 import org.oskari.permissions.model.ResourceType;
 
@@ -23,6 +26,9 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 @Oskari
@@ -31,6 +37,15 @@ public class PermissionServiceMybatisImpl extends PermissionService {
     private static final Class<ResourceMapper> MAPPER = ResourceMapper.class;
     private static final Logger LOG = LogFactory.getLogger(PermissionServiceMybatisImpl.class);
 
+    private static final String CLUSTER_FUNCTIONALITY = "permissions";
+    private static final String CLUSTER_CHANNEL = "index";
+
+    // shared by all instances as there are multiple instances of the service, by resource type
+    private static final ConcurrentMap<String, PermissionIndex> INDEXES = new ConcurrentHashMap<>();
+    // startup time so a restarted node doesn't reuse a version from before the restart
+    private static final AtomicLong VERSION = new AtomicLong(System.currentTimeMillis());
+    private static volatile boolean clusterListenerAdded = false;
+
     private final SqlSessionFactory factory;
     private final Cache<Resource> cache;
 
@@ -56,31 +71,80 @@ public class PermissionServiceMybatisImpl extends PermissionService {
         return new SqlSessionFactoryBuilder().build(configuration);
     }
 
+    /**
+     * Resources are found from an in-memory index (see PermissionIndex) that is loaded on first use
+     * and updated when resources are saved or deleted with this service. The returned resources are
+     * shared between callers and should not be modified.
+     */
     public List<Resource> findResourcesByUser(User user, ResourceType type) {
-        // TODO: add userId and user.getRoles() to query and remove filtering on code
-        List<Resource> all = findResourcesByType(type);
-        return all.stream()
-                .filter(resource -> hasUserAnyPermission(user, resource))
-                .collect(Collectors.toList());
+        return getIndex(type.name()).getResources(user);
     }
 
-    private boolean hasUserAnyPermission(User user, Resource resource) {
-        return resource.getPermissions().stream()
-                .anyMatch(p -> hasUserPermission(user, p));
+    @Override
+    public List<Resource> findResourcesByUser(User user, ResourceType type, PermissionType permissionType) {
+        return getIndex(type.name()).getResources(user, permissionType.name());
     }
 
-    private boolean hasUserPermission(User user, Permission permission) {
-        boolean userHasRoleWithId = permission.getExternalType() == PermissionExternalType.ROLE
-                && user.hasRoleWithId(permission.getExternalId());
+    @Override
+    public long getVersion() {
+        addClusterListener();
+        return VERSION.get();
+    }
 
-        if (userHasRoleWithId) {
-            return true;
-        } else if(user.isGuest()) {
-            return false;
+    @Override
+    public boolean hasUserSpecificPermissions(User user, ResourceType type) {
+        return !user.isGuest() && getIndex(type.name()).hasUserPermissions(user.getId());
+    }
+
+    private PermissionIndex getIndex(String type) {
+        addClusterListener();
+        PermissionIndex index = INDEXES.get(type);
+        if (index != null) {
+            return index;
+        }
+        // loaded outside computeIfAbsent() so the query doesn't block updates to other keys of the map.
+        // Concurrent first calls might load the same index, the first one to finish is used.
+        final long version = VERSION.get();
+        long start = System.currentTimeMillis();
+        PermissionIndex loaded = PermissionIndex.of(findResourcesByType(type));
+        LOG.debug("Indexed", loaded.size(), type, "resources in", System.currentTimeMillis() - start, "ms");
+        index = INDEXES.putIfAbsent(type, loaded);
+        if (index != null) {
+            return index;
+        }
+        if (VERSION.get() != version) {
+            // resources were modified while loading and the change might be missing from the index,
+            // load again on next use. Changes move the version before touching the index (see changed())
+            INDEXES.remove(type, loaded);
+        }
+        return loaded;
+    }
+
+    private void updateIndex(Resource resource) {
+        changed(resource.getType());
+        if (resource.getId() == -1) {
+            // can't tell which indexed resource this is, reload on next use
+            INDEXES.remove(resource.getType());
+        } else {
+            INDEXES.computeIfPresent(resource.getType(), (type, index) -> index.update(resource));
+        }
+    }
+
+    private void removeFromIndex(Resource resource) {
+        changed(resource.getType());
+        if (resource.getId() == -1) {
+            INDEXES.remove(resource.getType());
+        } else {
+            INDEXES.computeIfPresent(resource.getType(), (type, index) -> index.remove(resource.getId()));
         }
+    }
 
-        return permission.getExternalType() == PermissionExternalType.USER
-                && user.getId() == permission.getExternalId();
+    /**
+     * Called before the index is updated so getIndex() notices changes made while it's loading an index
+     */
+    private static void changed(String type) {
+        long version = VERSION.updateAndGet(current -> Math.max(current + 1, System.currentTimeMillis()));
+        notifyCluster(version, type);
     }
 
     /**
@@ -89,8 +153,12 @@ public class PermissionServiceMybatisImpl extends PermissionService {
      * @return
      */
     public List<Resource> findResourcesByType(ResourceType type) {
+        return findResourcesByType(type.name());
+    }
+
+    private List<Resource> findResourcesByType(String type) {
         try (SqlSession session = factory.openSession()) {
-            return session.getMapper(MAPPER).findByType(type.name());
+            return session.getMapper(MAPPER).findByType(type);
         }
     }
 
@@ -130,6 +198,7 @@ public class PermissionServiceMybatisImpl extends PermissionService {
         if (exists(resource)) {
             setPermissions(resource.getId(), resource.getPermissions());
             cache.remove(getCacheKey(resource));
+            updateIndex(resource);
         } else {
             insertResource(resource);
         }
@@ -201,6 +270,7 @@ public class PermissionServiceMybatisImpl extends PermissionService {
             session.commit();
         }
         cache.put(getCacheKey(resource), resource);
+        updateIndex(resource);
     }
 
     private void setPermissions(int resourceId, List<Permission> permissions) {
@@ -223,6 +293,7 @@ public class PermissionServiceMybatisImpl extends PermissionService {
             session.commit();
         }
         cache.remove(getCacheKey(resource));
+        removeFromIndex(resource);
     }
 
     private String getCacheKey(Resource resource) {
@@ -233,4 +304,51 @@ public class PermissionServiceMybatisImpl extends PermissionService {
         return type + "_" + mapping;
     }
 
+    /* ************************************************
+     * Cluster env methods
+     * ************************************************
+     */
+
+    private static void addClusterListener() {
+        if (clusterListenerAdded) {
+            return;
+        }
+        synchronized (INDEXES) {
+            if (clusterListenerAdded) {
+                return;
+            }
+            if (ClusterManager.isClustered()) {
+                ClusterManager
+                        .getClientFor(CLUSTER_FUNCTIONALITY)
+                        .addListener(CLUSTER_CHANNEL, (msg) -> handleClusterMsg(msg));
+            }
+            clusterListenerAdded = true;
+        }
+    }
+
+    /**
+     * Resources were modified on another node, reload the index for the type on next use
+     * and move the version forward. Versions are local to the node and differ between nodes.
+     */
+    private static void handleClusterMsg(String data) {
+        int i = data == null ? -1 : data.indexOf(' ');
+        long version = i == -1 ? -1 : ConversionHelper.getLong(data.substring(0, i), -1);
+        if (version == -1) {
+            LOG.warn("Received unrecognized cluster msg:", data);
+            return;
+        }
+        // version first like in changed()
+        VERSION.updateAndGet(current -> Math.max(current + 1, version));
+        INDEXES.remove(data.substring(i + 1));
+    }
+
+    private static void notifyCluster(long version, String type) {
+        if (!ClusterManager.isClustered()) {
+            return;
+        }
+        ClusterManager
+                .getClientFor(CLUSTER_FUNCTIONALITY)
+                .sendMessage(CLUSTER_CHANNEL, version + " " + type);
+    }
+
 }
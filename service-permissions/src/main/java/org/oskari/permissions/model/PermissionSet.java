@@ -1,14 +1,21 @@
 package org.oskari.permissions.model;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public class PermissionSet {
 
-    private final List<Resource> resources;
+    // type -> mapping -> resource, first one wins like when searching the list
+    private final Map<String, Map<String, Resource>> resources = new HashMap<>();
 
     public PermissionSet(List<Resource> resources) {
-        this.resources = resources;
+        for (Resource res : resources) {
+            this.resources
+                    .computeIfAbsent(res.getType(), __ -> new HashMap<>())
+                    .putIfAbsent(res.getMapping(), res);
+        }
     }
 
     public Optional<Resource> get(ResourceType type, String mapping) {
@@ -16,9 +23,10 @@ public class PermissionSet {
     }
 
     public Optional<Resource> get(String type, String mapping) {
-        return resources.stream()
-                .filter(res-> res.isOfType(type))
-                .filter(res-> res.getMapping().equals(mapping))
-                .findFirst();
+        Map<String, Resource> ofType = resources.get(type);
+        if (ofType == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(ofType.get(mapping));
     }
 }
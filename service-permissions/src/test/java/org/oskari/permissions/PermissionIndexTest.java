@@ -0,0 +1,92 @@
+package org.oskari.permissions;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.oskari.permissions.model.Permission;
+import org.oskari.permissions.model.PermissionExternalType;
+import org.oskari.permissions.model.PermissionType;
+import org.oskari.permissions.model.Resource;
+import org.oskari.permissions.model.ResourceType;
+import org.oskari.user.GuestUser;
+import org.oskari.user.User;
+
+public class PermissionIndexTest {
+
+    private static final int ROLE_GUEST = 1;
+    private static final int ROLE_USER = 2;
+    private static final int USER_ID = 10;
+
+    @Test
+    public void testRoleAndUserPermissions() {
+        PermissionIndex index = PermissionIndex.of(Arrays.asList(
+                resource(1, PermissionExternalType.ROLE, ROLE_GUEST, PermissionType.VIEW_LAYER),
+                resource(2, PermissionExternalType.ROLE, ROLE_USER, PermissionType.VIEW_LAYER),
+                resource(3, PermissionExternalType.USER, USER_ID, PermissionType.PUBLISH),
+                resource(4, PermissionExternalType.ROLE, 99, PermissionType.VIEW_LAYER)));
+
+        User user = new User();
+        user.setId(USER_ID);
+        user.addRole(ROLE_USER, "User");
+        Assertions.assertEquals(Arrays.asList("2", "3"), mappings(index.getResources(user)));
+        Assertions.assertEquals(Arrays.asList("2"), mappings(index.getResources(user, PermissionType.VIEW_LAYER.name())));
+
+        User guest = new GuestUser();
+        guest.setId(USER_ID);
+        guest.addRole(ROLE_GUEST, "Guest");
+        // user id based permissions are ignored for guests
+        Assertions.assertEquals(Arrays.asList("1"), mappings(index.getResources(guest)));
+    }
+
+    @Test
+    public void testUpdateAndRemove() {
+        PermissionIndex index = PermissionIndex.of(Arrays.asList(
+                resource(1, PermissionExternalType.ROLE, ROLE_USER, PermissionType.VIEW_LAYER),
+                resource(2, PermissionExternalType.ROLE, ROLE_USER, PermissionType.VIEW_LAYER)));
+        User user = new User();
+        user.addRole(ROLE_USER, "User");
+
+        PermissionIndex updated = index.update(resource(1, PermissionExternalType.ROLE, ROLE_GUEST, PermissionType.VIEW_LAYER));
+        Assertions.assertEquals(Arrays.asList("2"), mappings(updated.getResources(user)));
+        // previous index is not modified
+        Assertions.assertEquals(Arrays.asList("1", "2"), mappings(index.getResources(user)));
+
+        PermissionIndex added = updated.update(resource(3, PermissionExternalType.ROLE, ROLE_USER, PermissionType.VIEW_LAYER));
+        Assertions.assertEquals(Arrays.asList("2", "3"), mappings(added.getResources(user)));
+
+        PermissionIndex removed = added.remove(2);
+        Assertions.assertEquals(Arrays.asList("3"), mappings(removed.getResources(user)));
+        Assertions.assertEquals(2, removed.size());
+        Assertions.assertSame(removed, removed.remove(2));
+    }
+
+    @Test
+    public void testIndexIsNotAffectedByChangesToResource() {
+        Resource resource = resource(1, PermissionExternalType.ROLE, ROLE_USER, PermissionType.VIEW_LAYER);
+        PermissionIndex index = PermissionIndex.of(Arrays.asList(resource));
+        resource.getPermissions().clear();
+        User user = new User();
+        user.addRole(ROLE_USER, "User");
+        Assertions.assertEquals(1, index.getResources(user).size());
+    }
+
+    private static Resource resource(int id, PermissionExternalType externalType, int externalId, PermissionType type) {
+        Resource resource = new Resource();
+        resource.setId(id);
+        resource.setType(ResourceType.maplayer);
+        resource.setMapping(Integer.toString(id));
+        Permission permission = new Permission();
+        permission.setExternalType(externalType);
+        permission.setExternalId(externalId);
+        permission.setType(type);
+        resource.addPermission(permission);
+        return resource;
+    }
+
+    private static List<String> mappings(List<Resource> resources) {
+        return resources.stream().map(Resource::getMapping).collect(Collectors.toList());
+    }
+}
@@ -7,6 +7,7 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.oskari.permissions.model.*;
+import org.oskari.user.User;
 
 import javax.sql.DataSource;
 import java.io.IOException;
@@ -81,6 +82,34 @@ public class PermissionServiceMybatisImplTest {
         // TODO: Verify that the oskari_resource_permission rows are also deleted
     }
 
+    @Test
+    public void testFindResourcesByUserFollowsChanges() {
+        User user = new User();
+        user.addRole(100, "Test");
+        // load the index before modifying resources
+        int before = permissionService.findResourcesByUser(user, ResourceType.maplayer).size();
+
+        Resource resource = new OskariLayerResource(12345);
+        Permission permission = new Permission();
+        permission.setExternalType(PermissionExternalType.ROLE);
+        permission.setExternalId(100);
+        permission.setType(PermissionType.VIEW_LAYER);
+        resource.addPermission(permission);
+        permissionService.insertResource(resource);
+        Assertions.assertEquals(before + 1, permissionService.findResourcesByUser(user, ResourceType.maplayer).size());
+        Assertions.assertTrue(permissionService.findResourcesByUser(user, ResourceType.maplayer, PermissionType.VIEW_LAYER)
+                .stream().anyMatch(r -> r.getId() == resource.getId()));
+        Assertions.assertFalse(permissionService.findResourcesByUser(user, ResourceType.maplayer, PermissionType.VIEW_PUBLISHED)
+                .stream().anyMatch(r -> r.getId() == resource.getId()));
+
+        resource.getPermissions().clear();
+        permissionService.saveResource(resource);
+        Assertions.assertEquals(before, permissionService.findResourcesByUser(user, ResourceType.maplayer).size());
+
+        permissionService.deleteResource(resource);
+        Assertions.assertEquals(before, permissionService.findResourcesByUser(user, ResourceType.maplayer).size());
+    }
+
     private Permission findPermissionWithId(List<Permission> permissions, int id) {
         return permissions.stream()
                 .filter(p -> p.getId() == id)
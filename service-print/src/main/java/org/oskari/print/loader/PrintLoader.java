@@ -23,6 +23,7 @@ import fi.nls.oskari.util.PropertyUtil;
 import io.github.resilience4j.bulkhead.ThreadPoolBulkhead;
 import io.github.resilience4j.bulkhead.ThreadPoolBulkheadConfig;
 import io.github.resilience4j.bulkhead.ThreadPoolBulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
 import io.github.resilience4j.decorators.Decorators;
@@ -35,6 +36,7 @@ import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.oskari.metrics.UpstreamMetrics;
 import org.oskari.print.request.PrintLayer;
 import org.oskari.print.request.PrintRequest;
 
@@ -70,6 +72,13 @@ public class PrintLoader {
                 .slidingWindowSize(slidingWindow)
                 .build();
         circuitBreakerRegistry = CircuitBreakerRegistry.of(circuitBreakerConfig);
+        circuitBreakerRegistry.getEventPublisher().onEntryAdded(e -> {
+            CircuitBreaker cb = e.getAddedEntry();
+            String name = getMetricsName(cb.getName());
+            UpstreamMetrics.registerCircuitBreaker(GROUP_KEY, name, () -> cb.getState().getOrder());
+            cb.getEventPublisher().onStateTransition(t -> UpstreamMetrics.circuitBreakerTransition(
+                    GROUP_KEY, name, t.getStateTransition().getToState().name()));
+        });
 
         RetryConfig retryConfig = RetryConfig.custom()
                 .maxAttempts(RETRY_COUNT)
@@ -97,6 +106,15 @@ public class PrintLoader {
         timeLimiter = TimeLimiterRegistry.of(timeLimiterConfig).timeLimiter(GROUP_KEY);
     }
 
+    /**
+     * Circuit breakers are named by layer id. Ids of user data layers (like "myplaces_123") are labeled by
+     * the type of the layer so the number of metrics doesn't grow with the user content.
+     */
+    static String getMetricsName(String commandKey) {
+        int i = commandKey.indexOf('_');
+        return i > 0 ? commandKey.substring(0, i) : commandKey;
+    }
+
     public Map<Integer, Future<BufferedImage>> initImageLayers(PrintRequest request) {
         final Map<Integer, Future<BufferedImage>> images = new HashMap<>();
 
@@ -177,9 +195,12 @@ public class PrintLoader {
 
     public static BufferedImage loadImageFromURL(String uri, String user, String pass) {
         LOG.debug("Loading print content from:", uri);
+        UpstreamMetrics.Sample sample = UpstreamMetrics.start(GROUP_KEY, UpstreamMetrics.getHost(uri));
         try {
             HttpURLConnection conn = IOHelper.getConnection(uri, user, pass);
-            if (conn.getResponseCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+            int responseCode = conn.getResponseCode();
+            sample.firstByte(responseCode);
+            if (responseCode == HttpURLConnection.HTTP_NOT_FOUND) {
                 // short-circuit 404 as we get these a lot in the log
                 throw new ServiceRuntimeException("Not found");
             }
@@ -187,7 +208,10 @@ public class PrintLoader {
                 return ImageIO.read(in);
             }
         } catch (IOException e) {
+            sample.status(UpstreamMetrics.STATUS_ERROR);
             throw new ServiceRuntimeException(e.getMessage(), e);
+        } finally {
+            sample.stop();
         }
     }
 }
@@ -3,6 +3,7 @@ package fi.nls.oskari.routing;
 import fi.nls.oskari.domain.geo.Point;
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.map.geometry.CrsRegistry;
 import fi.nls.oskari.map.geometry.ProjectionHelper;
 import fi.nls.oskari.routing.pojo.Agency;
 import fi.nls.oskari.routing.pojo.Edge;
@@ -23,10 +24,13 @@ import fi.nls.oskari.util.PropertyUtil;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.geotools.api.referencing.FactoryException;
+import org.geotools.api.referencing.operation.TransformException;
 
 import java.time.OffsetDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
@@ -226,7 +230,7 @@ public class RouteParser {
         return fromJSON;
     }
 
-    private Place getToOfTheLastLeg(PlanConnection planConnection) {
+    static Place getToOfTheLastLeg(PlanConnection planConnection) {
 
 
         // last node -> last leg -> to
@@ -261,7 +265,7 @@ public class RouteParser {
         return lastLeg.getTo();
     }
 
-    private Place getFromOfTheFirstLeg(PlanConnection planConnection) {
+    static Place getFromOfTheFirstLeg(PlanConnection planConnection) {
         // first node -> first leg -> from
         Edge firstEdge = Optional.ofNullable(planConnection.getEdges())
             .map((edges) -> {
@@ -629,7 +633,7 @@ public class RouteParser {
         return toJSON;
     }
 
-    private Integer getPlaceStopPosition(Place place) {
+    static Integer getPlaceStopPosition(Place place) {
         if (place == null) {
             return null;
         }
@@ -671,7 +675,7 @@ public class RouteParser {
 
     }
 
-    private Long getEpochMillisFromString(String date) {
+    static Long getEpochMillisFromString(String date) {
         try {
             OffsetDateTime odt = OffsetDateTime.parse(date);
             return odt.toInstant().toEpochMilli();
@@ -782,37 +786,56 @@ public class RouteParser {
      * @return JSONArray of points
      */
     private static JSONArray decode(String pointString, String targetSRS) {
-        double lat = 0;
-        double lon = 0;
-
-        int strIndex = 0;
         JSONArray coordinates = new JSONArray();
         try {
             final String currentSRS = PropertyUtil.get("routing.srs");
-
-            while (strIndex < pointString.length()) {
-                int[] rLat = decodeSignedNumberWithIndex(pointString, strIndex);
-                lat = lat + rLat[0] * 1e-5;
-                strIndex = rLat[1];
-
-                int[] rLon = decodeSignedNumberWithIndex(pointString, strIndex);
-                lon = lon + rLon[0] * 1e-5;
-                strIndex = rLon[1];
-
-                Point coordsInAppSRS;
-                JSONArray coordinate;
-                coordsInAppSRS = ProjectionHelper.transformPoint(lon, lat, currentSRS, targetSRS);
-                coordinate = new JSONArray("[" + coordsInAppSRS.getLonToString() + "," + coordsInAppSRS.getLatToString() + "]");
-
+            double[] xy = decodePolyline(pointString);
+            // transform all the points of the polyline at once
+            CrsRegistry.transform(xy, currentSRS, targetSRS);
+            for (int i = 0; i < xy.length; i += 2) {
+                JSONArray coordinate = new JSONArray();
+                coordinate.put(xy[i]);
+                coordinate.put(xy[i + 1]);
                 coordinates.put(coordinate);
             }
         } catch (JSONException e){
             LOG.error(e + "can't get points: " + e.getMessage());
+        } catch (FactoryException | TransformException e) {
+            LOG.error(e, "Can't transform points to", targetSRS);
         }
 
         return coordinates;
     }
 
+    /**
+     * Decode Google encoded polyline to coordinates in the routing service projection
+     * @param pointString
+     * @return coordinates as [lon0, lat0, lon1, lat1, ...]
+     */
+    static double[] decodePolyline(String pointString) {
+        double lat = 0;
+        double lon = 0;
+
+        int strIndex = 0;
+        // each point takes at least two characters
+        double[] xy = new double[pointString.length()];
+        int n = 0;
+
+        while (strIndex < pointString.length()) {
+            int[] rLat = decodeSignedNumberWithIndex(pointString, strIndex);
+            lat = lat + rLat[0] * 1e-5;
+            strIndex = rLat[1];
+
+            int[] rLon = decodeSignedNumberWithIndex(pointString, strIndex);
+            lon = lon + rLon[0] * 1e-5;
+            strIndex = rLon[1];
+
+            xy[n++] = lon;
+            xy[n++] = lat;
+        }
+        return Arrays.copyOf(xy, n);
+    }
+
     /**
      * Decode signed number with index
      * @param value
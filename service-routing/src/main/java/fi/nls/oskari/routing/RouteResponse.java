@@ -2,6 +2,7 @@ package fi.nls.oskari.routing;
 
 import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.routing.pojo.PlanConnection;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -19,6 +20,9 @@ public class RouteResponse {
 
     private JSONObject requestParameters;
     private JSONObject plan;
+    // plan as returned by the routing service, RouteResponseWriter writes the plan directly from this
+    private PlanConnection planConnection;
+    private RouteParams routeParams;
     private boolean success;
     private String errorMessage;
     private String requestUrl;
@@ -33,7 +37,7 @@ public class RouteResponse {
         try{
             if(success){
                 json.put(PARAM_SUCCESS, true);
-                json.put(PARAM_PLAN, plan);
+                json.put(PARAM_PLAN, getPlan());
                 json.put(PARAM_REQUEST_PARAMETERS, requestParameters);
             } else {
                 json.put(PARAM_SUCCESS, false);
@@ -56,6 +60,9 @@ public class RouteResponse {
     }
 
     public JSONObject getPlan() {
+        if (plan == null && planConnection != null) {
+            plan = new RouteParser().mapPlanConnectionToPlan(planConnection, routeParams);
+        }
         return plan;
     }
 
@@ -63,6 +70,19 @@ public class RouteResponse {
         this.plan = plan;
     }
 
+    public PlanConnection getPlanConnection() {
+        return planConnection;
+    }
+
+    public RouteParams getRouteParams() {
+        return routeParams;
+    }
+
+    public void setPlanConnection(PlanConnection planConnection, RouteParams routeParams) {
+        this.planConnection = planConnection;
+        this.routeParams = routeParams;
+    }
+
     public boolean isSuccess() {
         return success;
     }
@@ -0,0 +1,440 @@
+package fi.nls.oskari.routing;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.map.geometry.CrsRegistry;
+import fi.nls.oskari.routing.pojo.Agency;
+import fi.nls.oskari.routing.pojo.Edge;
+import fi.nls.oskari.routing.pojo.Estimated;
+import fi.nls.oskari.routing.pojo.Leg;
+import fi.nls.oskari.routing.pojo.LegGeometry;
+import fi.nls.oskari.routing.pojo.Node;
+import fi.nls.oskari.routing.pojo.Place;
+import fi.nls.oskari.routing.pojo.PlanConnection;
+import fi.nls.oskari.routing.pojo.Route;
+import fi.nls.oskari.routing.pojo.ScheduledTime;
+import fi.nls.oskari.routing.pojo.Step;
+import fi.nls.oskari.routing.pojo.Stop;
+import fi.nls.oskari.routing.pojo.Trip;
+import fi.nls.oskari.util.PropertyUtil;
+import org.geotools.api.referencing.FactoryException;
+import org.geotools.api.referencing.operation.MathTransform;
+import org.geotools.api.referencing.operation.TransformException;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Writes a RouteResponse as JSON directly to a Writer with a Jackson JsonGenerator.
+ *
+ * The output has the same format as RouteResponse.toJSON() with a plan from RouteParser but the plan is
+ * written straight from the PlanConnection pojos instead of building an org.json tree of the whole
+ * response first. Leg polylines are decoded to coordinate arrays and transformed with a single call per
+ * leg, once per leg even if the geometry is written both to the itinerary and to the leg.
+ */
+public class RouteResponseWriter {
+
+    private static final Logger LOG = LogFactory.getLogger(RouteResponseWriter.class);
+    // the writer is left open for the caller/servlet container to close
+    private static final JsonFactory JSON_FACTORY = JsonFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .build();
+
+    private final JsonGenerator gen;
+    // null if the coordinates are already in the requested projection
+    private final MathTransform transform;
+    private final double[] point = new double[2];
+
+    private RouteResponseWriter(JsonGenerator gen, MathTransform transform) {
+        this.gen = gen;
+        this.transform = transform;
+    }
+
+    /**
+     * @param response route to write
+     * @param debug true to include the routing service url, routing errors and query (for admin users)
+     * @param out writer to write to
+     */
+    public static void write(RouteResponse response, boolean debug, Writer out) throws IOException {
+        MathTransform transform = getTransform(response.getRouteParams());
+        try (JsonGenerator gen = JSON_FACTORY.createGenerator(out)) {
+            new RouteResponseWriter(gen, transform).writeResponse(response, debug);
+        }
+    }
+
+    private static MathTransform getTransform(RouteParams params) throws IOException {
+        final String sourceSRS = PropertyUtil.get("routing.srs");
+        final String targetSRS = params == null ? null : params.getSrs();
+        if (sourceSRS == null || targetSRS == null || sourceSRS.equals(targetSRS)) {
+            return null;
+        }
+        try {
+            // strict like ProjectionHelper.transformPoint() used for the other points of the route
+            return CrsRegistry.getTransform(sourceSRS, true, targetSRS, true, false);
+        } catch (FactoryException e) {
+            throw new IOException("Can't transform route from " + sourceSRS + " to " + targetSRS, e);
+        }
+    }
+
+    private void writeResponse(RouteResponse response, boolean debug) throws IOException {
+        gen.writeStartObject();
+        gen.writeBooleanField("success", response.isSuccess());
+        if (response.isSuccess()) {
+            if (response.getPlanConnection() != null) {
+                gen.writeFieldName("plan");
+                writePlan(response.getPlanConnection());
+            } else {
+                writeRaw("plan", response.getPlan());
+            }
+        } else {
+            writeString("errorMessage", response.getErrorMessage());
+        }
+        writeRaw("requestParameters", response.getRequestParameters());
+        if (debug) {
+            writeString("otpUrl", response.getRequestUrl());
+            writeRaw("routingErrors", response.getRoutingErrors());
+            writeString("query", response.getPlanConnectionQueryString());
+        }
+        gen.writeEndObject();
+    }
+
+    private void writePlan(PlanConnection planConnection) throws IOException {
+        gen.writeStartObject();
+        writeEpochMillis("date", planConnection.getSearchDateTime());
+        gen.writeFieldName("from");
+        writePlace(RouteParser.getFromOfTheFirstLeg(planConnection));
+        gen.writeFieldName("to");
+        writePlace(RouteParser.getToOfTheLastLeg(planConnection));
+        gen.writeArrayFieldStart("itineraries");
+        List<Edge> edges = planConnection.getEdges();
+        if (edges != null) {
+            for (Edge edge : edges) {
+                writeItinerary(edge.getNode());
+            }
+        }
+        gen.writeEndArray();
+        gen.writeEndObject();
+    }
+
+    private void writePlace(Place place) throws IOException {
+        gen.writeStartObject();
+        if (place != null) {
+            writeString("name", place.getName());
+            writePoint(place.getLon(), place.getLat());
+            writeString("orig", place.getOrig());
+            writeString("vertexType", place.getVertexType());
+        }
+        gen.writeEndObject();
+    }
+
+    private void writeItinerary(Node node) throws IOException {
+        List<Leg> legs = node.getLegs();
+        double[][] coordinates = new double[legs == null ? 0 : legs.size()][];
+        for (int i = 0; i < coordinates.length; i++) {
+            coordinates[i] = getCoordinates(legs.get(i));
+        }
+
+        gen.writeStartObject();
+        writeNumber("duration", node.getDuration());
+        writeString("startTime", node.getStart());
+        writeString("endTime", node.getEnd());
+        writeNumber("walkTime", node.getWalkTime());
+        if (node.getDuration() != null && node.getWaitingTime() != null && node.getWalkTime() != null) {
+            gen.writeNumberField("transitTime", node.getDuration() - node.getWaitingTime() - node.getWalkTime());
+        }
+        writeNumber("waitingTime", node.getWaitingTime());
+        writeNumber("walkDistance", node.getWalkDistance());
+        writeNumber("elevationLost", node.getElevationLost());
+        writeNumber("elevationGained", node.getElevationGained());
+        writeNumber("transfers", node.getNumberOfTransfers());
+
+        gen.writeObjectFieldStart("geoJSON");
+        if (legs != null) {
+            gen.writeStringField("type", "FeatureCollection");
+            gen.writeArrayFieldStart("features");
+            for (int i = 0; i < coordinates.length; i++) {
+                writeFeature(legs.get(i), coordinates[i]);
+            }
+            gen.writeEndArray();
+        }
+        gen.writeEndObject();
+
+        gen.writeArrayFieldStart("legs");
+        for (int i = 0; i < coordinates.length; i++) {
+            writeLeg(legs.get(i), coordinates[i]);
+        }
+        gen.writeEndArray();
+        gen.writeEndObject();
+    }
+
+    private double[] getCoordinates(Leg leg) {
+        LegGeometry geometry = leg.getLegGeometry();
+        if (geometry == null || geometry.getPoints() == null) {
+            return new double[0];
+        }
+        double[] xy = RouteParser.decodePolyline(geometry.getPoints());
+        if (transform != null) {
+            try {
+                // transform all the points of the polyline at once
+                CrsRegistry.transform(xy, transform);
+            } catch (TransformException e) {
+                LOG.error(e, "Can't transform leg geometry");
+                return new double[0];
+            }
+        }
+        return xy;
+    }
+
+    private void writeFeature(Leg leg, double[] xy) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("type", "Feature");
+        gen.writeObjectFieldStart("geometry");
+        gen.writeStringField("type", "LineString");
+        gen.writeArrayFieldStart("coordinates");
+        for (int i = 0; i < xy.length; i += 2) {
+            gen.writeArray(xy, i, 2);
+        }
+        gen.writeEndArray();
+        gen.writeEndObject();
+        gen.writeObjectFieldStart("properties");
+        writeString("mode", leg.getMode());
+        writeNumber("distance", leg.getDistance());
+        writeString("startTime", leg.getStart() == null ? null : leg.getStart().getScheduledTime());
+        writeString("endTime", leg.getEnd() == null ? null : leg.getEnd().getScheduledTime());
+        gen.writeEndObject();
+        gen.writeEndObject();
+    }
+
+    private void writeLeg(Leg leg, double[] xy) throws IOException {
+        gen.writeStartObject();
+
+        Agency agency = leg.getAgency();
+        if (agency != null) {
+            writeString("agencyId", agency.getGtfsId());
+            writeString("agencyName", agency.getName());
+            if (agency.getTimezone() != null) {
+                writeNumber("agencyTimeZoneOffset", agency.getTimeZoneOffset());
+            }
+            writeString("agencyUrl", agency.getUrl());
+        }
+
+        ScheduledTime start = leg.getStart();
+        if (start != null) {
+            writeDelay("departureDelay", start.getEstimated());
+            writeEpochMillis("startTime", start.getScheduledTime());
+        }
+        ScheduledTime end = leg.getEnd();
+        if (end != null) {
+            writeDelay("arrivalDelay", end.getEstimated());
+            writeEpochMillis("endTime", end.getScheduledTime());
+        }
+
+        Route route = leg.getRoute();
+        if (route != null) {
+            writeString("route", route.getShortName());
+            writeString("routeId", route.getGtfsId());
+            writeString("routeLongName", route.getLongName());
+            writeString("routeShortName", route.getShortName());
+            gen.writeNumberField("routeType", route.getType());
+        }
+
+        writeNumber("distance", leg.getDistance());
+        writeNumber("duration", leg.getDuration());
+        writeString("headsign", leg.getHeadsign());
+        gen.writeBooleanField("interlineWithPreviousLeg", leg.isInterlineWithPreviousLeg());
+        writeString("mode", leg.getMode());
+        gen.writeBooleanField("realTime", leg.isRealTime());
+        gen.writeBooleanField("rentedBike", leg.isRentedBike());
+        writeString("serviceDate", leg.getServiceDate());
+        gen.writeBooleanField("transitLeg", leg.isTransitLeg());
+        Trip trip = leg.getTrip();
+        writeString("tripId", trip == null ? null : trip.getGtfsId());
+
+        gen.writeFieldName("from");
+        writeLegPlace(leg.getFrom(), false);
+        gen.writeFieldName("to");
+        writeLegPlace(leg.getTo(), true);
+
+        LegGeometry geometry = leg.getLegGeometry();
+        gen.writeObjectFieldStart("legGeometry");
+        gen.writeFieldName("geoJSON");
+        writeFeature(leg, xy);
+        if (geometry != null) {
+            writeNumber("length", geometry.getLength());
+            writeString("points", geometry.getPoints());
+        }
+        gen.writeEndObject();
+
+        writeSteps(leg.getSteps());
+        writeIntermediateStops(leg.getIntermediatePlaces());
+
+        gen.writeEndObject();
+    }
+
+    /**
+     * From and to places of a leg: departure is written only for from and orig only for to
+     */
+    private void writeLegPlace(Place place, boolean isTo) throws IOException {
+        gen.writeStartObject();
+        if (place != null) {
+            if (place.getArrival() != null) {
+                writeEpochMillis("arrival", place.getArrival().getScheduledTime());
+            }
+            if (!isTo && place.getDeparture() != null) {
+                writeEpochMillis("departure", place.getDeparture().getScheduledTime());
+            }
+            writePoint(place.getLon(), place.getLat());
+            writeString("name", place.getName());
+            if (isTo) {
+                writeString("orig", place.getOrig());
+            }
+            writeStop(place.getStop());
+            writeNumber("stopIndex", RouteParser.getPlaceStopPosition(place));
+            writeString("vertexType", place.getVertexType());
+        }
+        gen.writeEndObject();
+    }
+
+    private void writeStop(Stop stop) throws IOException {
+        if (stop == null) {
+            return;
+        }
+        writeString("stopId", stop.getGtfsId());
+        writeString("stopCode", stop.getCode());
+        writeString("zoneId", stop.getZoneId());
+    }
+
+    private void writeSteps(List<Step> steps) throws IOException {
+        gen.writeArrayFieldStart("steps");
+        if (steps != null) {
+            for (Step step : steps) {
+                gen.writeStartObject();
+                gen.writeBooleanField("area", step.isArea());
+                gen.writeArrayFieldStart("elevation");
+                if (step.getElevationProfile() != null) {
+                    // org.json wrote the profile components as empty objects as they don't have getters, keep the format
+                    for (int i = 0; i < step.getElevationProfile().size(); i++) {
+                        gen.writeStartObject();
+                        gen.writeEndObject();
+                    }
+                }
+                gen.writeEndArray();
+                writeString("streetName", step.getStreetName());
+                gen.writeNumberField("distance", step.getDistance());
+                writeString("bogusName", step.getBogusName());
+                gen.writeBooleanField("stayOn", step.isStayOn());
+                writeString("absoluteDirection", step.getAbsoluteDirection());
+                writeString("relativeDirection", step.getRelativeDirection());
+                if (step.getLon() != null && step.getLat() != null) {
+                    // same float to double conversion as the String based ProjectionHelper.transformPoint()
+                    writePoint(Double.valueOf(step.getLon().toString()), Double.valueOf(step.getLat().toString()));
+                }
+                gen.writeEndObject();
+            }
+        }
+        gen.writeEndArray();
+    }
+
+    private void writeIntermediateStops(List<Place> places) throws IOException {
+        gen.writeArrayFieldStart("intermediateStops");
+        if (places != null) {
+            for (Place place : places) {
+                gen.writeStartObject();
+                writePoint(place.getLon(), place.getLat());
+                writeStop(place.getStop());
+                writeString("name", place.getName());
+                writeScheduledTime("arrival", place.getArrival());
+                writeScheduledTime("departure", place.getDeparture());
+                writeNumber("stopIndex", RouteParser.getPlaceStopPosition(place));
+                writeString("vertexType", place.getVertexType());
+                gen.writeEndObject();
+            }
+        }
+        gen.writeEndArray();
+    }
+
+    /**
+     * Scheduled time as an object like org.json serializes the bean
+     */
+    private void writeScheduledTime(String field, ScheduledTime time) throws IOException {
+        if (time == null) {
+            return;
+        }
+        gen.writeObjectFieldStart(field);
+        writeString("scheduledTime", time.getScheduledTime());
+        Estimated estimated = time.getEstimated();
+        if (estimated != null) {
+            gen.writeObjectFieldStart("estimated");
+            writeString("delay", estimated.getDelay());
+            writeDelay("delayMilliseconds", estimated);
+            gen.writeEndObject();
+        }
+        gen.writeEndObject();
+    }
+
+    private void writeDelay(String field, Estimated estimated) throws IOException {
+        if (estimated == null || estimated.getDelay() == null) {
+            return;
+        }
+        try {
+            gen.writeNumberField(field, estimated.getDelayMilliseconds());
+        } catch (RuntimeException e) {
+            LOG.debug("Cannot parse delay:", estimated.getDelay());
+        }
+    }
+
+    private void writePoint(Double lon, Double lat) throws IOException {
+        if (lon == null || lat == null) {
+            return;
+        }
+        point[0] = lon;
+        point[1] = lat;
+        if (transform != null) {
+            try {
+                CrsRegistry.transform(point, transform);
+            } catch (TransformException e) {
+                LOG.error(e, "Can't transform point", lon, lat);
+                return;
+            }
+        }
+        gen.writeNumberField("lon", point[0]);
+        gen.writeNumberField("lat", point[1]);
+    }
+
+    private void writeEpochMillis(String field, String date) throws IOException {
+        if (date != null) {
+            writeNumber(field, RouteParser.getEpochMillisFromString(date));
+        }
+    }
+
+    private void writeString(String field, String value) throws IOException {
+        if (value != null) {
+            gen.writeStringField(field, value);
+        }
+    }
+
+    private void writeNumber(String field, Number value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        gen.writeFieldName(field);
+        if (value instanceof Float) {
+            gen.writeNumber(value.floatValue());
+        } else if (value instanceof Double) {
+            gen.writeNumber(value.doubleValue());
+        } else {
+            gen.writeNumber(value.longValue());
+        }
+    }
+
+    private void writeRaw(String field, Object json) throws IOException {
+        if (json != null) {
+            gen.writeFieldName(field);
+            gen.writeRawValue(json.toString());
+        }
+    }
+}
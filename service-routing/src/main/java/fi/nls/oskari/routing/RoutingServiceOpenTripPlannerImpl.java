@@ -81,7 +81,7 @@ public class RoutingServiceOpenTripPlannerImpl implements RoutingService {
                     planConnection = mapper.readValue(planConnectionJSON.toString(), PlanConnection.class);
                 }
                 result.setRequestParameters(parser.generateRequestParameters(params));
-                result.setPlan(parser.mapPlanConnectionToPlan(planConnection, params));
+                result.setPlanConnection(planConnection, params);
                 result.setRoutingErrors(parser.generateRoutingErrors(planConnection));
                 result.setPlanConnectionQueryString(planConnectionRequestQuery);
                 result.setSuccess(true);
@@ -0,0 +1,94 @@
+package fi.nls.oskari.routing;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fi.nls.oskari.routing.pojo.PlanConnection;
+import fi.nls.oskari.util.PropertyUtil;
+import fi.nls.test.util.JSONTestHelper;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+
+public class RouteResponseWriterTest {
+
+    private static final String ROUTING_SRS = "EPSG:4326";
+    private static final String MAP_SRS = "EPSG:3067";
+
+    @BeforeEach
+    public void initialize() throws Exception {
+        PropertyUtil.addProperty("routing.srs", ROUTING_SRS, true);
+    }
+
+    @AfterEach
+    public void goAway() {
+        PropertyUtil.clearProperties();
+    }
+
+    @Test
+    public void testSameAsJSONObject() throws Exception {
+        RouteResponse response = getRouteResponse();
+        JSONObject actual = new JSONObject(write(response, false));
+        Assertions.assertFalse(actual.has("otpUrl"));
+        Assertions.assertTrue(actual.getJSONObject("plan").getJSONArray("itineraries").length() > 0);
+
+        // round trip through a String so numbers are compared the same way on both sides
+        JSONObject expected = new JSONObject(response.toJSON().toString());
+        JSONTestHelper.shouldEqual(actual, expected);
+    }
+
+    @Test
+    public void testDebugFields() throws Exception {
+        RouteResponse response = getRouteResponse();
+        JSONObject actual = new JSONObject(write(response, true));
+        Assertions.assertEquals(response.getRequestUrl(), actual.getString("otpUrl"));
+        Assertions.assertEquals(response.getPlanConnectionQueryString(), actual.getString("query"));
+        Assertions.assertEquals(0, actual.getJSONArray("routingErrors").length());
+    }
+
+    @Test
+    public void testError() throws Exception {
+        RouteResponse response = new RouteResponse();
+        response.setSuccess(false);
+        response.setErrorMessage("Validation error");
+
+        JSONObject actual = new JSONObject(write(response, true));
+        JSONTestHelper.shouldEqual(actual, response.toJSON());
+    }
+
+    private static String write(RouteResponse response, boolean debug) throws Exception {
+        StringWriter out = new StringWriter();
+        RouteResponseWriter.write(response, debug, out);
+        return out.toString();
+    }
+
+    private RouteResponse getRouteResponse() throws Exception {
+        String json = new String(getClass().getResourceAsStream("digitransit-response-success-v2.json").readAllBytes(), StandardCharsets.UTF_8);
+        JSONObject planConnectionJSON = new JSONObject(json).getJSONObject("data").getJSONObject("planConnection");
+        PlanConnection planConnection = new ObjectMapper().readValue(planConnectionJSON.toString(), PlanConnection.class);
+
+        RouteParams params = new RouteParams();
+        params.setSrs(MAP_SRS);
+        params.setFrom(24.9384, 60.1699);
+        params.setTo(24.8286, 60.1841);
+        params.setDate(OffsetDateTime.now());
+        params.setIsArriveBy(false);
+        params.setIsWheelChair(false);
+        params.setLang("fi");
+
+        RouteParser parser = new RouteParser();
+        RouteResponse response = new RouteResponse();
+        response.setSuccess(true);
+        response.setRequestParameters(parser.generateRequestParameters(params));
+        response.setPlanConnection(planConnection, params);
+        response.setRoutingErrors(new JSONArray());
+        response.setRequestUrl("https://localhost/routing/v2/graphql");
+        response.setPlanConnectionQueryString("{ planConnection }");
+        return response;
+    }
+}
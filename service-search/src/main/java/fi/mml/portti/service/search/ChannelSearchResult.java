@@ -19,6 +19,7 @@ public class ChannelSearchResult  implements Serializable {
 	private boolean available;
 	private boolean truncated;
 	private boolean queryFailed;
+	private boolean timedOut;
 
 	private List<SearchResultItem> searchResultItems = new ArrayList<>();
 	private String searchMethod;
@@ -35,6 +36,17 @@ public class ChannelSearchResult  implements Serializable {
 		this.queryFailed = queryFailed;
 	}
 
+	/**
+	 * @return true if the channel didn't answer in time. The query is marked as failed as well.
+	 */
+	public boolean isTimedOut() {
+		return timedOut;
+	}
+
+	public void setTimedOut(boolean timedOut) {
+		this.timedOut = timedOut;
+	}
+
 	public String getChannelId() {
 		return channelId;
 	}
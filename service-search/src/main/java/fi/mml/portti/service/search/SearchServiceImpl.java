@@ -10,19 +10,51 @@ import fi.nls.oskari.util.JSONHelper;
 import fi.nls.oskari.util.PropertyUtil;
 import org.json.JSONArray;
 import org.json.JSONObject;
+import org.oskari.metrics.UpstreamMetrics;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 @Oskari
 public class SearchServiceImpl extends SearchService implements SearchChannelChangeListener {
 
     /** logger */
     private static final Logger LOG = LogFactory.getLogger(SearchServiceImpl.class);
+    private static final String UPSTREAM_CATEGORY = "search";
+
+    // channels are queried in parallel unless this is set to false
+    private static final String PROP_PARALLEL = "search.parallel";
+    // max time in ms for the whole search, channels can have shorter timeouts with search.channel.[id].timeout
+    private static final String PROP_TIMEOUT = "search.timeout";
+    private static final String PROP_POOL_SIZE = "search.pool.size";
+    private static final int DEFAULT_TIMEOUT_MS = 10000;
+    private static final boolean PARALLEL = PropertyUtil.getOptional(PROP_PARALLEL, true);
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+            PropertyUtil.getOptional(PROP_POOL_SIZE, 16), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "search-channel-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
 
     /** Available channels */
     private volatile Map<String, SearchableChannel> availableChannels = null;
+    // autocomplete responses are cached unless search.autocomplete.cache is set to false
+    private final AutocompleteIndex autocompleteIndex = PropertyUtil.getOptional("search.autocomplete.cache", true)
+            ? AutocompleteIndex.create() : null;
 
     /**
      * Inits channels
@@ -72,11 +104,19 @@ public class SearchServiceImpl extends SearchService implements SearchChannelCha
     @Override
     public void onAdd(SearchChannel channel) {
         availableChannels.put(channel.getId(), channel);
+        flushAutocomplete(channel.getId());
     }
 
     @Override
     public void onRemove(SearchChannel channel) {
         availableChannels.remove(channel.getId());
+        flushAutocomplete(channel.getId());
+    }
+
+    private void flushAutocomplete(String channelId) {
+        if (autocompleteIndex != null) {
+            autocompleteIndex.flush(channelId);
+        }
     }
 
     /**
@@ -158,11 +198,11 @@ public class SearchServiceImpl extends SearchService implements SearchChannelCha
         final Query query = new Query();
         query.setSearchCriteria(searchCriteria);
 
+        List<SearchableChannel> channels = new ArrayList<>();
         for (String channelId : searchCriteria.getChannels()) {
             if (!availableChannels.containsKey(channelId)) {
                 continue;
             }
-            long timeStart = System.currentTimeMillis();
             SearchableChannel channel = availableChannels.get(channelId);
             User user = searchCriteria.getUser();
             if(!channel.hasPermission(user)) {
@@ -181,18 +221,32 @@ public class SearchServiceImpl extends SearchService implements SearchChannelCha
                 LOG.debug(e, "Skipping ", channel.getId(), "- criteria not valid");
                 continue;
             }
-            ChannelSearchResult result = handleChannelSearch(searchCriteria, channel);
-            int numResults = -1;
-            if(result != null) {
+            channels.add(channel);
+        }
+
+        List<ChannelSearchResult> results = runChannels(channels,
+                channel -> {
+                    long timeStart = System.currentTimeMillis();
+                    ChannelSearchResult result = handleChannelSearch(searchCriteria, channel);
+                    LOG.debug("Search query to", channel.getId(),
+                            "took", (System.currentTimeMillis() - timeStart), "ms",
+                            "- got", result.getNumberOfResults(), "results");
+                    return result;
+                },
+                channel -> {
+                    ChannelSearchResult result = new ChannelSearchResult();
+                    result.setQueryFailed(true);
+                    result.setTimedOut(true);
+                    return result;
+                });
+        // results are added in the order of the channels in criteria no matter which one answered first
+        for (int i = 0; i < channels.size(); i++) {
+            ChannelSearchResult result = results.get(i);
+            if (result != null) {
                 LOG.debug("Result", result);
-                result.setChannelId(channel.getId());
+                result.setChannelId(channels.get(i).getId());
                 query.addChannelSearchResult(result);
-                numResults = result.getNumberOfResults();
             }
-            long timeEnd = System.currentTimeMillis();
-            LOG.debug("Search query to", channel.getId(),
-                    "took", (timeEnd - timeStart), "ms",
-                    "- got", numResults, "results");
         }
 
         long fullQueryEndTime = System.currentTimeMillis();
@@ -209,14 +263,12 @@ public class SearchServiceImpl extends SearchService implements SearchChannelCha
 
         long fullQueryStartTime = System.currentTimeMillis();
 
-        List<String> resultList = null;
+        List<SearchableChannel> channels = new ArrayList<>();
         for (String channelId : searchCriteria.getChannels()) {
             if (!availableChannels.containsKey(channelId)) {
                 continue;
             }
 
-            long timeStart = System.currentTimeMillis();
-
             SearchableChannel channel = availableChannels.get(channelId);
             if (!(channel instanceof SearchAutocomplete)) {
                 continue;
@@ -227,21 +279,31 @@ public class SearchServiceImpl extends SearchService implements SearchChannelCha
                 LOG.debug("Skipping ", channel.getId(), "- User doesn't have permission to access");
                 continue;
             }
+            channels.add(channel);
+        }
 
-
+        List<List<String>> results = runChannels(channels, channel -> {
+            long timeStart = System.currentTimeMillis();
+            List<String> channelResults;
             try {
-                 resultList = ((SearchAutocomplete) channel).doSearchAutocomplete(searchCriteria.getSearchString());
+                channelResults = getAutocomplete(channel, searchCriteria);
             } catch (Exception e) {
                 LOG.error(e, "Search query to", channel.getId(), "failed! Searchstring was '", searchCriteria.getSearchString(), "'");
-                resultList = new ArrayList<String>();
+                channelResults = Collections.emptyList();
+            }
+            LOG.debug("Search query to", channel.getId(), "took", (System.currentTimeMillis() - timeStart), "ms");
+            return channelResults;
+        }, channel -> Collections.emptyList());
+
+        // suggestions of all channels in the order of the channels, first one wins for duplicates
+        Set<String> suggestions = new LinkedHashSet<>();
+        for (List<String> channelResults : results) {
+            if (channelResults != null) {
+                suggestions.addAll(channelResults);
             }
-
-            LOG.debug("Result", resultList);
-
-            long timeEnd = System.currentTimeMillis();
-            LOG.debug("Search query to", channel.getId(),
-                    "took", (timeEnd - timeStart), "ms");
         }
+        List<String> resultList = new ArrayList<>(suggestions);
+        LOG.debug("Result", resultList);
 
         long fullQueryEndTime = System.currentTimeMillis();
         LOG.debug("Search full query took", (fullQueryEndTime - fullQueryStartTime), "ms");
@@ -252,6 +314,61 @@ public class SearchServiceImpl extends SearchService implements SearchChannelCha
         return jsonObject;
     }
 
+    private List<String> getAutocomplete(SearchableChannel channel, SearchCriteria searchCriteria) {
+        SearchAutocomplete autocomplete = (SearchAutocomplete) channel;
+        if (autocompleteIndex == null) {
+            return autocomplete.doSearchAutocomplete(searchCriteria.getSearchString());
+        }
+        return autocompleteIndex.get(channel.getId(), searchCriteria.getLocale(),
+                searchCriteria.getSearchString(), autocomplete::doSearchAutocomplete);
+    }
+
+    /**
+     * Runs the function for each channel. Channels are queried in parallel unless search.parallel=false.
+     * Each channel has a deadline (search.channel.[id].timeout ms) that is capped by the deadline of the
+     * whole search (search.timeout ms). Channels that didn't answer in time get the result of onTimeout.
+     * @return results in the same order as the channels
+     */
+    private <T> List<T> runChannels(List<SearchableChannel> channels,
+                                    Function<SearchableChannel, T> search,
+                                    Function<SearchableChannel, T> onTimeout) {
+        List<T> results = new ArrayList<>(channels.size());
+        if (!PARALLEL || channels.isEmpty()) {
+            for (SearchableChannel channel : channels) {
+                results.add(search.apply(channel));
+            }
+            return results;
+        }
+        long start = System.currentTimeMillis();
+        int globalTimeout = PropertyUtil.getOptional(PROP_TIMEOUT, DEFAULT_TIMEOUT_MS);
+        List<Future<T>> futures = new ArrayList<>(channels.size());
+        for (SearchableChannel channel : channels) {
+            futures.add(EXECUTOR.submit(() -> search.apply(channel)));
+        }
+        for (int i = 0; i < channels.size(); i++) {
+            SearchableChannel channel = channels.get(i);
+            Future<T> future = futures.get(i);
+            int timeout = Math.min(globalTimeout, PropertyUtil.getOptional("search.channel." + channel.getId() + ".timeout", globalTimeout));
+            long remaining = start + timeout - System.currentTimeMillis();
+            try {
+                results.add(future.get(Math.max(0, remaining), TimeUnit.MILLISECONDS));
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                LOG.info("Search channel", channel.getId(), "didn't answer in", timeout, "ms");
+                results.add(onTimeout.apply(channel));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                results.add(onTimeout.apply(channel));
+            } catch (ExecutionException e) {
+                // the search functions handle their own errors, this shouldn't happen
+                LOG.error(e.getCause(), "Search query to", channel.getId(), "failed");
+                results.add(onTimeout.apply(channel));
+            }
+        }
+        return results;
+    }
+
     /**
      * Handles actual channel search and catches exceptions
      *
@@ -262,6 +379,7 @@ public class SearchServiceImpl extends SearchService implements SearchChannelCha
     private ChannelSearchResult handleChannelSearch(
             SearchCriteria sc, SearchableChannel channel)
     {
+        UpstreamMetrics.Sample sample = UpstreamMetrics.start(UPSTREAM_CATEGORY, channel.getId());
         try {
             final ChannelSearchResult result;
             if(sc.isReverseGeocode() && channel.getCapabilities().canGeocode()) {
@@ -277,13 +395,17 @@ public class SearchServiceImpl extends SearchService implements SearchChannelCha
             for(SearchResultItem item : items) {
                 channel.calculateCommonFields(item);
             }
+            sample.status(result.isQueryFailed() ? UpstreamMetrics.STATUS_ERROR : UpstreamMetrics.STATUS_OK);
             return result;
         } catch (Exception e) {
+            sample.status(UpstreamMetrics.STATUS_ERROR);
             LOG.error(e, "Search query to", channel.getId(), "failed! Searchstring was '", sc.getSearchString(), "'");
             final ChannelSearchResult result = new ChannelSearchResult();
             result.setChannelId(channel.getId());
             result.setQueryFailed(true);
             return result;
+        } finally {
+            sample.stop();
         }
     }
 
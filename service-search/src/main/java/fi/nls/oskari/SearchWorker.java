@@ -20,6 +20,7 @@ public class SearchWorker {
     public static final String KEY_LOCATIONS = "locations";
     public static final String KEY_METHODS = "methods";
     public static final String KEY_HAS_MORE = "hasMore";
+    public static final String KEY_TIMED_OUT = "timedOut";
 
 
     public static final String ERR_EMPTY = "cannot_be_empty";
@@ -122,10 +123,19 @@ public class SearchWorker {
         JSONHelper.putValue(result, KEY_LOCATIONS, itemArray);
 
         JSONArray methodArray = new JSONArray();
+        // channels that didn't answer in time, only written when there are any
+        JSONArray timedOutArray = new JSONArray();
         for (String channelId : sc.getChannels()) {
-            methodArray.put(JSONHelper.createJSONObject(channelId, !query.findResult(channelId).isQueryFailed()));
+            ChannelSearchResult channelResult = query.findResult(channelId);
+            methodArray.put(JSONHelper.createJSONObject(channelId, !channelResult.isQueryFailed()));
+            if (channelResult.isTimedOut()) {
+                timedOutArray.put(channelId);
+            }
         }
         JSONHelper.putValue(result, KEY_METHODS, methodArray);
+        if (!timedOutArray.isEmpty()) {
+            JSONHelper.putValue(result, KEY_TIMED_OUT, timedOutArray);
+        }
         return result;
     }
 }
@@ -0,0 +1,241 @@
+package fi.nls.oskari.search.channel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+import fi.nls.oskari.util.PropertyUtil;
+
+/**
+ * Shared cache for SearchAutocomplete channels so typing doesn't result in a request to the channel
+ * for each keystroke. For each channel and language there is:
+ * - a bounded cache of channel responses for the exact (normalized) search string
+ * - a bounded prefix index of the completions the channel has returned, ranked by how often
+ *   they have been suggested and how recently they have been seen
+ *
+ * A search string is answered from the response cache, then from the prefix index if it has enough
+ * completions starting with the search string and only then from the channel. Completions expire
+ * after search.channel.[id].autocomplete.ttl seconds (defaults to search.autocomplete.ttl) so they
+ * are refreshed from the channel.
+ */
+public class AutocompleteIndex {
+
+    private static final String PROP_TTL = "search.autocomplete.ttl";
+    private static final String PROP_MAX_ENTRIES = "search.autocomplete.maxEntries";
+    private static final String PROP_RESULT_COUNT = "search.autocomplete.resultCount";
+    private static final int DEFAULT_TTL_SECONDS = 3600;
+
+    private final Map<String, Index> indexes = new ConcurrentHashMap<>();
+    private final ToLongFunction<String> ttlForChannel;
+    private final int maxEntries;
+    private final int resultCount;
+
+    /**
+     * @param ttlForChannel returns the time in ms completions of the channel are valid
+     * @param maxEntries max number of completions and cached responses per channel and language
+     * @param resultCount number of completions the prefix index needs to have for a search string
+     *                    to answer it and max number of completions it returns
+     */
+    AutocompleteIndex(ToLongFunction<String> ttlForChannel, int maxEntries, int resultCount) {
+        this.ttlForChannel = ttlForChannel;
+        this.maxEntries = maxEntries;
+        this.resultCount = resultCount;
+    }
+
+    public static AutocompleteIndex create() {
+        final int defaultTTL = PropertyUtil.getOptional(PROP_TTL, DEFAULT_TTL_SECONDS);
+        return new AutocompleteIndex(
+                channelId -> TimeUnit.SECONDS.toMillis(
+                        PropertyUtil.getOptional("search.channel." + channelId + ".autocomplete.ttl", defaultTTL)),
+                PropertyUtil.getOptional(PROP_MAX_ENTRIES, 10000),
+                PropertyUtil.getOptional(PROP_RESULT_COUNT, 10));
+    }
+
+    /**
+     * @param channel called with the search string when it can't be answered from the index
+     * @return completions for the search string
+     */
+    public List<String> get(String channelId, String language, String searchString,
+            Function<String, List<String>> channel) {
+        return get(channelId, language, searchString, channel, System.currentTimeMillis());
+    }
+
+    List<String> get(String channelId, String language, String searchString,
+            Function<String, List<String>> channel, long now) {
+        String query = normalize(searchString);
+        if (query.isEmpty()) {
+            return channel.apply(searchString);
+        }
+        Index index = indexes.computeIfAbsent(channelId + "|" + language, __ -> new Index());
+        List<String> completions = index.getResponse(query, now);
+        if (completions == null) {
+            completions = index.getByPrefix(query, now);
+        }
+        if (completions != null) {
+            return completions;
+        }
+        completions = channel.apply(searchString);
+        if (completions != null) {
+            index.add(query, completions, now + ttlForChannel.applyAsLong(channelId), now);
+        }
+        return completions;
+    }
+
+    /**
+     * Removes everything cached for the channel, used when a channel is removed or modified
+     */
+    public void flush(String channelId) {
+        indexes.keySet().removeIf(key -> key.startsWith(channelId + "|"));
+    }
+
+    static String normalize(String str) {
+        if (str == null) {
+            return "";
+        }
+        return str.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private class Index {
+
+        // normalized completion -> completion, sorted so completions with a given prefix are a sub map
+        private final ConcurrentSkipListMap<String, Completion> completions = new ConcurrentSkipListMap<>();
+        // normalized search string -> channel response, least recently used is removed first
+        private final Map<String, Response> responses = new LinkedHashMap<String, Response>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Response> eldest) {
+                return size() > maxEntries;
+            }
+        };
+
+        List<String> getResponse(String query, long now) {
+            Response response;
+            synchronized (responses) {
+                response = responses.get(query);
+            }
+            if (response == null || response.expires <= now) {
+                return null;
+            }
+            for (String completion : response.completions) {
+                Completion c = completions.get(normalize(completion));
+                if (c != null) {
+                    c.suggested(now);
+                }
+            }
+            return response.completions;
+        }
+
+        /**
+         * @return most popular completions starting with the search string or null if there's not enough of them
+         */
+        List<String> getByPrefix(String query, long now) {
+            List<Ranked> matches = new ArrayList<>();
+            for (Map.Entry<String, Completion> e : completions.subMap(query, true, query + Character.MAX_VALUE, false).entrySet()) {
+                if (e.getValue().expires > now) {
+                    matches.add(new Ranked(e.getKey(), e.getValue()));
+                }
+            }
+            if (matches.size() < resultCount) {
+                return null;
+            }
+            matches.sort(Ranked.MOST_POPULAR_FIRST);
+            List<String> result = new ArrayList<>(resultCount);
+            for (Ranked r : matches.subList(0, resultCount)) {
+                r.completion.suggested(now);
+                result.add(r.completion.text);
+            }
+            return result;
+        }
+
+        void add(String query, List<String> result, long expires, long now) {
+            synchronized (responses) {
+                responses.put(query, new Response(Collections.unmodifiableList(new ArrayList<>(result)), expires));
+            }
+            for (String text : result) {
+                if (text == null) {
+                    continue;
+                }
+                Completion c = completions.computeIfAbsent(normalize(text), __ -> new Completion(text));
+                c.expires = expires;
+                c.suggested(now);
+            }
+            if (completions.size() > maxEntries) {
+                trim(now);
+            }
+        }
+
+        /**
+         * Removes expired completions and then the least popular ones until there's room for new ones
+         */
+        private synchronized void trim(long now) {
+            completions.values().removeIf(c -> c.expires <= now);
+            int excess = completions.size() - maxEntries * 9 / 10;
+            if (excess <= 0) {
+                return;
+            }
+            List<Ranked> ranked = new ArrayList<>(completions.size());
+            completions.forEach((key, c) -> ranked.add(new Ranked(key, c)));
+            ranked.sort(Ranked.MOST_POPULAR_FIRST.reversed());
+            for (Ranked r : ranked.subList(0, Math.min(excess, ranked.size()))) {
+                completions.remove(r.key, r.completion);
+            }
+        }
+    }
+
+    private static class Response {
+        final List<String> completions;
+        final long expires;
+
+        Response(List<String> completions, long expires) {
+            this.completions = completions;
+            this.expires = expires;
+        }
+    }
+
+    private static class Completion {
+        final String text;
+        final AtomicInteger hits = new AtomicInteger();
+        volatile long lastUsed;
+        volatile long expires;
+
+        Completion(String text) {
+            this.text = text;
+        }
+
+        void suggested(long now) {
+            hits.incrementAndGet();
+            lastUsed = now;
+        }
+    }
+
+    /**
+     * Snapshot of the popularity of a completion so concurrent updates don't affect sorting
+     */
+    private static class Ranked {
+        // most suggested first, then most recently suggested
+        static final Comparator<Ranked> MOST_POPULAR_FIRST = Comparator
+                .comparingInt((Ranked r) -> -r.hits)
+                .thenComparingLong(r -> -r.lastUsed);
+
+        final String key;
+        final Completion completion;
+        final int hits;
+        final long lastUsed;
+
+        Ranked(String key, Completion completion) {
+            this.key = key;
+            this.completion = completion;
+            this.hits = completion.hits.get();
+            this.lastUsed = completion.lastUsed;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package fi.mml.portti.service.search;
+
+import fi.nls.oskari.search.channel.SearchChannel;
+import fi.nls.oskari.util.PropertyUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.oskari.user.User;
+
+public class SearchServiceImplTest {
+
+    @AfterEach
+    public void teardown() {
+        PropertyUtil.clearProperties();
+    }
+
+    @Test
+    public void testChannelTimeout() {
+        PropertyUtil.addProperty("search.channel.SlowChannel.timeout", "100", true);
+        SearchServiceImpl service = new SearchServiceImpl();
+        service.addChannel("FastChannel", new FastChannel());
+        service.addChannel("SlowChannel", new SlowChannel());
+
+        SearchCriteria sc = new SearchCriteria(new User());
+        sc.setSearchString("foo");
+        sc.addChannel("SlowChannel");
+        sc.addChannel("FastChannel");
+        Query query = service.doSearch(sc);
+
+        ChannelSearchResult fast = query.findResult("FastChannel");
+        Assertions.assertFalse(fast.isQueryFailed());
+        Assertions.assertFalse(fast.isTimedOut());
+        Assertions.assertEquals(1, fast.getNumberOfResults());
+
+        ChannelSearchResult slow = query.findResult("SlowChannel");
+        Assertions.assertTrue(slow.isQueryFailed(), "Timed out channel is failed");
+        Assertions.assertTrue(slow.isTimedOut());
+    }
+
+    private static class FastChannel extends SearchChannel {
+        @Override
+        public ChannelSearchResult doSearch(SearchCriteria searchCriteria) {
+            ChannelSearchResult result = new ChannelSearchResult();
+            SearchResultItem item = new SearchResultItem();
+            item.setTitle(searchCriteria.getSearchString());
+            item.setLat(60);
+            item.setLon(25);
+            result.addItem(item);
+            return result;
+        }
+    }
+
+    private static class SlowChannel extends SearchChannel {
+        @Override
+        public ChannelSearchResult doSearch(SearchCriteria searchCriteria) {
+            try {
+                Thread.sleep(10000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new ChannelSearchResult();
+        }
+    }
+}
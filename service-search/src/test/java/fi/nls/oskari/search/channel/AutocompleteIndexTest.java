@@ -0,0 +1,91 @@
+package fi.nls.oskari.search.channel;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class AutocompleteIndexTest {
+
+    private static final long TTL = 1000;
+
+    @Test
+    public void testResponseIsCached() {
+        AutocompleteIndex index = new AutocompleteIndex(channelId -> TTL, 100, 3);
+        AtomicInteger calls = new AtomicInteger();
+        Function<String, List<String>> channel = str -> {
+            calls.incrementAndGet();
+            return Arrays.asList("Helsinki", "Helsingin pitäjä");
+        };
+        Assertions.assertEquals(Arrays.asList("Helsinki", "Helsingin pitäjä"), index.get("ch", "fi", "hels", channel, 0));
+        Assertions.assertEquals(Arrays.asList("Helsinki", "Helsingin pitäjä"), index.get("ch", "fi", " HELS ", channel, 10));
+        Assertions.assertEquals(1, calls.get());
+
+        // other language or channel is not answered from the cache
+        index.get("ch", "sv", "hels", channel, 10);
+        index.get("other", "fi", "hels", channel, 10);
+        Assertions.assertEquals(3, calls.get());
+
+        // expired
+        index.get("ch", "fi", "hels", channel, TTL);
+        Assertions.assertEquals(4, calls.get());
+    }
+
+    @Test
+    public void testAnsweredFromPrefixIndex() {
+        AutocompleteIndex index = new AutocompleteIndex(channelId -> TTL, 100, 2);
+        AtomicInteger calls = new AtomicInteger();
+        Function<String, List<String>> channel = str -> {
+            calls.incrementAndGet();
+            return Arrays.asList("Espoo", "Espoonlahti", "Esbo");
+        };
+        index.get("ch", "fi", "es", channel, 0);
+        Assertions.assertEquals(1, calls.get());
+
+        // two completions start with "espo" so the channel isn't queried
+        List<String> result = index.get("ch", "fi", "espo", channel, 3);
+        Assertions.assertEquals(Arrays.asList("Espoo", "Espoonlahti"), result);
+        Assertions.assertEquals(1, calls.get());
+
+        // only one completion starts with "esb" so the channel is queried
+        index.get("ch", "fi", "esb", channel, 4);
+        Assertions.assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testFlush() {
+        AutocompleteIndex index = new AutocompleteIndex(channelId -> TTL, 100, 1);
+        AtomicInteger calls = new AtomicInteger();
+        Function<String, List<String>> channel = str -> {
+            calls.incrementAndGet();
+            return Arrays.asList("Tampere");
+        };
+        index.get("ch", "fi", "tam", channel, 0);
+        index.flush("ch");
+        index.get("ch", "fi", "tam", channel, 1);
+        Assertions.assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testBounded() {
+        AutocompleteIndex index = new AutocompleteIndex(channelId -> TTL, 10, 1);
+        AtomicInteger calls = new AtomicInteger();
+        for (int i = 0; i < 100; i++) {
+            String name = "place " + i;
+            index.get("ch", "fi", name, str -> {
+                calls.incrementAndGet();
+                return Arrays.asList(name);
+            }, i);
+        }
+        Assertions.assertEquals(100, calls.get());
+        // the oldest ones have been removed
+        index.get("ch", "fi", "place 0", str -> {
+            calls.incrementAndGet();
+            return Arrays.asList("place 0");
+        }, 100);
+        Assertions.assertEquals(101, calls.get());
+    }
+}
@@ -3,6 +3,7 @@ package fi.nls.oskari.control.statistics;
 import fi.nls.oskari.domain.geo.Point;
 import fi.nls.oskari.util.JSONHelper;
 import org.json.JSONObject;
+import org.locationtech.jts.geom.Geometry;
 
 /**
  * Pairs of region codes and their respective names read from the geoserver layer region attributes.
@@ -19,6 +20,8 @@ public class Region {
     private String name;
     private JSONObject geojson;
     private Point pointOnSurface;
+    // not serialized, kept for simplifying the geometry
+    private Geometry geometry;
 
     public Region(String code, String name) {
         this.code = code;
@@ -33,6 +36,14 @@ public class Region {
         this.geojson = geojson;
     }
 
+    public Geometry getGeometry() {
+        return geometry;
+    }
+
+    public void setGeometry(Geometry geometry) {
+        this.geometry = geometry;
+    }
+
     public String getCode() {
         return code;
     }
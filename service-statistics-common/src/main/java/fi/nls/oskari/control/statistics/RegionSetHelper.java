@@ -176,7 +176,9 @@ public class RegionSetHelper {
                 Region region = new Region(id, name);
                 try {
                     region.setPointOnSurface(getPointOnSurface(feature));
-                    region.setGeojson(toGeoJSON((Geometry) feature.getDefaultGeometry(), id, name));
+                    Geometry geometry = (Geometry) feature.getDefaultGeometry();
+                    region.setGeojson(toGeoJSON(geometry, id, name));
+                    region.setGeometry(geometry);
                     result.add(region);
                     duplicateIdCheckList.add(id);
                 } catch (Exception ex) {
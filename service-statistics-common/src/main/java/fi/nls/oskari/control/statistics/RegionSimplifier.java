@@ -0,0 +1,110 @@
+package fi.nls.oskari.control.statistics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONException;
+import org.locationtech.jts.coverage.CoverageSimplifier;
+import org.locationtech.jts.coverage.CoverageValidator;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.simplify.TopologyPreservingSimplifier;
+
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+
+/**
+ * Simplified versions of the regions of a regionset for showing them at smaller scales.
+ *
+ * Tolerances for the simplification levels are derived from the extent of the regionset: the coarsest
+ * level has a tolerance of one pixel when the whole regionset is shown on 256 pixels and each following
+ * level halves it.
+ *
+ * Regions are simplified as a polygonal coverage with JTS CoverageSimplifier so borders shared by
+ * neighbouring regions stay shared without gaps or overlaps. If the regions don't form a valid coverage
+ * each region is simplified separately with TopologyPreservingSimplifier.
+ */
+public class RegionSimplifier {
+
+    private static final Logger LOG = LogFactory.getLogger(RegionSimplifier.class);
+    private static final int COARSEST_LEVEL_PIXELS = 256;
+
+    private RegionSimplifier() {}
+
+    /**
+     * @return tolerances in map units from the coarsest level to the most detailed one
+     */
+    public static double[] getTolerances(List<Region> regions, int levels) {
+        Envelope extent = new Envelope();
+        for (Region region : regions) {
+            if (region.getGeometry() != null) {
+                extent.expandToInclude(region.getGeometry().getEnvelopeInternal());
+            }
+        }
+        double tolerance = Math.max(extent.getWidth(), extent.getHeight()) / COARSEST_LEVEL_PIXELS;
+        double[] tolerances = new double[levels];
+        for (int i = 0; i < levels; i++) {
+            tolerances[i] = tolerance;
+            tolerance /= 2;
+        }
+        return tolerances;
+    }
+
+    /**
+     * @param tolerance max distance in map units the geometries can be moved, like the size of a pixel
+     * @return index of the coarsest level that doesn't exceed the tolerance or -1 if all the levels do
+     */
+    public static int getLevel(double[] tolerances, double tolerance) {
+        for (int i = 0; i < tolerances.length; i++) {
+            if (tolerances[i] <= tolerance) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return copies of the regions with simplified geometries, points on surface are kept as is
+     */
+    public static List<Region> simplify(List<Region> regions, double tolerance) throws JSONException {
+        Geometry[] geometries = new Geometry[regions.size()];
+        for (int i = 0; i < geometries.length; i++) {
+            geometries[i] = regions.get(i).getGeometry();
+        }
+        Geometry[] simplified = simplify(geometries, tolerance);
+        List<Region> result = new ArrayList<>(regions.size());
+        for (int i = 0; i < simplified.length; i++) {
+            Region original = regions.get(i);
+            Region region = new Region(original.getCode(), original.getName());
+            region.setPointOnSurface(original.getPointOnSurface());
+            region.setGeometry(simplified[i]);
+            region.setGeojson(RegionSetHelper.toGeoJSON(simplified[i], original.getCode(), original.getName()));
+            result.add(region);
+        }
+        return result;
+    }
+
+    static Geometry[] simplify(Geometry[] geometries, double tolerance) {
+        if (isCoverage(geometries)) {
+            try {
+                return CoverageSimplifier.simplify(geometries, tolerance);
+            } catch (RuntimeException e) {
+                LOG.info("Couldn't simplify regions as a coverage:", e.getMessage());
+            }
+        }
+        Geometry[] simplified = new Geometry[geometries.length];
+        for (int i = 0; i < geometries.length; i++) {
+            simplified[i] = TopologyPreservingSimplifier.simplify(geometries[i], tolerance);
+        }
+        return simplified;
+    }
+
+    private static boolean isCoverage(Geometry[] geometries) {
+        for (Geometry geometry : geometries) {
+            if (geometry == null || geometry.getDimension() != 2) {
+                return false;
+            }
+        }
+        return CoverageValidator.isValid(geometries);
+    }
+}
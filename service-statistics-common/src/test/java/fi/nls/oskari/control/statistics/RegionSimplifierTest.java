@@ -0,0 +1,63 @@
+package fi.nls.oskari.control.statistics;
+
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Geometry;
+
+import fi.nls.oskari.control.statistics.db.RegionSet;
+
+public class RegionSimplifierTest {
+
+    @Test
+    public void testGetLevel() {
+        double[] tolerances = { 1000, 500, 250 };
+        Assertions.assertEquals(0, RegionSimplifier.getLevel(tolerances, 2000));
+        Assertions.assertEquals(1, RegionSimplifier.getLevel(tolerances, 999));
+        Assertions.assertEquals(2, RegionSimplifier.getLevel(tolerances, 250));
+        // more detailed than any of the levels -> full resolution
+        Assertions.assertEquals(-1, RegionSimplifier.getLevel(tolerances, 100));
+    }
+
+    @Test
+    public void testSimplify() throws Exception {
+        List<Region> regions = RegionSetHelper.getRegions(getRegionSet(), "EPSG:3067");
+        double[] tolerances = RegionSimplifier.getTolerances(regions, 3);
+        Assertions.assertEquals(3, tolerances.length);
+        Assertions.assertEquals(tolerances[0] / 2, tolerances[1], 0.0001);
+
+        List<Region> simplified = RegionSimplifier.simplify(regions, tolerances[0]);
+        Assertions.assertEquals(regions.size(), simplified.size());
+        Assertions.assertTrue(countPoints(simplified) < countPoints(regions) / 2);
+        for (int i = 0; i < regions.size(); i++) {
+            Region region = simplified.get(i);
+            Assertions.assertEquals(regions.get(i).getCode(), region.getCode());
+            Assertions.assertSame(regions.get(i).getPointOnSurface(), region.getPointOnSurface());
+            Assertions.assertFalse(region.getGeometry().isEmpty());
+            JSONObject properties = region.getGeojson().getJSONObject("properties");
+            Assertions.assertEquals(region.getCode(), properties.get(Region.KEY_CODE));
+        }
+    }
+
+    private static int countPoints(List<Region> regions) {
+        return regions.stream().map(Region::getGeometry).mapToInt(Geometry::getNumPoints).sum();
+    }
+
+    private static RegionSet getRegionSet() throws Exception {
+        JSONObject statistics = new JSONObject();
+        statistics.put("regionIdTag", "kuntakoodi");
+        statistics.put("nameIdTag", "kuntanimi");
+        statistics.put("featuresUrl", "resources://kunnat2013.json");
+        JSONObject attributes = new JSONObject();
+        attributes.put("statistics", statistics);
+
+        RegionSet regionset = new RegionSet();
+        regionset.setId(-1);
+        regionset.setName("oskari:kunnat2013");
+        regionset.setSrs_name("EPSG:3067");
+        regionset.setAttributes(attributes.toString());
+        return regionset;
+    }
+}
@@ -1,5 +1,6 @@
 package org.oskari.service.wfs.client;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
@@ -37,10 +38,30 @@ public class CachingOskariWFSClient extends OskariWFSClient {
         return cache.get(key, __ -> super.getFeatures(layer, bbox, crs, filter));
     }
 
+    @Override
+    public CompletableFuture<SimpleFeatureCollection> getFeaturesAsync(OskariLayer layer,
+            ReferencedEnvelope bbox, CoordinateReferenceSystem crs, Filter filter) {
+        if (filter != null) {
+            return super.getFeaturesAsync(layer, bbox, crs, filter);
+        }
+        String key = getCacheKey(layer, bbox, crs);
+        SimpleFeatureCollection cached = cache.get(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        // Concurrent requests for the same key are not combined here, callers are expected to do that
+        return super.getFeaturesAsync(layer, bbox, crs, filter).thenApply(fc -> {
+            cache.put(key, fc);
+            return fc;
+        });
+    }
+
     private String getCacheKey(OskariLayer layer, Envelope bbox, CoordinateReferenceSystem crs) {
         String endPoint = layer.getUrl();
         String typeName = layer.getName();
-        String bboxStr = bbox != null ? bbox.toString() : "null";
+        String bboxStr = bbox != null
+                ? bbox.getMinX() + "," + bbox.getMinY() + "," + bbox.getMaxX() + "," + bbox.getMaxY()
+                : "null";
         String crsStr = crs.getIdentifiers().iterator().next().toString();
         return String.join(",", endPoint, typeName, bboxStr, crsStr);
     }
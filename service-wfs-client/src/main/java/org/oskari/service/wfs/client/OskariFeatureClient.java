@@ -16,6 +16,7 @@ import org.oskari.service.wfs3.CoordinateTransformer;
 
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 public class OskariFeatureClient {
     public static final Logger LOG = LogFactory.getLogger(OskariFeatureClient.class);
@@ -50,24 +51,49 @@ public class OskariFeatureClient {
 
         // Request features in nativeCRS (of the installation)
         // Most likely supported by all WFS layers
-        ReferencedEnvelope requestBbox = bbox;
-        if (needsTransform) {
-            try {
-                requestBbox = bbox.transform(nativeCRS, true);
-            } catch (Exception e) {
-                throw new ServiceRuntimeException(ERR_REPOJECTION_FAIL, e);
-            }
-        }
+        ReferencedEnvelope requestBbox = needsTransform ? transform(bbox, nativeCRS) : bbox;
 
         SimpleFeatureCollection features = getFeaturesNoTransform(id, layer, requestBbox, nativeCRS, processor);
 
         if (!needsTransform) {
             return features;
         }
+        return transform(features, nativeCRS, targetCRS);
+    }
+
+    /**
+     * Non-blocking version of getFeatures() for WFS layers (not user content). The request is
+     * made with OskariWFSClient.getFeaturesAsync() and the features are transformed to targetCRS
+     * on the thread that completes the request. Use OskariWFSLoader.join() to wait for the result.
+     */
+    public CompletableFuture<SimpleFeatureCollection> getFeaturesAsync(String id, OskariLayer layer,
+            ReferencedEnvelope bbox, CoordinateReferenceSystem targetCRS) {
+        CoordinateReferenceSystem nativeCRS = getNativeCRS();
+        boolean needsTransform = !CRS.equalsIgnoreMetadata(nativeCRS, targetCRS);
+
+        ReferencedEnvelope requestBbox = needsTransform ? transform(bbox, nativeCRS) : bbox;
+        Filter filter = OskariWFSClient.getWFSFilter(id, layer, requestBbox);
+        CompletableFuture<SimpleFeatureCollection> features = wfsClient.getFeaturesAsync(layer, requestBbox, nativeCRS, filter);
+
+        if (!needsTransform) {
+            return features;
+        }
+        return features.thenApply(fc -> transform(fc, nativeCRS, targetCRS));
+    }
+
+    private static ReferencedEnvelope transform(ReferencedEnvelope bbox, CoordinateReferenceSystem crs) {
+        try {
+            return bbox.transform(crs, true);
+        } catch (Exception e) {
+            throw new ServiceRuntimeException(ERR_REPOJECTION_FAIL, e);
+        }
+    }
 
+    private static SimpleFeatureCollection transform(SimpleFeatureCollection features,
+            CoordinateReferenceSystem sourceCRS, CoordinateReferenceSystem targetCRS) {
         // Transform features to targetCRS
         try {
-            CoordinateTransformer transformer = new CoordinateTransformer(nativeCRS, targetCRS);
+            CoordinateTransformer transformer = new CoordinateTransformer(sourceCRS, targetCRS);
             return transformer.transform(features);
         } catch (Exception e) {
             throw new ServiceRuntimeException(ERR_REPOJECTION_FAIL, e);
@@ -9,6 +9,7 @@ import fi.nls.oskari.log.LogFactory;
 import fi.nls.oskari.log.Logger;
 import fi.nls.oskari.util.IOHelper;
 import fi.nls.oskari.util.JSONHelper;
+import fi.nls.oskari.util.PropertyUtil;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.json.JSONObject;
@@ -19,7 +20,11 @@ import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
 import fi.nls.oskari.service.ServiceRuntimeException;
 import org.oskari.geojson.GeoJSONReader2;
 import org.oskari.geojson.GeoJSONSchemaDetector;
+import org.oskari.geojson.GeoJSONStreamReader;
+import org.oskari.service.wfs.client.OutputFormatRegistry.Fallback;
+import org.oskari.service.wfs.client.OutputFormatRegistry.Format;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -28,6 +33,7 @@ import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 import static fi.nls.oskari.service.capabilities.CapabilitiesConstants.KEY_FEATURE_OUTPUT_FORMATS;
 import static fi.nls.oskari.service.capabilities.CapabilitiesConstants.KEY_FORMATS;
@@ -43,8 +49,15 @@ public class OskariWFSClient {
     private static final String PROPERTY_FORCE_GML = "forceGML";
     private static final String JSON_OUTPUT_FORMAT = "application/json";
     private static final int DEFAULT_MAX_FEATURES = 10000;
+    // GeoJSON responses are parsed while they are read unless this is set to false
+    private static final String PROPERTY_STREAMING = "oskari.wfs.geojson.streaming";
+    private static final boolean STREAMING = PropertyUtil.getOptional(PROPERTY_STREAMING, true);
+    // how many bytes to look at when detecting if the response is JSON or XML
+    private static final int PEEK_LIMIT = 1024;
     protected static final String KEY_FILTER = "filter";
 
+    private static final OutputFormatRegistry FORMATS = OutputFormatRegistry.getInstance();
+
     private final OskariWFSLoader loader = new OskariWFSLoader();
 
     public SimpleFeatureCollection getFeatures(OskariLayer layer,
@@ -52,6 +65,14 @@ public class OskariWFSClient {
         return loader.getFeatures(layer, bbox, crs, filter);
     }
 
+    /**
+     * Non-blocking version of getFeatures(), see OskariWFSLoader.getFeaturesAsync()
+     */
+    public CompletableFuture<SimpleFeatureCollection> getFeaturesAsync(OskariLayer layer,
+            ReferencedEnvelope bbox, CoordinateReferenceSystem crs, Filter filter) {
+        return loader.getFeaturesAsync(layer, bbox, crs, filter);
+    }
+
     // Common methods for WFS 1.1.0 and 2.0.0 clients
     protected static String getBBOX(ReferencedEnvelope bbox) {
         if (bbox == null) {
@@ -73,51 +94,186 @@ public class OskariWFSClient {
             String user, String pass, Map<String, String> query,
             CoordinateReferenceSystem crs, boolean tryGeoJSON, OskariGMLDecoder gmlDecoder) {
         String url; // for debugging
+        Parsed parsed;
+        boolean jsonFailed = false;
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        byte[] response;
-        Map<String, String> responseHeaders;
-        SimpleFeatureCollection fc;
+        final String formatKey = OutputFormatRegistry.getKey(endPoint, query);
+        if (tryGeoJSON && FORMATS.getFormat(formatKey) == Format.GML) {
+            // GeoJSON hasn't worked for this feature type recently, don't waste a request on it
+            FORMATS.count(Fallback.JSON_SKIPPED);
+            tryGeoJSON = false;
+        }
 
         if (tryGeoJSON) {
             // First try GeoJSON
-            query.put("OUTPUTFORMAT", "application/json");
+            query.put("OUTPUTFORMAT", JSON_OUTPUT_FORMAT);
             url = IOHelper.constructUrl(endPoint, query);
-            responseHeaders = OskariWFSClient.readResponseTo(endPoint, user, pass, query, baos);
-            response = baos.toByteArray();
-            if (response.length == 0) {
-                throw new ServiceRuntimeException("Empty response from " + url);
-            }
-            // TODO: Select parsing algorithm based on response headers (Content-Type)
-            fc = parseGeoJSON(response, crs, url);
-            if (fc != null) {
-                return fc;
-            }
-            // Try to parse the same response as GML
-            fc = parseGML(response, crs, url, user, pass, gmlDecoder);
-            if (fc != null) {
-                LOG.info("Requested JSON but got GML. Possibly misconfigured service for", url);
-                return fc;
+            parsed = readFeatures(endPoint, user, pass, query, crs, url, gmlDecoder);
+            if (parsed != null) {
+                if (parsed.format == Format.GML) {
+                    LOG.info("Requested JSON but got GML. Possibly misconfigured service for", url);
+                    FORMATS.count(Fallback.JSON_RESPONSE_WAS_GML);
+                }
+                FORMATS.setFormat(formatKey, parsed.format);
+                return parsed.fc;
             }
             // Okay I guess it wasn't a GML FeatureCollection either - move on
             LOG.warn("Requested JSON but didn't get a parseable result. Making a new request for GML. Possibly misconfigured service for", url);
+            FORMATS.count(Fallback.JSON_FAILED_REQUESTED_GML);
+            jsonFailed = true;
         }
 
         // Fallback to to requesting GML
         query.remove("OUTPUTFORMAT");
         url = IOHelper.constructUrl(endPoint, query);
-        baos.reset();
-        responseHeaders = OskariWFSClient.readResponseTo(endPoint, user, pass, query, baos);
-        response = baos.toByteArray();
+        parsed = readFeatures(endPoint, user, pass, query, crs, url, gmlDecoder);
+        if (parsed != null) {
+            if (jsonFailed) {
+                // might have been a temporary problem, switch to GML only if this keeps happening
+                FORMATS.jsonFailed(formatKey);
+            }
+            return parsed.fc;
+        }
+
+        throw new ServiceRuntimeException("Failed to get features");
+    }
+
+    private static Parsed readFeatures(String endPoint,
+            String user, String pass, Map<String, String> query,
+            CoordinateReferenceSystem crs, String url, OskariGMLDecoder gmlDecoder) {
+        if (STREAMING) {
+            return readFeaturesStreaming(endPoint, user, pass, query, crs, url, gmlDecoder);
+        }
+        return readFeaturesBuffered(endPoint, user, pass, query, crs, url, gmlDecoder);
+    }
+
+    /**
+     * Parses the response while it's being read instead of reading it to memory first.
+     * As the same response can't be read twice only one parser is used. It's selected by
+     * the Content-Type of the response and verified from the first character of the response.
+     * @return parsed features or null if the response couldn't be parsed
+     */
+    private static Parsed readFeaturesStreaming(String endPoint,
+            String user, String pass, Map<String, String> query,
+            CoordinateReferenceSystem crs, String url, OskariGMLDecoder gmlDecoder) {
+        try {
+            HttpURLConnection conn = getConnection(endPoint, user, pass, query);
+            Format expected = getFormat(conn.getContentType());
+            try (InputStream in = new BufferedInputStream(IOHelper.getDecodedInputStream(conn))) {
+                int first = peekFirstCharacter(in);
+                if (first == -1) {
+                    throw new ServiceRuntimeException("Empty response from " + url);
+                }
+                Format format = getFormat(first);
+                if (format == null) {
+                    format = expected;
+                } else if (expected != null && expected != format) {
+                    LOG.debug("Content-Type", conn.getContentType(), "doesn't match the response from", url);
+                    FORMATS.count(Fallback.CONTENT_TYPE_MISMATCH);
+                }
+                if (format == Format.JSON) {
+                    return Parsed.of(parseGeoJSON(in, crs, url), Format.JSON);
+                }
+                if (format == Format.GML) {
+                    return Parsed.of(parseGML(in, url, user, pass, gmlDecoder), Format.GML);
+                }
+                LOG.info("Unable to detect response format from", url);
+                return null;
+            }
+        } catch (IOException e) {
+            throw new ServiceRuntimeException("Unable to read response", e);
+        }
+    }
+
+    /**
+     * Reads the response to memory and parses it with the parser matching the Content-Type.
+     * If that fails the other parser is tried.
+     * @return parsed features or null if the response couldn't be parsed
+     */
+    private static Parsed readFeaturesBuffered(String endPoint,
+            String user, String pass, Map<String, String> query,
+            CoordinateReferenceSystem crs, String url, OskariGMLDecoder gmlDecoder) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Map<String, String> responseHeaders = OskariWFSClient.readResponseTo(endPoint, user, pass, query, baos);
+        byte[] response = baos.toByteArray();
         if (response.length == 0) {
             throw new ServiceRuntimeException("Empty response from " + url);
         }
-        fc = parseGML(response, crs, url, user, pass, gmlDecoder);
+        Format format = getFormat(responseHeaders.get(IOHelper.HEADER_CONTENTTYPE));
+        if (format == null) {
+            format = getFormat(response[0]);
+        }
+        if (format == Format.GML) {
+            SimpleFeatureCollection fc = parseGML(response, crs, url, user, pass, gmlDecoder);
+            if (fc != null) {
+                return Parsed.of(fc, Format.GML);
+            }
+            fc = parseGeoJSON(response, crs, url);
+            if (fc != null) {
+                FORMATS.count(Fallback.CONTENT_TYPE_MISMATCH);
+            }
+            return Parsed.of(fc, Format.JSON);
+        }
+        SimpleFeatureCollection fc = parseGeoJSON(response, crs, url);
         if (fc != null) {
-            return fc;
+            return Parsed.of(fc, Format.JSON);
+        }
+        // Try to parse the same response as GML
+        fc = parseGML(response, crs, url, user, pass, gmlDecoder);
+        if (fc != null && format == Format.JSON) {
+            FORMATS.count(Fallback.CONTENT_TYPE_MISMATCH);
         }
+        return Parsed.of(fc, Format.GML);
+    }
 
-        throw new ServiceRuntimeException("Failed to get features");
+    /**
+     * @return format matching the Content-Type or null if it doesn't tell
+     */
+    protected static Format getFormat(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        String ct = contentType.toLowerCase(Locale.ROOT);
+        if (ct.contains("json")) {
+            return Format.JSON;
+        }
+        if (ct.contains("xml") || ct.contains("gml")) {
+            return Format.GML;
+        }
+        return null;
+    }
+
+    private static Format getFormat(int firstCharacter) {
+        switch (firstCharacter) {
+            case '{':
+                return Format.JSON;
+            case '<':
+                return Format.GML;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return first character of the response that isn't whitespace or BOM, -1 for empty response
+     */
+    private static int peekFirstCharacter(InputStream in) throws IOException {
+        in.mark(PEEK_LIMIT);
+        try {
+            for (int i = 0; i < PEEK_LIMIT; i++) {
+                int b = in.read();
+                if (b == -1) {
+                    return -1;
+                }
+                // skip UTF-8 BOM
+                if (!Character.isWhitespace(b) && b != 0xEF && b != 0xBB && b != 0xBF) {
+                    return b;
+                }
+            }
+            return 0;
+        } finally {
+            in.reset();
+        }
     }
 
     private static Map<String, String> readResponseTo(String endPoint,
@@ -158,6 +314,25 @@ public class OskariWFSClient {
         }
     }
 
+    private static SimpleFeatureCollection parseGeoJSON(InputStream in, CoordinateReferenceSystem crs, String url) {
+        try {
+            boolean ignoreGeometryProperties = true;
+            return GeoJSONStreamReader.read(in, crs, ignoreGeometryProperties);
+        } catch (Exception e) {
+            LOG.info(e, "Unable to parse GeoJSON from", url);
+            return null;
+        }
+    }
+
+    private static SimpleFeatureCollection parseGML(InputStream in, String url, String user, String pass, OskariGMLDecoder gmlDecoder) {
+        try {
+            return gmlDecoder.decodeFeatureCollection(in, user, pass);
+        } catch (Exception e) {
+            LOG.info(e, "Unable to parse GML from", url);
+            return null;
+        }
+    }
+
     private static SimpleFeatureCollection parseGML(byte[] response, CoordinateReferenceSystem crs, String url, String user, String pass, OskariGMLDecoder gmlDecoder) {
         try {
             return gmlDecoder.decodeFeatureCollection(new ByteArrayInputStream(response), user, pass);
@@ -211,4 +386,18 @@ public class OskariWFSClient {
         Filter bboxFilter = OskariWFSFilterFactory.getBBOXFilter(layer, bbox);
         return OskariWFSFilterFactory.appendFilter(attrFilter, bboxFilter);
     }
+
+    private static class Parsed {
+        private final SimpleFeatureCollection fc;
+        private final Format format;
+
+        private Parsed(SimpleFeatureCollection fc, Format format) {
+            this.fc = fc;
+            this.format = format;
+        }
+
+        private static Parsed of(SimpleFeatureCollection fc, Format format) {
+            return fc == null ? null : new Parsed(fc, format);
+        }
+    }
 }
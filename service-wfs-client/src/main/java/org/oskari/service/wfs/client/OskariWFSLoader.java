@@ -8,9 +8,11 @@ import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.api.filter.Filter;
 import org.geotools.api.referencing.crs.CoordinateReferenceSystem;
+import org.oskari.metrics.UpstreamMetrics;
 import org.oskari.service.wfs3.OskariWFS3Client;
 
 import io.github.resilience4j.decorators.Decorators;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
 import io.github.resilience4j.bulkhead.ThreadPoolBulkhead;
@@ -21,6 +23,8 @@ import io.github.resilience4j.timelimiter.TimeLimiterConfig;
 import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
 
 import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeoutException;
@@ -42,45 +46,126 @@ public class OskariWFSLoader {
     private final ScheduledExecutorService executor;
 
     public OskariWFSLoader() {
-        int failRequests = PropertyUtil.getOptional("oskari." + GROUP_KEY + ".failrequests", 5);
-        int rollingWindowMs = PropertyUtil.getOptional("oskari." + GROUP_KEY + ".rollingwindow", 100000);
-        int waitDuration = PropertyUtil.getOptional("oskari." + GROUP_KEY + ".sleepwindow", 20000);
-        int slidingWindow = rollingWindowMs / 1000;
-
-        CircuitBreakerConfig circuitBreakerConfig = CircuitBreakerConfig.custom()
-                .waitDurationInOpenState(Duration.ofMillis(waitDuration))
-                .permittedNumberOfCallsInHalfOpenState(failRequests/2)
-                .minimumNumberOfCalls(failRequests)
-                .slidingWindowType(CircuitBreakerConfig.SlidingWindowType.TIME_BASED)
-                .slidingWindowSize(slidingWindow)
-                .build();
-        circuitBreakerRegistry = CircuitBreakerRegistry.of(circuitBreakerConfig);
-
-        int poolSize = PropertyUtil.getOptional("oskari." + GROUP_KEY + ".job.pool.size", 10);
-        int poolLimit = PropertyUtil.getOptional("oskari." + GROUP_KEY + ".job.pool.limit", 100);
-        int queueSize = PropertyUtil.getOptional("oskari." + GROUP_KEY + ".job.pool.queue", 100);
-        ThreadPoolBulkheadConfig bulkheadConfig = ThreadPoolBulkheadConfig.custom()
-                .maxThreadPoolSize(poolSize)
-                .coreThreadPoolSize(poolSize/2)
-                .queueCapacity(queueSize)
-                .build();
-        ThreadPoolBulkheadRegistry registry = ThreadPoolBulkheadRegistry.of(bulkheadConfig);
-        bulkhead = registry.bulkhead(GROUP_KEY);
-
-        executor = Executors.newScheduledThreadPool(3);
-
-        int timeout = PropertyUtil.getOptional("oskari." + GROUP_KEY + ".job.timeoutms", 15000);
-        TimeLimiterConfig timeLimiterConfig = TimeLimiterConfig.custom().timeoutDuration(Duration.ofMillis(timeout)).build();
-        timeLimiter = TimeLimiterRegistry.of(timeLimiterConfig).timeLimiter(GROUP_KEY);
+        // all loaders share the same bulkhead and circuit breakers so the limits apply to all requests
+        // made to WFS services (from different action handlers and background jobs)
+        circuitBreakerRegistry = Shared.CIRCUIT_BREAKER_REGISTRY;
+        bulkhead = Shared.BULKHEAD;
+        executor = Shared.EXECUTOR;
+        timeLimiter = Shared.TIME_LIMITER;
+    }
+
+    /**
+     * Circuit breakers for WFS services by service url
+     */
+    public static CircuitBreakerRegistry getCircuitBreakerRegistry() {
+        return Shared.CIRCUIT_BREAKER_REGISTRY;
+    }
+
+    /**
+     * Bulkhead limiting the concurrent requests to WFS services
+     */
+    public static ThreadPoolBulkhead getBulkhead() {
+        return Shared.BULKHEAD;
+    }
+
+    // initialized on first use so properties have been loaded
+    private static class Shared {
+        private static final CircuitBreakerRegistry CIRCUIT_BREAKER_REGISTRY = createCircuitBreakerRegistry();
+        private static final ThreadPoolBulkhead BULKHEAD = createBulkhead();
+        private static final ScheduledExecutorService EXECUTOR = Executors.newScheduledThreadPool(3);
+        private static final TimeLimiter TIME_LIMITER = createTimeLimiter();
+
+        private static CircuitBreakerRegistry createCircuitBreakerRegistry() {
+            int failRequests = PropertyUtil.getOptional("oskari." + GROUP_KEY + ".failrequests", 5);
+            int rollingWindowMs = PropertyUtil.getOptional("oskari." + GROUP_KEY + ".rollingwindow", 100000);
+            int waitDuration = PropertyUtil.getOptional("oskari." + GROUP_KEY + ".sleepwindow", 20000);
+            int slidingWindow = rollingWindowMs / 1000;
+
+            CircuitBreakerConfig circuitBreakerConfig = CircuitBreakerConfig.custom()
+                    .waitDurationInOpenState(Duration.ofMillis(waitDuration))
+                    .permittedNumberOfCallsInHalfOpenState(failRequests/2)
+                    .minimumNumberOfCalls(failRequests)
+                    .slidingWindowType(CircuitBreakerConfig.SlidingWindowType.TIME_BASED)
+                    .slidingWindowSize(slidingWindow)
+                    .build();
+            CircuitBreakerRegistry registry = CircuitBreakerRegistry.of(circuitBreakerConfig);
+            registry.getEventPublisher().onEntryAdded(e -> {
+                CircuitBreaker cb = e.getAddedEntry();
+                // circuit breakers are named by layer url, label metrics by host to leave out credentials etc
+                String host = UpstreamMetrics.getHost(cb.getName());
+                UpstreamMetrics.registerCircuitBreaker(GROUP_KEY, host, () -> cb.getState().getOrder());
+                cb.getEventPublisher().onStateTransition(t -> UpstreamMetrics.circuitBreakerTransition(
+                        GROUP_KEY, host, t.getStateTransition().getToState().name()));
+            });
+            return registry;
+        }
+
+        private static ThreadPoolBulkhead createBulkhead() {
+            int poolSize = PropertyUtil.getOptional("oskari." + GROUP_KEY + ".job.pool.size", 10);
+            int queueSize = PropertyUtil.getOptional("oskari." + GROUP_KEY + ".job.pool.queue", 100);
+            ThreadPoolBulkheadConfig bulkheadConfig = ThreadPoolBulkheadConfig.custom()
+                    .maxThreadPoolSize(poolSize)
+                    .coreThreadPoolSize(poolSize/2)
+                    .queueCapacity(queueSize)
+                    .build();
+            ThreadPoolBulkheadRegistry registry = ThreadPoolBulkheadRegistry.of(bulkheadConfig);
+            return registry.bulkhead(GROUP_KEY);
+        }
+
+        private static TimeLimiter createTimeLimiter() {
+            int timeout = PropertyUtil.getOptional("oskari." + GROUP_KEY + ".job.timeoutms", 15000);
+            TimeLimiterConfig timeLimiterConfig = TimeLimiterConfig.custom().timeoutDuration(Duration.ofMillis(timeout)).build();
+            return TimeLimiterRegistry.of(timeLimiterConfig).timeLimiter(GROUP_KEY);
+        }
     }
 
     public SimpleFeatureCollection getFeatures(OskariLayer layer, ReferencedEnvelope bbox, CoordinateReferenceSystem crs, Filter filter) {
+        return join(getFeaturesAsync(layer, bbox, crs, filter));
+    }
+
+    /**
+     * Same as getFeatures() but doesn't block the calling thread. The request is run on the shared
+     * bulkhead with the same time limit and circuit breaker (by layer url) so requests made with this
+     * count towards the same limits. Use join() to get the result with the same error handling as getFeatures().
+     */
+    public CompletableFuture<SimpleFeatureCollection> getFeaturesAsync(OskariLayer layer, ReferencedEnvelope bbox, CoordinateReferenceSystem crs, Filter filter) {
+        UpstreamMetrics.Sample sample = UpstreamMetrics.start(GROUP_KEY, UpstreamMetrics.getHost(layer.getUrl())).layer(layer.getId());
+        CompletableFuture<SimpleFeatureCollection> future;
         try {
-            return Decorators.ofSupplier(getSupplier(layer, bbox, crs, filter))
+            future = Decorators.ofSupplier(getSupplier(layer, bbox, crs, filter))
                 .withThreadPoolBulkhead(bulkhead)
                 .withTimeLimiter(timeLimiter, executor)
                 .withCircuitBreaker(circuitBreakerRegistry.circuitBreaker(layer.getUrl()))
-                .get().toCompletableFuture().join();
+                .get().toCompletableFuture();
+        } catch (Exception e) { // BulkheadFullException
+            future = CompletableFuture.failedFuture(e);
+        }
+        return future.whenComplete((fc, e) -> {
+            sample.status(getStatus(e));
+            sample.stop();
+        });
+    }
+
+    private static String getStatus(Throwable e) {
+        if (e == null) {
+            return UpstreamMetrics.STATUS_OK;
+        }
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof TimeoutException) {
+            return "timeout";
+        }
+        if (cause instanceof CallNotPermittedException) {
+            return "short_circuit";
+        }
+        return UpstreamMetrics.STATUS_ERROR;
+    }
+
+    /**
+     * Waits for the result of getFeaturesAsync() and maps errors to ServiceRuntimeExceptions
+     */
+    public static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
         } catch (Exception e) { // CompletionException
             Throwable cause = e.getCause();
             if (cause instanceof TimeoutException) {
@@ -0,0 +1,216 @@
+package org.oskari.service.wfs.client;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import com.codahale.metrics.Counter;
+import org.oskari.cluster.ClusterManager;
+import org.oskari.metrics.OskariMetrics;
+
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.util.PropertyUtil;
+
+/**
+ * Remembers which output format actually works for an endpoint/feature type so
+ * OskariWFSClient doesn't need to try GeoJSON first on every request to a service that
+ * only returns GML. GML is learned when a GeoJSON request is answered with GML or when
+ * GeoJSON has failed oskari.wfs.outputformat.failures (defaults to 3) times in a row while
+ * GML worked, so a single failed request doesn't switch the feature type to GML. Learned formats
+ * are shared with other nodes in a clustered environment and forgotten after
+ * oskari.wfs.outputformat.ttlMinutes (defaults to 60) so a service that has been fixed will be
+ * tried with GeoJSON again.
+ *
+ * Also counts the fallbacks for monitoring as oskari_wfs_outputformat_fallbacks_total{fallback="..."}.
+ */
+public class OutputFormatRegistry {
+
+    private static final Logger LOG = LogFactory.getLogger(OutputFormatRegistry.class);
+
+    private static final String CLUSTER_FUNCTIONALITY = "wfs";
+    private static final String CLUSTER_CHANNEL = "outputformat";
+    private static final String PROPERTY_TTL = "oskari.wfs.outputformat.ttlMinutes";
+    private static final String PROPERTY_FAILURES = "oskari.wfs.outputformat.failures";
+    private static final int DEFAULT_FAILURES = 3;
+    private static final String METRIC_FALLBACKS = "oskari_wfs_outputformat_fallbacks_total";
+
+    public enum Format {
+        JSON,
+        GML
+    }
+
+    public enum Fallback {
+        /** Requested GeoJSON, but the response was GML */
+        JSON_RESPONSE_WAS_GML,
+        /** Requested GeoJSON, response couldn't be parsed and GML had to be requested separately */
+        JSON_FAILED_REQUESTED_GML,
+        /** Content-Type of the response didn't match the content and the other parser was used */
+        CONTENT_TYPE_MISMATCH,
+        /** GeoJSON wasn't requested since the feature type is known to only work with GML */
+        JSON_SKIPPED
+    }
+
+    private static final OutputFormatRegistry INSTANCE = new OutputFormatRegistry(
+            TimeUnit.MINUTES.toMillis(PropertyUtil.getOptional(PROPERTY_TTL, 60)),
+            PropertyUtil.getOptional(PROPERTY_FAILURES, DEFAULT_FAILURES),
+            f -> OskariMetrics.getRegistry().counter(
+                    OskariMetrics.name(METRIC_FALLBACKS, "fallback", f.name().toLowerCase())));
+
+    private final long ttlMs;
+    private final int failuresBeforeGML;
+    private final ConcurrentMap<String, Learned> formats = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Integer> jsonFailures = new ConcurrentHashMap<>();
+    private final Map<Fallback, Counter> counters;
+    private volatile boolean clusterListenerAdded = false;
+
+    /**
+     * For tests: counters aren't registered to the metrics registry
+     */
+    OutputFormatRegistry(long ttlMs) {
+        this(ttlMs, DEFAULT_FAILURES, f -> new Counter());
+    }
+
+    private OutputFormatRegistry(long ttlMs, int failuresBeforeGML, Function<Fallback, Counter> counterFactory) {
+        this.ttlMs = ttlMs;
+        this.failuresBeforeGML = failuresBeforeGML;
+        Map<Fallback, Counter> map = new EnumMap<>(Fallback.class);
+        for (Fallback f : Fallback.values()) {
+            map.put(f, counterFactory.apply(f));
+        }
+        counters = Collections.unmodifiableMap(map);
+    }
+
+    public static OutputFormatRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    static String getKey(String endPoint, Map<String, String> query) {
+        String typeName = query.get("TYPENAMES");
+        if (typeName == null) {
+            typeName = query.get("TYPENAME");
+        }
+        return endPoint + "|" + typeName;
+    }
+
+    /**
+     * @return the format that has been working for the feature type or null if unknown
+     */
+    public Format getFormat(String key) {
+        addClusterListener();
+        Learned learned = formats.get(key);
+        if (learned == null) {
+            return null;
+        }
+        if (learned.isExpired(ttlMs)) {
+            formats.remove(key, learned);
+            return null;
+        }
+        return learned.format;
+    }
+
+    public void setFormat(String key, Format format) {
+        if (format == Format.JSON) {
+            jsonFailures.remove(key);
+        }
+        Learned previous = formats.get(key);
+        if (previous != null && previous.format == format && !previous.isExpired(ttlMs)) {
+            // keep the original timestamp so GML-only feature types get re-checked after ttl
+            return;
+        }
+        formats.put(key, new Learned(format));
+        if (format == Format.GML) {
+            LOG.info("Using GML for", key, "- GeoJSON doesn't seem to work");
+            notifyCluster(format, key);
+        } else if (previous != null && previous.format != format) {
+            notifyCluster(format, key);
+        }
+    }
+
+    /**
+     * Call when GeoJSON couldn't be parsed but GML worked for the feature type. GML is used
+     * for the feature type after enough failures in a row.
+     */
+    public void jsonFailed(String key) {
+        int failures = jsonFailures.merge(key, 1, Integer::sum);
+        if (failures >= failuresBeforeGML) {
+            jsonFailures.remove(key);
+            setFormat(key, Format.GML);
+        }
+    }
+
+    public void count(Fallback fallback) {
+        counters.get(fallback).inc();
+    }
+
+    void clear() {
+        formats.clear();
+        jsonFailures.clear();
+    }
+
+    /* ************************************************
+     * Cluster env methods
+     * ************************************************
+     */
+
+    private void addClusterListener() {
+        if (clusterListenerAdded) {
+            return;
+        }
+        synchronized (this) {
+            if (clusterListenerAdded) {
+                return;
+            }
+            if (ClusterManager.isClustered()) {
+                ClusterManager
+                        .getClientFor(CLUSTER_FUNCTIONALITY)
+                        .addListener(CLUSTER_CHANNEL, (msg) -> handleClusterMsg(msg));
+            }
+            clusterListenerAdded = true;
+        }
+    }
+
+    private void handleClusterMsg(String data) {
+        if (data == null) {
+            return;
+        }
+        int i = data.indexOf(' ');
+        if (i < 0) {
+            LOG.warn("Received unrecognized cluster msg:", data);
+            return;
+        }
+        try {
+            Format format = Format.valueOf(data.substring(0, i));
+            formats.put(data.substring(i + 1), new Learned(format));
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Received unrecognized cluster msg:", data);
+        }
+    }
+
+    private void notifyCluster(Format format, String key) {
+        if (!ClusterManager.isClustered()) {
+            return;
+        }
+        ClusterManager
+                .getClientFor(CLUSTER_FUNCTIONALITY)
+                .sendMessage(CLUSTER_CHANNEL, format.name() + " " + key);
+    }
+
+    private static class Learned {
+        private final Format format;
+        private final long created;
+
+        private Learned(Format format) {
+            this.format = format;
+            this.created = System.currentTimeMillis();
+        }
+
+        private boolean isExpired(long ttlMs) {
+            return System.currentTimeMillis() - created > ttlMs;
+        }
+    }
+}
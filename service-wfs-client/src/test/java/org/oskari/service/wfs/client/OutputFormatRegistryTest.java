@@ -0,0 +1,65 @@
+package org.oskari.service.wfs.client;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.oskari.service.wfs.client.OutputFormatRegistry.Format;
+
+public class OutputFormatRegistryTest {
+
+    @Test
+    public void testKey() {
+        Map<String, String> wfs11 = new HashMap<>();
+        wfs11.put("TYPENAME", "ns:layer");
+        Map<String, String> wfs2 = new HashMap<>();
+        wfs2.put("TYPENAMES", "ns:layer");
+        Assertions.assertEquals("https://example.com/wfs|ns:layer", OutputFormatRegistry.getKey("https://example.com/wfs", wfs11));
+        Assertions.assertEquals("https://example.com/wfs|ns:layer", OutputFormatRegistry.getKey("https://example.com/wfs", wfs2));
+    }
+
+    @Test
+    public void testLearnFormat() {
+        OutputFormatRegistry registry = new OutputFormatRegistry(60_000);
+        Assertions.assertNull(registry.getFormat("key"));
+        registry.setFormat("key", Format.GML);
+        Assertions.assertEquals(Format.GML, registry.getFormat("key"));
+        registry.setFormat("key", Format.JSON);
+        Assertions.assertEquals(Format.JSON, registry.getFormat("key"));
+        registry.clear();
+        Assertions.assertNull(registry.getFormat("key"));
+    }
+
+    @Test
+    public void testExpiration() throws Exception {
+        OutputFormatRegistry registry = new OutputFormatRegistry(0);
+        registry.setFormat("key", Format.GML);
+        Thread.sleep(5);
+        Assertions.assertNull(registry.getFormat("key"), "Learned format should expire");
+    }
+
+    @Test
+    public void testGMLAfterConsecutiveJSONFailures() {
+        OutputFormatRegistry registry = new OutputFormatRegistry(60_000);
+        registry.jsonFailed("key");
+        registry.jsonFailed("key");
+        Assertions.assertNull(registry.getFormat("key"), "A few failures shouldn't switch to GML");
+        registry.setFormat("key", Format.JSON);
+        registry.jsonFailed("key");
+        registry.jsonFailed("key");
+        Assertions.assertEquals(Format.JSON, registry.getFormat("key"), "Success should reset the failures");
+        registry.jsonFailed("key");
+        Assertions.assertEquals(Format.GML, registry.getFormat("key"));
+    }
+
+    @Test
+    public void testFormatFromContentType() {
+        Assertions.assertEquals(Format.JSON, OskariWFSClient.getFormat("application/json; subtype=geojson"));
+        Assertions.assertEquals(Format.JSON, OskariWFSClient.getFormat("application/geo+json"));
+        Assertions.assertEquals(Format.GML, OskariWFSClient.getFormat("text/xml; subtype=gml/3.1.1"));
+        Assertions.assertEquals(Format.GML, OskariWFSClient.getFormat("application/gml+xml; version=3.2"));
+        Assertions.assertNull(OskariWFSClient.getFormat("text/plain"));
+        Assertions.assertNull(OskariWFSClient.getFormat(null));
+    }
+}
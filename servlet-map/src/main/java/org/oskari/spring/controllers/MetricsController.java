@@ -0,0 +1,63 @@
+package org.oskari.spring.controllers;
+
+import fi.nls.oskari.control.ActionParameters;
+import fi.nls.oskari.log.LogFactory;
+import fi.nls.oskari.log.Logger;
+import fi.nls.oskari.util.PropertyUtil;
+import org.oskari.metrics.OskariMetrics;
+import org.oskari.metrics.PrometheusWriter;
+import org.oskari.spring.extension.OskariParam;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Metrics (action route timers, upstream service timings, circuit breaker states) in Prometheus text format.
+ * Disabled by default, enable with oskari.metrics.prometheus.enabled=true. Available for admin users and
+ * for requests with "Authorization: Bearer [token]" header when oskari.metrics.prometheus.token is configured.
+ */
+@Controller
+public class MetricsController {
+
+    private static final Logger LOG = LogFactory.getLogger(MetricsController.class);
+    private static final String PROP_ENABLED = "oskari.metrics.prometheus.enabled";
+    private static final String PROP_TOKEN = "oskari.metrics.prometheus.token";
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    @RequestMapping("/metrics")
+    public ResponseEntity<String> metrics(@OskariParam ActionParameters params) {
+        if (!PropertyUtil.getOptional(PROP_ENABLED, false)) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        if (!params.getUser().isAdmin() && !hasValidToken(params.getHttpHeader(HttpHeaders.AUTHORIZATION))) {
+            return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+        }
+        StringWriter out = new StringWriter();
+        try {
+            PrometheusWriter.write(OskariMetrics.getRegistry(), out);
+        } catch (IOException e) {
+            LOG.warn(e, "Error writing metrics");
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_TYPE, PrometheusWriter.CONTENT_TYPE);
+        return new ResponseEntity<>(out.toString(), headers, HttpStatus.OK);
+    }
+
+    private boolean hasValidToken(String authorization) {
+        String token = PropertyUtil.getOptional(PROP_TOKEN);
+        if (token == null || token.isEmpty() || authorization == null || !authorization.startsWith(BEARER_PREFIX)) {
+            return false;
+        }
+        byte[] expected = token.getBytes(StandardCharsets.UTF_8);
+        byte[] given = authorization.substring(BEARER_PREFIX.length()).trim().getBytes(StandardCharsets.UTF_8);
+        return MessageDigest.isEqual(expected, given);
+    }
+}